@@ -0,0 +1,103 @@
+package lexicon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// An END-block style aggregation, total[key] += n, over a million distinct subscripts
+// seen twice each, on AwkArray on and off the heap and on the LinkedHashMap of Cells
+// it used to be. Each subscript is a new String, as a field is for every record.
+// aggregate builds the array from empty; lookup tests a prebuilt one for subscripts,
+// half of them missing. The score is passes per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ArrayBenchmark {
+    private static final int KEYS = 1_000_000;
+
+    @Param({"heap", "offHeap", "hashMap"})
+    public String storage;
+
+    private String[] updates;
+    private String[] probes;
+    private AwkArray array;
+    private Map<String, Cell> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        updates = new String[KEYS * 2];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = "user" + random.nextInt(KEYS * 4) % KEYS;
+        }
+        probes = new String[KEYS];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = "user" + random.nextInt(KEYS * 2);
+        }
+        if (storage.equals("hashMap")) {
+            map = aggregateMap();
+        } else {
+            array = aggregateArray();
+        }
+    }
+
+    @Benchmark
+    public int aggregate() {
+        return storage.equals("hashMap") ? aggregateMap().size() : aggregateArray().size();
+    }
+
+    @Benchmark
+    public int lookup() {
+        int found = 0;
+        for (String probe : probes) {
+            String key = new String(probe);
+            if (storage.equals("hashMap") ? map.containsKey(key) : array.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private AwkArray aggregateArray() {
+        AwkArray total = new AwkArray(storage.equals("offHeap"));
+        Cell cell = new Cell();
+        for (int i = 0; i < updates.length; i++) {
+            String key = new String(updates[i]);
+            total.load(key, cell);
+            cell.setNumber(cell.number + i);
+            total.store(key, cell);
+        }
+        return total;
+    }
+
+    private Map<String, Cell> aggregateMap() {
+        Map<String, Cell> total = new LinkedHashMap<>();
+        for (int i = 0; i < updates.length; i++) {
+            String key = new String(updates[i]);
+            Cell cell = total.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                total.put(key, cell);
+            }
+            cell.setNumber(cell.number + i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,139 @@
+package lexicon;
+
+import java.util.Random;
+
+// Synthetic AWK programs that each lean on one part of the lexer. The same kind and
+// size always gives the same text, so runs can be compared.
+enum Corpus {
+    // Mostly keywords and identifiers
+    KEYWORDS {
+        void appendLine(StringBuilder builder, Random random) {
+            int words = 4 + random.nextInt(8);
+            for (int i = 0; i < words; i++) {
+                if (random.nextInt(3) == 0) {
+                    builder.append(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)]);
+                } else {
+                    builder.append(KEYWORDS_USED[random.nextInt(KEYWORDS_USED.length)]);
+                }
+                builder.append(' ');
+            }
+            builder.append('\n');
+        }
+    },
+    // Operators and punctuation, mostly without spaces in between
+    SYMBOLS {
+        void appendLine(StringBuilder builder, Random random) {
+            int symbols = 8 + random.nextInt(24);
+            for (int i = 0; i < symbols; i++) {
+                builder.append(SYMBOLS_USED[random.nextInt(SYMBOLS_USED.length)]);
+                if (random.nextInt(4) == 0) {
+                    builder.append(' ');
+                }
+            }
+            builder.append('\n');
+        }
+    },
+    // Assignments of long string literals with the odd escape
+    STRINGS {
+        void appendLine(StringBuilder builder, Random random) {
+            builder.append(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)]).append(" = \"");
+            int length = 50 + random.nextInt(950);
+            for (int i = 0; i < length; i++) {
+                if (random.nextInt(100) == 0) {
+                    builder.append("\\\"");
+                } else {
+                    builder.append(TEXT.charAt(random.nextInt(TEXT.length())));
+                }
+            }
+            builder.append("\"\n");
+        }
+    },
+    // Long comment lines with a little code between them
+    COMMENTS {
+        void appendLine(StringBuilder builder, Random random) {
+            if (random.nextInt(8) == 0) {
+                builder.append("x = x + 1\n");
+                return;
+            }
+            builder.append("# ");
+            int length = 100 + random.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                builder.append(TEXT.charAt(random.nextInt(TEXT.length())));
+            }
+            builder.append('\n');
+        }
+    },
+    // Control flow in the style of test.txt
+    CONTROL_FLOW {
+        void appendLine(StringBuilder builder, Random random) {
+            String name = IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.append("BEGIN {\n    for (i = 0; i < ARGC; i++)\n")
+                           .append("        printf \"ARGV[%d] = %s\\n\", i, ARGV[i]\n}\n");
+                    break;
+                case 1:
+                    builder.append("{\n    ").append(name).append(" = 0\n    while ( ").append(name)
+                           .append(" < NF ) {\n        sum += $").append(name).append("\n        ")
+                           .append(name).append("++\n    }\n}\n");
+                    break;
+                case 2:
+                    builder.append("/").append(name).append("/ {\n    do {\n        count[$1]--\n")
+                           .append("    } while ( count[$1] >= 10 && !done )\n    if (").append(name)
+                           .append(" != 0) {\n        print \"found\", ").append(name).append("\n    }\n}\n");
+                    break;
+                default:
+                    builder.append("END {\n    for (k in count)\n        printf \"%d \", count[k]\n")
+                           .append("    printf \"\\n\"\n}\n");
+                    break;
+            }
+        }
+    };
+
+    private static final String[] KEYWORDS_USED = {
+        "while", "if", "do", "for", "break", "continue", "else", "return", "BEGIN", "END",
+        "print", "printf", "next", "in", "delete", "getline", "exit", "nextfile", "function"
+    };
+    private static final String[] IDENTIFIERS = {
+        "x", "count", "total_sum", "NR", "line2", "fieldSeparator", "a", "buffer", "i", "key"
+    };
+    private static final String[] SYMBOLS_USED = {
+        ">=", "++", "--", "<=", "==", "!=", "^=", "%=", "*=", "/=", "+=", "-=", "!~", "&&", ">>", "||",
+        "{", "}", "[", "]", "(", ")", "$", "~", "=", "<", ">", "!", "+", "^", "-", "?", ":", "*", "/",
+        "%", "|", ",", ";"
+    };
+    private static final String TEXT = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJ 0123456789 .,;:!?()[]{}<>=+-*/%";
+
+    abstract void appendLine(StringBuilder builder, Random random);
+
+    // Whole lines up to size characters, so the text always lexes cleanly
+    String generate(int size) {
+        Random random = new Random(size * 31L + ordinal());
+        StringBuilder builder = new StringBuilder(size);
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            line.setLength(0);
+            appendLine(line, random);
+            if (builder.length() + line.length() > size) {
+                break;
+            }
+            builder.append(line);
+        }
+        if (builder.length() == 0) {
+            // Not even one line fits, so fall back to a short statement
+            builder.append("x = 1\n");
+        }
+        return builder.toString();
+    }
+
+    // Sizes are given as 1KB, 1MB, 100MB and so on
+    static int parseSize(String size) {
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 10;
+        }
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 20;
+        }
+        return Integer.parseInt(size);
+    }
+}
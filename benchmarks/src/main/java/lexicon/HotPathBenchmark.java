@@ -0,0 +1,118 @@
+package lexicon;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// processWord, processSymbol and parseOperation on their own. Each invocation runs
+// one of them over COUNT space separated words or symbols, so the score is calls per
+// second. The Lexer is built outside the measurement.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotPathBenchmark {
+    private static final int COUNT = 100_000;
+    private static final String[] WORDS = {
+        "while", "if", "do", "for", "BEGIN", "END", "print", "printf", "getline", "function",
+        "x", "count", "total_sum", "NR", "line2", "fieldSeparator"
+    };
+    private static final String[] SYMBOLS = {
+        ">=", "++", "--", "<=", "==", "!=", "+=", "&&", "||", "{", "}", "(", ")", "$", "=", "<",
+        "!", "+", "^", "-", "*", "/", "%", ",", ";"
+    };
+    private static final String[] OPERATIONS = {
+        "^", "*=", "/", "%=", "+=", "-=", "++", "--", "!~", "!", "in"
+    };
+
+    private String words;
+    private String symbols;
+    private String operations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        words = join(WORDS);
+        symbols = join(SYMBOLS);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            builder.append(OPERATIONS[i % OPERATIONS.length]);
+        }
+        operations = builder.toString();
+    }
+
+    private static String join(String[] pieces) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            builder.append(pieces[(i * 7) % pieces.length]).append(' ');
+        }
+        return builder.toString();
+    }
+
+    @State(Scope.Thread)
+    public static class WordLexer {
+        StringHandler source;
+        Lexer lexer;
+
+        @Setup(Level.Invocation)
+        public void setUp(HotPathBenchmark benchmark) {
+            source = new StringHandler(benchmark.words);
+            lexer = new Lexer(source);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SymbolLexer {
+        StringHandler source;
+        Lexer lexer;
+
+        @Setup(Level.Invocation)
+        public void setUp(HotPathBenchmark benchmark) {
+            source = new StringHandler(benchmark.symbols);
+            lexer = new Lexer(source);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long processWord(WordLexer state) {
+        while (!state.source.isDone()) {
+            state.lexer.processWord();
+            state.source.swallow(1);
+        }
+        return state.source.offset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long processSymbol(SymbolLexer state) {
+        while (!state.source.isDone()) {
+            state.lexer.processSymbol();
+            state.source.swallow(1);
+        }
+        return state.source.offset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int parseOperation() {
+        StringHandler source = new StringHandler(operations);
+        int hash = 0;
+        while (!source.isDone()) {
+            hash += Lexer.parseOperation(source).ordinal();
+        }
+        return hash;
+    }
+}
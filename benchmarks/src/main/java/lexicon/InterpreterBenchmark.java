@@ -0,0 +1,78 @@
+package lexicon;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One awk program run by the compiled code on Machine and by the TreeWalker. loop is
+// arithmetic in a BEGIN loop, records adds up fields into an array for every input
+// line, and printf formats every line. Compiling happens outside the measurement, the
+// run inside, so the score is whole runs per second.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    private static final int LINES = 20_000;
+
+    @Param({"loop", "records", "printf"})
+    public String program;
+
+    private String source;
+    private String input;
+    private Program compiled;
+    private final List<String> operands = Collections.emptyList();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (program) {
+            case "loop":
+                source = "BEGIN { for (i = 0; i < 1000000; i++) { s += i % 7 * 2; if (s > 100000) s -= 100000 } print s }";
+                break;
+            case "records":
+                source = "{ total[$2] += $3; count++ } $3 > 500 { big++ } END { for (k in total) n++; print n, count, big }";
+                break;
+            default:
+                source = "{ printf \"%-10s %8.2f %5d\\n\", $1, $3 / 7, $4 }";
+                break;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append("name").append(i).append(' ').append("key").append(i % 50).append(' ')
+                    .append(i % 1000).append(' ').append(i).append('\n');
+        }
+        input = builder.toString();
+        compiled = Awk.compile(source);
+    }
+
+    @Benchmark
+    public String machine() {
+        StringWriter out = new StringWriter();
+        Awk.run(compiled, Collections.emptyMap(), operands, new StringReader(input), out);
+        return out.toString();
+    }
+
+    @Benchmark
+    public String treeWalker() {
+        StringWriter out = new StringWriter();
+        Awk.runTreeWalker(source, Collections.emptyMap(), operands, new StringReader(input), out);
+        return out.toString();
+    }
+}
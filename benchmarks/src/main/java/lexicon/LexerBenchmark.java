@@ -0,0 +1,74 @@
+package lexicon;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole-input lexing over each corpus. Besides ops/s, JMH reports the megabytes and
+// tokens counters as rates, which gives MB/s and tokens/s.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LexerBenchmark {
+    @Param({"KEYWORDS", "SYMBOLS", "STRINGS", "COMMENTS", "CONTROL_FLOW"})
+    public String corpus;
+
+    @Param({"1KB", "1MB", "100MB"})
+    public String size;
+
+    private String text;
+    private double megabytes;
+    private int tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = Corpus.valueOf(corpus).generate(Corpus.parseSize(size));
+        megabytes = text.length() / (double) (1 << 20);
+        tokens = new Lexer(text).lexToBuffer().size();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public List<?> lex(Throughput throughput) {
+        List<Token> result = new Lexer(text).lex();
+        throughput.megabytes += megabytes;
+        throughput.tokens += result.size();
+        return result;
+    }
+
+    @Benchmark
+    public TokenBuffer lexToBuffer(Throughput throughput) {
+        TokenBuffer result = new Lexer(text).lexToBuffer();
+        throughput.megabytes += megabytes;
+        throughput.tokens += tokens;
+        return result;
+    }
+}
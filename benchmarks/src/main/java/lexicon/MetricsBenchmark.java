@@ -0,0 +1,86 @@
+package lexicon;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// What measuring costs the Lexer, lexing 1 MB of a corpus into a TokenBuffer. off has
+// no metrics, counters counts tokens into LexerCounters and times one in 64, everyToken
+// times them all, and recording lexes with a Flight Recorder recording of the lexicon.Lex
+// event running. The score is passes over the corpus per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({"KEYWORDS", "SYMBOLS", "CONTROL_FLOW"})
+    public String corpus;
+
+    private String text;
+    private LexerCounters counters;
+    private LexerCounters everyToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = Corpus.valueOf(corpus).generate(Corpus.parseSize("1MB"));
+        counters = new LexerCounters();
+        everyToken = new LexerCounters(1);
+    }
+
+    // A recording that runs only for the benchmark that takes it
+    @State(Scope.Benchmark)
+    public static class Flight {
+        private Recording recording;
+
+        @Setup(Level.Trial)
+        public void start() {
+            recording = new Recording();
+            recording.enable("lexicon.Lex");
+            recording.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            recording.close();
+        }
+    }
+
+    @Benchmark
+    public TokenBuffer off() {
+        return new Lexer(text).lexToBuffer();
+    }
+
+    @Benchmark
+    public TokenBuffer counters() {
+        Lexer lexer = new Lexer(text);
+        lexer.setMetrics(counters);
+        return lexer.lexToBuffer();
+    }
+
+    @Benchmark
+    public TokenBuffer everyToken() {
+        Lexer lexer = new Lexer(text);
+        lexer.setMetrics(everyToken);
+        return lexer.lexToBuffer();
+    }
+
+    @Benchmark
+    public TokenBuffer recording(Flight flight) {
+        return new Lexer(text).lexToBuffer();
+    }
+}
@@ -0,0 +1,102 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Aggregating programs over a log-like file of about 16 MB, on one Machine and on a
+// ParallelMachine with a pool of the given number of threads. sum adds up a field,
+// groups sums it by status code and counts requests per page, and max keeps the
+// largest value per client. The score is passes over the whole file per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelBenchmark {
+    private static final int LINES = 250_000;
+
+    @Param({"sum", "groups", "max"})
+    public String program;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private Path file;
+    private Program compiled;
+    private List<String> operands;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append("10.0.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                    .append(" GET ").append(random.nextInt(100_000) / 100.0).append(" /index/page")
+                    .append(i % 100).append(".html HTTP/1.1 ").append(200 + random.nextInt(4) * 100)
+                    .append(" Mozilla/5.0\n");
+        }
+        file = Files.createTempFile("parallel", ".log");
+        Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+        switch (program) {
+            case "sum":
+                compiled = Awk.compile("{ s += $3 } END { print s }");
+                break;
+            case "groups":
+                compiled = Awk.compile("{ bytes[$7] += $3; pages[$4]++ } END { for (k in bytes) print k, bytes[k]; "
+                        + "for (k in pages) n++; print n }");
+                break;
+            default:
+                compiled = Awk.compile("{ if (!($1 in most) || $3 > most[$1]) most[$1] = $3 } "
+                        + "END { for (k in most) n++; print n }");
+                break;
+        }
+        operands = Collections.singletonList(file.toString());
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String machine() {
+        StringWriter out = new StringWriter();
+        Awk.run(compiled, Collections.emptyMap(), new AwkRuntime(operands, InputStream.nullInputStream(), out));
+        return out.toString();
+    }
+
+    @Benchmark
+    public String parallel() {
+        StringWriter out = new StringWriter();
+        Awk.runParallel(compiled, Collections.emptyMap(),
+                new AwkRuntime(operands, InputStream.nullInputStream(), out), pool);
+        return out.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package lexicon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Counts the lines of a log-like text that a pattern matches, with Regex and with the
+// java.util.regex Pattern awk used before. literal is plain text, anchored plain text
+// after ^, prefix plain text followed by more, class character classes and repeats,
+// alternation a choice of words, and backtracking a pattern java.util.regex takes time
+// exponential in the line for when it fails. The score is passes over 10,000 lines per
+// second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegexBenchmark {
+    private static final int LINES = 10_000;
+
+    @Param({"literal", "anchored", "prefix", "class", "alternation", "backtracking"})
+    public String kind;
+
+    private String[] lines;
+    private Regex regex;
+    private Pattern pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        String[] methods = {"GET", "POST", "PUT", "DELETE"};
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < LINES; i++) {
+            list.add("10.0." + random.nextInt(256) + "." + random.nextInt(256) + " " + methods[random.nextInt(4)]
+                    + " /index/page" + i % 100 + ".html HTTP/1.1 " + (200 + random.nextInt(4) * 100) + " "
+                    + random.nextInt(100_000) + (random.nextInt(50) == 0 ? " error" : " ok") + " Mozilla/5.0");
+        }
+        lines = list.toArray(new String[0]);
+        String ere;
+        switch (kind) {
+            case "literal":
+                ere = "error";
+                break;
+            case "anchored":
+                ere = "^10\\.0\\.7\\.";
+                break;
+            case "prefix":
+                ere = "/index/page[0-9]+\\.html HTTP/1\\.1 404";
+                break;
+            case "class":
+                ere = "[0-9]+\\.[0-9]+\\.[0-9]+\\.[0-9]+ [A-Z]+ [^ ]* [A-Z]+/[0-9.]+ 5[0-9][0-9]";
+                break;
+            case "alternation":
+                ere = "(PUT|DELETE) .* (404|500) ";
+                break;
+            default:
+                // Every line is tried from every position, and each of those fails late
+                ere = "(a|aa|[0-9]|[0-9][0-9])*Z";
+                break;
+        }
+        regex = Regex.compile(ere);
+        pattern = Pattern.compile(AwkRuntime.toJavaRegex(ere), Pattern.DOTALL);
+    }
+
+    @Benchmark
+    public int regex() {
+        int count = 0;
+        for (String line : lines) {
+            if (regex.find(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int javaRegex() {
+        int count = 0;
+        for (String line : lines) {
+            if (pattern.matcher(line).find()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
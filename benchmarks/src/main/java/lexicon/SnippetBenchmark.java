@@ -0,0 +1,59 @@
+package lexicon;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost per small snippet, the way a service lexing many short programs sees it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+    private static final int SNIPPETS = 64;
+
+    private String[] snippets;
+    private int next;
+    private final Lexer lexer = new Lexer("");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        snippets = new String[SNIPPETS];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < SNIPPETS; i++) {
+            builder.setLength(0);
+            Corpus.CONTROL_FLOW.appendLine(builder, random);
+            snippets[i] = builder.toString();
+        }
+    }
+
+    private String nextSnippet() {
+        next = (next + 1) & (SNIPPETS - 1);
+        return snippets[next];
+    }
+
+    @Benchmark
+    public List<?> newLexer() {
+        return new Lexer(nextSnippet()).lex();
+    }
+
+    @Benchmark
+    public List<?> resetLexer() {
+        return lexer.reset(nextSnippet()).lex();
+    }
+}
@@ -0,0 +1,83 @@
+package lexicon;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cold start: the time a new JVM takes from reading an awk library of about 2 MB to
+// its first token, in a TokenBuffer of all of them that the Parser can start on, by
+// lexing it or by taking the tokens from a TokenCache. Each fork
+// measures one call, so nothing is warmed up. The cache is filled in another JVM
+// beforehand, so this one has not run the Lexer either. The score is milliseconds per
+// call, lower is better.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class TokenCacheBenchmark {
+    private static final int FUNCTIONS = 10_000;
+
+    private Path directory;
+    private Path library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            builder.append("# Splits s on the ").append(i).append("th separator\n")
+                    .append("function part").append(i).append("(s, parts,    n, i, out) {\n")
+                    .append("    n = split(s, parts, \"").append((char) ('a' + i % 26)).append("\")\n")
+                    .append("    for (i = 1; i <= n; i++)\n")
+                    .append("        if (parts[i] ~ `^[0-9]+$`) out = out parts[i] * ").append(i).append(" + 0.5\n")
+                    .append("    return out\n")
+                    .append("}\n");
+        }
+        directory = Files.createTempDirectory("tokens");
+        library = directory.resolve("library.awk");
+        Files.write(library, builder.toString().getBytes(StandardCharsets.UTF_8));
+        Path cache = directory.resolve("cache");
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "lexicon.TokenCache", cache.toString(),
+                library.toString()).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Could not fill the cache");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public TokenType lex() throws IOException {
+        String source = new String(Files.readAllBytes(library), StandardCharsets.UTF_8);
+        return new Lexer(source).lexToBuffer().getType(0);
+    }
+
+    @Benchmark
+    public TokenType cached() throws IOException {
+        return new TokenCache(directory.resolve("cache")).lex(library).getType(0);
+    }
+}
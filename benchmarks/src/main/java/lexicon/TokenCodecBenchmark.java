@@ -0,0 +1,139 @@
+package lexicon;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Handing the tokens of a 1 MB corpus to another process: writing them as the
+// Token.toString() lines Lexer.main prints, or through a TokenCodec.Encoder, and
+// reading them back into Tokens from each. Writing ends in a stream that drops the
+// bytes; reading starts from bytes written beforehand. Besides ops/s, JMH reports the
+// tokens counter as a rate, which gives tokens/s, and the megabytes counter, which is
+// the size of what was written or read, as MB/s.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TokenCodecBenchmark {
+    private static final String SIZE = "1MB";
+
+    @Param({"KEYWORDS", "CONTROL_FLOW"})
+    public String corpus;
+
+    private TokenBuffer tokens;
+    private byte[] text;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tokens = new Lexer(Corpus.valueOf(corpus).generate(Corpus.parseSize(SIZE))).lexToBuffer();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeText(new OutputSink(Channels.newChannel(bytes)));
+        text = bytes.toByteArray();
+        bytes = new ByteArrayOutputStream();
+        try (TokenCodec.Encoder encoder = new TokenCodec.Encoder(Channels.newChannel(bytes))) {
+            encoder.write(tokens);
+        }
+        binary = bytes.toByteArray();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public Writer encodeText(Throughput throughput) throws IOException {
+        Writer out = writeText(new OutputSink(Channels.newChannel(OutputStream.nullOutputStream())));
+        count(throughput, text.length, tokens.size());
+        return out;
+    }
+
+    @Benchmark
+    public long decodeText(Throughput throughput) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text),
+                StandardCharsets.UTF_8));
+        long positions = 0;
+        long count = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            positions += parse(line).getPosition();
+            count++;
+        }
+        count(throughput, text.length, count);
+        return positions;
+    }
+
+    @Benchmark
+    public long encodeBinary(Throughput throughput) throws IOException {
+        TokenCodec.Encoder encoder = new TokenCodec.Encoder(Channels.newChannel(OutputStream.nullOutputStream()));
+        encoder.write(tokens);
+        encoder.finish();
+        count(throughput, binary.length, tokens.size());
+        return encoder.bytes();
+    }
+
+    @Benchmark
+    public long decodeBinary(Throughput throughput) throws IOException {
+        TokenCodec.Decoder decoder = new TokenCodec.Decoder(Channels.newChannel(new ByteArrayInputStream(binary)));
+        long positions = 0;
+        for (Token token = decoder.read(); token != null; token = decoder.read()) {
+            positions += token.getPosition();
+        }
+        count(throughput, binary.length, decoder.tokens());
+        return positions;
+    }
+
+    private Writer writeText(Writer out) throws IOException {
+        for (int i = 0; i < tokens.size(); i++) {
+            out.write(tokens.get(i).toString());
+            out.write('\n');
+        }
+        out.flush();
+        return out;
+    }
+
+    // Reads back a line of Token.toString(): TYPE(value) at line n, position n
+    private static Token parse(String line) {
+        int open = line.indexOf('(');
+        int close = line.lastIndexOf(") at line ");
+        int comma = line.indexOf(", position ", close);
+        return new Token(TokenType.valueOf(line.substring(0, open)), line.substring(open + 1, close),
+                Integer.parseInt(line, close + 10, comma, 10), Integer.parseInt(line, comma + 11, line.length(), 10));
+    }
+
+    private static void count(Throughput throughput, int bytes, long count) {
+        throughput.megabytes += bytes / (double) (1 << 20);
+        throughput.tokens += count;
+    }
+}
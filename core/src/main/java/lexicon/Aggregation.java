@@ -0,0 +1,551 @@
+package lexicon;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Decides whether a program's rules can run over pieces of the input at the same
+// time, each piece with its own copy of the variables, and how the copies are put back
+// together before END. That is only so when nothing a rule does for one record can be
+// seen by the rules for another: no output, no getline, next or exit, no NR, and no
+// variable read after another record may have changed it. The operations the rules do
+// use on each variable then say how its copies combine: sums add up, the last
+// assignment or the first element wins, and a value kept by if (e > max) max = e is
+// chosen the same way again.
+class Aggregation {
+    // How a global's copies are combined, in the order of the pieces of the input
+    static final byte SHARED = 0;   // the rules never change it
+    static final byte SUM = 1;      // x += e, x -= e, x++ and x--, each copy counted from zero
+    static final byte LAST = 2;     // x = e, a[k] = e: the last assignment wins
+    static final byte FIRST = 3;    // !(k in a) { a[k] = e }, or a[k] just referenced
+    static final byte CHOOSE = 4;   // if (e > x) x = e, and the other comparisons
+
+    final byte[] rules;
+    // For CHOOSE, which results of comparing a new value with the one kept replace
+    // it: 1 less, 2 equal and 4 greater, as in Program
+    final int[] masks;
+
+    private final SyntaxTree tree;
+    private final Map<String, Integer> globals;
+    private final Set<String> arrays;
+    private final boolean[] effects;
+    private final Map<String, Uses> uses = new HashMap<>();
+    private boolean sequential;
+    private boolean matches;
+
+    // What the rules do to one variable
+    private static final class Uses {
+        boolean read;
+        // Read somewhere no assignment earlier in the same action reaches
+        boolean unset;
+        boolean assigned;
+        boolean added;
+        // k in a and length(a)
+        boolean tested;
+        boolean first;
+        // CHOOSE's mask, -1 when two comparisons disagree
+        int chosen;
+        boolean other;
+    }
+
+    private Aggregation(SyntaxTree tree, Map<String, Integer> globals, Set<String> arrays, boolean[] effects,
+            int globalCount) {
+        this.tree = tree;
+        this.globals = globals;
+        this.arrays = arrays;
+        this.effects = effects;
+        this.rules = new byte[globalCount];
+        this.masks = new int[globalCount];
+    }
+
+    // How the program under the PROGRAM node root combines each global, or null if
+    // its rules have to see the records one after another. globals gives each
+    // variable's index and arrays the ones that are arrays.
+    static Aggregation of(SyntaxTree tree, int root, Map<String, Integer> globals, Set<String> arrays,
+            boolean[] effects, int globalCount) {
+        Aggregation aggregation = new Aggregation(tree, globals, arrays, effects, globalCount);
+        return aggregation.analyze(root) ? aggregation : null;
+    }
+
+    private boolean analyze(int root) {
+        for (int i = 0; i < tree.getChildCount(root) && !sequential; i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) == SyntaxTree.Kind.RULE) {
+                rule(item);
+            }
+        }
+        if (matches) {
+            // match() sets RSTART and RLENGTH for whatever reads them after the rules
+            for (int i = 0; i < tree.getChildCount(root); i++) {
+                int item = tree.getChild(root, i);
+                if (tree.getKind(item) != SyntaxTree.Kind.RULE
+                        && (mentions(item, "RSTART") || mentions(item, "RLENGTH"))) {
+                    sequential = true;
+                }
+            }
+        }
+        for (Map.Entry<String, Uses> entry : uses.entrySet()) {
+            if (sequential) {
+                break;
+            }
+            int global = globals.get(entry.getKey());
+            Uses use = entry.getValue();
+            if (arrays.contains(entry.getKey())) {
+                rules[global] = arrayRule(use);
+            } else {
+                rules[global] = scalarRule(use);
+            }
+            masks[global] = use.chosen;
+        }
+        return !sequential;
+    }
+
+    private byte scalarRule(Uses use) {
+        if (!use.assigned && !use.added && use.chosen == 0 && !use.other) {
+            return SHARED;
+        }
+        if (use.added && !use.assigned && !use.read && use.chosen == 0 && !use.other) {
+            return SUM;
+        }
+        if (use.chosen > 0 && !use.assigned && !use.added && !use.read && !use.other) {
+            return CHOOSE;
+        }
+        if (use.assigned && !use.unset && use.chosen == 0 && !use.other) {
+            return LAST;
+        }
+        sequential = true;
+        return SHARED;
+    }
+
+    private byte arrayRule(Uses use) {
+        int kinds = (use.read ? 1 : 0) + (use.assigned ? 1 : 0) + (use.added ? 1 : 0) + (use.first ? 1 : 0)
+                + (use.chosen != 0 ? 1 : 0);
+        if (kinds == 0 && !use.other) {
+            return SHARED;
+        }
+        // Finding out whether an element is there would depend on the other pieces
+        if (kinds > 1 || use.other || use.tested || use.chosen < 0) {
+            sequential = true;
+            return SHARED;
+        }
+        if (use.added) {
+            return SUM;
+        }
+        if (use.assigned) {
+            return LAST;
+        }
+        return use.chosen != 0 ? CHOOSE : FIRST;
+    }
+
+    private void rule(int item) {
+        int pattern = tree.getChild(item, 0);
+        int endPattern = tree.getChild(item, 1);
+        int action = tree.getChild(item, 2);
+        // Ranges remember earlier records, and a missing action prints
+        if (tree.getKind(endPattern) != SyntaxTree.Kind.EMPTY || tree.getKind(action) == SyntaxTree.Kind.EMPTY) {
+            sequential = true;
+            return;
+        }
+        Set<String> assigned = new HashSet<>();
+        if (tree.getKind(pattern) != SyntaxTree.Kind.EMPTY) {
+            if (guarded(pattern, action, assigned)) {
+                return;
+            }
+            expression(pattern, assigned);
+        }
+        statement(action, assigned);
+    }
+
+    // Statements. assigned holds the scalars every way here has assigned to in this
+    // action, which can then be read without seeing another record's value.
+
+    private void statement(int node, Set<String> assigned) {
+        switch (tree.getKind(node)) {
+            case BLOCK:
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    statement(tree.getChild(node, i), assigned);
+                }
+                break;
+            case EMPTY:
+            case BREAK:
+            case CONTINUE:
+                break;
+            case IF:
+                if (tree.getKind(tree.getChild(node, 2)) == SyntaxTree.Kind.EMPTY
+                        && guarded(tree.getChild(node, 0), tree.getChild(node, 1), assigned)) {
+                    break;
+                }
+                expression(tree.getChild(node, 0), assigned);
+                statement(tree.getChild(node, 1), new HashSet<>(assigned));
+                statement(tree.getChild(node, 2), new HashSet<>(assigned));
+                break;
+            case WHILE:
+                expression(tree.getChild(node, 0), assigned);
+                statement(tree.getChild(node, 1), new HashSet<>(assigned));
+                break;
+            case DO:
+                // continue can skip the rest of the body
+                statement(tree.getChild(node, 0), new HashSet<>(assigned));
+                expression(tree.getChild(node, 1), assigned);
+                break;
+            case FOR:
+                effect(tree.getChild(node, 0), assigned);
+                expression(tree.getChild(node, 1), assigned);
+                statement(tree.getChild(node, 3), new HashSet<>(assigned));
+                effect(tree.getChild(node, 2), new HashSet<>(assigned));
+                break;
+            case FOR_IN:
+            case NEXT:
+            case NEXTFILE:
+            case EXIT:
+            case RETURN:
+            case DELETE:
+            case PRINT:
+            case PRINTF:
+                sequential = true;
+                break;
+            default:
+                effect(node, assigned);
+                break;
+        }
+    }
+
+    // An expression statement: x = e lets x be read afterwards, and adding to a
+    // variable or an element is a SUM when that is all that happens to it
+    private void effect(int node, Set<String> assigned) {
+        SyntaxTree.Kind kind = tree.getKind(node);
+        Operation operation = tree.getOperation(node);
+        if (kind == SyntaxTree.Kind.ASSIGN) {
+            int target = tree.getChild(node, 0);
+            int value = tree.getChild(node, 1);
+            if (operation == Operation.ASSIGN && isScalar(target)) {
+                expression(value, assigned);
+                uses(target).assigned = true;
+                assigned.add(tree.getValue(target));
+                return;
+            }
+            if (isAdding(operation) && (isScalar(target) || isElement(target))) {
+                expression(value, assigned);
+                added(target, assigned);
+                return;
+            }
+        } else if (kind == SyntaxTree.Kind.UNARY && isIncrement(operation)) {
+            int target = tree.getChild(node, 0);
+            if (isScalar(target) || isElement(target)) {
+                added(target, assigned);
+                return;
+            }
+        }
+        expression(node, assigned);
+    }
+
+    private void added(int target, Set<String> assigned) {
+        if (isScalar(target)) {
+            read(target, assigned).added = true;
+        } else {
+            keys(target, assigned);
+            uses(tree.getChild(target, 0)).added = true;
+        }
+    }
+
+    // if (e > x) x = e, if (!(k in a) || e > a[k]) a[k] = e and !(k in a) { a[k] = e },
+    // as a rule or an if. Returns false, having looked at nothing, for anything else.
+    private boolean guarded(int condition, int body, Set<String> assigned) {
+        while (tree.getKind(body) == SyntaxTree.Kind.BLOCK && tree.getChildCount(body) == 1) {
+            body = tree.getChild(body, 0);
+        }
+        if (tree.getKind(body) != SyntaxTree.Kind.ASSIGN || tree.getOperation(body) != Operation.ASSIGN) {
+            return false;
+        }
+        int target = tree.getChild(body, 0);
+        int value = tree.getChild(body, 1);
+        boolean element = isElement(target);
+        if (!(element || isScalar(target)) || effects[value] || effects[target]) {
+            return false;
+        }
+        int comparison = condition;
+        if (element && isMissing(condition, target)) {
+            uses(tree.getChild(target, 0)).first = true;
+            keys(target, assigned);
+            expression(value, assigned);
+            return true;
+        }
+        if (element && tree.getKind(condition) == SyntaxTree.Kind.BINARY
+                && tree.getOperation(condition) == Operation.OR
+                && isMissing(tree.getChild(condition, 0), target)) {
+            comparison = tree.getChild(condition, 1);
+        }
+        int mask = choice(comparison, target, value);
+        if (mask == 0) {
+            return false;
+        }
+        Uses use = element ? uses(tree.getChild(target, 0)) : uses(target);
+        use.chosen = use.chosen == 0 || use.chosen == mask ? mask : -1;
+        if (element) {
+            keys(target, assigned);
+        }
+        expression(value, assigned);
+        return true;
+    }
+
+    // The results of comparing value with target that make condition true, when it
+    // compares the two, or 0
+    private int choice(int condition, int target, int value) {
+        if (tree.getKind(condition) != SyntaxTree.Kind.BINARY) {
+            return 0;
+        }
+        int left = tree.getChild(condition, 0);
+        int right = tree.getChild(condition, 1);
+        int mask;
+        switch (tree.getOperation(condition)) {
+            case LT:
+                mask = 1;
+                break;
+            case LE:
+                mask = 3;
+                break;
+            case GT:
+                mask = 4;
+                break;
+            case GE:
+                mask = 6;
+                break;
+            default:
+                return 0;
+        }
+        if (same(left, value) && same(right, target)) {
+            return mask;
+        }
+        if (same(left, target) && same(right, value)) {
+            // Less the other way round is greater
+            return (mask & 2) | (mask & 1) << 2 | (mask & 4) >> 2;
+        }
+        return 0;
+    }
+
+    // Whether node is !(k in a) for the element a[k]
+    private boolean isMissing(int node, int element) {
+        if (tree.getKind(node) != SyntaxTree.Kind.UNARY || tree.getOperation(node) != Operation.NOT) {
+            return false;
+        }
+        int test = tree.getChild(node, 0);
+        if (tree.getKind(test) != SyntaxTree.Kind.BINARY || tree.getOperation(test) != Operation.IN
+                || !same(tree.getChild(test, 1), tree.getChild(element, 0))) {
+            return false;
+        }
+        int key = tree.getChild(test, 0);
+        int count = tree.getKind(key) == SyntaxTree.Kind.GROUP ? tree.getChildCount(key) : 1;
+        if (count != tree.getChildCount(element) - 1) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int part = count == 1 && tree.getKind(key) != SyntaxTree.Kind.GROUP ? key : tree.getChild(key, i);
+            if (!same(part, tree.getChild(element, i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Expressions
+
+    private void expression(int node, Set<String> assigned) {
+        switch (tree.getKind(node)) {
+            case VARIABLE:
+                String name = tree.getValue(node);
+                if (name.equals("length") && !globals.containsKey(name)) {
+                    break;
+                }
+                int special = AwkRuntime.specialIndex(name);
+                if (special == AwkRuntime.NR || special == AwkRuntime.FNR || special == AwkRuntime.FILENAME) {
+                    sequential = true;
+                } else if (special < 0) {
+                    if (arrays.contains(name)) {
+                        uses(node).other = true;
+                    } else {
+                        read(node, assigned).read = true;
+                    }
+                }
+                break;
+            case INDEX:
+                keys(node, assigned);
+                uses(tree.getChild(node, 0)).read = true;
+                break;
+            case CALL:
+                call(node, assigned);
+                break;
+            case UNARY:
+                if (isIncrement(tree.getOperation(node))) {
+                    written(tree.getChild(node, 0), false, assigned);
+                } else {
+                    expression(tree.getChild(node, 0), assigned);
+                }
+                break;
+            case BINARY:
+                if (tree.getOperation(node) == Operation.IN) {
+                    expression(tree.getChild(node, 0), assigned);
+                    uses(tree.getChild(node, 1)).tested = true;
+                    break;
+                }
+                children(node, assigned);
+                break;
+            case ASSIGN:
+                expression(tree.getChild(node, 1), assigned);
+                written(tree.getChild(node, 0), tree.getOperation(node) == Operation.ASSIGN, assigned);
+                break;
+            case GETLINE:
+                sequential = true;
+                break;
+            default:
+                children(node, assigned);
+                break;
+        }
+    }
+
+    private void children(int node, Set<String> assigned) {
+        for (int i = 0; i < tree.getChildCount(node); i++) {
+            expression(tree.getChild(node, i), assigned);
+        }
+    }
+
+    // Something changed inside a bigger expression, whose value is then used
+    private void written(int target, boolean plain, Set<String> assigned) {
+        SyntaxTree.Kind kind = tree.getKind(target);
+        if (kind == SyntaxTree.Kind.VARIABLE) {
+            int special = AwkRuntime.specialIndex(tree.getValue(target));
+            if (special >= 0) {
+                // NF belongs to the record; the others change how later records are read
+                sequential |= special != AwkRuntime.NF;
+                return;
+            }
+            Uses use = plain ? uses(target) : read(target, assigned);
+            use.assigned = true;
+            use.read |= !plain;
+        } else if (kind == SyntaxTree.Kind.INDEX) {
+            keys(target, assigned);
+            if (plain) {
+                uses(tree.getChild(target, 0)).assigned = true;
+            } else {
+                uses(tree.getChild(target, 0)).other = true;
+            }
+        } else {
+            expression(target, assigned);
+        }
+    }
+
+    private void call(int node, Set<String> assigned) {
+        AwkRuntime.Builtin builtin = AwkRuntime.Builtin.named(tree.getValue(node));
+        if (builtin == null) {
+            // The function could do anything
+            sequential = true;
+            return;
+        }
+        int count = tree.getChildCount(node);
+        switch (builtin) {
+            case LENGTH:
+                if (count == 1 && tree.getKind(tree.getChild(node, 0)) == SyntaxTree.Kind.VARIABLE
+                        && arrays.contains(tree.getValue(tree.getChild(node, 0)))) {
+                    uses(tree.getChild(node, 0)).tested = true;
+                    return;
+                }
+                break;
+            case SUB:
+            case GSUB:
+                // Only a field or the record can be changed
+                if (count == 3 && !(tree.getKind(tree.getChild(node, 2)) == SyntaxTree.Kind.UNARY
+                        && tree.getOperation(tree.getChild(node, 2)) == Operation.DOLLAR)) {
+                    sequential = true;
+                    return;
+                }
+                break;
+            case MATCH:
+                matches = true;
+                break;
+            case SPLIT:
+            case RAND:
+            case SRAND:
+            case SYSTEM:
+            case CLOSE:
+            case FFLUSH:
+                sequential = true;
+                return;
+            default:
+                break;
+        }
+        children(node, assigned);
+    }
+
+    private void keys(int element, Set<String> assigned) {
+        for (int i = 1; i < tree.getChildCount(element); i++) {
+            expression(tree.getChild(element, i), assigned);
+        }
+    }
+
+    // The Uses of a scalar that is being read, noting whether it was assigned first
+    private Uses read(int variable, Set<String> assigned) {
+        Uses use = uses(variable);
+        use.unset |= !assigned.contains(tree.getValue(variable));
+        return use;
+    }
+
+    private Uses uses(int variable) {
+        if (tree.getKind(variable) != SyntaxTree.Kind.VARIABLE) {
+            sequential = true;
+            return new Uses();
+        }
+        return uses.computeIfAbsent(tree.getValue(variable), name -> new Uses());
+    }
+
+    private boolean isScalar(int node) {
+        return tree.getKind(node) == SyntaxTree.Kind.VARIABLE && AwkRuntime.specialIndex(tree.getValue(node)) < 0
+                && !arrays.contains(tree.getValue(node));
+    }
+
+    private boolean isElement(int node) {
+        return tree.getKind(node) == SyntaxTree.Kind.INDEX
+                && tree.getKind(tree.getChild(node, 0)) == SyntaxTree.Kind.VARIABLE;
+    }
+
+    private static boolean isAdding(Operation operation) {
+        return operation == Operation.ADD_ASSIGN || operation == Operation.SUBTRACT_ASSIGN
+                || operation == Operation.SUB_ASSIGN;
+    }
+
+    private static boolean isIncrement(Operation operation) {
+        return operation == Operation.PREINC || operation == Operation.POSTINC || operation == Operation.PREDEC
+                || operation == Operation.POSTDEC;
+    }
+
+    // Whether two trees are written the same way
+    private boolean same(int a, int b) {
+        if (tree.getKind(a) != tree.getKind(b) || tree.getOperation(a) != tree.getOperation(b)
+                || tree.getChildCount(a) != tree.getChildCount(b)) {
+            return false;
+        }
+        SyntaxTree.Kind kind = tree.getKind(a);
+        if ((tree.getChildCount(a) == 0 && kind != SyntaxTree.Kind.EMPTY) || kind == SyntaxTree.Kind.CALL) {
+            if (!tree.getValue(a).equals(tree.getValue(b))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(a); i++) {
+            if (!same(tree.getChild(a, i), tree.getChild(b, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean mentions(int node, String name) {
+        if (tree.getKind(node) == SyntaxTree.Kind.VARIABLE && tree.getValue(node).equals(name)) {
+            return true;
+        }
+        for (int i = 0; i < tree.getChildCount(node); i++) {
+            if (mentions(tree.getChild(node, i), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
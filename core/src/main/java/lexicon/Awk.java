@@ -0,0 +1,157 @@
+package lexicon;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Lexes, parses and compiles an awk program and runs it, on Machine, on a
+// ParallelMachine with --parallel or on the TreeWalker with --tree. Sums of non-integers
+// made with --parallel can differ from a plain run in the last bits. With --token-cache,
+// the program's tokens are kept in that directory for the next run. With
+// --off-heap-arrays, arrays are kept in direct buffers. Usage: awk [-F fs]
+// [-v var=value] [--parallel | --tree] [--token-cache dir] [--off-heap-arrays]
+// (-f progfile | 'program') [file or var=value ...]
+class Awk {
+    private Awk() {
+    }
+
+    public static Program compile(String source) {
+        return compile(new Lexer(source).lexToBuffer());
+    }
+
+    public static Program compile(String source, TokenCache cache) {
+        return compile(cache.lex(source));
+    }
+
+    static Program compile(TokenBuffer tokens) {
+        Parser parser = new Parser(tokens);
+        int root = new ConstantFolder(parser.getTree()).fold(parser.parseProgram());
+        return new Compiler(parser.getTree()).compile(root);
+    }
+
+    // Runs the program with the variables set first, as -v does. Returns the exit status.
+    public static int run(Program program, Map<String, String> variables, List<String> operands, Reader in,
+            Writer out) {
+        return run(program, variables, new AwkRuntime(operands, in, out));
+    }
+
+    public static int run(Program program, Map<String, String> variables, AwkRuntime runtime) {
+        Machine machine = new Machine(program, runtime);
+        variables.forEach(machine::assign);
+        return machine.run();
+    }
+
+    // Runs the rules on the pool's threads when the program and its input allow it
+    public static int runParallel(Program program, Map<String, String> variables, AwkRuntime runtime,
+            ForkJoinPool pool) {
+        ParallelMachine machine = new ParallelMachine(program, runtime, pool);
+        variables.forEach(machine::assign);
+        return machine.run();
+    }
+
+    public static int run(String source, List<String> operands, Reader in, Writer out) {
+        return run(compile(source), Collections.emptyMap(), operands, in, out);
+    }
+
+    public static int runTreeWalker(String source, Map<String, String> variables, List<String> operands, Reader in,
+            Writer out) {
+        return runTreeWalker(source, variables, new AwkRuntime(operands, in, out));
+    }
+
+    public static int runTreeWalker(String source, Map<String, String> variables, AwkRuntime runtime) {
+        Parser parser = new Parser(new Lexer(source).lexToBuffer());
+        int root = new ConstantFolder(parser.getTree()).fold(parser.parseProgram());
+        TreeWalker walker = new TreeWalker(parser.getTree(), root, runtime);
+        variables.forEach(walker::assign);
+        return walker.run();
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> variables = new LinkedHashMap<>();
+        String source = null;
+        boolean tree = false;
+        boolean parallel = false;
+        TokenCache cache = null;
+        boolean offHeapArrays = false;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+                String option = args[i];
+                if (option.equals("--")) {
+                    i++;
+                    break;
+                } else if (option.equals("--tree")) {
+                    tree = true;
+                } else if (option.equals("--parallel")) {
+                    parallel = true;
+                } else if (option.equals("--off-heap-arrays")) {
+                    offHeapArrays = true;
+                } else if (option.equals("--token-cache")) {
+                    cache = new TokenCache(Paths.get(args[++i]));
+                } else if (option.startsWith("-F")) {
+                    variables.put("FS", option.length() > 2 ? option.substring(2) : args[++i]);
+                } else if (option.startsWith("-v")) {
+                    String assignment = option.length() > 2 ? option.substring(2) : args[++i];
+                    int equals = assignment.indexOf('=');
+                    if (equals <= 0) {
+                        throw new IllegalArgumentException("Expected var=value after -v: " + assignment);
+                    }
+                    variables.put(assignment.substring(0, equals), AwkRuntime.unescape(assignment.substring(equals + 1)));
+                } else if (option.startsWith("-f")) {
+                    String file = option.length() > 2 ? option.substring(2) : args[++i];
+                    source = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if (source == null) {
+                if (i >= args.length) {
+                    System.err.println("Usage: awk [-F fs] [-v var=value] [--parallel | --tree] [--token-cache dir] "
+                            + "[--off-heap-arrays] (-f progfile | 'program') [file or var=value ...]");
+                    System.err.println("  --parallel runs the rules on several threads when it can; sums of "
+                            + "non-integers may then differ in the last bits");
+                    System.exit(2);
+                }
+                source = args[i++];
+            }
+            List<String> operands = new ArrayList<>();
+            for (; i < args.length; i++) {
+                operands.add(args[i]);
+            }
+            Writer out = new OutputSink(new FileOutputStream(FileDescriptor.out).getChannel());
+            // Standard input is read as bytes, like the files
+            AwkRuntime runtime = new AwkRuntime(operands, System.in, out);
+            runtime.setOffHeapArrays(offHeapArrays);
+            int status;
+            if (tree) {
+                status = runTreeWalker(source, variables, runtime);
+            } else {
+                Program program = cache == null ? compile(source) : compile(source, cache);
+                status = parallel ? runParallel(program, variables, runtime, ForkJoinPool.commonPool())
+                        : run(program, variables, runtime);
+            }
+            System.exit(status);
+        } catch (IOException e) {
+            System.err.println("awk: " + e.getMessage());
+            System.exit(2);
+        } catch (UncheckedIOException e) {
+            System.err.println("awk: " + e.getCause().getMessage());
+            System.exit(2);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println("awk: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
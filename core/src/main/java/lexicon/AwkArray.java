@@ -0,0 +1,441 @@
+package lexicon;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// An awk associative array. Subscripts are strings; for-in visits them in the order
+// they were added. Elements are not objects: each one is a fixed-size record in one
+// buffer, with its subscript's offset and length in a shared key arena, its hash, its
+// type and its number, and only a string value is kept as a String beside it. A
+// subscript is stored one byte a character if every character fits, two otherwise, so
+// it reads back exactly. Lookups go through an open-addressing table of record
+// indices, compared against the subscript's characters without encoding it. Deleting
+// an element shifts the entries after it back in the table, so there are no
+// tombstones, and leaves a hole in the records that is squeezed out once holes are
+// half of them. Built off the heap, the records, the keys and the table are direct
+// buffers, so an array of millions of elements is a few large blocks the collector
+// never looks into. An overlay starts empty over a parent array it reads through to:
+// it holds only what is stored in it, and the parent, which must not change meanwhile,
+// is shared by every overlay over it.
+class AwkArray {
+    // Record layout: key offset, key length in characters (-1 once deleted), hash,
+    // type, whether the key takes two bytes a character, and the number
+    private static final int KEY_OFFSET = 0;
+    private static final int KEY_LENGTH = 4;
+    private static final int HASH = 8;
+    private static final int TYPE = 12;
+    private static final int WIDE = 13;
+    private static final int NUMBER = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int DELETED = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    // Records, keys and the table each have to fit a ByteBuffer
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private final boolean offHeap;
+    private ByteBuffer records;
+    private String[] strings;
+    private ByteBuffer keys;
+    // Open addressing over record index + 1, so that 0 marks an empty slot. There are
+    // always at least twice as many slots as records.
+    private ByteBuffer slots;
+    private int mask;
+    // Records in use, deleted ones included, the elements among them, and the bytes
+    // of keys written
+    private int count;
+    private int size;
+    private int keySize;
+    // The subscript found last and its record. a[k] += n loads and then stores the
+    // same String, and the store need not look for it again.
+    private String lastKey;
+    private int lastRecord;
+    // What an overlay reads through to, or null, and how many of the elements here
+    // the parent has too
+    private AwkArray parent;
+    private int shadowed;
+
+    AwkArray() {
+        this(false);
+    }
+
+    AwkArray(boolean offHeap) {
+        this(offHeap, null);
+    }
+
+    private AwkArray(boolean offHeap, AwkArray parent) {
+        this.offHeap = offHeap;
+        this.parent = parent;
+        records = allocate(INITIAL_CAPACITY * RECORD_SIZE);
+        strings = new String[INITIAL_CAPACITY];
+        keys = allocate(INITIAL_CAPACITY * 8);
+        slots = allocate(INITIAL_CAPACITY * 2 * 4);
+        mask = INITIAL_CAPACITY * 2 - 1;
+    }
+
+    private AwkArray(AwkArray other) {
+        offHeap = other.offHeap;
+        records = copyOf(other.records, other.records.capacity(), other.count * RECORD_SIZE);
+        strings = other.strings.clone();
+        keys = copyOf(other.keys, other.keys.capacity(), other.keySize);
+        slots = copyOf(other.slots, other.slots.capacity(), other.slots.capacity());
+        mask = other.mask;
+        count = other.count;
+        size = other.size;
+        keySize = other.keySize;
+        parent = other.parent;
+        shadowed = other.shadowed;
+    }
+
+    // Copies the element for key into into, adding it as uninitialized if it is not
+    // there, as awk does for any reference
+    void load(String key, Cell into) {
+        if (parent != null && key != lastKey && find(key) < 0) {
+            // Read from the parent without adding anything to it
+            int record = parent.find(key);
+            if (record >= 0) {
+                parent.read(record, into);
+                return;
+            }
+        }
+        read(findOrAdd(key), into);
+    }
+
+    private void read(int record, Cell into) {
+        int base = record * RECORD_SIZE;
+        into.type = records.get(base + TYPE);
+        into.number = records.getDouble(base + NUMBER);
+        into.string = strings[record];
+    }
+
+    // Sets the element for key to value
+    void store(String key, Cell value) {
+        int record = findOrAdd(key);
+        int base = record * RECORD_SIZE;
+        records.put(base + TYPE, value.type);
+        records.putDouble(base + NUMBER, value.number);
+        strings[record] = value.string;
+    }
+
+    // Sets the element for key to text read from input, as split does
+    void storeInput(String key, String text) {
+        Cell cell = new Cell();
+        cell.setInput(text);
+        store(key, cell);
+    }
+
+    boolean contains(String key) {
+        return find(key) >= 0 || parent != null && parent.find(key) >= 0;
+    }
+
+    void remove(String key) {
+        if (parent != null && parent.find(key) >= 0) {
+            throw new IllegalStateException("Cannot delete " + key + " from an overlay");
+        }
+        int hash = key.hashCode();
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int record = slots.getInt(slot * 4) - 1;
+            if (record < 0) {
+                return;
+            }
+            if (matches(record, key, hash)) {
+                lastKey = null;
+                records.putInt(record * RECORD_SIZE + KEY_LENGTH, DELETED);
+                strings[record] = null;
+                size--;
+                vacate(slot);
+                return;
+            }
+        }
+    }
+
+    void clear() {
+        lastKey = null;
+        parent = null;
+        shadowed = 0;
+        for (int i = 0; i <= mask; i++) {
+            slots.putInt(i * 4, 0);
+        }
+        Arrays.fill(strings, 0, count, null);
+        count = 0;
+        size = 0;
+        keySize = 0;
+    }
+
+    int size() {
+        return parent == null ? size : size + parent.size - shadowed;
+    }
+
+    AwkArray copy() {
+        return new AwkArray(this);
+    }
+
+    // An empty array over this one
+    AwkArray overlay() {
+        return new AwkArray(offHeap, this);
+    }
+
+    AwkArray getParent() {
+        return parent;
+    }
+
+    // Stores what was stored in this overlay into its parent, once nothing else reads
+    // the parent, and returns the parent
+    AwkArray flatten() {
+        Cell value = new Cell();
+        for (String key : storedKeys()) {
+            read(find(key), value);
+            parent.store(key, value);
+        }
+        return parent;
+    }
+
+    // The subscripts as they are now, so the loop body can change the array. An
+    // overlay's come in its parent's order, then those only it has.
+    String[] keys() {
+        if (parent == null) {
+            return storedKeys();
+        }
+        String[] result = Arrays.copyOf(parent.keys(), size());
+        int next = parent.size;
+        for (String key : storedKeys()) {
+            if (parent.find(key) < 0) {
+                result[next++] = key;
+            }
+        }
+        return result;
+    }
+
+    // The subscripts of the elements kept here, which for an overlay leaves out those
+    // only its parent has
+    String[] storedKeys() {
+        String[] result = new String[size];
+        int next = 0;
+        byte[] bytes = new byte[16];
+        for (int record = 0; record < count; record++) {
+            int base = record * RECORD_SIZE;
+            int length = records.getInt(base + KEY_LENGTH);
+            if (length == DELETED) {
+                continue;
+            }
+            int offset = records.getInt(base + KEY_OFFSET);
+            if (records.get(base + WIDE) != 0) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = keys.getChar(offset + i * 2);
+                }
+                result[next++] = new String(chars);
+            } else {
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                keys.get(offset, bytes, 0, length);
+                result[next++] = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return result;
+    }
+
+    private int findOrAdd(String key) {
+        if (key == lastKey) {
+            return lastRecord;
+        }
+        int record = find(key);
+        if (record < 0) {
+            record = add(key);
+        }
+        lastKey = key;
+        lastRecord = record;
+        return record;
+    }
+
+    // The record for key, or -1 if it is not there
+    private int find(String key) {
+        int hash = key.hashCode();
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int record = slots.getInt(slot * 4) - 1;
+            if (record < 0 || matches(record, key, hash)) {
+                return record;
+            }
+        }
+    }
+
+    private boolean matches(int record, String key, int hash) {
+        int base = record * RECORD_SIZE;
+        int length = key.length();
+        if (records.getInt(base + HASH) != hash || records.getInt(base + KEY_LENGTH) != length) {
+            return false;
+        }
+        int offset = records.getInt(base + KEY_OFFSET);
+        if (records.get(base + WIDE) != 0) {
+            for (int i = 0; i < length; i++) {
+                if (keys.getChar(offset + i * 2) != key.charAt(i)) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if ((char) (keys.get(offset + i) & 0xFF) != key.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Adds key as an uninitialized element and returns its record
+    private int add(String key) {
+        if (count == strings.length) {
+            if (size <= count / 2) {
+                // Half the records are holes: squeeze them out instead of growing
+                compact();
+            } else {
+                grow();
+            }
+        }
+        int length = key.length();
+        boolean wide = false;
+        for (int i = 0; i < length && !wide; i++) {
+            wide = key.charAt(i) > 0xFF;
+        }
+        int bytes = wide ? length * 2 : length;
+        reserveKeys(bytes);
+        if (wide) {
+            for (int i = 0; i < length; i++) {
+                keys.putChar(keySize + i * 2, key.charAt(i));
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                keys.put(keySize + i, (byte) key.charAt(i));
+            }
+        }
+        int record = count++;
+        int base = record * RECORD_SIZE;
+        int hash = key.hashCode();
+        records.putInt(base + KEY_OFFSET, keySize);
+        records.putInt(base + KEY_LENGTH, length);
+        records.putInt(base + HASH, hash);
+        records.put(base + TYPE, Cell.UNINIT);
+        records.put(base + WIDE, (byte) (wide ? 1 : 0));
+        records.putDouble(base + NUMBER, 0);
+        strings[record] = null;
+        keySize += bytes;
+        place(record, hash);
+        size++;
+        if (parent != null && parent.find(key) >= 0) {
+            shadowed++;
+        }
+        return record;
+    }
+
+    private void place(int record, int hash) {
+        int slot = mix(hash) & mask;
+        while (slots.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots.putInt(slot * 4, record + 1);
+    }
+
+    // Empties slot and moves later entries of the same run back into the gap, so that
+    // every entry can still be reached from its home slot
+    private void vacate(int slot) {
+        int gap = slot;
+        for (int next = (gap + 1) & mask; ; next = (next + 1) & mask) {
+            int entry = slots.getInt(next * 4);
+            if (entry == 0) {
+                break;
+            }
+            int home = mix(records.getInt((entry - 1) * RECORD_SIZE + HASH)) & mask;
+            // Moves unless its home lies cyclically after the gap, up to where it is
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots.putInt(gap * 4, entry);
+                gap = next;
+            }
+        }
+        slots.putInt(gap * 4, 0);
+    }
+
+    private void grow() {
+        if (count >= MAX_CAPACITY / 2) {
+            throw new IllegalStateException("Array has too many elements: " + size);
+        }
+        int capacity = count * 2;
+        records = copyOf(records, capacity * RECORD_SIZE, count * RECORD_SIZE);
+        strings = Arrays.copyOf(strings, capacity);
+        slots = allocate(capacity * 2 * 4);
+        mask = capacity * 2 - 1;
+        for (int record = 0; record < count; record++) {
+            int base = record * RECORD_SIZE;
+            if (records.getInt(base + KEY_LENGTH) != DELETED) {
+                place(record, records.getInt(base + HASH));
+            }
+        }
+    }
+
+    // Moves the elements down over the deleted records, in order, and their keys down
+    // over the keys of deleted ones
+    private void compact() {
+        lastKey = null;
+        int kept = 0;
+        int keyEnd = 0;
+        for (int i = 0; i <= mask; i++) {
+            slots.putInt(i * 4, 0);
+        }
+        for (int record = 0; record < count; record++) {
+            int base = record * RECORD_SIZE;
+            int length = records.getInt(base + KEY_LENGTH);
+            if (length == DELETED) {
+                continue;
+            }
+            int offset = records.getInt(base + KEY_OFFSET);
+            int bytes = records.get(base + WIDE) != 0 ? length * 2 : length;
+            if (offset != keyEnd) {
+                keys.put(keyEnd, keys, offset, bytes);
+            }
+            int to = kept * RECORD_SIZE;
+            if (to != base) {
+                records.put(to, records, base, RECORD_SIZE);
+                strings[kept] = strings[record];
+            }
+            records.putInt(to + KEY_OFFSET, keyEnd);
+            place(kept, records.getInt(to + HASH));
+            keyEnd += bytes;
+            kept++;
+        }
+        Arrays.fill(strings, kept, count, null);
+        count = kept;
+        keySize = keyEnd;
+    }
+
+    private void reserveKeys(int bytes) {
+        long needed = (long) keySize + bytes;
+        if (needed <= keys.capacity()) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Array subscripts take more than 2 GB");
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, keys.capacity() * 2L));
+        keys = copyOf(keys, capacity, keySize);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    // A new buffer of capacity bytes that starts with the first used bytes of buffer
+    private ByteBuffer copyOf(ByteBuffer buffer, int capacity, int used) {
+        ByteBuffer copy = allocate(capacity);
+        copy.put(0, buffer, 0, used);
+        return copy;
+    }
+
+    // Spreads String.hashCode(), which is close for similar subscripts like "1" and
+    // "2", over the table
+    private static int mix(int hash) {
+        int mixed = hash * 0x9e3779b9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
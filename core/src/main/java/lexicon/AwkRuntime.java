@@ -0,0 +1,1938 @@
+package lexicon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Matcher;
+
+// What a running awk program needs besides its own variables: the current record and
+// its fields, the special variables, input and output, number and string conversions,
+// printf formatting and the built-in functions. Machine and TreeWalker both run
+// programs on top of it, so they agree on everything but how they evaluate.
+class AwkRuntime {
+    enum Builtin {
+        LENGTH(0, 1), SUBSTR(2, 3), INDEX(2, 2), SPLIT(2, 3), SUB(2, 3), GSUB(2, 3), MATCH(2, 2),
+        SPRINTF(1, Integer.MAX_VALUE), SIN(1, 1), COS(1, 1), ATAN2(2, 2), EXP(1, 1), LOG(1, 1),
+        SQRT(1, 1), INT(1, 1), RAND(0, 0), SRAND(0, 1), TOLOWER(1, 1), TOUPPER(1, 1), SYSTEM(1, 1),
+        CLOSE(1, 1), FFLUSH(0, 1);
+
+        private static final Map<String, Builtin> NAMES = new HashMap<>();
+
+        static {
+            for (Builtin builtin : values()) {
+                NAMES.put(builtin.name().toLowerCase(Locale.ROOT), builtin);
+            }
+        }
+
+        final int minArguments;
+        final int maxArguments;
+
+        Builtin(int minArguments, int maxArguments) {
+            this.minArguments = minArguments;
+            this.maxArguments = maxArguments;
+        }
+
+        // The built-in function called name, or null
+        static Builtin named(String name) {
+            return NAMES.get(name);
+        }
+    }
+
+    // Special variables, kept here rather than with the program's own variables
+    static final int NF = 0;
+    static final int NR = 1;
+    static final int FNR = 2;
+    static final int FS = 3;
+    static final int OFS = 4;
+    static final int ORS = 5;
+    static final int RS = 6;
+    static final int SUBSEP = 7;
+    static final int CONVFMT = 8;
+    static final int OFMT = 9;
+    static final int FILENAME = 10;
+    static final int RSTART = 11;
+    static final int RLENGTH = 12;
+    private static final String[] SPECIAL_NAMES = {
+        "NF", "NR", "FNR", "FS", "OFS", "ORS", "RS", "SUBSEP", "CONVFMT", "OFMT", "FILENAME", "RSTART", "RLENGTH"
+    };
+
+    // Output redirections
+    static final int STDOUT = 0;
+    static final int FILE = 1;
+    static final int APPEND = 2;
+    static final int PIPE = 3;
+
+    // Compiled regular expressions and parsed printf formats kept at once
+    private static final int PATTERN_CACHE_SIZE = 256;
+    private static final int FORMAT_CACHE_SIZE = 256;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L
+    };
+
+    private final Reader stdin;
+    // Standard input as bytes, when it was given as an InputStream
+    private final ReadableByteChannel stdinBytes;
+    private final Writer out;
+    private final Map<String, Writer> outputs = new HashMap<>();
+    private final Map<String, RecordReader> inputs = new HashMap<>();
+    private final Map<String, Process> processes = new HashMap<>();
+    private final Map<String, Regex> patterns = new LinkedHashMap<String, Regex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Regex> eldest) {
+            return size() > PATTERN_CACHE_SIZE;
+        }
+    };
+    // The pattern used last, looked up without hashing when the same string comes again
+    private String lastEre;
+    private Regex lastRegex;
+    // Formats are cached the same way. A printf with a constant format parses it once.
+    private final Map<String, PrintfFormat> formats = new LinkedHashMap<String, PrintfFormat>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PrintfFormat> eldest) {
+            return size() > FORMAT_CACHE_SIZE;
+        }
+    };
+    private String lastFormatText;
+    private PrintfFormat lastFormat;
+    private Random random = new Random(0);
+    private double seed;
+    private int exitCode;
+    // Whether newArray() builds arrays off the heap
+    private boolean offHeapArrays;
+
+    // The command line operands: files and var=value assignments
+    private final AwkArray argv = new AwkArray();
+    private DoubleSupplier argc;
+    private BiConsumer<String, String> assignments;
+    private int nextOperand = 1;
+    private boolean openedOperand;
+    private RecordReader mainInput;
+    // The main input when it is read as bytes, and a record read from mainInput that
+    // is waiting to be used
+    private RecordBuffer mainBuffer;
+    private String pending;
+    // Standard input's RecordBuffer, and the text of the rest of it once RS needed that
+    private RecordBuffer stdinBuffer;
+    private Reader stdinText;
+
+    // $0 and the fields. Fields are split from $0 when first asked for, and $0 is
+    // joined from the fields when first asked for after one of them changed.
+    // While inView, the record is still the one view holds, and $0 and the fields
+    // are read from its bytes: record, if not null, and fields are then just the
+    // text of the ones that were asked for, up to cachedFields.
+    private boolean inView;
+    private RecordBuffer view;
+    private int cachedFields;
+    private String record = "";
+    private boolean recordValid = true;
+    private String[] fields = new String[16];
+    private int nf;
+    private boolean fieldsValid = true;
+    private String[] parts = new String[16];
+    private int partCount;
+
+    private double nr;
+    private double fnr;
+    private double rstart;
+    private double rlength;
+    private String fs = " ";
+    private String ofs = " ";
+    private String ors = "\n";
+    private String rs = "\n";
+    private String subsep = "\034";
+    private String convfmt = "%.6g";
+    private String ofmt = "%.6g";
+    private String filename = "";
+
+    private final StringBuilder builder = new StringBuilder();
+    private final Cell scratch = new Cell();
+    // numberToString's own, since it is called while sprintf is using builder
+    private final StringBuilder numberText = new StringBuilder();
+    private final Cell[] numberArgument = {new Cell()};
+
+    public AwkRuntime(List<String> operands, Reader stdin, Writer out) {
+        this(operands, stdin, null, out);
+    }
+
+    // Reads standard input as bytes, through a RecordBuffer
+    public AwkRuntime(List<String> operands, InputStream stdin, Writer out) {
+        this(operands, new InputStreamReader(stdin, StandardCharsets.UTF_8), Channels.newChannel(stdin), out);
+    }
+
+    private AwkRuntime(List<String> operands, Reader stdin, ReadableByteChannel stdinBytes, Writer out) {
+        this.stdin = stdin;
+        this.stdinBytes = stdinBytes;
+        this.out = out;
+        argv.store("0", new Cell("awk"));
+        for (int i = 0; i < operands.size(); i++) {
+            argv.storeInput(Integer.toString(i + 1), operands.get(i));
+        }
+        double count = operands.size() + 1;
+        this.argc = () -> count;
+        this.assignments = (name, value) -> { };
+    }
+
+    // The special variable called name, or -1
+    static int specialIndex(String name) {
+        for (int i = 0; i < SPECIAL_NAMES.length; i++) {
+            if (SPECIAL_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    AwkArray getArgv() {
+        return argv;
+    }
+
+    double getArgc() {
+        return argc.getAsDouble();
+    }
+
+    // Reads ARGC from the program as it runs, and hands it var=value operands
+    void bind(DoubleSupplier argc, BiConsumer<String, String> assignments) {
+        this.argc = argc;
+        this.assignments = assignments;
+    }
+
+    AwkArray environment() {
+        AwkArray environ = newArray();
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            environ.storeInput(entry.getKey(), entry.getValue());
+        }
+        return environ;
+    }
+
+    // Keeps the program's arrays in direct buffers, out of the collector's way, for
+    // programs that build very large ones
+    void setOffHeapArrays(boolean offHeapArrays) {
+        this.offHeapArrays = offHeapArrays;
+    }
+
+    AwkArray newArray() {
+        return new AwkArray(offHeapArrays);
+    }
+
+    // ARGV[key] as text, or "" if there is no such element
+    private String operand(String key) {
+        if (!argv.contains(key)) {
+            return "";
+        }
+        Cell operand = new Cell();
+        argv.load(key, operand);
+        return toString(operand);
+    }
+
+    double getNR() {
+        return nr;
+    }
+
+    int getExitCode() {
+        return exitCode;
+    }
+
+    void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    // Special variables
+
+    void getSpecial(int special, Cell into) {
+        switch (special) {
+            case NF:
+                into.setNumber(getNF());
+                break;
+            case NR:
+                into.setNumber(nr);
+                break;
+            case FNR:
+                into.setNumber(fnr);
+                break;
+            case RSTART:
+                into.setNumber(rstart);
+                break;
+            case RLENGTH:
+                into.setNumber(rlength);
+                break;
+            case FS:
+                into.setString(fs);
+                break;
+            case OFS:
+                into.setString(ofs);
+                break;
+            case ORS:
+                into.setString(ors);
+                break;
+            case RS:
+                into.setString(rs);
+                break;
+            case SUBSEP:
+                into.setString(subsep);
+                break;
+            case CONVFMT:
+                into.setString(convfmt);
+                break;
+            case OFMT:
+                into.setString(ofmt);
+                break;
+            default:
+                into.setString(filename);
+                break;
+        }
+    }
+
+    void setSpecial(int special, Cell value) {
+        switch (special) {
+            case NF:
+                setNF((int) toNumber(value));
+                break;
+            case NR:
+                nr = toNumber(value);
+                break;
+            case FNR:
+                fnr = toNumber(value);
+                break;
+            case RSTART:
+                rstart = toNumber(value);
+                break;
+            case RLENGTH:
+                rlength = toNumber(value);
+                break;
+            case FS:
+                fs = toString(value);
+                break;
+            case OFS:
+                ofs = toString(value);
+                break;
+            case ORS:
+                ors = toString(value);
+                break;
+            case RS:
+                rs = toString(value);
+                break;
+            case SUBSEP:
+                subsep = toString(value);
+                break;
+            case CONVFMT:
+                convfmt = toString(value);
+                break;
+            case OFMT:
+                ofmt = toString(value);
+                break;
+            default:
+                filename = toString(value);
+                break;
+        }
+    }
+
+    String getSubsep() {
+        return subsep;
+    }
+
+    String getOfs() {
+        return ofs;
+    }
+
+    String getOrs() {
+        return ors;
+    }
+
+    // The record and its fields
+
+    void setRecord(String record) {
+        inView = false;
+        this.record = record;
+        recordValid = true;
+        fieldsValid = false;
+    }
+
+    String getField(int i) {
+        if (inView) {
+            return viewField(i);
+        }
+        if (i == 0) {
+            if (!recordValid) {
+                joinFields();
+            }
+            return record;
+        }
+        if (i < 0) {
+            throw new IllegalStateException("Field index out of range: " + i);
+        }
+        if (!fieldsValid) {
+            splitRecord();
+        }
+        return i <= nf ? fields[i] : "";
+    }
+
+    // $i as input, so a STRNUM if it looks numeric
+    void getField(int i, Cell into) {
+        into.setInput(getField(i));
+    }
+
+    // $i as a number. A field of the record in view is read from its bytes.
+    double getFieldNumber(int i) {
+        if (inView && i > 0) {
+            int separator = viewSeparator();
+            if (separator >= 0) {
+                return view.fieldNumber(i, separator);
+            }
+        } else if (inView && i == 0 && record == null) {
+            return view.recordNumber();
+        }
+        return toNumber(getField(i));
+    }
+
+    // $i for comparing with a number: a STRNUM when it looks numeric, but without its
+    // text if it is in view, since a comparison with a number never reads it
+    void getFieldForComparison(int i, Cell into) {
+        if (inView && i > 0) {
+            int separator = viewSeparator();
+            if (separator >= 0 && view.fieldLooksNumeric(i, separator)) {
+                into.type = Cell.STRNUM;
+                into.number = view.fieldNumber(i, separator);
+                into.string = null;
+                return;
+            }
+        }
+        into.setInput(getField(i));
+    }
+
+    private String viewField(int i) {
+        if (i == 0) {
+            if (record == null) {
+                record = view.text();
+            }
+            return record;
+        }
+        if (i < 0) {
+            throw new IllegalStateException("Field index out of range: " + i);
+        }
+        int separator = viewSeparator();
+        if (separator < 0) {
+            leaveView();
+            return getField(i);
+        }
+        if (i <= cachedFields && fields[i] != null) {
+            return fields[i];
+        }
+        String text = view.fieldText(i, separator);
+        fields = ensure(fields, i + 1);
+        for (int k = cachedFields + 1; k < i; k++) {
+            fields[k] = null;
+        }
+        fields[i] = text;
+        cachedFields = Math.max(cachedFields, i);
+        return text;
+    }
+
+    // The byte a RecordBuffer splits on for FS, ' ' for blanks, or -1 if FS needs the
+    // record as text
+    private int viewSeparator() {
+        if (fs.length() != 1) {
+            return -1;
+        }
+        char c = fs.charAt(0);
+        return c < 0x80 ? c : -1;
+    }
+
+    // Makes the current record of the main input $0
+    private void setView() {
+        inView = true;
+        view = mainBuffer;
+        record = null;
+        cachedFields = 0;
+    }
+
+    // Turns a record in view into text, before it is changed or its bytes go away
+    private void leaveView() {
+        if (inView) {
+            String text = viewField(0);
+            inView = false;
+            record = text;
+            recordValid = true;
+            fieldsValid = false;
+            view = null;
+        }
+    }
+
+    void setField(int i, String value) {
+        leaveView();
+        if (i == 0) {
+            setRecord(value);
+            return;
+        }
+        if (i < 0) {
+            throw new IllegalStateException("Field index out of range: " + i);
+        }
+        if (!fieldsValid) {
+            splitRecord();
+        }
+        if (i > nf) {
+            setNF(i);
+        }
+        fields[i] = value;
+        recordValid = false;
+    }
+
+    int getNF() {
+        if (inView) {
+            int separator = viewSeparator();
+            if (separator >= 0) {
+                return view.fieldCount(separator);
+            }
+            leaveView();
+        }
+        if (!fieldsValid) {
+            splitRecord();
+        }
+        return nf;
+    }
+
+    void setNF(int count) {
+        leaveView();
+        if (!fieldsValid) {
+            splitRecord();
+        }
+        if (count < 0) {
+            throw new IllegalStateException("NF set to a negative value");
+        }
+        fields = ensure(fields, count + 1);
+        for (int i = nf + 1; i <= count; i++) {
+            fields[i] = "";
+        }
+        nf = count;
+        recordValid = false;
+    }
+
+    private void splitRecord() {
+        String[] saved = parts;
+        parts = fields;
+        nf = splitText(record, fs);
+        fields = parts;
+        parts = saved;
+        fieldsValid = true;
+    }
+
+    private void joinFields() {
+        builder.setLength(0);
+        for (int i = 1; i <= nf; i++) {
+            if (i > 1) {
+                builder.append(ofs);
+            }
+            builder.append(fields[i]);
+        }
+        record = builder.toString();
+        recordValid = true;
+    }
+
+    // Splits text the way FS splits a record, into parts[1] on. Returns the count.
+    private int splitText(String text, String separator) {
+        partCount = 0;
+        if (text.isEmpty()) {
+            return 0;
+        }
+        if (separator.equals(" ")) {
+            int length = text.length();
+            int i = 0;
+            while (true) {
+                while (i < length && isBlank(text.charAt(i))) {
+                    i++;
+                }
+                if (i == length) {
+                    break;
+                }
+                int start = i;
+                while (i < length && !isBlank(text.charAt(i))) {
+                    i++;
+                }
+                addPart(text.substring(start, i));
+            }
+        } else if (separator.length() == 1 && separator.charAt(0) != ' ') {
+            char c = separator.charAt(0);
+            int start = 0;
+            int found;
+            while ((found = text.indexOf(c, start)) >= 0) {
+                addPart(text.substring(start, found));
+                start = found + 1;
+            }
+            addPart(text.substring(start));
+        } else if (separator.isEmpty()) {
+            for (int i = 0; i < text.length(); i++) {
+                addPart(text.substring(i, i + 1));
+            }
+        } else {
+            Matcher matcher = regex(separator).pattern().matcher(text);
+            int start = 0;
+            while (matcher.find()) {
+                if (matcher.end() == matcher.start()) {
+                    continue;
+                }
+                addPart(text.substring(start, matcher.start()));
+                start = matcher.end();
+            }
+            addPart(text.substring(start));
+        }
+        return partCount;
+    }
+
+    private void addPart(String part) {
+        parts = ensure(parts, partCount + 2);
+        parts[++partCount] = part;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n';
+    }
+
+    private static String[] ensure(String[] array, int length) {
+        if (array.length >= length) {
+            return array;
+        }
+        String[] grown = new String[Math.max(length, array.length * 2)];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    // Main input
+
+    // Reads the next record of the main input into $0. Returns false at the end.
+    boolean nextRecord() {
+        if (!advanceMain()) {
+            return false;
+        }
+        nr++;
+        fnr++;
+        takeMainRecord();
+        return true;
+    }
+
+    // Stops reading the current input file
+    void skipFile() {
+        // A record in view can still be read after its input is closed
+        if (mainBuffer != null && mainBuffer != stdinBuffer) {
+            mainBuffer.close();
+        } else if (mainInput != null && mainInput.reader != stdin && mainInput.reader != stdinText) {
+            mainInput.close();
+        }
+        mainInput = null;
+        mainBuffer = null;
+    }
+
+    // Moves the main input on by one record, which is then mainBuffer's current
+    // record or, from a RecordReader, pending
+    private boolean advanceMain() {
+        while (true) {
+            if (mainInput == null && mainBuffer == null && !openNextInput()) {
+                return false;
+            }
+            if (mainBuffer != null) {
+                boolean found;
+                if (rs.isEmpty()) {
+                    found = mainBuffer.nextParagraph();
+                } else if (rs.length() == 1 && rs.charAt(0) < 0x80) {
+                    found = mainBuffer.next((byte) rs.charAt(0));
+                } else {
+                    // Record separators longer than a byte are read from the text
+                    leaveView();
+                    mainInput = new RecordReader(mainBuffer.remainder());
+                    if (mainBuffer == stdinBuffer) {
+                        stdinText = mainInput.reader;
+                    }
+                    mainBuffer = null;
+                    continue;
+                }
+                if (found) {
+                    return true;
+                }
+            } else {
+                pending = mainInput.read(rs);
+                if (pending != null) {
+                    return true;
+                }
+            }
+            skipFile();
+        }
+    }
+
+    private void takeMainRecord() {
+        if (pending != null) {
+            setRecord(pending);
+            pending = null;
+        } else {
+            setView();
+        }
+    }
+
+    private String takeMainText() {
+        String text = pending != null ? pending : mainBuffer.text();
+        pending = null;
+        return text;
+    }
+
+    private boolean openNextInput() {
+        while (nextOperand < getArgc()) {
+            String operand = operand(Integer.toString(nextOperand++));
+            if (operand.isEmpty()) {
+                continue;
+            }
+            int equals = operand.indexOf('=');
+            if (equals > 0 && isName(operand.substring(0, equals))) {
+                assignments.accept(operand.substring(0, equals), unescape(operand.substring(equals + 1)));
+                continue;
+            }
+            openedOperand = true;
+            if (operand.equals("-")) {
+                openStdin();
+            } else {
+                mainBuffer = openBuffer(operand);
+            }
+            filename = operand;
+            fnr = 0;
+            return true;
+        }
+        if (openedOperand) {
+            return false;
+        }
+        // No files named, so read standard input once
+        openedOperand = true;
+        openStdin();
+        fnr = 0;
+        return true;
+    }
+
+    // The files the main input will be read from, if it is nothing but regular files
+    // read a line at a time and none has been opened yet, otherwise null
+    List<String> inputFiles() {
+        if (openedOperand || !rs.equals("\n")) {
+            return null;
+        }
+        List<String> files = new ArrayList<>();
+        for (int i = nextOperand; i < getArgc(); i++) {
+            String operand = operand(Integer.toString(i));
+            if (operand.isEmpty()) {
+                continue;
+            }
+            int equals = operand.indexOf('=');
+            if ((equals > 0 && isName(operand.substring(0, equals))) || operand.equals("-")
+                    || !Files.isRegularFile(Paths.get(operand))) {
+                return null;
+            }
+            files.add(operand);
+        }
+        return files.isEmpty() ? null : files;
+    }
+
+    // A runtime that reads its main input from records, as part of the file filename,
+    // with the special variables as they are here. Its output goes nowhere.
+    AwkRuntime part(ByteBuffer records, String filename) {
+        AwkRuntime part = new AwkRuntime(Collections.emptyList(), Reader.nullReader(), Writer.nullWriter());
+        part.mainBuffer = new RecordBuffer(records);
+        part.openedOperand = true;
+        part.filename = filename;
+        part.fs = fs;
+        part.ofs = ofs;
+        part.ors = ors;
+        part.rs = rs;
+        part.subsep = subsep;
+        part.convfmt = convfmt;
+        part.ofmt = ofmt;
+        part.rstart = rstart;
+        part.rlength = rlength;
+        return part;
+    }
+
+    // Passes over the main input once its records have been read by parts, leaving
+    // NR, FNR, FILENAME and $0 as reading them here would have
+    void skipInput(double records, double fileRecords, String filename, String record) {
+        nextOperand = Integer.MAX_VALUE;
+        openedOperand = true;
+        nr += records;
+        fnr = fileRecords;
+        this.filename = filename;
+        if (record != null) {
+            setRecord(record);
+        }
+    }
+
+    private static boolean isName(String text) {
+        if (text.isEmpty() || Character.isDigit(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void openStdin() {
+        if (stdinBytes == null) {
+            mainInput = new RecordReader(stdin);
+        } else {
+            if (stdinBuffer == null) {
+                stdinBuffer = new RecordBuffer(stdinBytes, RecordBuffer.BUFFER_SIZE);
+            }
+            mainBuffer = stdinBuffer;
+        }
+    }
+
+    private static RecordBuffer openBuffer(String name) {
+        try {
+            return RecordBuffer.open(Paths.get(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + name, e);
+        }
+    }
+
+    // getline from the main input. Sets $0, or line if it is not null.
+    int getline(Cell line) {
+        if (line != null) {
+            // $0 stays while the input moves past it
+            leaveView();
+        }
+        if (!advanceMain()) {
+            return 0;
+        }
+        nr++;
+        fnr++;
+        if (line == null) {
+            takeMainRecord();
+        } else {
+            line.setInput(takeMainText());
+        }
+        return 1;
+    }
+
+    // getline < name
+    int getlineFile(String name, Cell line) {
+        RecordReader input = inputs.get(name);
+        if (input == null) {
+            try {
+                input = new RecordReader(name.equals("-") ? stdin
+                        : Files.newBufferedReader(Paths.get(name), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return -1;
+            }
+            inputs.put(name, input);
+        }
+        String next = input.read(rs);
+        if (next == null) {
+            return 0;
+        }
+        if (line == null) {
+            setRecord(next);
+        } else {
+            line.setInput(next);
+        }
+        return 1;
+    }
+
+    // command | getline
+    int getlineCommand(String command, Cell line) {
+        RecordReader input = inputs.get(command);
+        if (input == null) {
+            flushAll();
+            Process process = start(command, ProcessBuilder.Redirect.INHERIT, ProcessBuilder.Redirect.PIPE);
+            if (process == null) {
+                return -1;
+            }
+            processes.put(command, process);
+            input = new RecordReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            inputs.put(command, input);
+        }
+        String next = input.read(rs);
+        if (next == null) {
+            return 0;
+        }
+        nr++;
+        if (line == null) {
+            setRecord(next);
+        } else {
+            line.setInput(next);
+        }
+        return 1;
+    }
+
+    // Output
+
+    void print(int redirection, String destination, CharSequence text) {
+        try {
+            output(redirection, destination).append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Writer output(int redirection, String destination) throws IOException {
+        if (redirection == STDOUT) {
+            return out;
+        }
+        Writer writer = outputs.get(destination);
+        if (writer == null) {
+            if (redirection == PIPE) {
+                flushAll();
+                Process process = start(destination, ProcessBuilder.Redirect.PIPE, ProcessBuilder.Redirect.INHERIT);
+                if (process == null) {
+                    throw new IOException("Cannot run " + destination);
+                }
+                processes.put(destination, process);
+                writer = new OutputSink(Channels.newChannel(process.getOutputStream()));
+            } else if (destination.equals("/dev/stdout") || destination.equals("-")) {
+                return out;
+            } else {
+                writer = OutputSink.open(Paths.get(destination), redirection == APPEND);
+            }
+            outputs.put(destination, writer);
+        }
+        return writer;
+    }
+
+    private static Process start(String command, ProcessBuilder.Redirect input, ProcessBuilder.Redirect output) {
+        try {
+            return new ProcessBuilder("sh", "-c", command).redirectInput(input).redirectOutput(output)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Closes an output, input or command by name. Returns its exit status, or -1 if
+    // nothing had that name.
+    int close(String name) {
+        int status = -1;
+        try {
+            Writer writer = outputs.remove(name);
+            if (writer != null) {
+                writer.close();
+                status = 0;
+            }
+            RecordReader input = inputs.remove(name);
+            if (input != null) {
+                input.close();
+                status = 0;
+            }
+            Process process = processes.remove(name);
+            if (process != null) {
+                status = process.waitFor();
+            }
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return status;
+    }
+
+    void flushAll() {
+        try {
+            out.flush();
+            for (Writer writer : outputs.values()) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Flushes and closes every output, and waits for every command. A command's input
+    // is closed before it is waited for, or it would wait for more.
+    void finish() {
+        flushAll();
+        for (String name : outputs.keySet().toArray(new String[0])) {
+            try {
+                outputs.remove(name).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        for (String name : processes.keySet().toArray(new String[0])) {
+            close(name);
+        }
+        for (String name : inputs.keySet().toArray(new String[0])) {
+            close(name);
+        }
+    }
+
+    // Conversions
+
+    double toNumber(Cell cell) {
+        switch (cell.type) {
+            case Cell.NUMBER:
+            case Cell.STRNUM:
+                return cell.number;
+            case Cell.STRING:
+                return toNumber(cell.string);
+            default:
+                return 0;
+        }
+    }
+
+    String toString(Cell cell) {
+        switch (cell.type) {
+            case Cell.NUMBER:
+                return numberToString(cell.number, convfmt);
+            case Cell.UNINIT:
+                return "";
+            default:
+                return cell.string;
+        }
+    }
+
+    // A value as print writes it, with OFMT instead of CONVFMT
+    String toOutput(Cell cell) {
+        return cell.type == Cell.NUMBER ? numberToString(cell.number, ofmt) : toString(cell);
+    }
+
+    String numberToString(double number) {
+        return numberToString(number, convfmt);
+    }
+
+    String outputNumber(double number) {
+        return numberToString(number, ofmt);
+    }
+
+    // Integers print as integers, anything else through format
+    String numberToString(double number, String format) {
+        String integer = integerToString(number);
+        if (integer != null) {
+            return integer;
+        }
+        numberArgument[0].setNumber(number);
+        numberText.setLength(0);
+        format(numberText, format, numberArgument, 0, 1);
+        return numberText.toString();
+    }
+
+    // The text of an integer, the same whatever CONVFMT and OFMT are, or null for a
+    // number that goes through them
+    static String integerToString(double number) {
+        // A long cast saturates, so 2^63 and up would pass for Long.MAX_VALUE
+        if (Math.abs(number) < 0x1p63 && number == (long) number) {
+            return Long.toString((long) number);
+        }
+        if (number == Math.rint(number) && !Double.isInfinite(number)) {
+            return new BigDecimal(number).toPlainString();
+        }
+        return null;
+    }
+
+    static boolean isTrue(Cell cell) {
+        switch (cell.type) {
+            case Cell.NUMBER:
+            case Cell.STRNUM:
+                return cell.number != 0;
+            case Cell.STRING:
+                return !cell.string.isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    // Numbers compare as numbers, anything else as strings
+    int compare(Cell a, Cell b) {
+        if (a.isNumeric() && b.isNumeric()) {
+            return compare(toNumber(a), toNumber(b));
+        }
+        return Integer.signum(toString(a).compareTo(toString(b)));
+    }
+
+    static int compare(double a, double b) {
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
+    // The leading number in text, as strtod reads it, or 0
+    static double toNumber(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && isSpace(text.charAt(i))) {
+            i++;
+        }
+        int start = i;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        // Plain integers are common enough to skip parseDouble for
+        long value = 0;
+        int digits = 0;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9' && digits < 18) {
+            value = value * 10 + (text.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+        if (i == length || !isNumberPart(text.charAt(i))) {
+            return digits == 0 ? 0 : negative ? -value : value;
+        }
+        int end = numberEnd(text, start);
+        return end == start ? 0 : Double.parseDouble(text.substring(start, end));
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E';
+    }
+
+    // Where the number starting at start ends, or start if there is none
+    private static int numberEnd(String text, int start) {
+        int length = text.length();
+        int i = start;
+        if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && Character.isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return start;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int mark = i;
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            if (i < length && Character.isDigit(text.charAt(i))) {
+                while (i < length && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i = mark;
+            }
+        }
+        return i;
+    }
+
+    // Whether text is a number and nothing else, apart from blanks around it
+    static boolean looksNumeric(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && isSpace(text.charAt(i))) {
+            i++;
+        }
+        int end = numberEnd(text, i);
+        if (end == i) {
+            return false;
+        }
+        while (end < length && isSpace(text.charAt(end))) {
+            end++;
+        }
+        return end == length;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000b';
+    }
+
+    // Turns the escapes in a string literal or command line assignment into the
+    // characters they stand for
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                builder.append(c);
+                continue;
+            }
+            c = text.charAt(++i);
+            switch (c) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'a':
+                    builder.append('\u0007');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'v':
+                    builder.append('\u000b');
+                    break;
+                default:
+                    if (c >= '0' && c <= '7') {
+                        int value = 0;
+                        int end = Math.min(i + 3, text.length());
+                        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '7') {
+                            value = value * 8 + (text.charAt(i++) - '0');
+                        }
+                        i--;
+                        builder.append((char) value);
+                    } else {
+                        // \" \\ \/ and anything else stand for the character itself
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    // Regular expressions
+
+    // The compiled form of an extended regular expression, cached by its text. Patterns
+    // built from data, as in $0 ~ $1, can be new on every record, so only the most
+    // recently used are kept.
+    Regex regex(String ere) {
+        if (ere == lastEre) {
+            return lastRegex;
+        }
+        Regex regex = patterns.get(ere);
+        if (regex == null) {
+            regex = Regex.compile(ere);
+            patterns.put(ere, regex);
+        }
+        lastEre = ere;
+        lastRegex = regex;
+        return regex;
+    }
+
+    boolean matches(String text, String ere) {
+        return regex(ere).find(text);
+    }
+
+    // POSIX bracket expressions and a '{' that does not start a repeat count read
+    // differently in java.util.regex, and $ there also matches before a final newline
+    static String toJavaRegex(String ere) {
+        StringBuilder builder = new StringBuilder(ere.length() + 8);
+        int length = ere.length();
+        for (int i = 0; i < length; i++) {
+            char c = ere.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                builder.append(c).append(ere.charAt(++i));
+            } else if (c == '[') {
+                i = bracket(ere, i, builder);
+            } else if (c == '{' && (i + 1 == length || !Character.isDigit(ere.charAt(i + 1)))) {
+                builder.append("\\{");
+            } else if (c == '$') {
+                builder.append("\\z");
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    // Copies the bracket expression at start, and returns where it ends
+    private static int bracket(String ere, int start, StringBuilder builder) {
+        int length = ere.length();
+        int i = start + 1;
+        builder.append('[');
+        if (i < length && ere.charAt(i) == '^') {
+            builder.append('^');
+            i++;
+        }
+        if (i < length && ere.charAt(i) == ']') {
+            builder.append("\\]");
+            i++;
+        }
+        for (; i < length; i++) {
+            char c = ere.charAt(i);
+            if (c == ']') {
+                builder.append(']');
+                return i;
+            }
+            if (c == '[' && i + 1 < length && ere.charAt(i + 1) == ':') {
+                int close = ere.indexOf(":]", i + 2);
+                if (close > 0) {
+                    builder.append(posixClass(ere.substring(i + 2, close)));
+                    i = close + 1;
+                    continue;
+                }
+            }
+            if (c == '\\' && i + 1 < length) {
+                builder.append(c).append(ere.charAt(++i));
+            } else if (c == '[' || c == '&' || c == '~' || c == '|') {
+                builder.append('\\').append(c);
+            } else {
+                builder.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated [ in regular expression: " + ere);
+    }
+
+    private static String posixClass(String name) {
+        switch (name) {
+            case "alpha":
+                return "\\p{Alpha}";
+            case "digit":
+                return "0-9";
+            case "alnum":
+                return "\\p{Alnum}";
+            case "upper":
+                return "\\p{Upper}";
+            case "lower":
+                return "\\p{Lower}";
+            case "space":
+                return "\\s\\x0B";
+            case "blank":
+                return " \\t";
+            case "punct":
+                return "\\p{Punct}";
+            case "print":
+                return "\\p{Print}";
+            case "graph":
+                return "\\p{Graph}";
+            case "cntrl":
+                return "\\p{Cntrl}";
+            case "xdigit":
+                return "0-9A-Fa-f";
+            default:
+                throw new IllegalArgumentException("Unknown character class [:" + name + ":]");
+        }
+    }
+
+    // Built-in functions
+
+    // Calls a built-in that takes plain values. split, sub, gsub and length of an
+    // array need a variable, and are handled by the interpreters.
+    void call(Builtin builtin, Cell[] args, int from, int count, Cell result) {
+        switch (builtin) {
+            case LENGTH:
+                result.setNumber((count == 0 ? getField(0) : toString(args[from])).length());
+                break;
+            case SUBSTR:
+                result.setString(substr(toString(args[from]), toNumber(args[from + 1]),
+                        count > 2 ? toNumber(args[from + 2]) : Double.POSITIVE_INFINITY));
+                break;
+            case INDEX:
+                result.setNumber(toString(args[from]).indexOf(toString(args[from + 1])) + 1);
+                break;
+            case MATCH:
+                result.setNumber(match(toString(args[from]), toString(args[from + 1])));
+                break;
+            case SPRINTF:
+                builder.setLength(0);
+                format(builder, toString(args[from]), args, from + 1, count - 1);
+                result.setString(builder.toString());
+                break;
+            case SIN:
+                result.setNumber(Math.sin(toNumber(args[from])));
+                break;
+            case COS:
+                result.setNumber(Math.cos(toNumber(args[from])));
+                break;
+            case ATAN2:
+                result.setNumber(Math.atan2(toNumber(args[from]), toNumber(args[from + 1])));
+                break;
+            case EXP:
+                result.setNumber(Math.exp(toNumber(args[from])));
+                break;
+            case LOG:
+                result.setNumber(Math.log(toNumber(args[from])));
+                break;
+            case SQRT:
+                result.setNumber(Math.sqrt(toNumber(args[from])));
+                break;
+            case INT:
+                double value = toNumber(args[from]);
+                result.setNumber(value < 0 ? Math.ceil(value) : Math.floor(value));
+                break;
+            case RAND:
+                result.setNumber(random.nextDouble());
+                break;
+            case SRAND:
+                double previous = seed;
+                seed = count > 0 ? toNumber(args[from]) : System.currentTimeMillis() / 1000;
+                random = new Random((long) seed);
+                result.setNumber(previous);
+                break;
+            case TOLOWER:
+                result.setString(toString(args[from]).toLowerCase(Locale.ROOT));
+                break;
+            case TOUPPER:
+                result.setString(toString(args[from]).toUpperCase(Locale.ROOT));
+                break;
+            case SYSTEM:
+                result.setNumber(system(toString(args[from])));
+                break;
+            case CLOSE:
+                result.setNumber(close(toString(args[from])));
+                break;
+            case FFLUSH:
+                flushAll();
+                result.setNumber(0);
+                break;
+            default:
+                throw new IllegalArgumentException(builtin + " needs a variable argument");
+        }
+    }
+
+    // Characters from position start for length characters, both rounded, counting
+    // from 1
+    static String substr(String text, double start, double length) {
+        double first = Math.rint(start);
+        double end = Double.isInfinite(length) ? Double.POSITIVE_INFINITY : first + Math.rint(length);
+        if (Double.isNaN(first) || Double.isNaN(end)) {
+            return "";
+        }
+        double from = Math.max(1, first);
+        double to = Math.min(text.length() + 1, end);
+        if (to <= from) {
+            return "";
+        }
+        return text.substring((int) from - 1, (int) to - 1);
+    }
+
+    // Sets RSTART and RLENGTH, and returns RSTART
+    int match(String text, String ere) {
+        Matcher matcher = regex(ere).pattern().matcher(text);
+        if (matcher.find()) {
+            rstart = matcher.start() + 1;
+            rlength = matcher.end() - matcher.start();
+        } else {
+            rstart = 0;
+            rlength = -1;
+        }
+        return (int) rstart;
+    }
+
+    // split(text, array, separator). A null separator means FS.
+    int split(String text, AwkArray array, String separator) {
+        int count = splitText(text, separator == null ? fs : separator);
+        array.clear();
+        for (int i = 1; i <= count; i++) {
+            array.storeInput(Integer.toString(i), parts[i]);
+        }
+        return count;
+    }
+
+    // sub and gsub. Returns the text with the replacements made; getSubstitutions()
+    // says how many there were.
+    private int substitutions;
+
+    String substitute(String ere, String replacement, String text, boolean global) {
+        Matcher matcher = regex(ere).pattern().matcher(text);
+        substitutions = 0;
+        StringBuilder result = null;
+        int copied = 0;
+        int at = 0;
+        while (at <= text.length() && matcher.find(at)) {
+            if (result == null) {
+                result = new StringBuilder(text.length() + 16);
+            }
+            result.append(text, copied, matcher.start());
+            appendReplacement(result, replacement, text, matcher.start(), matcher.end());
+            substitutions++;
+            if (matcher.end() == matcher.start()) {
+                // An empty match: keep the next character and move past it
+                if (matcher.end() < text.length()) {
+                    result.append(text.charAt(matcher.end()));
+                }
+                copied = matcher.end() + 1;
+                at = matcher.end() + 1;
+            } else {
+                copied = matcher.end();
+                at = matcher.end();
+            }
+            if (!global) {
+                break;
+            }
+        }
+        if (result == null) {
+            return text;
+        }
+        if (copied < text.length()) {
+            result.append(text, copied, text.length());
+        }
+        return result.toString();
+    }
+
+    int getSubstitutions() {
+        return substitutions;
+    }
+
+    // & stands for the matched text, \& for a plain &
+    private static void appendReplacement(StringBuilder result, String replacement, String text, int start, int end) {
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\' && i + 1 < replacement.length()
+                    && (replacement.charAt(i + 1) == '&' || replacement.charAt(i + 1) == '\\')) {
+                result.append(replacement.charAt(++i));
+            } else if (c == '&') {
+                result.append(text, start, end);
+            } else {
+                result.append(c);
+            }
+        }
+    }
+
+    private int system(String command) {
+        flushAll();
+        Process process = start(command, ProcessBuilder.Redirect.INHERIT, ProcessBuilder.Redirect.INHERIT);
+        if (process == null) {
+            return -1;
+        }
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    // printf
+
+    String sprintf(String format, Cell[] args, int from, int count) {
+        builder.setLength(0);
+        format(builder, format, args, from, count);
+        return builder.toString();
+    }
+
+    // Formats count arguments from args[from] on, the way C's printf does for the
+    // conversions awk has
+    void format(StringBuilder result, String format, Cell[] args, int from, int count) {
+        printfFormat(format).render(this, result, args, from, count);
+    }
+
+    // The parsed form of a printf format, cached by its text
+    PrintfFormat printfFormat(String format) {
+        if (format == lastFormatText) {
+            return lastFormat;
+        }
+        PrintfFormat parsed = formats.get(format);
+        if (parsed == null) {
+            parsed = PrintfFormat.compile(format);
+            formats.put(format, parsed);
+        }
+        lastFormatText = format;
+        lastFormat = parsed;
+        return parsed;
+    }
+
+    // Pads what was appended from mark on out to width. Zeros go after any sign or
+    // 0x prefix.
+    static void pad(StringBuilder result, int mark, int width, boolean left, boolean zero) {
+        int missing = width - (result.length() - mark);
+        if (missing <= 0) {
+            return;
+        }
+        if (left) {
+            for (int k = 0; k < missing; k++) {
+                result.append(' ');
+            }
+            return;
+        }
+        int at = mark;
+        if (zero) {
+            char first = result.length() > mark ? result.charAt(mark) : ' ';
+            if (first == 'i' || first == 'n' || (result.length() > mark + 1 && (result.charAt(mark + 1) == 'i'
+                    || result.charAt(mark + 1) == 'n'))) {
+                // inf and nan are never zero padded
+                zero = false;
+            } else if (first == '-' || first == '+' || first == ' ') {
+                at++;
+            }
+            if (zero && result.length() > at + 1 && result.charAt(at) == '0'
+                    && (result.charAt(at + 1) == 'x' || result.charAt(at + 1) == 'X')) {
+                at += 2;
+            }
+        }
+        // Moves the text after the gap along in place, rather than inserting a padding
+        // String
+        char fill = zero ? '0' : ' ';
+        int gap = zero ? at : mark;
+        int length = result.length();
+        result.setLength(length + missing);
+        for (int k = length - 1; k >= gap; k--) {
+            result.setCharAt(k + missing, result.charAt(k));
+        }
+        for (int k = gap; k < gap + missing; k++) {
+            result.setCharAt(k, fill);
+        }
+    }
+
+    static void formatInteger(StringBuilder result, double value, int precision, boolean plus, boolean space) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendSpecial(result, value, false, plus, space);
+            return;
+        }
+        String digits;
+        boolean negative = value < 0;
+        double truncated = negative ? Math.ceil(value) : Math.floor(value);
+        if (Math.abs(truncated) < 9.2e18) {
+            long whole = (long) truncated;
+            digits = whole == Long.MIN_VALUE ? "9223372036854775808" : Long.toString(Math.abs(whole));
+        } else {
+            digits = new BigDecimal(Math.abs(truncated)).toPlainString();
+        }
+        if (precision == 0 && digits.equals("0")) {
+            digits = "";
+        }
+        negative = negative && truncated != 0;
+        if (negative) {
+            result.append('-');
+        } else if (plus) {
+            result.append('+');
+        } else if (space) {
+            result.append(' ');
+        }
+        for (int k = digits.length(); k < precision; k++) {
+            result.append('0');
+        }
+        result.append(digits);
+    }
+
+    static void formatUnsigned(StringBuilder result, double value, char conversion, int precision,
+            boolean alternate) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendSpecial(result, value, conversion == 'X', false, false);
+            return;
+        }
+        long whole = (long) value;
+        String digits;
+        switch (conversion) {
+            case 'o':
+                digits = Long.toOctalString(whole);
+                break;
+            case 'x':
+                digits = Long.toHexString(whole);
+                break;
+            case 'X':
+                digits = Long.toHexString(whole).toUpperCase(Locale.ROOT);
+                break;
+            default:
+                digits = Long.toUnsignedString(whole);
+                break;
+        }
+        if (precision == 0 && whole == 0) {
+            digits = "";
+        }
+        if (alternate && whole != 0 && (conversion == 'x' || conversion == 'X')) {
+            result.append('0').append(conversion);
+        }
+        int zeros = precision - digits.length();
+        if (alternate && conversion == 'o' && zeros <= 0 && !digits.startsWith("0")) {
+            zeros = 1;
+        }
+        for (int k = 0; k < zeros; k++) {
+            result.append('0');
+        }
+        result.append(digits);
+    }
+
+    static void formatFloat(StringBuilder result, double value, char conversion, int precision, boolean plus,
+            boolean space, boolean alternate) {
+        boolean upper = Character.isUpperCase(conversion);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendSpecial(result, value, upper, plus, space);
+            return;
+        }
+        boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        if (negative) {
+            result.append('-');
+        } else if (plus) {
+            result.append('+');
+        } else if (space) {
+            result.append(' ');
+        }
+        double magnitude = Math.abs(value);
+        int digits = precision < 0 ? 6 : precision;
+        String body;
+        switch (Character.toLowerCase(conversion)) {
+            case 'f':
+                if (appendFixed(result, magnitude, digits)) {
+                    if (alternate && digits == 0) {
+                        result.append('.');
+                    }
+                    return;
+                }
+                body = fixed(magnitude, digits, alternate);
+                break;
+            case 'e':
+                body = scientific(magnitude, digits, alternate);
+                break;
+            default:
+                int significant = digits == 0 ? 1 : digits;
+                int exponent = magnitude == 0 ? 0 : exponentOf(magnitude, significant);
+                if (exponent < -4 || exponent >= significant) {
+                    body = scientific(magnitude, significant - 1, alternate);
+                    if (!alternate) {
+                        int e = body.indexOf('e');
+                        body = stripZeros(body.substring(0, e)) + body.substring(e);
+                    }
+                } else {
+                    body = fixed(magnitude, significant - 1 - exponent, alternate);
+                    if (!alternate) {
+                        body = stripZeros(body);
+                    }
+                }
+                break;
+        }
+        result.append(upper ? body.toUpperCase(Locale.ROOT) : body);
+    }
+
+    private static void appendSpecial(StringBuilder result, double value, boolean upper, boolean plus, boolean space) {
+        String text = Double.isNaN(value) ? "nan" : "inf";
+        if (value < 0) {
+            result.append('-');
+        } else if (plus) {
+            result.append('+');
+        } else if (space) {
+            result.append(' ');
+        }
+        result.append(upper ? text.toUpperCase(Locale.ROOT) : text);
+    }
+
+    // %f without BigDecimal, for a magnitude that scaled by 10^digits is below 2^40. The
+    // scaled value is then off by less than 2^-13, so only a fraction within a thousandth
+    // of a half could round the other way, and those are left to fixed(). Says whether
+    // it appended anything.
+    private static boolean appendFixed(StringBuilder result, double magnitude, int digits) {
+        if (digits >= POWERS_OF_TEN.length) {
+            return false;
+        }
+        long unit = POWERS_OF_TEN[digits];
+        double scaled = magnitude * unit;
+        if (!(scaled < 0x1p40)) {
+            return false;
+        }
+        double whole = Math.floor(scaled);
+        double fraction = scaled - whole;
+        if (Math.abs(fraction - 0.5) < 1e-3) {
+            return false;
+        }
+        long rounded = (long) whole + (fraction > 0.5 ? 1 : 0);
+        result.append(rounded / unit);
+        if (digits > 0) {
+            result.append('.');
+            long decimals = rounded % unit;
+            for (long power = unit / 10; power > decimals && power > 1; power /= 10) {
+                result.append('0');
+            }
+            result.append(decimals);
+        }
+        return true;
+    }
+
+    private static String fixed(double magnitude, int digits, boolean alternate) {
+        String text = new BigDecimal(magnitude).setScale(digits, RoundingMode.HALF_EVEN).toPlainString();
+        return alternate && digits == 0 ? text + "." : text;
+    }
+
+    // The decimal exponent magnitude has once rounded to significant digits
+    private static int exponentOf(double magnitude, int significant) {
+        BigDecimal rounded = new BigDecimal(magnitude).round(new MathContext(significant, RoundingMode.HALF_EVEN));
+        return rounded.precision() - rounded.scale() - 1;
+    }
+
+    private static String scientific(double magnitude, int digits, boolean alternate) {
+        StringBuilder body = new StringBuilder(digits + 8);
+        int exponent = 0;
+        if (magnitude == 0) {
+            body.append('0');
+            for (int k = 0; k < digits; k++) {
+                body.append('0');
+            }
+        } else {
+            BigDecimal rounded = new BigDecimal(magnitude).round(new MathContext(digits + 1, RoundingMode.HALF_EVEN));
+            exponent = rounded.precision() - rounded.scale() - 1;
+            String unscaled = rounded.unscaledValue().toString();
+            body.append(unscaled, 0, Math.min(unscaled.length(), digits + 1));
+            for (int k = unscaled.length(); k < digits + 1; k++) {
+                body.append('0');
+            }
+        }
+        if (digits > 0 || alternate) {
+            body.insert(1, '.');
+        }
+        body.append('e').append(exponent < 0 ? '-' : '+');
+        int absolute = Math.abs(exponent);
+        if (absolute < 10) {
+            body.append('0');
+        }
+        return body.append(absolute).toString();
+    }
+
+    private static String stripZeros(String text) {
+        if (text.indexOf('.') < 0) {
+            return text;
+        }
+        int end = text.length();
+        while (text.charAt(end - 1) == '0') {
+            end--;
+        }
+        if (text.charAt(end - 1) == '.') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    // Reads records from one input, separated the way RS says: by one character, by
+    // blank lines when RS is empty, or by a regular expression
+    private final class RecordReader {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private final StringBuilder text = new StringBuilder();
+        // Everything left, when RS is a regular expression
+        private String rest;
+        private int restPosition;
+
+        RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        String read(String separator) {
+            if (separator.length() == 1) {
+                return readUntil(separator.charAt(0));
+            }
+            if (separator.isEmpty()) {
+                return readParagraph();
+            }
+            return readRegex(separator);
+        }
+
+        private String readUntil(char separator) {
+            text.setLength(0);
+            boolean any = false;
+            while (true) {
+                if (position == limit && !fill()) {
+                    return any ? text.toString() : null;
+                }
+                any = true;
+                int start = position;
+                while (position < limit && buffer[position] != separator) {
+                    position++;
+                }
+                text.append(buffer, start, position - start);
+                if (position < limit) {
+                    position++;
+                    return text.toString();
+                }
+            }
+        }
+
+        private String readParagraph() {
+            int c;
+            do {
+                c = next();
+            } while (c == '\n');
+            if (c < 0) {
+                return null;
+            }
+            text.setLength(0);
+            text.append((char) c);
+            while ((c = next()) >= 0) {
+                if (c == '\n' && peek() == '\n') {
+                    while (peek() == '\n') {
+                        next();
+                    }
+                    break;
+                }
+                text.append((char) c);
+            }
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            text.setLength(end);
+            return text.toString();
+        }
+
+        private String readRegex(String separator) {
+            if (rest == null) {
+                text.setLength(0);
+                int c;
+                while ((c = next()) >= 0) {
+                    text.append((char) c);
+                }
+                rest = text.toString();
+            }
+            if (restPosition >= rest.length()) {
+                return null;
+            }
+            Matcher matcher = regex(separator).pattern().matcher(rest);
+            int start = restPosition;
+            while (matcher.find(restPosition) && matcher.end() > matcher.start()) {
+                restPosition = matcher.end();
+                return rest.substring(start, matcher.start());
+            }
+            restPosition = rest.length();
+            return rest.substring(start);
+        }
+
+        private int next() {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private boolean fill() {
+            try {
+                int count = reader.read(buffer, 0, buffer.length);
+                if (count <= 0) {
+                    return false;
+                }
+                position = 0;
+                limit = count;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
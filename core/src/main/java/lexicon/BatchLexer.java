@@ -0,0 +1,274 @@
+package lexicon;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Lexes every file under some directories, several at a time, and writes one summary
+// line per file, followed by its errors, in the order the files are listed: each root
+// in turn, with the files under it sorted by path. How many files are lexed at once only
+// changes how soon lines come out, not what they say. Files are read whole, and at most
+// memoryBudget bytes of them are held at once; at most window files are lexed or
+// waiting to be written. Only the calling thread writes to the output. Usage: java
+// lexicon.BatchLexer [--threads n] [--memory MB] path...
+class BatchLexer {
+    static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+    static final int DEFAULT_WINDOW = 1024;
+    // Errors listed per file; the rest are only counted
+    private static final int ERRORS_SHOWN = 100;
+    private static final int FLUSH_TOKENS = 4096;
+
+    private final ExecutorService executor;
+    private final long memoryBudget;
+    private final int window;
+
+    public BatchLexer(ExecutorService executor) {
+        this(executor, DEFAULT_MEMORY_BUDGET, DEFAULT_WINDOW);
+    }
+
+    public BatchLexer(ExecutorService executor, long memoryBudget, int window) {
+        if (memoryBudget < 1 || window < 1) {
+            throw new IllegalArgumentException("Memory budget and window must be positive");
+        }
+        this.executor = executor;
+        this.memoryBudget = memoryBudget;
+        this.window = window;
+    }
+
+    // A virtual thread per file where the JDK has them (Java 21 on), and a pool of
+    // platform threads where it does not
+    static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    // The regular files under roots, in the order they are lexed and written
+    static List<Path> list(List<Path> roots) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                List<Path> found = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+                Collections.sort(found);
+                files.addAll(found);
+            }
+        }
+        return files;
+    }
+
+    // Lexes files and writes their summaries to out
+    public Totals run(List<Path> files, Writer out) throws IOException {
+        long begin = System.nanoTime();
+        Totals totals = new Totals();
+        // Bytes are counted in kilobytes, so the budget fits a Semaphore's int
+        int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget >> 10));
+        Semaphore memory = new Semaphore(budget);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        for (Path file : files) {
+            if (pending.size() == window) {
+                write(pending.poll(), out, totals);
+            }
+            long size = size(file);
+            int permits = (int) Math.min(budget, Math.max(1, size >> 10));
+            acquire(memory, permits);
+            try {
+                pending.add(executor.submit(() -> {
+                    try {
+                        return lex(file);
+                    } finally {
+                        memory.release(permits);
+                    }
+                }));
+            } catch (RuntimeException e) {
+                memory.release(permits);
+                throw e;
+            }
+        }
+        while (!pending.isEmpty()) {
+            write(pending.poll(), out, totals);
+        }
+        out.flush();
+        totals.nanos = System.nanoTime() - begin;
+        return totals;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            // Found out again, and reported, when it is read
+            return 0;
+        }
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    private static Result lex(Path file) {
+        Result result = new Result(file);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            result.failure = e.toString();
+            return result;
+        }
+        result.bytes = bytes.length;
+        Lexer lexer = new Lexer(bytes);
+        Diagnostics diagnostics = new Diagnostics(ERRORS_SHOWN);
+        lexer.setDiagnostics(diagnostics);
+        // Tokens are only counted, so the buffer is emptied as it fills and never
+        // slices text out of the source
+        TokenBuffer buffer = new TokenBuffer(null, FLUSH_TOKENS);
+        try {
+            while (lexer.lexNext(buffer)) {
+                if (buffer.size() == FLUSH_TOKENS) {
+                    result.tokens += buffer.size();
+                    buffer.clear();
+                }
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            result.failure = e.toString();
+            return result;
+        }
+        result.tokens += buffer.size();
+        result.diagnostics = diagnostics;
+        return result;
+    }
+
+    private static void write(Future<Result> future, Writer out, Totals totals) throws IOException {
+        Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Lexing failed", e.getCause());
+        }
+        totals.files++;
+        out.write(result.file.toString());
+        if (result.failure != null) {
+            totals.failures++;
+            out.write("\tfailed\t");
+            out.write(result.failure);
+            out.write('\n');
+            return;
+        }
+        Diagnostics diagnostics = result.diagnostics;
+        int errors = diagnostics.size() + diagnostics.getDropped();
+        totals.bytes += result.bytes;
+        totals.tokens += result.tokens;
+        totals.errors += errors;
+        out.write("\t" + result.bytes + " bytes\t" + result.tokens + " tokens\t" + errors + " errors\n");
+        for (int i = 0; i < diagnostics.size(); i++) {
+            out.write("\t");
+            out.write(diagnostics.toString(i));
+            out.write('\n');
+        }
+        if (diagnostics.getDropped() > 0) {
+            out.write("\t" + diagnostics.getDropped() + " more errors\n");
+        }
+    }
+
+    private static class Result {
+        final Path file;
+        long bytes;
+        long tokens;
+        Diagnostics diagnostics;
+        // Why the file could not be read
+        String failure;
+
+        Result(Path file) {
+            this.file = file;
+        }
+    }
+
+    // What a run lexed
+    static class Totals {
+        long files;
+        long failures;
+        long bytes;
+        long tokens;
+        long errors;
+        long nanos;
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            double megabytes = bytes / (double) (1 << 20);
+            return String.format("%d files (%d failed), %.1f MB, %d tokens, %d errors in %.2f s: "
+                    + "%.0f files/s, %.1f MB/s", files, failures, megabytes, tokens, errors, seconds,
+                    files / seconds, megabytes / seconds);
+        }
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = DEFAULT_MEMORY_BUDGET;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--memory")) {
+                    memory = Long.parseLong(args[++i]) << 20;
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (i == args.length) {
+                System.err.println("Usage: java lexicon.BatchLexer [--threads n] [--memory MB] path...");
+                System.exit(2);
+            }
+            List<Path> roots = new ArrayList<>();
+            for (; i < args.length; i++) {
+                roots.add(Paths.get(args[i]));
+            }
+            ExecutorService executor = newExecutor(threads);
+            Totals totals;
+            try {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+                totals = new BatchLexer(executor, memory, DEFAULT_WINDOW).run(list(roots), out);
+            } finally {
+                executor.shutdownNow();
+            }
+            System.err.println(totals);
+            System.exit(totals.failures > 0 ? 2 : totals.errors > 0 ? 1 : 0);
+        } catch (IOException e) {
+            System.err.println("lexer: " + e.getMessage());
+            System.exit(2);
+        } catch (UncheckedIOException e) {
+            System.err.println("lexer: " + e.getCause().getMessage());
+            System.exit(2);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println("lexer: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package lexicon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Reads UTF-8 input straight out of a ByteBuffer, such as a wrapped byte[] or a
+// memory-mapped file, without decoding it into a String first. ASCII bytes are
+// returned as they are and only non-ASCII bytes go through the UTF-8 decoder.
+// Malformed bytes decode to U+FFFD, one byte at a time.
+class ByteBufferHandler implements CharacterSource {
+    // Files are mapped in windows of WINDOW_SIZE bytes. Each window overlaps the next
+    // by WINDOW_OVERLAP bytes, so decoding a character or peeking ahead never has to
+    // read across two buffers: that takes a four-byte character for each of
+    // Lexer.MAX_LOOKAHEAD characters past the current one.
+    static final int WINDOW_SIZE = 1 << 30;
+    static final int WINDOW_OVERLAP = 4 * (Lexer.MAX_LOOKAHEAD + 1);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long BACKSLASHES = ONES * '\\';
+
+    private final ByteBuffer[] windows;
+    private final int stride;
+    private int window;
+    private ByteBuffer buffer;
+    private int limit; // End of the bytes the current window is responsible for
+    private int index;
+    private boolean lowSurrogate; // The next char is the second half of the code point at index
+    private int decodedCodePoint; // Result of the last decode()
+    private int decodedLength;
+
+    public ByteBufferHandler(byte[] document) {
+        this(ByteBuffer.wrap(document));
+    }
+
+    public ByteBufferHandler(ByteBuffer document) {
+        this(new ByteBuffer[] { document }, document.remaining());
+    }
+
+    ByteBufferHandler(ByteBuffer[] windows, int stride) {
+        this.windows = new ByteBuffer[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            this.windows[i] = windows[i].slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.stride = stride;
+        this.index = 0;
+        selectWindow(0);
+    }
+
+    // Maps the whole file read-only. The channel may be closed once this returns.
+    public static ByteBufferHandler map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.max(1, (size + WINDOW_SIZE - 1) / WINDOW_SIZE);
+        ByteBuffer[] windows = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i * WINDOW_SIZE;
+            long length = Math.min(size - start, (long) WINDOW_SIZE + WINDOW_OVERLAP);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        return new ByteBufferHandler(windows, WINDOW_SIZE);
+    }
+
+    public char peek(int i) {
+        if (i == 0 && !lowSurrogate && index < limit) {
+            byte b = buffer.get(index);
+            if (b >= 0) {
+                return (char) b;
+            }
+        }
+        int c = charAt(i);
+        return c < 0 ? '\0' : (char) c; // '\0' at the end of document
+    }
+
+    public String peekString(int i) {
+        StringBuilder builder = new StringBuilder(i);
+        for (int k = 0; k < i; k++) {
+            int c = charAt(k);
+            if (c < 0) {
+                break;
+            }
+            builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    public char getChar() {
+        if (!lowSurrogate && index < limit) {
+            byte b = buffer.get(index);
+            if (b >= 0) {
+                index++;
+                moved();
+                return (char) b;
+            }
+        }
+        if (isDone()) {
+            return '\0'; // End of document
+        }
+        decode(buffer, index, buffer.limit());
+        if (decodedCodePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            if (!lowSurrogate) {
+                lowSurrogate = true;
+                return Character.highSurrogate(decodedCodePoint);
+            }
+            lowSurrogate = false;
+            index += decodedLength;
+            moved();
+            return Character.lowSurrogate(decodedCodePoint);
+        }
+        index += decodedLength;
+        moved();
+        return (char) decodedCodePoint;
+    }
+
+    public void swallow(int i) {
+        while (i > 0 && !isDone()) {
+            getChar();
+            i--;
+        }
+    }
+
+    public boolean isDone() {
+        return index >= buffer.limit();
+    }
+
+    @Override
+    public void skipPast(char c) {
+        if (c >= 0x80) {
+            CharacterSource.super.skipPast(c);
+            return;
+        }
+        if (lowSurrogate) {
+            getChar();
+        }
+        // UTF-8 never uses ASCII byte values inside a multi-byte sequence, so the
+        // bytes can be searched without decoding them
+        long pattern = ONES * c;
+        while (true) {
+            int at = index;
+            while (at + 8 <= limit) {
+                long word = buffer.getLong(at) ^ pattern;
+                long found = (word - ONES) & ~word & HIGH_BITS;
+                if (found != 0) {
+                    index = at + (Long.numberOfTrailingZeros(found) >>> 3) + 1;
+                    moved();
+                    return;
+                }
+                at += 8;
+            }
+            for (; at < limit; at++) {
+                if (buffer.get(at) == c) {
+                    index = at + 1;
+                    moved();
+                    return;
+                }
+            }
+            index = limit;
+            if (window == windows.length - 1) {
+                return;
+            }
+            moved();
+        }
+    }
+
+    @Override
+    public int skipUntil(char stop) {
+        if (stop >= 0x80) {
+            return CharacterSource.super.skipUntil(stop);
+        }
+        long pattern = ONES * stop;
+        int count = 0;
+        while (true) {
+            if (!lowSurrogate) {
+                // Skip the run of plain ASCII bytes, stopping at stop, a backslash or
+                // the first byte of a multi-byte character
+                int at = index;
+                while (at + 8 <= limit) {
+                    long word = buffer.getLong(at);
+                    long quotes = word ^ pattern;
+                    long backslashes = word ^ BACKSLASHES;
+                    long found = ((quotes - ONES) & ~quotes & HIGH_BITS)
+                            | ((backslashes - ONES) & ~backslashes & HIGH_BITS)
+                            | (word & HIGH_BITS);
+                    if (found != 0) {
+                        at += Long.numberOfTrailingZeros(found) >>> 3;
+                        break;
+                    }
+                    at += 8;
+                }
+                while (at < limit) {
+                    byte b = buffer.get(at);
+                    if (b < 0 || b == stop || b == '\\') {
+                        break;
+                    }
+                    at++;
+                }
+                count += at - index;
+                index = at;
+                if (index >= limit && window < windows.length - 1) {
+                    moved();
+                    continue;
+                }
+            }
+            if (isDone()) {
+                return count;
+            }
+            char c = peek(0);
+            if (c == stop || c == '\\') {
+                return count;
+            }
+            getChar();
+            count++;
+        }
+    }
+
+    public long offset() {
+        return (long) window * stride + index;
+    }
+
+    public long mark() {
+        return offset();
+    }
+
+    public String text(long start, long end) {
+        int length = (int) (end - start);
+        if (length == 0) {
+            return "";
+        }
+        int w = (int) Math.min(start / stride, windows.length - 1);
+        ByteBuffer source = windows[w];
+        int from = (int) (start - (long) w * stride);
+        if (from + length > source.limit()) {
+            // The text runs past the overlap into the next window, so gather it up
+            byte[] bytes = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                long at = start + copied;
+                int next = (int) Math.min(at / stride, windows.length - 1);
+                int offset = (int) (at - (long) next * stride);
+                int count = Math.min(length - copied, windows[next].limit() - offset);
+                windows[next].get(offset, bytes, copied, count);
+                copied += count;
+            }
+            source = ByteBuffer.wrap(bytes);
+            from = 0;
+        }
+        char[] chars = new char[length];
+        int count = 0;
+        int at = from;
+        while (at < from + length) {
+            decode(source, at, from + length);
+            if (decodedCodePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[count++] = (char) decodedCodePoint;
+            } else {
+                chars[count++] = Character.highSurrogate(decodedCodePoint);
+                chars[count++] = Character.lowSurrogate(decodedCodePoint);
+            }
+            at += decodedLength;
+        }
+        return new String(chars, 0, count);
+    }
+
+    // A byte, which is the whole character for ASCII
+    @Override
+    public char unitAt(long offset) {
+        int w = (int) Math.min(offset / stride, windows.length - 1);
+        return (char) (windows[w].get((int) (offset - (long) w * stride)) & 0xFF);
+    }
+
+    public void rewind(long offset) {
+        selectWindow((int) Math.min(offset / stride, windows.length - 1));
+        index = (int) (offset - (long) window * stride);
+        lowSurrogate = false;
+    }
+
+    public boolean retainsInput() {
+        return true;
+    }
+
+    @Override
+    public long length() {
+        return (long) (windows.length - 1) * stride + windows[windows.length - 1].limit();
+    }
+
+    private void selectWindow(int w) {
+        window = w;
+        buffer = windows[w];
+        limit = w < windows.length - 1 ? stride : buffer.limit();
+    }
+
+    // Moves on to the next window once index has passed the end of the current one
+    private void moved() {
+        while (index >= limit && window < windows.length - 1) {
+            index -= stride;
+            selectWindow(window + 1);
+        }
+    }
+
+    // Returns the i-th char ahead of index, or -1 past the end of the input
+    private int charAt(int i) {
+        int at = index;
+        boolean low = lowSurrogate;
+        while (at < buffer.limit()) {
+            decode(buffer, at, buffer.limit());
+            int c;
+            if (decodedCodePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                c = decodedCodePoint;
+                at += decodedLength;
+            } else if (!low) {
+                c = Character.highSurrogate(decodedCodePoint);
+                low = true;
+            } else {
+                c = Character.lowSurrogate(decodedCodePoint);
+                low = false;
+                at += decodedLength;
+            }
+            if (i-- == 0) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private void decode(ByteBuffer source, int at, int end) {
+        int b0 = source.get(at);
+        if (b0 >= 0) {
+            decodedCodePoint = b0;
+            decodedLength = 1;
+            return;
+        }
+        int extra;
+        int codePoint;
+        int minimum;
+        if ((b0 & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = b0 & 0x1F;
+            minimum = 0x80;
+        } else if ((b0 & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = b0 & 0x0F;
+            minimum = 0x800;
+        } else if ((b0 & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = b0 & 0x07;
+            minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            malformed();
+            return;
+        }
+        if (at + extra >= end) {
+            malformed();
+            return;
+        }
+        for (int k = 1; k <= extra; k++) {
+            int b = source.get(at + k);
+            if ((b & 0xC0) != 0x80) {
+                malformed();
+                return;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            malformed();
+            return;
+        }
+        decodedCodePoint = codePoint;
+        decodedLength = extra + 1;
+    }
+
+    private void malformed() {
+        decodedCodePoint = 0xFFFD;
+        decodedLength = 1;
+    }
+}
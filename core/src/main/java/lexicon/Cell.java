@@ -0,0 +1,64 @@
+package lexicon;
+
+// One awk value. A value read from input is a STRNUM when it looks like a number: it
+// then compares as a number but keeps its text. Cells are mutable so the runtime and
+// the interpreters can reuse them rather than allocate one per value.
+class Cell {
+    static final byte UNINIT = 0;
+    static final byte NUMBER = 1;
+    static final byte STRING = 2;
+    static final byte STRNUM = 3;
+
+    byte type;
+    double number;
+    String string;
+
+    Cell() {
+    }
+
+    Cell(double number) {
+        setNumber(number);
+    }
+
+    Cell(String string) {
+        setString(string);
+    }
+
+    void setNumber(double number) {
+        this.type = NUMBER;
+        this.number = number;
+        this.string = null;
+    }
+
+    void setString(String string) {
+        this.type = STRING;
+        this.string = string;
+    }
+
+    // Input text: a STRNUM if it looks numeric, otherwise a STRING
+    void setInput(String string) {
+        this.string = string;
+        if (AwkRuntime.looksNumeric(string)) {
+            this.type = STRNUM;
+            this.number = AwkRuntime.toNumber(string);
+        } else {
+            this.type = STRING;
+        }
+    }
+
+    void set(Cell other) {
+        this.type = other.type;
+        this.number = other.number;
+        this.string = other.string;
+    }
+
+    void clear() {
+        this.type = UNINIT;
+        this.string = null;
+    }
+
+    // Whether comparisons treat the value as a number
+    boolean isNumeric() {
+        return type != STRING;
+    }
+}
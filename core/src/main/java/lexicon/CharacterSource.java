@@ -0,0 +1,61 @@
+package lexicon;
+
+// A cursor over the characters the Lexer reads. peek/peekString never need more
+// than Lexer.MAX_LOOKAHEAD characters of lookahead, so implementations can stream
+// their input.
+// Offsets are in the source's own units: chars for text, bytes for byte input.
+interface CharacterSource {
+    char peek(int i);
+
+    String peekString(int i);
+
+    char getChar();
+
+    void swallow(int i);
+
+    boolean isDone();
+
+    // Offset of the next character
+    long offset();
+
+    // Marks the start of a token and returns its offset. text() can slice anything
+    // from the last mark on.
+    long mark();
+
+    String text(long start, long end);
+
+    // The unit at offset, which text() must be able to reach. Lets a parser tell
+    // symbols apart without slicing out their text.
+    default char unitAt(long offset) {
+        return text(offset, offset + 1).charAt(0);
+    }
+
+    // Moves back to offset, which must be at or after the last mark
+    void rewind(long offset);
+
+    // Whether text() works for the whole input rather than only from the last mark on
+    boolean retainsInput();
+
+    // How many units the whole input has, or -1 if that is not known up front
+    default long length() {
+        return -1;
+    }
+
+    // Consumes characters up to and including the next c, or to the end of the input
+    default void skipPast(char c) {
+        while (!isDone() && getChar() != c) {
+            // Keep going
+        }
+    }
+
+    // Consumes characters up to, but not including, the next stop character or
+    // backslash. Returns the number of characters consumed.
+    default int skipUntil(char stop) {
+        int count = 0;
+        while (!isDone() && peek(0) != stop && peek(0) != '\\') {
+            getChar();
+            count++;
+        }
+        return count;
+    }
+}
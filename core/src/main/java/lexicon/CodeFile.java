@@ -0,0 +1,1071 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+enum TokenType {
+    WORD, NUMBER, SEPARATOR, STRINGLITERAL, PATTERN, TWOCCHARSYMBOL, ONECHARSYMBOL,
+    // Add token types for keywords
+    WHILE, IF, DO, FOR, BREAK, CONTINUE, ELSE, RETURN, BEGIN, END, PRINT, PRINTF, NEXT, IN, DELETE, GETLINE, EXIT, NEXTFILE, FUNCTION,
+    POSTINC, POSTDEC, PREINC, PREDEC, EXPONENT_ASSIGN, MODULO_ASSIGN, MULTIPLY_ASSIGN,
+    DIVIDE_ASSIGN, ADD_ASSIGN, SUBTRACT_ASSIGN, NOTMATCH, AND, OR, CONDITIONAL,
+    EXP_ASSIGN, MOD_ASSIGN, MUL_ASSIGN, DIV_ASSIGN, SUB_ASSIGN, ASSIGN,
+    // Text the Lexer skipped over after an error, in recovering mode
+    ERROR
+}
+
+enum Operation {
+    EXPONENT, MULTIPLY, DIVIDE, MODULO, ADD, SUBTRACT, CONCATENATION,
+    LT, LE, GT, GE, EQ, NE, AND, OR, NOT, MATCH, NOTMATCH, DOLLAR,
+    PREINC, POSTINC, PREDEC, POSTDEC, UNARYPOS, UNARYNEG, IN,
+    EXPONENT_ASSIGN, MODULO_ASSIGN, MULTIPLY_ASSIGN,
+    DIVIDE_ASSIGN, ADD_ASSIGN, SUBTRACT_ASSIGN, CONDITIONAL,
+    EXP_ASSIGN, MOD_ASSIGN, MUL_ASSIGN, DIV_ASSIGN, SUB_ASSIGN, ASSIGN
+}
+
+class Token {
+    private TokenType type;
+    private String value;
+    private int lineNumber;
+    private int position;
+    private Operation operation;
+    // Id of a WORD in the Lexer's SymbolTable, -1 for every other token
+    private int symbolId;
+
+    public Token(TokenType type, String value, int lineNumber, int position) {
+        this(type, value, lineNumber, position, -1);
+    }
+
+    public Token(TokenType type, String value, int lineNumber, int position, int symbolId) {
+        this.type = type;
+        this.value = value;
+        this.lineNumber = lineNumber;
+        this.position = position;
+        this.operation = operation;
+        this.symbolId = symbolId;
+    }
+
+    public TokenType getType() {
+        return type;
+    }
+
+    public String getValue() {
+        return value;
+    }
+    
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + value + ") at line " + lineNumber + ", position " + position;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public void setOperation(Operation operation) {
+        this.operation = operation;
+    }
+}
+
+class StringHandler implements CharacterSource {
+    private CharSequence document;
+    private int index;
+
+    public StringHandler(String document) {
+        this(document, 0);
+    }
+
+    // Starts reading at the given index. Offsets stay relative to the whole document.
+    public StringHandler(CharSequence document, int start) {
+        this.document = document;
+        this.index = start;
+    }
+
+    void reset(CharSequence document) {
+        this.document = document;
+        this.index = 0;
+    }
+
+    public char peek(int i) {
+        if (index + i < document.length()) {
+            return document.charAt(index + i);
+        }
+        return '\0'; // End of document
+    }
+
+    public String peekString(int i) {
+        StringBuilder builder = new StringBuilder();
+        int peekIndex = index;
+        while (peekIndex < document.length() && i > 0) {
+            builder.append(document.charAt(peekIndex));
+            peekIndex++;
+            i--;
+        }
+        return builder.toString();
+    }
+
+    public char getChar() {
+        if (index < document.length()) {
+            char currentChar = document.charAt(index);
+            index++;
+            return currentChar;
+        }
+        return '\0'; // End of document
+    }
+
+    public void swallow(int i) {
+        while (i > 0 && index < document.length()) {
+            index++;
+            i--;
+        }
+    }
+
+    public boolean isDone() {
+        return index >= document.length();
+    }
+
+    @Override
+    public void skipPast(char c) {
+        if (document instanceof String) {
+            int found = ((String) document).indexOf(c, index);
+            index = found < 0 ? document.length() : found + 1;
+            return;
+        }
+        while (index < document.length() && document.charAt(index++) != c) {
+            // Keep going
+        }
+    }
+
+    @Override
+    public int skipUntil(char stop) {
+        int end = index;
+        while (end < document.length() && document.charAt(end) != stop && document.charAt(end) != '\\') {
+            end++;
+        }
+        int count = end - index;
+        index = end;
+        return count;
+    }
+
+    public long offset() {
+        return index;
+    }
+
+    public long mark() {
+        return index;
+    }
+
+    public String text(long start, long end) {
+        return document.subSequence((int) start, (int) end).toString();
+    }
+
+    @Override
+    public char unitAt(long offset) {
+        return document.charAt((int) offset);
+    }
+
+    public void rewind(long offset) {
+        index = (int) offset;
+    }
+
+    public boolean retainsInput() {
+        return true;
+    }
+
+    public String remainder() {
+        return document.subSequence(index, document.length()).toString();
+    }
+}
+
+class Lexer implements Iterable<Token> {
+    // Compiled once from the keyword and symbol maps and shared by every Lexer
+    private static final LexerTables TABLES =
+            new LexerTables(initializeKeywordMap(), initializeTwoCharSymbolMap(), initializeOneCharSymbolMap());
+    private static final TokenType[] TYPES = TokenType.values();
+    // Every power of ten a double holds exactly. Up to 15 digits times or over one of
+    // these is the correctly rounded value, with no need for Double.parseDouble.
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int EXACT_DIGITS = 15;
+    // The most characters past the end of a token the Lexer looks at: for a number, an
+    // exponent's e, sign and digit. An edit that reaches any of them can change the token.
+    static final int MAX_LOOKAHEAD = 3;
+
+    private CharacterSource stringHandler;
+    private int lineNumber;
+    // The position is worked out from the offset: the distance from where the line
+    // started, less what was read without moving it along (comments, quotes, escapes,
+    // operations, extra bytes of multi-byte characters)
+    private long lineStart;
+    private long skipped;
+    // Records line starts and skips instead, in lexOffsets()
+    private LineIndex lineIndex;
+    private final LexerTables tables;
+    private SymbolTable symbols;
+    // Whether something besides this Lexer holds the source or the symbols, like a
+    // TokenBuffer it returned or the Lexers sharing a table, so that reset() must leave
+    // them as they are
+    private boolean shared;
+    // Errors go here instead of being thrown when this is set
+    private Diagnostics diagnostics;
+    // The characters of the word being scanned, for interning
+    private char[] word = new char[16];
+    // The token found by the last scanToken()
+    private TokenType tokenType;
+    private long tokenStart;
+    private long tokenEnd;
+    private int tokenLine;
+    private int tokenPosition;
+    private int tokenSymbol;
+    // The value of a NUMBER token
+    private double tokenNumber;
+    // Scanning stops at the first token boundary at or after this offset
+    private long stopOffset;
+    // When metrics are set: tokens of each type not yet reported, and how many more
+    // tokens until one is timed
+    private LexerMetrics metrics = LexerMetrics.NONE;
+    private long[] counts;
+    private int sampleInterval;
+    private int untilSample;
+    // Where the current lex call started, for its LexEvent and metrics
+    private long lexStart;
+    private int lexErrors;
+    private long lexNanos;
+
+    public Lexer(String document) {
+        this(new StringHandler(document));
+    }
+
+    // Streams the input through a bounded buffer instead of holding it in memory
+    public Lexer(Reader reader) {
+        this(new ReaderHandler(reader));
+    }
+
+    public Lexer(ReadableByteChannel channel, Charset charset) {
+        this(new ReaderHandler(Channels.newReader(channel, charset)));
+    }
+
+    // Lexes UTF-8 bytes in place, without decoding them into a String first
+    public Lexer(byte[] document) {
+        this(new ByteBufferHandler(document));
+    }
+
+    public Lexer(ByteBuffer document) {
+        this(new ByteBufferHandler(document));
+    }
+
+    // Lexes a UTF-8 file through a read-only memory mapping. lex() and nextToken() take
+    // a file of any size; lexToBuffer() and lexOffsets() stop at 2 GB, as far as a
+    // TokenBuffer's int offsets reach.
+    public static Lexer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return new Lexer(ByteBufferHandler.map(channel));
+        }
+    }
+
+    Lexer(CharacterSource source) {
+        this(source, 1, 0);
+    }
+
+    // Picks up lexing in the middle of a document, at a point between two tokens
+    Lexer(CharacterSource source, int lineNumber, int linePosition) {
+        this(source, lineNumber, linePosition, new SymbolTable());
+        shared = false;
+    }
+
+    // Interns words into symbols, so several Lexers can share one compilation's ids
+    Lexer(CharacterSource source, int lineNumber, int linePosition, SymbolTable symbols) {
+        this.stringHandler = source;
+        this.lineNumber = lineNumber;
+        this.lineStart = source.offset() - linePosition;
+        this.stopOffset = Long.MAX_VALUE;
+        this.tables = TABLES;
+        this.symbols = symbols;
+        this.shared = true;
+    }
+
+    // Starts over on a new document. Lets one Lexer per thread lex snippet after
+    // snippet without building anything new. A TokenBuffer or SymbolTable handed out
+    // before keeps reading the old document and its symbols: the Lexer moves on to new
+    // ones instead of rewinding those, and symbol ids start again from zero.
+    public Lexer reset(CharSequence document) {
+        if (stringHandler instanceof StringHandler && !shared) {
+            ((StringHandler) stringHandler).reset(document);
+            symbols.clear();
+        } else {
+            stringHandler = new StringHandler(document, 0);
+            symbols = new SymbolTable();
+            shared = false;
+        }
+        lineNumber = 1;
+        lineStart = 0;
+        skipped = 0;
+        lineIndex = null;
+        stopOffset = Long.MAX_VALUE;
+        tokenType = null;
+        if (diagnostics != null) {
+            diagnostics.clear();
+        }
+        return this;
+    }
+
+    // Switches to recovering mode: errors are recorded in diagnostics, the bad text
+    // becomes an ERROR token that runs up to the next separator or newline, and lexing
+    // carries on from there. Pass null to go back to throwing.
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    // Reports tokens, timings and lex calls to metrics. LexerMetrics.NONE, the default,
+    // turns measuring off.
+    public void setMetrics(LexerMetrics metrics) {
+        flushCounts();
+        this.metrics = Objects.requireNonNull(metrics);
+        counts = metrics == LexerMetrics.NONE ? null : new long[TYPES.length];
+        sampleInterval = metrics.sampleInterval();
+        untilSample = sampleInterval;
+    }
+
+    // The identifiers seen so far. Token.getSymbolId() indexes into it.
+    public SymbolTable getSymbolTable() {
+        shared = true;
+        return symbols;
+    }
+
+    private static Map<String, TokenType> initializeKeywordMap() {
+        Map<String, TokenType> keywordMap = new HashMap<>();
+        // Populate the keyword map
+        keywordMap.put("while", TokenType.WHILE);
+        keywordMap.put("if", TokenType.IF);
+        keywordMap.put("do", TokenType.DO);
+        keywordMap.put("for", TokenType.FOR);
+        keywordMap.put("break", TokenType.BREAK);
+        keywordMap.put("continue", TokenType.CONTINUE);
+        keywordMap.put("else", TokenType.ELSE);
+        keywordMap.put("return", TokenType.RETURN);
+        keywordMap.put("BEGIN", TokenType.BEGIN);
+        keywordMap.put("END", TokenType.END);
+        keywordMap.put("print", TokenType.PRINT);
+        keywordMap.put("printf", TokenType.PRINTF);
+        keywordMap.put("next", TokenType.NEXT);
+        keywordMap.put("in", TokenType.IN);
+        keywordMap.put("delete", TokenType.DELETE);
+        keywordMap.put("getline", TokenType.GETLINE);
+        keywordMap.put("exit", TokenType.EXIT);
+        keywordMap.put("nextfile", TokenType.NEXTFILE);
+        keywordMap.put("function", TokenType.FUNCTION);
+        return keywordMap;
+    }
+
+    private static Map<String, TokenType> initializeTwoCharSymbolMap() {
+        Map<String, TokenType> twoCharSymbolMap = new HashMap<>();
+        // Populate the two-character symbol map
+        twoCharSymbolMap.put(">=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("++", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("--", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("<=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("==", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("!=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("^=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("%=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("*=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("/=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("+=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("-=", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("!~", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("&&", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put(">>", TokenType.TWOCCHARSYMBOL);
+        twoCharSymbolMap.put("||", TokenType.TWOCCHARSYMBOL);
+        return twoCharSymbolMap;
+    }
+
+    private static Map<String, TokenType> initializeOneCharSymbolMap() {
+        Map<String, TokenType> oneCharSymbolMap = new HashMap<>();
+        // Populate the one-character symbol map
+        oneCharSymbolMap.put("{", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("}", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("[", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("]", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("(", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put(")", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("$", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("~", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("=", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("<", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put(">", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("!", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("+", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("^", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("-", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("?", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put(":", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("*", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("/", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("%", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put("|", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put(",", TokenType.ONECHARSYMBOL);
+        oneCharSymbolMap.put(";", TokenType.SEPARATOR);
+        oneCharSymbolMap.put("\n", TokenType.SEPARATOR); // Newline or semicolon as separator
+        return oneCharSymbolMap;
+    }
+
+    public List<Token> lex() {
+        LexEvent event = beginLex();
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        while ((token = nextToken()) != null) {
+            tokens.add(token);
+        }
+        endLex(event, tokens.size());
+        return tokens;
+    }
+
+    // Lexes the whole input into a TokenBuffer. The buffer slices token text out of
+    // the input on demand, so this only works for input that is kept in memory.
+    public TokenBuffer lexToBuffer() {
+        checkBufferable();
+        LexEvent event = beginLex();
+        shared = true;
+        TokenBuffer buffer = new TokenBuffer(stringHandler, symbols);
+        while (lexNext(buffer)) {
+            // Keep going
+        }
+        endLex(event, buffer.size());
+        return buffer;
+    }
+
+    // Like lexToBuffer(), but the buffer only keeps offsets. Lines and positions are
+    // looked up in a LineIndex when asked for, which saves two ints per token.
+    public TokenBuffer lexOffsets() {
+        checkBufferable();
+        LexEvent event = beginLex();
+        lineIndex = new LineIndex(lineNumber, lineStart, skipped);
+        shared = true;
+        TokenBuffer buffer = new TokenBuffer(stringHandler, 1024, symbols, lineIndex);
+        try {
+            while (lexNext(buffer)) {
+                // Keep going
+            }
+        } finally {
+            lineIndex = null;
+        }
+        endLex(event, buffer.size());
+        return buffer;
+    }
+
+    // A TokenBuffer slices its tokens out of the input by int offsets, so the input has
+    // to be kept and be no longer than those reach
+    private void checkBufferable() {
+        if (!stringHandler.retainsInput()) {
+            throw new IllegalStateException("Streamed input cannot be sliced after lexing");
+        }
+        if (stringHandler.length() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Input of " + stringHandler.length()
+                    + " bytes is over the 2 GB a TokenBuffer reaches; lex it with lex() or nextToken()");
+        }
+    }
+
+    private LexEvent beginLex() {
+        LexEvent event = new LexEvent();
+        event.begin();
+        lexStart = stringHandler.offset();
+        lexErrors = errorCount();
+        lexNanos = counts == null ? 0 : System.nanoTime();
+        return event;
+    }
+
+    private void endLex(LexEvent event, int tokens) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.units = stringHandler.offset() - lexStart;
+            event.tokens = tokens;
+            event.errors = errorCount() - lexErrors;
+            event.commit();
+        }
+        if (counts != null) {
+            metrics.lexed(stringHandler.offset() - lexStart, tokens, errorCount() - lexErrors,
+                    System.nanoTime() - lexNanos);
+        }
+    }
+
+    private int errorCount() {
+        return diagnostics == null ? 0 : diagnostics.size() + diagnostics.getDropped();
+    }
+
+    // Hands the token counts so far to metrics
+    private void flushCounts() {
+        if (counts == null) {
+            return;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                metrics.counted(TYPES[i], counts[i]);
+                counts[i] = 0;
+            }
+        }
+    }
+
+    // Scans one token into buffer. Returns false at the end of input or stopOffset.
+    boolean lexNext(TokenBuffer buffer) {
+        if (!scanToken()) {
+            return false;
+        }
+        int offset = Math.toIntExact(tokenStart);
+        int length = (int) (tokenEnd - tokenStart);
+        if (tokenType == TokenType.NUMBER) {
+            buffer.addNumber(offset, length, tokenLine, tokenPosition, tokenNumber);
+        } else {
+            buffer.add(tokenType, offset, length, tokenLine, tokenPosition, tokenSymbol);
+        }
+        return true;
+    }
+
+    void setStopOffset(long stopOffset) {
+        this.stopOffset = stopOffset;
+    }
+
+    long offset() {
+        return stringHandler.offset();
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    int getLinePosition() {
+        return positionAt(stringHandler.offset());
+    }
+
+    private int positionAt(long offset) {
+        return (int) (offset - lineStart - skipped);
+    }
+
+    // Notes that count units before end did not move the position along
+    private void skip(long end, long count) {
+        skipped += count;
+        if (lineIndex != null) {
+            lineIndex.addSkip(end, count);
+        }
+    }
+
+    // Returns the next token, or null once the input is exhausted
+    public Token nextToken() {
+        if (!scanToken()) {
+            return null;
+        }
+        if (tokenSymbol >= 0) {
+            // Every use of a name shares the one String in the symbol table
+            return new Token(tokenType, symbols.name(tokenSymbol), tokenLine, tokenPosition, tokenSymbol);
+        }
+        String value = valueOf(tokenType, stringHandler.text(tokenStart, tokenEnd));
+        return new Token(tokenType, value, tokenLine, tokenPosition);
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private Token next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = nextToken();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Token token = next;
+                next = null;
+                return token;
+            }
+        };
+    }
+
+    public Stream<Token> stream() {
+        Spliterator<Token> spliterator = Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    // Turns the source text of a token into its value
+    static String valueOf(TokenType type, String text) {
+        if (type == TokenType.STRINGLITERAL || type == TokenType.PATTERN) {
+            // The opening quote stays, the closing quote is not part of the text, and
+            // escaped characters lose their backslash
+            if (text.indexOf('\\') < 0) {
+                return text;
+            }
+            StringBuilder builder = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                char currentChar = text.charAt(i);
+                if (currentChar == '\\') {
+                    i++;
+                    builder.append(i < text.length() ? text.charAt(i) : '\0');
+                } else {
+                    builder.append(currentChar);
+                }
+            }
+            return builder.toString();
+        }
+        if (type == TokenType.TWOCCHARSYMBOL && text.length() == 1) {
+            // A single character operation from parseOperation, reported by name
+            return parseOperation(new StringHandler(text)).toString();
+        }
+        return text;
+    }
+
+    // Scans the next token into the token fields. Returns false at the end of input.
+    private boolean scanToken() {
+        return counts == null ? scan() : scanMeasured();
+    }
+
+    // scan(), counting the token and now and then timing it
+    private boolean scanMeasured() {
+        boolean timed = sampleInterval > 0 && --untilSample <= 0;
+        long begin = timed ? System.nanoTime() : 0;
+        if (!scan()) {
+            flushCounts();
+            return false;
+        }
+        counts[tokenType.ordinal()]++;
+        if (timed) {
+            long nanos = System.nanoTime() - begin;
+            untilSample = sampleInterval;
+            LexerMetrics.Path path = LexerMetrics.pathOf(tokenType);
+            if (path != null) {
+                metrics.sampled(path, nanos);
+            }
+        }
+        return true;
+    }
+
+    private boolean scan() {
+        while (!stringHandler.isDone() && stringHandler.offset() < stopOffset) {
+            char currentChar = stringHandler.peek(0);
+            switch (tables.classify(currentChar)) {
+                case LexerTables.WHITESPACE:
+                    // Ignore whitespace
+                    stringHandler.swallow(1);
+                    break;
+                case LexerTables.NEWLINE:
+                    // Newline, a separator with no text
+                    long start = stringHandler.mark();
+                    setToken(TokenType.SEPARATOR, start, start, positionAt(start));
+                    stringHandler.getChar();
+                    lineNumber++;
+                    lineStart = stringHandler.offset();
+                    skipped = 0;
+                    if (lineIndex != null) {
+                        lineIndex.addLine(lineStart);
+                    }
+                    return true;
+                case LexerTables.COMMENT:
+                    // Comment - skip to end of the line. No need to create a token for comments.
+                    // Neither the comment nor its newline moves the position.
+                    long commentStart = stringHandler.offset();
+                    stringHandler.skipPast('\n');
+                    skip(stringHandler.offset(), stringHandler.offset() - commentStart);
+                    break;
+                case LexerTables.LETTER:
+                    processWord();
+                    return true;
+                case LexerTables.DIGIT:
+                    processNumber();
+                    return true;
+                case LexerTables.QUOTE:
+                    handleStringLiteral();
+                    return true;
+                case LexerTables.BACKTICK:
+                    handlePattern();
+                    return true;
+                default:
+                    if (currentChar == '.' && tables.classify(stringHandler.peek(1)) == LexerTables.DIGIT) {
+                        // A number can start with its decimal point, as in .5
+                        processNumber();
+                        return true;
+                    }
+                    if (!processSymbol()) {
+                        // Unrecognized character
+                        if (diagnostics == null) {
+                            throw new IllegalArgumentException("Unrecognized character: " + currentChar);
+                        }
+                        long errorStart = stringHandler.mark();
+                        recover(Diagnostics.Kind.UNRECOGNIZED_CHARACTER, errorStart, positionAt(errorStart));
+                    }
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void setToken(TokenType type, long start, long end, int position) {
+        tokenType = type;
+        tokenStart = start;
+        tokenEnd = end;
+        tokenLine = lineNumber;
+        tokenPosition = position;
+        tokenSymbol = -1;
+    }
+
+    void processWord() {
+        long start = stringHandler.mark();
+        int startPosition = positionAt(start);
+        long packed = 0;
+        int length = 0;
+        int hash = 0;
+        while (!stringHandler.isDone() && tables.isWordChar(stringHandler.peek(0))) {
+            char c = stringHandler.getChar();
+            if (length == word.length) {
+                word = Arrays.copyOf(word, length * 2);
+            }
+            word[length] = c;
+            packed = LexerTables.pack(packed, length, c);
+            hash = 31 * hash + c;
+            length++;
+        }
+        long end = stringHandler.offset();
+        if (end - start != length) {
+            // Multi-byte characters count once
+            skip(end, end - start - length);
+        }
+        // Check if the word is a keyword
+        TokenType type = tables.keywordType(packed);
+        setToken(type, start, end, startPosition);
+        if (type == TokenType.WORD) {
+            tokenSymbol = symbols.intern(word, length, hash);
+        }
+    }
+
+    // Digits with at most one '.', then maybe an exponent, as in 1.5e-3. A second '.'
+    // starts the next number, so 1.2.3 is 1.2 and .3, as awk has it. The value is
+    // worked out while scanning, so nothing has to parse the text again.
+    private void processNumber() {
+        long start = stringHandler.mark();
+        int startPosition = positionAt(start);
+        int length = 0;
+        // The significant digits, how many there are and the power of ten they are off
+        // by, and the number in ASCII for when they do not fit
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int chars = 0;
+        boolean point = false;
+        while (!stringHandler.isDone()) {
+            char c = stringHandler.peek(0);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c == '.' || !tables.isNumberChar(c)) {
+                break;
+            } else {
+                int digit = Character.digit(c, 10);
+                if (digits == 0 && digit == 0) {
+                    // A leading zero only counts after the point
+                    scale -= point ? 1 : 0;
+                } else if (digits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    digits++;
+                    scale -= point ? 1 : 0;
+                } else {
+                    // Past what a long holds, so only parseDouble can round it
+                    digits++;
+                }
+                c = (char) ('0' + digit);
+            }
+            chars = appendNumberChar(chars, c);
+            stringHandler.getChar();
+            length++;
+        }
+        int exponent = 0;
+        char sign = stringHandler.peek(1);
+        int signLength = sign == '+' || sign == '-' ? 1 : 0;
+        char e = stringHandler.peek(0);
+        if ((e == 'e' || e == 'E') && isAsciiDigit(stringHandler.peek(1 + signLength))) {
+            chars = appendNumberChar(chars, 'e');
+            if (signLength > 0) {
+                chars = appendNumberChar(chars, sign);
+            }
+            stringHandler.swallow(1 + signLength);
+            length += 1 + signLength;
+            while (!stringHandler.isDone() && isAsciiDigit(stringHandler.peek(0))) {
+                char c = stringHandler.getChar();
+                chars = appendNumberChar(chars, c);
+                // Anything this far out is 0 or infinity either way
+                exponent = Math.min(exponent * 10 + c - '0', 100000);
+                length++;
+            }
+            exponent = sign == '-' ? -exponent : exponent;
+        }
+        long end = stringHandler.offset();
+        if (end - start != length) {
+            skip(end, end - start - length);
+        }
+        setToken(TokenType.NUMBER, start, end, startPosition);
+        int power = scale + exponent;
+        if (digits == 0) {
+            tokenNumber = 0;
+        } else if (digits <= EXACT_DIGITS && power >= 0 && power < POWERS_OF_TEN.length) {
+            tokenNumber = mantissa * POWERS_OF_TEN[power];
+        } else if (digits <= EXACT_DIGITS && power < 0 && -power < POWERS_OF_TEN.length) {
+            tokenNumber = mantissa / POWERS_OF_TEN[-power];
+        } else {
+            tokenNumber = Double.parseDouble(new String(word, 0, chars));
+        }
+    }
+
+    private int appendNumberChar(int chars, char c) {
+        if (chars == word.length) {
+            word = Arrays.copyOf(word, chars * 2);
+        }
+        word[chars] = c;
+        return chars + 1;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void handleStringLiteral() {
+        handleQuoted('"', TokenType.STRINGLITERAL, "string literal", Diagnostics.Kind.UNTERMINATED_STRING);
+    }
+
+    private void handlePattern() {
+        handleQuoted('`', TokenType.PATTERN, "pattern", Diagnostics.Kind.UNTERMINATED_PATTERN);
+    }
+
+    private void handleQuoted(char quote, TokenType type, String description, Diagnostics.Kind kind) {
+        long start = stringHandler.mark();
+        int startPosition = positionAt(start);
+        // Only the text moves the position: not the quotes, and an escape pair once
+        int counted = 0;
+        stringHandler.getChar(); // Consume the opening quote
+        while (!stringHandler.isDone()) {
+            // Skip everything up to the next quote or escape in one go
+            counted += stringHandler.skipUntil(quote);
+            if (stringHandler.isDone()) {
+                break;
+            }
+            long end = stringHandler.offset();
+            char currentChar = stringHandler.getChar();
+            if (currentChar == quote) {
+                // End of the literal. Its position has always been reported one before
+                // the opening quote.
+                long after = stringHandler.offset();
+                skip(after, after - start - counted);
+                setToken(type, start, end, startPosition - 1);
+                return;
+            }
+            // Escaped character
+            stringHandler.getChar();
+            counted++;
+        }
+        // If we reach here, the literal is unterminated
+        if (diagnostics == null) {
+            throw new IllegalArgumentException("Unterminated " + description + " at line " + lineNumber + ", position " + (startPosition + counted));
+        }
+        // Go back and treat the opening quote as the start of the bad text
+        stringHandler.rewind(start);
+        recover(kind, start, startPosition);
+    }
+
+    // Records an error at start and makes an ERROR token of everything up to the next
+    // separator or newline
+    private void recover(Diagnostics.Kind kind, long start, int startPosition) {
+        diagnostics.add(kind, lineNumber, startPosition, start);
+        int length = 0;
+        do {
+            stringHandler.getChar();
+            length++;
+        } while (!stringHandler.isDone() && stringHandler.peek(0) != '\n' && stringHandler.peek(0) != ';');
+        long end = stringHandler.offset();
+        if (end - start != length) {
+            skip(end, end - start - length);
+        }
+        setToken(TokenType.ERROR, start, end, startPosition);
+    }
+
+    boolean processSymbol() {
+        // One table read covers the two-character symbols, parseOperation and the
+        // one-character symbols
+        int action = tables.symbolAction(stringHandler.peek(0), stringHandler.peek(1));
+        if (action == 0) {
+            return false; // Not a recognized symbol
+        }
+        long start = stringHandler.mark();
+        int length = LexerTables.actionLength(action);
+        stringHandler.swallow(length);
+        setToken(LexerTables.actionType(action), start, stringHandler.offset(), positionAt(start));
+        if (LexerTables.isOperation(action)) {
+            // Operations have never moved the position
+            skip(stringHandler.offset(), length);
+        }
+        return true;
+    }
+    
+    private TokenType getOperationTokenType(Operation operation) {
+        // Map operations to corresponding token types
+	        if (operation == Operation.EXPONENT_ASSIGN) {
+	        return TokenType.EXPONENT_ASSIGN;
+	    } else if (operation == Operation.MODULO_ASSIGN) {
+	        return TokenType.MODULO_ASSIGN;
+	    } else if (operation == Operation.MULTIPLY_ASSIGN) {
+	        return TokenType.MULTIPLY_ASSIGN;
+	    } else if (operation == Operation.DIVIDE_ASSIGN) {
+	        return TokenType.DIVIDE_ASSIGN;
+	    } else if (operation == Operation.ADD_ASSIGN) {
+	        return TokenType.ADD_ASSIGN;
+	    } else if (operation == Operation.SUBTRACT_ASSIGN) {
+	        return TokenType.SUBTRACT_ASSIGN;
+	    } else if (operation == Operation.NOTMATCH) {
+	        return TokenType.NOTMATCH;
+	    } else if (operation == Operation.AND) {
+	        return TokenType.AND;
+	    } else if (operation == Operation.OR) {
+	        return TokenType.OR;
+	    } else if (operation == Operation.CONDITIONAL) {
+	        return TokenType.CONDITIONAL;
+	    } else if (operation == Operation.EXP_ASSIGN) {
+	        return TokenType.EXP_ASSIGN;
+	    } else if (operation == Operation.MOD_ASSIGN) {
+	        return TokenType.MOD_ASSIGN;
+	    } else if (operation == Operation.MUL_ASSIGN) {
+	        return TokenType.MUL_ASSIGN;
+	    } else if (operation == Operation.DIV_ASSIGN) {
+	        return TokenType.DIV_ASSIGN;
+	    } else if (operation == Operation.ADD_ASSIGN) {
+	        return TokenType.ADD_ASSIGN;
+	    } else if (operation == Operation.SUB_ASSIGN) {
+	        return TokenType.SUB_ASSIGN;
+	    } else if (operation == Operation.ASSIGN) {
+	        return TokenType.ASSIGN;
+	    } else {
+	        return null; // Unknown operation
+	    }
+    }
+    
+    public Token processOperation() {
+        long start = stringHandler.offset();
+        int position = positionAt(start);
+        Operation operation = parseOperation(stringHandler);
+        if (operation != null) {
+            skip(stringHandler.offset(), stringHandler.offset() - start);
+            return new Token(TokenType.TWOCCHARSYMBOL, operation.toString(), lineNumber, position);
+        }
+        return null; // Return null if no operation is found
+    }
+
+    static Operation parseOperation(CharacterSource source) {
+        char currentChar = source.peek(0);
+        char nextChar = source.peek(1);
+
+        if (currentChar == '^') {
+            source.swallow(1);
+            return Operation.EXPONENT;
+        } else if (currentChar == '*' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.MULTIPLY_ASSIGN;
+        } else if (currentChar == '/') {
+            source.swallow(1);
+            return Operation.DIVIDE;
+        } else if (currentChar == '%' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.MODULO_ASSIGN;
+        } else if (currentChar == '+' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.ADD_ASSIGN;
+        } else if (currentChar == '-' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.SUBTRACT_ASSIGN;
+        } else if (currentChar == '+' && nextChar == '+') {
+            source.swallow(2);
+            return Operation.POSTINC;
+        } else if (currentChar == '-' && nextChar == '-') {
+            source.swallow(2);
+            return Operation.POSTDEC;
+        } else if (currentChar == '!') {
+            if (nextChar == '~') {
+                source.swallow(2);
+                return Operation.NOTMATCH;
+            }
+            source.swallow(1);
+            return Operation.NOT;
+        } else if (currentChar == '+' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.UNARYPOS;
+        } else if (currentChar == '-' && nextChar == '=') {
+            source.swallow(2);
+            return Operation.UNARYNEG;
+        } else if (currentChar == 'i' && nextChar == 'n') {
+            source.swallow(2);
+            return Operation.IN;
+        }
+
+        return null; // Return null if no operation is recognized
+    }
+    
+    // Prints the tokens of test.txt, or with paths, lexes every file under them as
+    // BatchLexer does
+    public static void main(String[] args) {
+        if (args.length >= 1) {
+            BatchLexer.main(args);
+            return;
+        }
+        String filePath = "test.txt";
+        Path myPath = Paths.get(filePath);
+        try (Reader reader = new InputStreamReader(Files.newInputStream(myPath))) {
+            Lexer lexer = new Lexer(reader);
+
+	        for (Token token : lexer) {
+	            if (token.getType() == TokenType.TWOCCHARSYMBOL) {
+	                System.out.println("Operation: " + token.getValue());
+	            } else {
+	                System. out.println(token);
+	            }
+	        }
+        } catch (IOException e) {
+            System.err.println("Error reading the file: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println("Error reading the file: " + e.getCause().getMessage());
+        }
+    }
+}
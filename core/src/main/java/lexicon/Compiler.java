@@ -0,0 +1,1278 @@
+package lexicon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Compiles a parsed program into a Program for Machine. Values go in registers: a
+// function's parameters come first in its frame and temporaries after them, handed
+// out afresh for every statement. Variables and constants are used where they are
+// rather than copied, and an expression can be told which register to leave its value
+// in, so x = y + 1 is one ADD. Conditions compile to jumps instead of 0 and 1, and
+// loops are laid out with their test at the bottom, so each pass runs one branch.
+class Compiler {
+    // Lets expression() put a value wherever suits it
+    private static final int ANYWHERE = Program.NONE;
+
+    private static final int BEGIN_CODE = 0;
+    private static final int MAIN_CODE = 1;
+    private static final int END_CODE = 2;
+    private static final int FUNCTION_CODE = 3;
+
+    private final SyntaxTree tree;
+    private final TokenBuffer tokens;
+
+    private final Map<String, Function> functions = new HashMap<>();
+    private final List<Function> functionList = new ArrayList<>();
+    // The function each node is in, or null outside functions
+    private Function[] scopes;
+    // Whether evaluating a node can change a variable
+    private boolean[] effects;
+
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final Set<String> arrayGlobals = new HashSet<>();
+    private final Map<Double, Integer> numberConstants = new HashMap<>();
+    private final Map<String, Integer> stringConstants = new HashMap<>();
+    private final List<String> globalNames = new ArrayList<>();
+    private byte[] globalTypes = new byte[64];
+    private double[] globalNumbers = new double[64];
+    private String[] globalStrings = new String[64];
+    private boolean[] constant = new boolean[64];
+
+    private int[] code = new int[1024];
+    private int size;
+
+    private Function function;
+    private int codeKind;
+    // The first register temporaries can use, the next free one, and the most used
+    private int base;
+    private int temps;
+    private int frameSize;
+    private int mainFrameSize;
+    // Pending jumps out of the loops being compiled, innermost last
+    private final List<int[]> loops = new ArrayList<>();
+
+    private int zero;
+    private int one;
+
+    private static final class Function {
+        final String name;
+        final int index;
+        final int node;
+        final String[] parameters;
+        final boolean[] arrays;
+        int entry;
+        int frameSize;
+
+        Function(String name, int index, int node, String[] parameters) {
+            this.name = name;
+            this.index = index;
+            this.node = node;
+            this.parameters = parameters;
+            this.arrays = new boolean[parameters.length];
+        }
+
+        int parameter(String name) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // Somewhere a value can be stored: a register, a special variable, an array
+    // element or a field
+    private static final class Place {
+        static final int REGISTER = 0;
+        static final int SPECIAL = 1;
+        static final int ELEMENT = 2;
+        static final int FIELD = 3;
+
+        final int kind;
+        // The register, special variable, array or field index
+        final int operand;
+        final int key;
+
+        Place(int kind, int operand, int key) {
+            this.kind = kind;
+            this.operand = operand;
+            this.key = key;
+        }
+    }
+
+    public Compiler(SyntaxTree tree) {
+        this.tree = tree;
+        this.tokens = tree.getTokens();
+    }
+
+    // Compiles the PROGRAM node root
+    public Program compile(int root) {
+        scopes = new Function[tree.size()];
+        effects = new boolean[tree.size()];
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) == SyntaxTree.Kind.FUNCTION) {
+                declare(item);
+            }
+        }
+        findEffects();
+        findArrays();
+        zero = numberConstant(0);
+        one = numberConstant(1);
+
+        int begin = compileActions(root, SyntaxTree.Kind.BEGIN, BEGIN_CODE);
+        int main = compileRules(root);
+        int end = compileActions(root, SyntaxTree.Kind.END, END_CODE);
+        for (Function f : functionList) {
+            function = f;
+            codeKind = FUNCTION_CODE;
+            base = f.parameters.length;
+            frameSize = base;
+            f.entry = size;
+            int body = tree.getChild(f.node, tree.getChildCount(f.node) - 1);
+            statement(body);
+            emit(Program.RETURN, Program.NONE);
+            f.frameSize = frameSize;
+        }
+
+        int count = globalNames.size();
+        boolean[] arrays = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            arrays[i] = globalNames.get(i) != null && arrayGlobals.contains(globalNames.get(i));
+        }
+        int functionCount = functionList.size();
+        String[] names = new String[functionCount];
+        int[] entries = new int[functionCount];
+        int[] frameSizes = new int[functionCount];
+        boolean[][] arrayParameters = new boolean[functionCount][];
+        for (Function f : functionList) {
+            names[f.index] = f.name;
+            entries[f.index] = f.entry;
+            frameSizes[f.index] = f.frameSize;
+            arrayParameters[f.index] = f.arrays;
+        }
+        return new Program(Arrays.copyOf(code, size), begin, main, end, mainFrameSize,
+                globalNames.toArray(new String[0]), Arrays.copyOf(globalTypes, count),
+                Arrays.copyOf(globalNumbers, count), Arrays.copyOf(globalStrings, count), arrays,
+                names, entries, frameSizes, arrayParameters,
+                Aggregation.of(tree, root, globals, arrayGlobals, effects, count));
+    }
+
+    private void declare(int node) {
+        String name = tree.getValue(node);
+        if (functions.containsKey(name) || AwkRuntime.Builtin.named(name) != null) {
+            throw error("Function " + name + " is already defined", node);
+        }
+        int count = tree.getChildCount(node) - 1;
+        String[] parameters = new String[count];
+        for (int i = 0; i < count; i++) {
+            parameters[i] = tree.getValue(tree.getChild(node, i));
+        }
+        Function f = new Function(name, functionList.size(), node, parameters);
+        functions.put(name, f);
+        functionList.add(f);
+        // A function's nodes run from its lowest one up to the FUNCTION node itself
+        int lowest = node;
+        int[] stack = {node};
+        int top = 1;
+        while (top > 0) {
+            int next = stack[--top];
+            lowest = Math.min(lowest, next);
+            int children = tree.getChildCount(next);
+            if (top + children > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + children));
+            }
+            for (int i = 0; i < children; i++) {
+                stack[top++] = tree.getChild(next, i);
+            }
+        }
+        Arrays.fill(scopes, lowest, node + 1, f);
+    }
+
+    // Children come before their parents, so one pass up the nodes is enough
+    private void findEffects() {
+        for (int node = 0; node < tree.size(); node++) {
+            boolean effect;
+            switch (tree.getKind(node)) {
+                case ASSIGN:
+                case GETLINE:
+                    effect = true;
+                    break;
+                case UNARY:
+                    Operation operation = tree.getOperation(node);
+                    effect = operation == Operation.PREINC || operation == Operation.PREDEC
+                            || operation == Operation.POSTINC || operation == Operation.POSTDEC;
+                    break;
+                case CALL:
+                    AwkRuntime.Builtin builtin = AwkRuntime.Builtin.named(tree.getValue(node));
+                    effect = builtin == null || builtin == AwkRuntime.Builtin.SUB || builtin == AwkRuntime.Builtin.GSUB
+                            || builtin == AwkRuntime.Builtin.SPLIT || builtin == AwkRuntime.Builtin.SRAND;
+                    break;
+                default:
+                    effect = false;
+                    break;
+            }
+            for (int i = 0; i < tree.getChildCount(node) && !effect; i++) {
+                effect = effects[tree.getChild(node, i)];
+            }
+            effects[node] = effect;
+        }
+    }
+
+    // Works out which variables and parameters are arrays. Passing an array to a
+    // function makes its parameter one, and the other way round, so this goes round
+    // until nothing changes.
+    private boolean changed;
+
+    private void findArrays() {
+        do {
+            changed = false;
+            for (int node = 0; node < tree.size(); node++) {
+                Function scope = scopes[node];
+                switch (tree.getKind(node)) {
+                    case INDEX:
+                        markArray(scope, tree.getChild(node, 0));
+                        break;
+                    case BINARY:
+                        if (tree.getOperation(node) == Operation.IN) {
+                            markArray(scope, tree.getChild(node, 1));
+                        }
+                        break;
+                    case FOR_IN:
+                        markArray(scope, tree.getChild(node, 1));
+                        break;
+                    case DELETE:
+                        markArray(scope, tree.getChild(node, 0));
+                        break;
+                    case CALL:
+                        String name = tree.getValue(node);
+                        int count = tree.getChildCount(node);
+                        if (name.equals("split") && count >= 2) {
+                            markArray(scope, tree.getChild(node, 1));
+                        }
+                        Function callee = functions.get(name);
+                        if (callee == null) {
+                            break;
+                        }
+                        for (int i = 0; i < count && i < callee.parameters.length; i++) {
+                            int argument = tree.getChild(node, i);
+                            if (tree.getKind(argument) != SyntaxTree.Kind.VARIABLE) {
+                                continue;
+                            }
+                            if (callee.arrays[i]) {
+                                markArray(scope, argument);
+                            } else if (isArray(scope, tree.getValue(argument))) {
+                                callee.arrays[i] = true;
+                                changed = true;
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } while (changed);
+    }
+
+    private void markArray(Function scope, int variable) {
+        if (tree.getKind(variable) != SyntaxTree.Kind.VARIABLE) {
+            return;
+        }
+        String name = tree.getValue(variable);
+        int parameter = scope == null ? -1 : scope.parameter(name);
+        if (parameter >= 0) {
+            changed |= !scope.arrays[parameter];
+            scope.arrays[parameter] = true;
+        } else {
+            changed |= arrayGlobals.add(name);
+        }
+    }
+
+    private boolean isArray(Function scope, String name) {
+        int parameter = scope == null ? -1 : scope.parameter(name);
+        return parameter >= 0 ? scope.arrays[parameter] : arrayGlobals.contains(name);
+    }
+
+    // BEGIN or END actions, in the order they are written, as one piece of code
+    private int compileActions(int root, SyntaxTree.Kind kind, int codeKind) {
+        int start = -1;
+        startCode(codeKind);
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) == kind) {
+                if (start < 0) {
+                    start = size;
+                }
+                statement(tree.getChild(item, 0));
+            }
+        }
+        return finishCode(start);
+    }
+
+    // Every rule in turn, run once for each record
+    private int compileRules(int root) {
+        int start = -1;
+        startCode(MAIN_CODE);
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) != SyntaxTree.Kind.RULE) {
+                continue;
+            }
+            if (start < 0) {
+                start = size;
+            }
+            temps = base;
+            int pattern = tree.getChild(item, 0);
+            int endPattern = tree.getChild(item, 1);
+            int action = tree.getChild(item, 2);
+            if (tree.getKind(pattern) == SyntaxTree.Kind.EMPTY) {
+                action(action);
+            } else if (tree.getKind(endPattern) == SyntaxTree.Kind.EMPTY) {
+                int skip = branch(pattern, false);
+                action(action);
+                patch(skip, size);
+            } else {
+                // A range keeps a flag that is set from its first record to its last
+                int flag = hiddenGlobal();
+                int inRange = emitJump(Program.JUMP_IF_TRUE, flag);
+                int skip = branch(pattern, false);
+                emit(Program.MOVE, flag, one);
+                patch(inRange, size);
+                temps = base;
+                int stay = branch(endPattern, false);
+                emit(Program.MOVE, flag, zero);
+                patch(stay, size);
+                action(action);
+                patch(skip, size);
+            }
+        }
+        return finishCode(start);
+    }
+
+    private void action(int action) {
+        if (tree.getKind(action) == SyntaxTree.Kind.EMPTY) {
+            emit(Program.PRINT, 0, 0, AwkRuntime.STDOUT, Program.NONE);
+        } else {
+            statement(action);
+        }
+    }
+
+    private void startCode(int codeKind) {
+        this.codeKind = codeKind;
+        function = null;
+        base = 0;
+        temps = 0;
+        frameSize = 0;
+    }
+
+    private int finishCode(int start) {
+        mainFrameSize = Math.max(mainFrameSize, frameSize);
+        if (start >= 0) {
+            emit(Program.HALT);
+        }
+        return start;
+    }
+
+    // Statements
+
+    private void statement(int node) {
+        temps = base;
+        switch (tree.getKind(node)) {
+            case BLOCK:
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    statement(tree.getChild(node, i));
+                }
+                break;
+            case EMPTY:
+                break;
+            case IF:
+                int otherwise = branch(tree.getChild(node, 0), false);
+                statement(tree.getChild(node, 1));
+                int elseBranch = tree.getChild(node, 2);
+                if (tree.getKind(elseBranch) == SyntaxTree.Kind.EMPTY) {
+                    patch(otherwise, size);
+                } else {
+                    int done = emitJump(Program.JUMP);
+                    patch(otherwise, size);
+                    statement(elseBranch);
+                    patch(done, size);
+                }
+                break;
+            case WHILE:
+                loop(tree.getChild(node, 0), tree.getChild(node, 1), -1);
+                break;
+            case DO:
+                int body = size;
+                loops.add(new int[] {-1, -1});
+                statement(tree.getChild(node, 0));
+                int[] jumps = loops.remove(loops.size() - 1);
+                patch(jumps[1], size);
+                temps = base;
+                patch(branch(tree.getChild(node, 1), true), body);
+                patch(jumps[0], size);
+                break;
+            case FOR:
+                effect(tree.getChild(node, 0));
+                loop(tree.getChild(node, 1), tree.getChild(node, 3), tree.getChild(node, 2));
+                break;
+            case FOR_IN:
+                forIn(node);
+                break;
+            case BREAK:
+            case CONTINUE:
+                if (loops.isEmpty()) {
+                    throw error(tree.getKind(node).toString().toLowerCase() + " outside a loop", node);
+                }
+                int[] loop = loops.get(loops.size() - 1);
+                int which = tree.getKind(node) == SyntaxTree.Kind.BREAK ? 0 : 1;
+                emit(Program.JUMP, loop[which]);
+                loop[which] = size - 1;
+                break;
+            case NEXT:
+            case NEXTFILE:
+                if (codeKind == BEGIN_CODE || codeKind == END_CODE) {
+                    throw error(tree.getKind(node).toString().toLowerCase() + " in BEGIN or END", node);
+                }
+                emit(tree.getKind(node) == SyntaxTree.Kind.NEXT ? Program.NEXT : Program.NEXTFILE);
+                break;
+            case EXIT:
+                emit(Program.EXIT, optional(tree.getChild(node, 0)));
+                break;
+            case RETURN:
+                if (function == null) {
+                    throw error("return outside a function", node);
+                }
+                emit(Program.RETURN, optional(tree.getChild(node, 0)));
+                break;
+            case DELETE:
+                int target = tree.getChild(node, 0);
+                if (tree.getKind(target) == SyntaxTree.Kind.VARIABLE) {
+                    emit(Program.ARRAY_CLEAR, array(target));
+                } else {
+                    emit(Program.ARRAY_DELETE, array(tree.getChild(target, 0)), key(target));
+                }
+                break;
+            case PRINT:
+            case PRINTF:
+                print(node);
+                break;
+            default:
+                effect(node);
+                break;
+        }
+    }
+
+    private int optional(int node) {
+        return tree.getKind(node) == SyntaxTree.Kind.EMPTY ? Program.NONE : expression(node, ANYWHERE);
+    }
+
+    // while and for: the body, then the update, then the test jumping back to the body
+    private void loop(int condition, int body, int update) {
+        int toTest = emitJump(Program.JUMP);
+        int start = size;
+        loops.add(new int[] {-1, -1});
+        statement(body);
+        int[] jumps = loops.remove(loops.size() - 1);
+        patch(jumps[1], size);
+        if (update >= 0) {
+            temps = base;
+            effect(update);
+        }
+        patch(toTest, size);
+        temps = base;
+        if (tree.getKind(condition) == SyntaxTree.Kind.EMPTY) {
+            emit(Program.JUMP, start);
+        } else {
+            patch(branch(condition, true), start);
+        }
+        patch(jumps[0], size);
+    }
+
+    private void forIn(int node) {
+        // The iterator needs a register that outlives the statements in the body
+        int iterator = base++;
+        frameSize = Math.max(frameSize, base);
+        int variable = tree.getChild(node, 0);
+        Place place = place(variable, false);
+        if (place.kind != Place.REGISTER) {
+            throw error("Cannot loop over an array with " + tree.getValue(variable), variable);
+        }
+        emit(Program.FOR_IN, iterator, array(tree.getChild(node, 1)));
+        int next = size;
+        emit(Program.FOR_IN_NEXT, iterator, place.operand, -1);
+        int done = size - 1;
+        loops.add(new int[] {-1, -1});
+        statement(tree.getChild(node, 2));
+        int[] jumps = loops.remove(loops.size() - 1);
+        emit(Program.JUMP, next);
+        patch(jumps[1], next);
+        patch(done, size);
+        patch(jumps[0], size);
+        base--;
+        temps = base;
+    }
+
+    private void print(int node) {
+        int count = tree.getChildCount(node) - 1;
+        int redirect = tree.getChild(node, count);
+        int first = reserve(count);
+        for (int i = 0; i < count; i++) {
+            expression(tree.getChild(node, i), first + i);
+        }
+        int redirection = AwkRuntime.STDOUT;
+        int destination = Program.NONE;
+        if (tree.getKind(redirect) == SyntaxTree.Kind.REDIRECT) {
+            int symbol = tokens.getSymbol(tree.getToken(redirect));
+            redirection = symbol == '>' ? AwkRuntime.FILE : symbol == '|' ? AwkRuntime.PIPE : AwkRuntime.APPEND;
+            destination = expression(tree.getChild(redirect, 0), ANYWHERE);
+        }
+        emit(tree.getKind(node) == SyntaxTree.Kind.PRINT ? Program.PRINT : Program.PRINTF, first, count, redirection,
+                destination);
+    }
+
+    // An expression whose value is not wanted
+    private void effect(int node) {
+        if (tree.getKind(node) == SyntaxTree.Kind.EMPTY) {
+            return;
+        }
+        if (tree.getKind(node) == SyntaxTree.Kind.UNARY) {
+            Operation operation = tree.getOperation(node);
+            boolean up = operation == Operation.PREINC || operation == Operation.POSTINC;
+            if (up || operation == Operation.PREDEC || operation == Operation.POSTDEC) {
+                Place place = place(tree.getChild(node, 0), false);
+                if (place.kind == Place.REGISTER) {
+                    emit(up ? Program.INCREMENT : Program.DECREMENT, place.operand);
+                    return;
+                }
+            }
+        }
+        expression(node, ANYWHERE);
+    }
+
+    // Conditions
+
+    // Emits jumps taken when node is true, if when is, or when it is false otherwise,
+    // and falls through the other way. Returns the jumps, chained through their
+    // targets, for patch() to point somewhere.
+    private int branch(int node, boolean when) {
+        SyntaxTree.Kind kind = tree.getKind(node);
+        Operation operation = tree.getOperation(node);
+        if (kind == SyntaxTree.Kind.UNARY && operation == Operation.NOT) {
+            return branch(tree.getChild(node, 0), !when);
+        }
+        if (kind == SyntaxTree.Kind.BINARY && (operation == Operation.AND || operation == Operation.OR)) {
+            if ((operation == Operation.AND) != when) {
+                // Either side decides it: false && or true ||
+                int first = branch(tree.getChild(node, 0), when);
+                return chain(first, branch(tree.getChild(node, 1), when));
+            }
+            int skip = branch(tree.getChild(node, 0), !when);
+            int taken = branch(tree.getChild(node, 1), when);
+            patch(skip, size);
+            return taken;
+        }
+        int mask = comparisonMask(operation);
+        if (kind == SyntaxTree.Kind.BINARY && mask != 0) {
+            int left = tree.getChild(node, 0);
+            int right = tree.getChild(node, 1);
+            int a = protect(operand(left, right, false), right);
+            int b = operand(right, left, false);
+            emit(Program.JUMP_IF, when ? mask : mask ^ 7, a, b, -1);
+            return size - 1;
+        }
+        int value = expression(node, ANYWHERE);
+        return emitJump(when ? Program.JUMP_IF_TRUE : Program.JUMP_IF_FALSE, value);
+    }
+
+    private static int comparisonMask(Operation operation) {
+        if (operation == null) {
+            return 0;
+        }
+        switch (operation) {
+            case LT:
+                return 1;
+            case LE:
+                return 3;
+            case GT:
+                return 4;
+            case GE:
+                return 6;
+            case EQ:
+                return 2;
+            case NE:
+                return 5;
+            default:
+                return 0;
+        }
+    }
+
+    // Expressions
+
+    // Compiles node and returns the register its value ends up in: to, unless that is
+    // ANYWHERE
+    private int expression(int node, int to) {
+        switch (tree.getKind(node)) {
+            case NUMBER:
+                return move(numberConstant(tree.getNumber(node)), to);
+            case STRING:
+                return move(stringConstant(tree.getString(node)), to);
+            case REGEX:
+                // A regular expression on its own matches the record
+                int record = temp();
+                emit(Program.GET_FIELD, record, zero);
+                int matched = target(to);
+                emit(Program.MATCH, matched, record, regex(node), 0);
+                return matched;
+            case VARIABLE:
+                return variable(node, to);
+            case INDEX:
+                int array = array(tree.getChild(node, 0));
+                int key = key(node);
+                int element = target(to);
+                emit(Program.ARRAY_GET, element, array, key);
+                return element;
+            case CALL:
+                return call(node, to);
+            case GROUP:
+                throw error("Expected in after a parenthesized list", node);
+            case UNARY:
+                return unary(node, to);
+            case BINARY:
+                return binary(node, to);
+            case CONDITIONAL:
+                int result = target(to);
+                int otherwise = branch(tree.getChild(node, 0), false);
+                expression(tree.getChild(node, 1), result);
+                int done = emitJump(Program.JUMP);
+                patch(otherwise, size);
+                expression(tree.getChild(node, 2), result);
+                patch(done, size);
+                return result;
+            case ASSIGN:
+                return assign(node, to);
+            case GETLINE:
+                return getline(node, to);
+            default:
+                throw error("Expected an expression", node);
+        }
+    }
+
+    private int variable(int node, int to) {
+        String name = tree.getValue(node);
+        if (name.equals("length") && !isVariable(name)) {
+            // length without parentheses is the length of the record
+            int result = target(to);
+            emit(Program.BUILTIN, result, AwkRuntime.Builtin.LENGTH.ordinal(), 0, 0);
+            return result;
+        }
+        Place place = place(node, false);
+        if (place.kind == Place.SPECIAL) {
+            int result = target(to);
+            emit(Program.GET_SPECIAL, result, place.operand);
+            return result;
+        }
+        return move(place.operand, to);
+    }
+
+    private boolean isVariable(String name) {
+        return (function != null && function.parameter(name) >= 0) || globals.containsKey(name);
+    }
+
+    private int unary(int node, int to) {
+        Operation operation = tree.getOperation(node);
+        int operand = tree.getChild(node, 0);
+        switch (operation) {
+            case NOT:
+                return simple(Program.NOT, expression(operand, ANYWHERE), to);
+            case UNARYNEG:
+                return simple(Program.NEGATE, operand(operand, -1, true), to);
+            case UNARYPOS:
+                return simple(Program.NUMBER, operand(operand, -1, true), to);
+            case DOLLAR:
+                return simple(Program.GET_FIELD, expression(operand, ANYWHERE), to);
+            default:
+                return increment(node, operation, to);
+        }
+    }
+
+    private int simple(int opcode, int a, int to) {
+        int result = target(to);
+        emit(opcode, result, a);
+        return result;
+    }
+
+    private int increment(int node, Operation operation, int to) {
+        boolean up = operation == Operation.PREINC || operation == Operation.POSTINC;
+        boolean post = operation == Operation.POSTINC || operation == Operation.POSTDEC;
+        Place place = place(tree.getChild(node, 0), false);
+        if (place.kind == Place.REGISTER) {
+            if (!post) {
+                emit(up ? Program.INCREMENT : Program.DECREMENT, place.operand);
+                return move(place.operand, to);
+            }
+            int result = target(to);
+            emit(Program.NUMBER, result, place.operand);
+            emit(up ? Program.INCREMENT : Program.DECREMENT, place.operand);
+            return result;
+        }
+        int value = temp();
+        load(place, value);
+        if (!post) {
+            emit(up ? Program.ADD : Program.SUBTRACT, value, value, one);
+            store(place, value);
+            return move(value, to);
+        }
+        int result = target(to);
+        emit(Program.NUMBER, result, value);
+        emit(up ? Program.ADD : Program.SUBTRACT, value, result, one);
+        store(place, value);
+        return result;
+    }
+
+    private int binary(int node, int to) {
+        Operation operation = tree.getOperation(node);
+        int left = tree.getChild(node, 0);
+        switch (operation) {
+            case CONCATENATION:
+                int count = tree.getChildCount(node);
+                int first = reserve(count);
+                for (int i = 0; i < count; i++) {
+                    expression(tree.getChild(node, i), first + i);
+                }
+                int joined = target(to);
+                emit(Program.CONCAT, joined, first, count);
+                return joined;
+            case AND:
+            case OR:
+                int result = target(to);
+                int otherwise = branch(node, false);
+                emit(Program.MOVE, result, one);
+                int done = emitJump(Program.JUMP);
+                patch(otherwise, size);
+                emit(Program.MOVE, result, zero);
+                patch(done, size);
+                return result;
+            case IN:
+                int key = tree.getKind(left) == SyntaxTree.Kind.GROUP ? join(left, 0) : expression(left, ANYWHERE);
+                int found = target(to);
+                emit(Program.ARRAY_IN, found, array(tree.getChild(node, 1)), key);
+                return found;
+            case MATCH:
+            case NOTMATCH:
+                int text = protect(expression(left, ANYWHERE), tree.getChild(node, 1));
+                int regex = regex(tree.getChild(node, 1));
+                int matched = target(to);
+                emit(Program.MATCH, matched, text, regex, operation == Operation.NOTMATCH ? 1 : 0);
+                return matched;
+            default:
+                break;
+        }
+        int right = tree.getChild(node, 1);
+        int mask = comparisonMask(operation);
+        int a = protect(operand(left, right, mask == 0), right);
+        int b = operand(right, left, mask == 0);
+        int result = target(to);
+        if (mask != 0) {
+            emit(Program.COMPARE, result, mask, a, b);
+        } else {
+            emit(arithmetic(operation), result, a, b);
+        }
+        return result;
+    }
+
+    // An operand of arithmetic, or of a comparison with other. A field used as a number
+    // is read as one straight from the input, without making its text.
+    private int operand(int node, int other, boolean arithmetic) {
+        if (tree.getKind(node) == SyntaxTree.Kind.UNARY && tree.getOperation(node) == Operation.DOLLAR) {
+            if (arithmetic) {
+                return simple(Program.FIELD_NUMBER, expression(tree.getChild(node, 0), ANYWHERE), ANYWHERE);
+            }
+            if (isNumber(other)) {
+                // Only the comparison reads the value, and it never needs the text
+                return simple(Program.FIELD_COMPARE, expression(tree.getChild(node, 0), ANYWHERE), ANYWHERE);
+            }
+        }
+        return expression(node, ANYWHERE);
+    }
+
+    // Whether node's value is always a NUMBER
+    private boolean isNumber(int node) {
+        if (node < 0) {
+            return false;
+        }
+        switch (tree.getKind(node)) {
+            case NUMBER:
+                return true;
+            case UNARY:
+                Operation operation = tree.getOperation(node);
+                return operation == Operation.UNARYNEG || operation == Operation.UNARYPOS;
+            case BINARY:
+                switch (tree.getOperation(node)) {
+                    case ADD:
+                    case SUBTRACT:
+                    case MULTIPLY:
+                    case DIVIDE:
+                    case MODULO:
+                    case EXPONENT:
+                        return true;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    private static int arithmetic(Operation operation) {
+        switch (operation) {
+            case ADD:
+            case ADD_ASSIGN:
+                return Program.ADD;
+            case SUBTRACT:
+            case SUBTRACT_ASSIGN:
+            case SUB_ASSIGN:
+                return Program.SUBTRACT;
+            case MULTIPLY:
+            case MULTIPLY_ASSIGN:
+            case MUL_ASSIGN:
+                return Program.MULTIPLY;
+            case DIVIDE:
+            case DIVIDE_ASSIGN:
+            case DIV_ASSIGN:
+                return Program.DIVIDE;
+            case MODULO:
+            case MODULO_ASSIGN:
+            case MOD_ASSIGN:
+                return Program.MODULO;
+            case EXPONENT:
+            case EXPONENT_ASSIGN:
+            case EXP_ASSIGN:
+                return Program.POWER;
+            default:
+                throw new IllegalArgumentException("Not an arithmetic operation: " + operation);
+        }
+    }
+
+    private int assign(int node, int to) {
+        Operation operation = tree.getOperation(node);
+        int value = tree.getChild(node, 1);
+        Place place = place(tree.getChild(node, 0), effects[value]);
+        if (operation == Operation.ASSIGN) {
+            if (place.kind == Place.REGISTER) {
+                expression(value, place.operand);
+                return move(place.operand, to);
+            }
+            int result = expression(value, ANYWHERE);
+            store(place, result);
+            return move(result, to);
+        }
+        int opcode = arithmetic(operation);
+        if (place.kind == Place.REGISTER) {
+            int b = operand(value, -1, true);
+            emit(opcode, place.operand, place.operand, b);
+            return move(place.operand, to);
+        }
+        int current = temp();
+        load(place, current);
+        int b = operand(value, -1, true);
+        emit(opcode, current, current, b);
+        store(place, current);
+        return move(current, to);
+    }
+
+    private int getline(int node, int to) {
+        int variable = tree.getChild(node, 0);
+        int file = tree.getChild(node, 1);
+        int command = tree.getChild(node, 2);
+        Place place = tree.getKind(variable) == SyntaxTree.Kind.EMPTY ? null : place(variable, true);
+        int kind = Program.MAIN_INPUT;
+        int source = Program.NONE;
+        if (tree.getKind(file) != SyntaxTree.Kind.EMPTY) {
+            kind = Program.FILE_INPUT;
+            source = expression(file, ANYWHERE);
+        } else if (tree.getKind(command) != SyntaxTree.Kind.EMPTY) {
+            kind = Program.COMMAND_INPUT;
+            source = expression(command, ANYWHERE);
+        }
+        int status = target(to);
+        if (place == null) {
+            emit(Program.GETLINE, status, source, kind, Program.NONE);
+        } else if (place.kind == Place.REGISTER) {
+            emit(Program.GETLINE, status, source, kind, place.operand);
+        } else {
+            // Only a line that was read is stored
+            int line = temp();
+            emit(Program.GETLINE, status, source, kind, line);
+            emit(Program.JUMP_IF, 3, status, zero, -1);
+            int skip = size - 1;
+            store(place, line);
+            patch(skip, size);
+        }
+        return status;
+    }
+
+    private int call(int node, int to) {
+        String name = tree.getValue(node);
+        int count = tree.getChildCount(node);
+        AwkRuntime.Builtin builtin = AwkRuntime.Builtin.named(name);
+        if (builtin != null) {
+            if (count < builtin.minArguments || count > builtin.maxArguments) {
+                throw error("Wrong number of arguments to " + name, node);
+            }
+            return builtin(node, builtin, count, to);
+        }
+        Function callee = functions.get(name);
+        if (callee == null) {
+            throw error("Undefined function " + name, node);
+        }
+        if (count > callee.parameters.length) {
+            throw error("Too many arguments to " + name, node);
+        }
+        int first = reserve(count);
+        for (int i = 0; i < count; i++) {
+            int argument = tree.getChild(node, i);
+            if (callee.arrays[i]) {
+                if (tree.getKind(argument) != SyntaxTree.Kind.VARIABLE) {
+                    throw error("Expected an array for " + callee.parameters[i], argument);
+                }
+                // Copies the reference to the array
+                emit(Program.MOVE, first + i, array(argument));
+            } else {
+                expression(argument, first + i);
+            }
+        }
+        int result = target(to);
+        emit(Program.CALL, result, callee.index, first, count);
+        return result;
+    }
+
+    private int builtin(int node, AwkRuntime.Builtin builtin, int count, int to) {
+        switch (builtin) {
+            case LENGTH:
+                if (count == 1) {
+                    int argument = tree.getChild(node, 0);
+                    if (tree.getKind(argument) == SyntaxTree.Kind.VARIABLE
+                            && isArray(function, tree.getValue(argument))) {
+                        int length = target(to);
+                        emit(Program.ARRAY_LENGTH, length, array(argument));
+                        return length;
+                    }
+                }
+                break;
+            case SPLIT:
+                int text = protect(expression(tree.getChild(node, 0), ANYWHERE), node);
+                int array = array(tree.getChild(node, 1));
+                int separator = count == 3 ? regex(tree.getChild(node, 2)) : Program.NONE;
+                int fields = target(to);
+                emit(Program.SPLIT, fields, text, array, separator);
+                return fields;
+            case SUB:
+            case GSUB:
+                int regex = protect(regex(tree.getChild(node, 0)), node);
+                int replacement = protect(expression(tree.getChild(node, 1), ANYWHERE), node);
+                Place place = count == 3 ? assignable(tree.getChild(node, 2))
+                        : new Place(Place.FIELD, zero, 0);
+                int global = builtin == AwkRuntime.Builtin.GSUB ? 1 : 0;
+                int changes = target(to);
+                if (place == null) {
+                    // Not something that can be assigned, so only the count is wanted
+                    int scratch = temp();
+                    expression(tree.getChild(node, 2), scratch);
+                    emit(Program.SUBSTITUTE, changes, regex, replacement, scratch, global);
+                } else if (place.kind == Place.REGISTER) {
+                    emit(Program.SUBSTITUTE, changes, regex, replacement, place.operand, global);
+                } else {
+                    int value = temp();
+                    load(place, value);
+                    emit(Program.SUBSTITUTE, changes, regex, replacement, value, global);
+                    emit(Program.JUMP_IF, 3, changes, zero, -1);
+                    int skip = size - 1;
+                    store(place, value);
+                    patch(skip, size);
+                }
+                return changes;
+            default:
+                break;
+        }
+        int first = reserve(count);
+        for (int i = 0; i < count; i++) {
+            int argument = tree.getChild(node, i);
+            if (builtin == AwkRuntime.Builtin.MATCH && i == 1) {
+                move(regex(argument), first + i);
+            } else {
+                expression(argument, first + i);
+            }
+        }
+        int result = target(to);
+        emit(Program.BUILTIN, result, builtin.ordinal(), first, count);
+        return result;
+    }
+
+    // A regular expression written as one stands for itself, not for matching the record
+    private int regex(int node) {
+        if (tree.getKind(node) == SyntaxTree.Kind.REGEX) {
+            String text = tokens.getText(tree.getToken(node)).substring(1);
+            return stringConstant(text.replace("\\`", "`"));
+        }
+        return expression(node, ANYWHERE);
+    }
+
+    // Variables, elements and fields
+
+    // Where node's value is kept. With protect, registers an element or field index
+    // comes from are copied first, in case what comes next changes them.
+    private Place place(int node, boolean protect) {
+        Place place = assignable(node);
+        if (place == null) {
+            throw error("Cannot assign to " + tree.toString(node), node);
+        }
+        if (protect && place.kind == Place.ELEMENT && isVolatile(place.key)) {
+            int key = temp();
+            emit(Program.MOVE, key, place.key);
+            return new Place(Place.ELEMENT, place.operand, key);
+        }
+        if (protect && place.kind == Place.FIELD && isVolatile(place.operand)) {
+            int index = temp();
+            emit(Program.MOVE, index, place.operand);
+            return new Place(Place.FIELD, index, 0);
+        }
+        return place;
+    }
+
+    // Like place(), but null for a node that cannot be assigned
+    private Place assignable(int node) {
+        SyntaxTree.Kind kind = tree.getKind(node);
+        if (kind == SyntaxTree.Kind.INDEX) {
+            int array = array(tree.getChild(node, 0));
+            return new Place(Place.ELEMENT, array, key(node));
+        }
+        if (kind == SyntaxTree.Kind.UNARY && tree.getOperation(node) == Operation.DOLLAR) {
+            return new Place(Place.FIELD, expression(tree.getChild(node, 0), ANYWHERE), 0);
+        }
+        if (kind != SyntaxTree.Kind.VARIABLE) {
+            return null;
+        }
+        String name = tree.getValue(node);
+        int special = AwkRuntime.specialIndex(name);
+        int parameter = function == null ? -1 : function.parameter(name);
+        if (parameter < 0 && special >= 0) {
+            return new Place(Place.SPECIAL, special, 0);
+        }
+        if (isArray(function, name)) {
+            throw error("Cannot use array " + name + " as a scalar", node);
+        }
+        if (parameter >= 0) {
+            return new Place(Place.REGISTER, parameter, 0);
+        }
+        if (AwkRuntime.Builtin.named(name) != null || functions.containsKey(name)) {
+            throw error("Cannot use function " + name + " as a variable", node);
+        }
+        return new Place(Place.REGISTER, ~global(name), 0);
+    }
+
+    private void load(Place place, int to) {
+        switch (place.kind) {
+            case Place.REGISTER:
+                emit(Program.MOVE, to, place.operand);
+                break;
+            case Place.SPECIAL:
+                emit(Program.GET_SPECIAL, to, place.operand);
+                break;
+            case Place.ELEMENT:
+                emit(Program.ARRAY_GET, to, place.operand, place.key);
+                break;
+            default:
+                emit(Program.GET_FIELD, to, place.operand);
+                break;
+        }
+    }
+
+    private void store(Place place, int value) {
+        switch (place.kind) {
+            case Place.REGISTER:
+                move(value, place.operand);
+                break;
+            case Place.SPECIAL:
+                emit(Program.SET_SPECIAL, place.operand, value);
+                break;
+            case Place.ELEMENT:
+                emit(Program.ARRAY_SET, place.operand, place.key, value);
+                break;
+            default:
+                emit(Program.SET_FIELD, place.operand, value);
+                break;
+        }
+    }
+
+    // The register holding the array a VARIABLE names
+    private int array(int node) {
+        String name = tree.getValue(node);
+        int parameter = function == null ? -1 : function.parameter(name);
+        if (!isArray(function, name) || (parameter < 0 && AwkRuntime.specialIndex(name) >= 0)) {
+            throw error("Cannot use " + name + " as an array", node);
+        }
+        return parameter >= 0 ? parameter : ~global(name);
+    }
+
+    // The subscript of an INDEX, with several joined by SUBSEP
+    private int key(int node) {
+        int count = tree.getChildCount(node) - 1;
+        if (count == 1) {
+            return expression(tree.getChild(node, 1), ANYWHERE);
+        }
+        return join(node, 1);
+    }
+
+    private int join(int node, int from) {
+        int count = tree.getChildCount(node) - from;
+        int first = reserve(count);
+        for (int i = 0; i < count; i++) {
+            expression(tree.getChild(node, from + i), first + i);
+        }
+        int key = temp();
+        emit(Program.JOIN, key, first, count);
+        return key;
+    }
+
+    // Copies a variable's register into a temporary if evaluating next could change it
+    private int protect(int register, int next) {
+        if (!effects[next] || !isVolatile(register)) {
+            return register;
+        }
+        int copy = temp();
+        emit(Program.MOVE, copy, register);
+        return copy;
+    }
+
+    private boolean isVolatile(int register) {
+        return register < 0 ? !constant[~register] : register < (function == null ? 0 : function.parameters.length);
+    }
+
+    // Registers
+
+    private int move(int from, int to) {
+        if (to == ANYWHERE || to == from) {
+            return from;
+        }
+        emit(Program.MOVE, to, from);
+        return to;
+    }
+
+    private int target(int to) {
+        return to == ANYWHERE ? temp() : to;
+    }
+
+    private int temp() {
+        return reserve(1);
+    }
+
+    private int reserve(int count) {
+        int first = temps;
+        temps += count;
+        frameSize = Math.max(frameSize, temps);
+        return first;
+    }
+
+    private int global(String name) {
+        Integer index = globals.get(name);
+        if (index == null) {
+            index = addGlobal(name, Cell.UNINIT, 0, null, false);
+            globals.put(name, index);
+        }
+        return index;
+    }
+
+    private int hiddenGlobal() {
+        return ~addGlobal(null, Cell.UNINIT, 0, null, false);
+    }
+
+    private int numberConstant(double value) {
+        Integer index = numberConstants.get(value);
+        if (index == null) {
+            index = addGlobal(null, Cell.NUMBER, value, null, true);
+            numberConstants.put(value, index);
+        }
+        return ~index;
+    }
+
+    private int stringConstant(String value) {
+        Integer index = stringConstants.get(value);
+        if (index == null) {
+            index = addGlobal(null, Cell.STRING, 0, value, true);
+            stringConstants.put(value, index);
+        }
+        return ~index;
+    }
+
+    private int addGlobal(String name, byte type, double number, String string, boolean isConstant) {
+        int index = globalNames.size();
+        if (index == globalTypes.length) {
+            int capacity = index * 2;
+            globalTypes = Arrays.copyOf(globalTypes, capacity);
+            globalNumbers = Arrays.copyOf(globalNumbers, capacity);
+            globalStrings = Arrays.copyOf(globalStrings, capacity);
+            constant = Arrays.copyOf(constant, capacity);
+        }
+        globalNames.add(name);
+        globalTypes[index] = type;
+        globalNumbers[index] = number;
+        globalStrings[index] = string;
+        constant[index] = isConstant;
+        return index;
+    }
+
+    // Code
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + words.length));
+        }
+        System.arraycopy(words, 0, code, size, words.length);
+        size += words.length;
+    }
+
+    // Emits a jump with its target still to be patched, and returns where the target goes
+    private int emitJump(int opcode, int... operands) {
+        int[] words = Arrays.copyOf(operands, operands.length + 1);
+        words[operands.length] = -1;
+        emit(opcode);
+        emit(words);
+        return size - 1;
+    }
+
+    // Jump targets waiting for patch() hold the place of the next one in the chain
+    private int chain(int first, int second) {
+        if (first < 0) {
+            return second;
+        }
+        int last = first;
+        while (code[last] >= 0) {
+            last = code[last];
+        }
+        code[last] = second;
+        return first;
+    }
+
+    private void patch(int jumps, int target) {
+        while (jumps >= 0) {
+            int next = code[jumps];
+            code[jumps] = target;
+            jumps = next;
+        }
+    }
+
+    private IllegalArgumentException error(String message, int node) {
+        int token = tree.getToken(node);
+        if (token < 0 || token >= tokens.size()) {
+            return new IllegalArgumentException(message);
+        }
+        return new IllegalArgumentException(message + " at line " + tokens.getLineNumber(token) + ", position "
+                + tokens.getPosition(token));
+    }
+}
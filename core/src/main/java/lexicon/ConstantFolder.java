@@ -0,0 +1,236 @@
+package lexicon;
+
+// Works out the parts of a parsed program that only depend on literals, once, before
+// it runs: arithmetic, comparisons, !, && and || on constants, runs of constants in a
+// concatenation and the branch a constant condition picks in ?:. A node that comes to
+// a constant becomes a NUMBER or STRING in place, and a ?: with a constant condition
+// is replaced by its branch. Nodes come after their children, so one pass in order
+// folds whole subtrees. Nothing is folded that depends on the runtime: a number only
+// becomes text if it is an integer, which reads the same whatever CONVFMT is, and a
+// division by zero is left to fail when it runs.
+class ConstantFolder {
+    private final SyntaxTree tree;
+
+    public ConstantFolder(SyntaxTree tree) {
+        this.tree = tree;
+    }
+
+    // Folds root and everything under it, and returns the node that now stands for root
+    public int fold(int root) {
+        // What each node has been replaced by, so its parent can point there instead
+        int[] replacements = new int[root + 1];
+        for (int node = 0; node <= root; node++) {
+            for (int i = 0; i < tree.getChildCount(node); i++) {
+                int child = tree.getChild(node, i);
+                if (replacements[child] != child) {
+                    tree.setChild(node, i, replacements[child]);
+                }
+            }
+            replacements[node] = foldNode(node);
+        }
+        return replacements[root];
+    }
+
+    private int foldNode(int node) {
+        switch (tree.getKind(node)) {
+            case UNARY:
+                foldUnary(node);
+                return node;
+            case BINARY:
+                foldBinary(node);
+                return node;
+            case CONDITIONAL:
+                int condition = tree.getChild(node, 0);
+                return isConstant(condition) ? tree.getChild(node, isTrue(condition) ? 1 : 2) : node;
+            default:
+                return node;
+        }
+    }
+
+    private void foldUnary(int node) {
+        int operand = tree.getChild(node, 0);
+        if (!isConstant(operand)) {
+            return;
+        }
+        switch (tree.getOperation(node)) {
+            case NOT:
+                tree.setNumber(node, isTrue(operand) ? 0 : 1);
+                break;
+            case UNARYNEG:
+                tree.setNumber(node, -number(operand));
+                break;
+            case UNARYPOS:
+                tree.setNumber(node, number(operand));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void foldBinary(int node) {
+        Operation operation = tree.getOperation(node);
+        if (operation == Operation.CONCATENATION) {
+            foldConcatenation(node);
+            return;
+        }
+        int left = tree.getChild(node, 0);
+        int right = tree.getChild(node, 1);
+        if (operation == Operation.AND || operation == Operation.OR) {
+            // The right side only matters when the left does not settle it
+            boolean settles = operation == Operation.OR;
+            if (isConstant(left) && isTrue(left) == settles) {
+                tree.setNumber(node, settles ? 1 : 0);
+            } else if (isConstant(left) && isConstant(right)) {
+                tree.setNumber(node, isTrue(right) ? 1 : 0);
+            }
+            return;
+        }
+        if (!isConstant(left) || !isConstant(right)) {
+            return;
+        }
+        if (isComparison(operation)) {
+            foldComparison(node, operation, left, right);
+            return;
+        }
+        double a = number(left);
+        double b = number(right);
+        switch (operation) {
+            case ADD:
+                tree.setNumber(node, a + b);
+                break;
+            case SUBTRACT:
+                tree.setNumber(node, a - b);
+                break;
+            case MULTIPLY:
+                tree.setNumber(node, a * b);
+                break;
+            case DIVIDE:
+                if (b != 0) {
+                    tree.setNumber(node, a / b);
+                }
+                break;
+            case MODULO:
+                if (b != 0) {
+                    tree.setNumber(node, Machine.modulo(a, b));
+                }
+                break;
+            case EXPONENT:
+                tree.setNumber(node, Machine.power(a, b));
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Joins each run of constants with known text into the first of them. The node
+    // becomes a STRING if that leaves one.
+    private void foldConcatenation(int node) {
+        int count = tree.getChildCount(node);
+        int kept = 0;
+        for (int i = 0; i < count; ) {
+            int child = tree.getChild(node, i);
+            String text = text(child);
+            int end = i + 1;
+            if (text != null) {
+                StringBuilder builder = null;
+                String next;
+                while (end < count && (next = text(tree.getChild(node, end))) != null) {
+                    if (builder == null) {
+                        builder = new StringBuilder(text);
+                    }
+                    builder.append(next);
+                    end++;
+                }
+                if (builder != null) {
+                    tree.setString(child, builder.toString());
+                }
+            }
+            tree.setChild(node, kept++, child);
+            i = end;
+        }
+        if (kept == 1 && text(tree.getChild(node, 0)) != null) {
+            tree.setString(node, text(tree.getChild(node, 0)));
+        } else {
+            tree.truncateChildren(node, kept);
+        }
+    }
+
+    private static boolean isComparison(Operation operation) {
+        switch (operation) {
+            case LT:
+            case LE:
+            case GT:
+            case GE:
+            case EQ:
+            case NE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Two numbers compare as numbers, and anything else as text
+    private void foldComparison(int node, Operation operation, int left, int right) {
+        int comparison;
+        if (tree.getKind(left) == SyntaxTree.Kind.NUMBER && tree.getKind(right) == SyntaxTree.Kind.NUMBER) {
+            comparison = AwkRuntime.compare(tree.getNumber(left), tree.getNumber(right));
+        } else {
+            String a = text(left);
+            String b = text(right);
+            if (a == null || b == null) {
+                // The number's text comes from CONVFMT
+                return;
+            }
+            comparison = Integer.signum(a.compareTo(b));
+        }
+        boolean holds;
+        switch (operation) {
+            case LT:
+                holds = comparison < 0;
+                break;
+            case LE:
+                holds = comparison <= 0;
+                break;
+            case GT:
+                holds = comparison > 0;
+                break;
+            case GE:
+                holds = comparison >= 0;
+                break;
+            case EQ:
+                holds = comparison == 0;
+                break;
+            default:
+                holds = comparison != 0;
+                break;
+        }
+        tree.setNumber(node, holds ? 1 : 0);
+    }
+
+    private boolean isConstant(int node) {
+        SyntaxTree.Kind kind = tree.getKind(node);
+        return kind == SyntaxTree.Kind.NUMBER || kind == SyntaxTree.Kind.STRING;
+    }
+
+    private boolean isTrue(int node) {
+        return tree.getKind(node) == SyntaxTree.Kind.NUMBER ? tree.getNumber(node) != 0
+                : !tree.getString(node).isEmpty();
+    }
+
+    private double number(int node) {
+        return tree.getKind(node) == SyntaxTree.Kind.NUMBER ? tree.getNumber(node)
+                : AwkRuntime.toNumber(tree.getString(node));
+    }
+
+    // The text of a constant, or null if it is not one or its text depends on CONVFMT
+    private String text(int node) {
+        switch (tree.getKind(node)) {
+            case NUMBER:
+                return AwkRuntime.integerToString(tree.getNumber(node));
+            case STRING:
+                return tree.getString(node);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package lexicon;
+
+import java.util.Objects;
+
+// Collects lexing errors for a Lexer in recovering mode. The arrays are allocated up
+// front, so recording an error allocates nothing. Errors past the capacity are only
+// counted.
+class Diagnostics {
+    enum Kind {
+        UNRECOGNIZED_CHARACTER, UNTERMINATED_STRING, UNTERMINATED_PATTERN
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final byte[] kinds;
+    private final int[] lines;
+    private final int[] positions;
+    private final long[] offsets;
+    private int size;
+    private int dropped;
+
+    public Diagnostics(int capacity) {
+        kinds = new byte[capacity];
+        lines = new int[capacity];
+        positions = new int[capacity];
+        offsets = new long[capacity];
+    }
+
+    void add(Kind kind, int lineNumber, int position, long offset) {
+        if (size == kinds.length) {
+            dropped++;
+            return;
+        }
+        kinds[size] = (byte) kind.ordinal();
+        lines[size] = lineNumber;
+        positions[size] = position;
+        offsets[size] = offset;
+        size++;
+    }
+
+    // Number of errors recorded
+    public int size() {
+        return size;
+    }
+
+    // Number of errors that did not fit
+    public int getDropped() {
+        return dropped;
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && dropped == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        dropped = 0;
+    }
+
+    public Kind getKind(int i) {
+        return KINDS[kinds[Objects.checkIndex(i, size)]];
+    }
+
+    public int getLineNumber(int i) {
+        return lines[Objects.checkIndex(i, size)];
+    }
+
+    public int getPosition(int i) {
+        return positions[Objects.checkIndex(i, size)];
+    }
+
+    // Offset of the start of the bad text, in the source's units
+    public long getOffset(int i) {
+        return offsets[Objects.checkIndex(i, size)];
+    }
+
+    public String toString(int i) {
+        return getKind(i) + " at line " + getLineNumber(i) + ", position " + getPosition(i);
+    }
+}
@@ -0,0 +1,378 @@
+package lexicon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Keeps a document and its tokens up to date as the document is edited. An edit only
+// re-lexes from the token in front of it until the new tokens line up with the old
+// ones again. Tokens after that point are moved along lazily, so a small edit costs
+// the same no matter how big the document is.
+class IncrementalLexer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final GapText text;
+    // Names stay interned across edits, so ids do not change under the caller
+    private final SymbolTable symbols = new SymbolTable();
+
+    // Tokens are kept in a gap buffer. Index i < gapStart is stored as is, anything
+    // from gapEnd on still has to be moved by tailOffsetDelta and tailLineDelta.
+    private byte[] types;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] lines;
+    private int[] positions;
+    private int[] symbolIds;
+    private int gapStart;
+    private int gapEnd;
+    private int tailOffsetDelta;
+    private int tailLineDelta;
+
+    // False when the last lex hit an error. Tokens stop in front of it.
+    private boolean complete;
+    // Tokens produced by the last edit, for checking how much was re-lexed
+    private int relexedCount;
+
+    public IncrementalLexer(CharSequence document) {
+        text = new GapText(document);
+        types = new byte[DEFAULT_CAPACITY];
+        offsets = new int[DEFAULT_CAPACITY];
+        lengths = new int[DEFAULT_CAPACITY];
+        lines = new int[DEFAULT_CAPACITY];
+        positions = new int[DEFAULT_CAPACITY];
+        symbolIds = new int[DEFAULT_CAPACITY];
+        gapEnd = DEFAULT_CAPACITY;
+        relex(0, 1, 0, 0, 0);
+    }
+
+    // Replaces removedLength characters at offset with insertedText and brings the
+    // tokens up to date. Lexing errors are thrown just like Lexer.lex() would; the
+    // edit itself is kept and the tokens stop in front of the error.
+    public void edit(int offset, int removedLength, CharSequence insertedText) {
+        Objects.checkFromIndexSize(offset, removedLength, text.length());
+        // Find the first token whose text, or the character after it, reaches the edit
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (consumedEnd(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int restart = low < size() && getOffset(low) <= offset ? low : low - 1;
+        // The lexer may have looked a few characters further, as a number does for an
+        // exponent, so a token ending that close to the edit is lexed again too
+        while (restart > 0 && getOffset(restart - 1) + getLength(restart - 1) + Lexer.MAX_LOOKAHEAD > offset) {
+            restart--;
+        }
+        if (!complete) {
+            // Nothing after the error was lexed, so start again from the last good token
+            restart = Math.min(restart, size() - 1);
+        }
+
+        int start = 0;
+        int lineNumber = 1;
+        int linePosition = 0;
+        if (restart >= 0) {
+            start = getOffset(restart);
+            lineNumber = getLineNumber(restart);
+            linePosition = startPosition(restart);
+        } else {
+            restart = 0;
+        }
+        moveGapTo(restart);
+        text.replace(offset, removedLength, insertedText);
+        relex(start, lineNumber, linePosition, offset + insertedText.length(), insertedText.length() - removedLength);
+    }
+
+    // Lexes from start until a new token at or after editEnd matches an old one that has
+    // been moved by delta. Old tokens that start in front of the match are dropped.
+    private void relex(int start, int lineNumber, int linePosition, int editEnd, int delta) {
+        Lexer lexer = new Lexer(new StringHandler(text, start), lineNumber, linePosition, symbols);
+        TokenBuffer scratch = new TokenBuffer(new StringHandler(text, 0), 1, symbols);
+        // Matching up with the old tokens also means running into the same error
+        boolean completeAfterResync = complete;
+        relexedCount = 0;
+        complete = false;
+        try {
+            while (lexer.lexNext(scratch)) {
+                relexedCount++;
+                int tokenOffset = scratch.getOffset(0);
+                int tokenLine = scratch.getLineNumber(0);
+                int tokenPosition = scratch.getPosition(0);
+                if (tokenOffset >= editEnd) {
+                    int target = tokenOffset - delta;
+                    while (gapEnd < types.length && offsets[gapEnd] + tailOffsetDelta < target) {
+                        gapEnd++;
+                    }
+                    if (gapEnd < types.length && offsets[gapEnd] + tailOffsetDelta == target) {
+                        resync(tokenLine, tokenPosition, delta);
+                        complete = completeAfterResync;
+                        return;
+                    }
+                } else {
+                    // Old tokens up to the end of the edit can never match
+                    while (gapEnd < types.length && offsets[gapEnd] + tailOffsetDelta < editEnd - delta) {
+                        gapEnd++;
+                    }
+                }
+                append(scratch.getType(0), tokenOffset, scratch.getLength(0), tokenLine, tokenPosition,
+                        scratch.getSymbolId(0));
+                scratch.clear();
+            }
+            gapEnd = types.length;
+            complete = true;
+        } catch (IllegalArgumentException e) {
+            gapEnd = types.length;
+            throw e;
+        }
+    }
+
+    // The old token at gapEnd is where the new token would be. Everything from there on
+    // is the same apart from its line, and its position while it stays on that line.
+    private void resync(int lineNumber, int linePosition, int delta) {
+        int anchorLine = lines[gapEnd];
+        int positionDelta = linePosition - positions[gapEnd];
+        if (positionDelta != 0) {
+            for (int i = gapEnd; i < types.length && lines[i] == anchorLine; i++) {
+                positions[i] += positionDelta;
+            }
+        }
+        tailLineDelta = lineNumber - anchorLine;
+        tailOffsetDelta += delta;
+    }
+
+    // Moves the gap so that index is the first token after it
+    private void moveGapTo(int index) {
+        while (gapStart > index) {
+            gapStart--;
+            gapEnd--;
+            copy(gapStart, gapEnd);
+            offsets[gapEnd] -= tailOffsetDelta;
+            lines[gapEnd] -= tailLineDelta;
+        }
+        while (gapStart < index) {
+            copy(gapEnd, gapStart);
+            offsets[gapStart] += tailOffsetDelta;
+            lines[gapStart] += tailLineDelta;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void copy(int from, int to) {
+        types[to] = types[from];
+        offsets[to] = offsets[from];
+        lengths[to] = lengths[from];
+        lines[to] = lines[from];
+        positions[to] = positions[from];
+        symbolIds[to] = symbolIds[from];
+    }
+
+    private void append(TokenType type, int offset, int length, int lineNumber, int position, int symbolId) {
+        if (gapStart == gapEnd) {
+            grow();
+        }
+        types[gapStart] = (byte) type.ordinal();
+        offsets[gapStart] = offset;
+        lengths[gapStart] = length;
+        lines[gapStart] = lineNumber;
+        positions[gapStart] = position;
+        symbolIds[gapStart] = symbolId;
+        gapStart++;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        int tail = types.length - gapEnd;
+        types = grow(types, capacity, tail);
+        offsets = grow(offsets, capacity, tail);
+        lengths = grow(lengths, capacity, tail);
+        lines = grow(lines, capacity, tail);
+        positions = grow(positions, capacity, tail);
+        symbolIds = grow(symbolIds, capacity, tail);
+        gapEnd = capacity - tail;
+    }
+
+    private byte[] grow(byte[] array, int capacity, int tail) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(array, 0, grown, 0, gapStart);
+        System.arraycopy(array, array.length - tail, grown, capacity - tail, tail);
+        return grown;
+    }
+
+    private int[] grow(int[] array, int capacity, int tail) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, gapStart);
+        System.arraycopy(array, array.length - tail, grown, capacity - tail, tail);
+        return grown;
+    }
+
+    // Offset just past everything the lexer looked at to produce the i-th token
+    private int consumedEnd(int i) {
+        TokenType type = getType(i);
+        if (type == TokenType.SEPARATOR && getLength(i) == 0) {
+            return getOffset(i) + 1; // The newline itself
+        }
+        if (type == TokenType.STRINGLITERAL || type == TokenType.PATTERN) {
+            return getOffset(i) + getLength(i) + 1; // The closing quote
+        }
+        return getOffset(i) + getLength(i);
+    }
+
+    // The line position the lexer was at when it started the i-th token
+    private int startPosition(int i) {
+        TokenType type = getType(i);
+        if (type == TokenType.STRINGLITERAL || type == TokenType.PATTERN) {
+            return getPosition(i) + 1;
+        }
+        return getPosition(i);
+    }
+
+    private int index(int i) {
+        Objects.checkIndex(i, size());
+        return i < gapStart ? i : i + gapEnd - gapStart;
+    }
+
+    public int size() {
+        return gapStart + types.length - gapEnd;
+    }
+
+    // False if the document does not lex. The tokens then stop in front of the error.
+    public boolean isComplete() {
+        return complete;
+    }
+
+    int getRelexedCount() {
+        return relexedCount;
+    }
+
+    public TokenType getType(int i) {
+        return TYPES[types[index(i)]];
+    }
+
+    public int getOffset(int i) {
+        int index = index(i);
+        return index < gapStart ? offsets[index] : offsets[index] + tailOffsetDelta;
+    }
+
+    public int getLength(int i) {
+        return lengths[index(i)];
+    }
+
+    public int getLineNumber(int i) {
+        int index = index(i);
+        return index < gapStart ? lines[index] : lines[index] + tailLineDelta;
+    }
+
+    public int getPosition(int i) {
+        return positions[index(i)];
+    }
+
+    public int getSymbolId(int i) {
+        return symbolIds[index(i)];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public String getValue(int i) {
+        int symbolId = getSymbolId(i);
+        if (symbolId >= 0) {
+            return symbols.name(symbolId);
+        }
+        int offset = getOffset(i);
+        return Lexer.valueOf(getType(i), text.subSequence(offset, offset + getLength(i)).toString());
+    }
+
+    public Token get(int i) {
+        return new Token(getType(i), getValue(i), getLineNumber(i), getPosition(i), getSymbolId(i));
+    }
+
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+
+    public String getDocument() {
+        return text.toString();
+    }
+
+    // The document text, with a gap at the last edit so typing does not move the rest
+    private static class GapText implements CharSequence {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapText(CharSequence document) {
+            chars = new char[document.length() + DEFAULT_CAPACITY];
+            for (int i = 0; i < document.length(); i++) {
+                chars[i] = document.charAt(i);
+            }
+            gapStart = document.length();
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int removedLength, CharSequence inserted) {
+            moveGapTo(offset);
+            gapEnd += removedLength;
+            if (gapEnd - gapStart < inserted.length()) {
+                int tail = chars.length - gapEnd;
+                int capacity = Math.max(chars.length * 2, length() + inserted.length() + DEFAULT_CAPACITY);
+                char[] grown = new char[capacity];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+                chars = grown;
+                gapEnd = capacity - tail;
+            }
+            for (int i = 0; i < inserted.length(); i++) {
+                chars[gapStart++] = inserted.charAt(i);
+            }
+        }
+
+        private void moveGapTo(int offset) {
+            if (offset < gapStart) {
+                int count = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (offset > gapStart) {
+                int count = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                builder.append(charAt(i));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package lexicon;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder event for one lex(), lexToBuffer() or lexOffsets() call. Its duration
+// is the time the call took. When the event is not enabled in the recording, the
+// Lexer only pays for a check of that.
+@Name("lexicon.Lex")
+@Label("Lex")
+@Category("Lexicon")
+@Description("One call that lexed a whole input")
+@StackTrace(false)
+class LexEvent extends Event {
+    @Label("Units")
+    @Description("Input read: characters for text, bytes for UTF-8 input")
+    long units;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Errors")
+    @Description("Errors recorded in recovering mode")
+    int errors;
+}
@@ -0,0 +1,119 @@
+package lexicon;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// LexerMetrics that add everything up: calls, input, tokens and errors, tokens of each
+// type, and the sampled scanning time of each path. One can be shared by Lexers on
+// several threads.
+class LexerCounters implements LexerMetrics {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final Path[] PATHS = Path.values();
+
+    private final int sampleInterval;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder units = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder[] types = adders(TYPES.length);
+    private final LongAdder[] samples = adders(PATHS.length);
+    private final LongAdder[] sampledNanos = adders(PATHS.length);
+
+    public LexerCounters() {
+        this(64);
+    }
+
+    public LexerCounters(int sampleInterval) {
+        if (sampleInterval < 0) {
+            throw new IllegalArgumentException("Sample interval must not be negative: " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public int sampleInterval() {
+        return sampleInterval;
+    }
+
+    @Override
+    public void lexed(long units, int tokens, int errors, long nanos) {
+        calls.increment();
+        this.units.add(units);
+        this.tokens.add(tokens);
+        this.errors.add(errors);
+        this.nanos.add(nanos);
+    }
+
+    @Override
+    public void counted(TokenType type, long count) {
+        types[type.ordinal()].add(count);
+    }
+
+    @Override
+    public void sampled(Path path, long nanos) {
+        samples[path.ordinal()].increment();
+        sampledNanos[path.ordinal()].add(nanos);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getUnits() {
+        return units.sum();
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    public long getCount(TokenType type) {
+        return types[type.ordinal()].sum();
+    }
+
+    public long getSamples(Path path) {
+        return samples[path.ordinal()].sum();
+    }
+
+    // Mean time of the sampled tokens on path, or NaN if none were sampled
+    public double getMeanNanos(Path path) {
+        long count = getSamples(path);
+        return count == 0 ? Double.NaN : (double) sampledNanos[path.ordinal()].sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getCalls()).append(" calls, ").append(getUnits()).append(" units, ").append(getTokens())
+                .append(" tokens, ").append(getErrors()).append(" errors\n");
+        for (TokenType type : TYPES) {
+            long count = getCount(type);
+            if (count > 0) {
+                builder.append(type).append(' ').append(count).append('\n');
+            }
+        }
+        for (Path path : PATHS) {
+            if (getSamples(path) > 0) {
+                builder.append(path).append(' ').append(String.format("%.1f", getMeanNanos(path))).append(" ns in ")
+                        .append(getSamples(path)).append(" samples\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
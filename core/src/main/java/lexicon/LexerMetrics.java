@@ -0,0 +1,70 @@
+package lexicon;
+
+// Receives what a Lexer measures about itself: each lex(), lexToBuffer() or lexOffsets()
+// call, how many tokens of each type it found, and how long scanning took for one token
+// in every sampleInterval(). Every method does nothing by default. A Lexer with NONE,
+// as every Lexer starts out, does not measure anything at all.
+interface LexerMetrics {
+    LexerMetrics NONE = new LexerMetrics() {
+    };
+
+    // The scanning paths timed, after the Lexer methods that take them. Separators and
+    // operators count as symbols, and ERROR tokens are not timed.
+    enum Path {
+        WORD, NUMBER, STRING_LITERAL, PATTERN, SYMBOL
+    }
+
+    // One token in this many is timed, or none for 0
+    default int sampleInterval() {
+        return 64;
+    }
+
+    // A lex call read units of input, in the input's units, into tokens, with errors
+    // recorded in recovering mode
+    default void lexed(long units, int tokens, int errors, long nanos) {
+    }
+
+    // count more tokens of type were found
+    default void counted(TokenType type, long count) {
+    }
+
+    // Scanning a token on path took nanos, skipped whitespace and comments included
+    default void sampled(Path path, long nanos) {
+    }
+
+    static Path pathOf(TokenType type) {
+        switch (type) {
+            case WORD:
+            case WHILE:
+            case IF:
+            case DO:
+            case FOR:
+            case BREAK:
+            case CONTINUE:
+            case ELSE:
+            case RETURN:
+            case BEGIN:
+            case END:
+            case PRINT:
+            case PRINTF:
+            case NEXT:
+            case IN:
+            case DELETE:
+            case GETLINE:
+            case EXIT:
+            case NEXTFILE:
+            case FUNCTION:
+                return Path.WORD;
+            case NUMBER:
+                return Path.NUMBER;
+            case STRINGLITERAL:
+                return Path.STRING_LITERAL;
+            case PATTERN:
+                return Path.PATTERN;
+            case ERROR:
+                return null;
+            default:
+                return Path.SYMBOL;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package lexicon;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// The Lexer's keyword and symbol maps compiled into flat tables, so that
+// recognizing a character class, symbol, operation or keyword costs a few array
+// reads and no allocation. The tables never change once built, so one instance is
+// shared by every Lexer on every thread.
+class LexerTables {
+    // Character classes, in the order the Lexer tests for them
+    static final int OTHER = 0;
+    static final int WHITESPACE = 1;
+    static final int NEWLINE = 2;
+    static final int COMMENT = 3;
+    static final int LETTER = 4;
+    static final int DIGIT = 5;
+    static final int QUOTE = 6;
+    static final int BACKTICK = 7;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int ASCII = 128;
+    // Symbol actions are packed into an int: the token type or operation ordinal,
+    // then the number of characters consumed, then a flag for operations
+    private static final int LENGTH_SHIFT = 8;
+    private static final int OPERATION_FLAG = 1 << 10;
+
+    private final byte[] classes = new byte[ASCII];
+    private final boolean[] wordChars = new boolean[ASCII];
+    private final boolean[] numberChars = new boolean[ASCII];
+    // One row per ASCII first character, one column per ASCII next character
+    private final int[] symbolActions = new int[ASCII * ASCII];
+    // Keywords are at most eight ASCII characters, so seven bits per character
+    // packs each one into a long. Those go into a perfect hash table.
+    private final long[] keywordKeys;
+    private final byte[] keywordTypes;
+    private final long keywordMultiplier;
+    private final int keywordShift;
+
+    public LexerTables(Map<String, TokenType> keywordMap, Map<String, TokenType> twoCharSymbolMap,
+            Map<String, TokenType> oneCharSymbolMap) {
+        for (char c = 0; c < ASCII; c++) {
+            classes[c] = (byte) classOf(c);
+            wordChars[c] = Character.isLetterOrDigit(c) || c == '_';
+            numberChars[c] = Character.isDigit(c) || c == '.';
+        }
+        for (char currentChar = 0; currentChar < ASCII; currentChar++) {
+            for (char nextChar = 0; nextChar < ASCII; nextChar++) {
+                symbolActions[currentChar * ASCII + nextChar] =
+                        symbolAction(currentChar, nextChar, twoCharSymbolMap, oneCharSymbolMap);
+            }
+        }
+        long[] keys = packKeywords(keywordMap);
+        // Look for a multiplier that gives every keyword its own slot, growing the
+        // table if none turns up
+        int bits = 5;
+        long multiplier;
+        while ((multiplier = findMultiplier(keys, bits)) == 0) {
+            bits++;
+        }
+        keywordKeys = new long[1 << bits];
+        keywordTypes = new byte[1 << bits];
+        keywordMultiplier = multiplier;
+        keywordShift = 64 - bits;
+        int i = 0;
+        for (TokenType type : keywordMap.values()) {
+            int slot = (int) ((keys[i] * multiplier) >>> keywordShift);
+            keywordKeys[slot] = keys[i];
+            keywordTypes[slot] = (byte) type.ordinal();
+            i++;
+        }
+    }
+
+    public int classify(char c) {
+        if (c < ASCII) {
+            return classes[c];
+        }
+        if (Character.isLetter(c)) {
+            return LETTER;
+        }
+        return Character.isDigit(c) ? DIGIT : OTHER;
+    }
+
+    public boolean isWordChar(char c) {
+        return c < ASCII ? wordChars[c] : Character.isLetterOrDigit(c);
+    }
+
+    public boolean isNumberChar(char c) {
+        return c < ASCII ? numberChars[c] : Character.isDigit(c);
+    }
+
+    // The action for a symbol starting with currentChar, or 0 if there is none. A
+    // nextChar of '\0' stands for the end of the input.
+    public int symbolAction(char currentChar, char nextChar) {
+        if (currentChar >= ASCII) {
+            return 0;
+        }
+        return symbolActions[currentChar * ASCII + (nextChar < ASCII ? nextChar : 0)];
+    }
+
+    static int actionLength(int action) {
+        return (action >>> LENGTH_SHIFT) & 3;
+    }
+
+    static boolean isOperation(int action) {
+        return (action & OPERATION_FLAG) != 0;
+    }
+
+    static TokenType actionType(int action) {
+        return isOperation(action) ? TokenType.TWOCCHARSYMBOL : TYPES[action & 0xFF];
+    }
+
+    // Packs up to eight ASCII characters of a word. Returns -1 for anything that
+    // cannot be a keyword.
+    static long pack(long packed, int length, char c) {
+        if (packed < 0 || length >= 8 || c >= ASCII) {
+            return -1;
+        }
+        return (packed << 7) | c;
+    }
+
+    public TokenType keywordType(long packed) {
+        if (packed > 0) {
+            int slot = (int) ((packed * keywordMultiplier) >>> keywordShift);
+            if (keywordKeys[slot] == packed) {
+                return TYPES[keywordTypes[slot]];
+            }
+        }
+        return TokenType.WORD;
+    }
+
+    private static int classOf(char c) {
+        if (c == ' ' || c == '\t' || c == '\r') {
+            return WHITESPACE;
+        } else if (c == '\n') {
+            return NEWLINE;
+        } else if (c == '#') {
+            return COMMENT;
+        } else if (Character.isLetter(c)) {
+            return LETTER;
+        } else if (Character.isDigit(c)) {
+            return DIGIT;
+        } else if (c == '"') {
+            return QUOTE;
+        } else if (c == '`') {
+            return BACKTICK;
+        }
+        return OTHER;
+    }
+
+    // Works out what the Lexer's symbol lookup does for two characters: the two-char
+    // map first, then parseOperation, then the one-char map
+    private static int symbolAction(char currentChar, char nextChar, Map<String, TokenType> twoCharSymbolMap,
+            Map<String, TokenType> oneCharSymbolMap) {
+        String text = nextChar == '\0' ? String.valueOf(currentChar) : "" + currentChar + nextChar;
+        TokenType twoCharType = twoCharSymbolMap.get(text);
+        if (twoCharType != null && text.length() == 2) {
+            return twoCharType.ordinal() | (2 << LENGTH_SHIFT);
+        }
+        StringHandler handler = new StringHandler(text);
+        Operation operation = Lexer.parseOperation(handler);
+        if (operation != null) {
+            return operation.ordinal() | ((int) handler.offset() << LENGTH_SHIFT) | OPERATION_FLAG;
+        }
+        TokenType oneCharType = oneCharSymbolMap.get(String.valueOf(currentChar));
+        if (oneCharType != null) {
+            return oneCharType.ordinal() | (1 << LENGTH_SHIFT);
+        }
+        return 0;
+    }
+
+    // The keywords packed into longs, in the map's iteration order
+    private static long[] packKeywords(Map<String, TokenType> keywordMap) {
+        long[] keys = new long[keywordMap.size()];
+        int count = 0;
+        for (String keyword : keywordMap.keySet()) {
+            long packed = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                packed = pack(packed, i, keyword.charAt(i));
+            }
+            if (packed < 0) {
+                throw new IllegalArgumentException("Keywords must be at most eight ASCII characters: " + keyword);
+            }
+            keys[count++] = packed;
+        }
+        return keys;
+    }
+
+    // A multiplier that hashes every key into its own slot of a 2^bits table, or 0
+    // if none turns up
+    private static long findMultiplier(long[] keys, int bits) {
+        long[] slots = new long[1 << bits];
+        long multiplier = 0x9E3779B97F4A7C15L;
+        for (int attempt = 0; attempt < 10000; attempt++) {
+            Arrays.fill(slots, 0);
+            boolean collision = false;
+            for (int i = 0; i < keys.length && !collision; i++) {
+                int slot = (int) ((keys[i] * multiplier) >>> (64 - bits));
+                collision = slots[slot] != 0;
+                slots[slot] = keys[i];
+            }
+            if (!collision) {
+                return multiplier;
+            }
+            multiplier = multiplier * 6364136223846793005L + 1442695040888963407L | 1;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,88 @@
+package lexicon;
+
+import java.util.Arrays;
+
+// Works out a token's line and position from its offset, for buffers that only keep
+// offsets. The Lexer records where each line starts, and every stretch of input that
+// it reads without moving the position along: comments, the quotes and backslashes of
+// literals, operations, and the extra bytes of multi-byte characters. A position is
+// then the distance from the line start less what was skipped in between.
+//
+// Lines come from the Lexer's newline separators rather than a scan for '\n', since a
+// comment or literal swallows its newlines without starting a new line.
+class LineIndex {
+    private final int firstLine;
+    private int[] lineStarts = new int[64];
+    // Total skipped before each line start
+    private long[] lineSkips = new long[64];
+    private int lines;
+    private int[] skipEnds = new int[64];
+    // Total skipped up to and including each stretch
+    private long[] skipTotals = new long[64];
+    private int skips;
+    private long total;
+
+    // Starts at a point on firstLine, lineStart being where that line began and skipped
+    // how much of it has been skipped so far
+    LineIndex(int firstLine, long lineStart, long skipped) {
+        this.firstLine = firstLine;
+        lineStarts[0] = Math.toIntExact(lineStart);
+        lineSkips[0] = -skipped;
+        lines = 1;
+    }
+
+    void addLine(long start) {
+        if (lines == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+            lineSkips = Arrays.copyOf(lineSkips, lines * 2);
+        }
+        lineStarts[lines] = Math.toIntExact(start);
+        lineSkips[lines] = total;
+        lines++;
+    }
+
+    // count units before end did not move the position
+    void addSkip(long end, long count) {
+        if (skips == skipEnds.length) {
+            skipEnds = Arrays.copyOf(skipEnds, skips * 2);
+            skipTotals = Arrays.copyOf(skipTotals, skips * 2);
+        }
+        total += count;
+        skipEnds[skips] = Math.toIntExact(end);
+        skipTotals[skips] = total;
+        skips++;
+    }
+
+    public int getLineNumber(int offset) {
+        return firstLine + line(offset);
+    }
+
+    // The position the Lexer was at when it reached offset
+    public int getPosition(int offset) {
+        int line = line(offset);
+        int skip = lastAtOrBefore(skipEnds, skips, offset);
+        long skipped = (skip < 0 ? 0 : skipTotals[skip]) - lineSkips[line];
+        return (int) (offset - lineStarts[line] - skipped);
+    }
+
+    public int getLineCount() {
+        return lines;
+    }
+
+    private int line(int offset) {
+        return Math.max(0, lastAtOrBefore(lineStarts, lines, offset));
+    }
+
+    // Index of the last entry at or before offset, or -1
+    private static int lastAtOrBefore(int[] offsets, int size, int offset) {
+        int found = Arrays.binarySearch(offsets, 0, size, offset);
+        if (found < 0) {
+            return -found - 2;
+        }
+        // Several entries can share an offset; take the last one
+        while (found + 1 < size && offsets[found + 1] == offset) {
+            found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,839 @@
+package lexicon;
+
+import java.util.Arrays;
+
+// Runs a Program. Every register is a slot in parallel arrays: a type, a double, a
+// String and an array reference, with the globals first and call frames stacked above
+// them. Numbers stay unboxed doubles from one instruction to the next, and a String is
+// only made when a value is printed, concatenated or used as a key. Calls to awk
+// functions push a frame on arrays of their own rather than recursing in Java.
+class Machine {
+    // How running a piece of code ended
+    private static final int HALTED = 0;
+    private static final int NEXT_RECORD = 1;
+    private static final int EXITED = 2;
+
+    // What a LAST variable holds in a forked Machine until it is assigned
+    private static final String UNASSIGNED = new String();
+
+    private final Program program;
+    private final AwkRuntime runtime;
+    private final int[] code;
+    private final int globalCount;
+
+    private byte[] types;
+    private double[] numbers;
+    private String[] strings;
+    private AwkArray[] arrays;
+    // The keys a for-in loop is going through, and how far it has got
+    private String[][] keys;
+    private int[] positions;
+
+    // Calls in progress
+    private int[] returnAddresses = new int[16];
+    private int[] savedFrames = new int[16];
+    private int[] savedFrameSizes = new int[16];
+    private int[] results = new int[16];
+    private int depth;
+
+    private final StringBuilder builder = new StringBuilder();
+    private Cell[] cells = new Cell[8];
+    private final Cell scratch = new Cell();
+
+    public Machine(Program program, AwkRuntime runtime) {
+        this.program = program;
+        this.runtime = runtime;
+        this.code = program.code;
+        this.globalCount = program.globalCount();
+        int capacity = globalCount + Math.max(program.frameSize, 16) * 4;
+        types = new byte[capacity];
+        numbers = new double[capacity];
+        strings = new String[capacity];
+        arrays = new AwkArray[capacity];
+        keys = new String[capacity][];
+        positions = new int[capacity];
+        System.arraycopy(program.globalTypes, 0, types, 0, globalCount);
+        System.arraycopy(program.globalNumbers, 0, numbers, 0, globalCount);
+        System.arraycopy(program.globalStrings, 0, strings, 0, globalCount);
+        for (int i = 0; i < globalCount; i++) {
+            if (program.globalArrays[i]) {
+                arrays[i] = runtime.newArray();
+            }
+        }
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Cell();
+        }
+        int argv = program.global("ARGV");
+        if (argv >= 0 && program.globalArrays[argv]) {
+            arrays[argv] = runtime.getArgv();
+        }
+        int environ = program.global("ENVIRON");
+        if (environ >= 0 && program.globalArrays[environ]) {
+            arrays[environ] = runtime.environment();
+        }
+        int argc = program.global("ARGC");
+        if (argc >= 0 && !program.globalArrays[argc]) {
+            types[argc] = Cell.NUMBER;
+            numbers[argc] = runtime.getArgc();
+            runtime.bind(() -> number(argc), this::assign);
+        } else {
+            double count = runtime.getArgc();
+            runtime.bind(() -> count, this::assign);
+        }
+    }
+
+    AwkRuntime runtime() {
+        return runtime;
+    }
+
+    // Sets a variable from outside the program, as -v and var=value operands do
+    public void assign(String name, String value) {
+        int special = AwkRuntime.specialIndex(name);
+        if (special >= 0) {
+            scratch.setInput(value);
+            runtime.setSpecial(special, scratch);
+            return;
+        }
+        int global = program.global(name);
+        if (global >= 0 && !program.globalArrays[global]) {
+            setInput(global, value);
+        }
+    }
+
+    // Runs the BEGIN actions, the rules for every record and the END actions. Returns
+    // the exit status.
+    public int run() {
+        if (runBegin()) {
+            runRules();
+        }
+        return runEnd();
+    }
+
+    // Runs the BEGIN actions. Returns whether the input is wanted after them.
+    boolean runBegin() {
+        int status = program.begin >= 0 ? execute(program.begin) : HALTED;
+        return status != EXITED && (program.main >= 0 || program.end >= 0);
+    }
+
+    // Runs the rules for every record, until the input ends or one of them exits
+    void runRules() {
+        while (runtime.nextRecord()) {
+            if (program.main >= 0 && execute(program.main) == EXITED) {
+                break;
+            }
+        }
+    }
+
+    // Runs the END actions and returns the exit status
+    int runEnd() {
+        if (program.end >= 0) {
+            execute(program.end);
+        }
+        runtime.finish();
+        return runtime.getExitCode();
+    }
+
+    // A Machine to run the rules over part of the input, with the globals set up for
+    // merge(): what the rules only read is copied or shared, and what they change
+    // starts out as the program's Aggregation needs. An array the rules keep the first
+    // or chosen elements of is an overlay over what BEGIN left in it, here as in each
+    // fork, so that none of them copies it; settle() folds it back once the forks are
+    // merged.
+    Machine fork(AwkRuntime runtime) {
+        Machine fork = new Machine(program, runtime);
+        byte[] rules = program.aggregation.rules;
+        for (int i = 0; i < globalCount; i++) {
+            if (program.globalArrays[i]) {
+                if (rules[i] == Aggregation.SHARED) {
+                    fork.arrays[i] = arrays[i];
+                } else if (rules[i] == Aggregation.FIRST || rules[i] == Aggregation.CHOOSE) {
+                    if (arrays[i].getParent() == null) {
+                        arrays[i] = arrays[i].overlay();
+                    }
+                    fork.arrays[i] = arrays[i].getParent().overlay();
+                }
+            } else if (rules[i] == Aggregation.SUM) {
+                fork.clear(i);
+            } else if (rules[i] == Aggregation.LAST) {
+                fork.clear(i);
+                fork.strings[i] = UNASSIGNED;
+            } else {
+                fork.types[i] = types[i];
+                fork.numbers[i] = numbers[i];
+                fork.strings[i] = strings[i];
+            }
+        }
+        return fork;
+    }
+
+    // Adds what a fork's rules did to the globals here. Forks are merged in the order
+    // of their parts of the input.
+    void merge(Machine fork) {
+        byte[] rules = program.aggregation.rules;
+        int[] masks = program.aggregation.masks;
+        for (int i = 0; i < globalCount; i++) {
+            byte rule = rules[i];
+            if (rule == Aggregation.SHARED) {
+                continue;
+            }
+            if (program.globalArrays[i]) {
+                mergeArray(rule, masks[i], arrays[i], fork.arrays[i]);
+            } else if (rule == Aggregation.SUM) {
+                if (fork.types[i] != Cell.UNINIT) {
+                    setNumber(i, number(i) + fork.numbers[i]);
+                }
+            } else if (rule == Aggregation.LAST) {
+                if (fork.types[i] != Cell.UNINIT || fork.strings[i] != UNASSIGNED) {
+                    setCell(i, fork.cell(i, scratch));
+                }
+            } else if (isChosen(masks[i], fork.cell(i, scratch), cell(i, new Cell()))) {
+                setCell(i, scratch);
+            }
+        }
+    }
+
+    // Puts what merge() stored over the arrays forks read into the arrays themselves,
+    // once every fork is merged
+    void settle() {
+        for (int i = 0; i < globalCount; i++) {
+            if (program.globalArrays[i] && arrays[i] != null && arrays[i].getParent() != null) {
+                arrays[i] = arrays[i].flatten();
+            }
+        }
+    }
+
+    // Only the elements the fork stored are merged, and only those that change are
+    // stored, so an overlay here does not take a copy of what it reads through to
+    private void mergeArray(byte rule, int mask, AwkArray array, AwkArray from) {
+        Cell value = new Cell();
+        Cell element = new Cell();
+        for (String key : from.storedKeys()) {
+            from.load(key, value);
+            switch (rule) {
+                case Aggregation.SUM:
+                    array.load(key, element);
+                    element.setNumber(runtime.toNumber(element) + runtime.toNumber(value));
+                    break;
+                case Aggregation.LAST:
+                    element.set(value);
+                    break;
+                case Aggregation.FIRST:
+                    if (array.contains(key)) {
+                        continue;
+                    }
+                    element.set(value);
+                    break;
+                default:
+                    if (array.contains(key)) {
+                        array.load(key, element);
+                        if (!isChosen(mask, value, element)) {
+                            continue;
+                        }
+                    }
+                    element.set(value);
+                    break;
+            }
+            array.store(key, element);
+        }
+    }
+
+    // Whether value replaces kept, when comparing them gives one of the results in mask
+    private boolean isChosen(int mask, Cell value, Cell kept) {
+        return (mask & 1 << (runtime.compare(value, kept) + 1)) != 0;
+    }
+
+    private int execute(int start) {
+        final int[] code = this.code;
+        int pc = start;
+        int fp = globalCount;
+        int frameSize = program.frameSize;
+        depth = 0;
+        while (true) {
+            switch (code[pc]) {
+                case Program.MOVE: {
+                    int to = slot(code[pc + 1], fp);
+                    int a = slot(code[pc + 2], fp);
+                    types[to] = types[a];
+                    numbers[to] = numbers[a];
+                    strings[to] = strings[a];
+                    arrays[to] = arrays[a];
+                    pc += 3;
+                    break;
+                }
+                case Program.ADD: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, number(slot(code[pc + 2], fp)) + number(slot(code[pc + 3], fp)));
+                    pc += 4;
+                    break;
+                }
+                case Program.SUBTRACT: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, number(slot(code[pc + 2], fp)) - number(slot(code[pc + 3], fp)));
+                    pc += 4;
+                    break;
+                }
+                case Program.MULTIPLY: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, number(slot(code[pc + 2], fp)) * number(slot(code[pc + 3], fp)));
+                    pc += 4;
+                    break;
+                }
+                case Program.DIVIDE: {
+                    int to = slot(code[pc + 1], fp);
+                    double divisor = number(slot(code[pc + 3], fp));
+                    if (divisor == 0) {
+                        throw new IllegalStateException("Division by zero");
+                    }
+                    setNumber(to, number(slot(code[pc + 2], fp)) / divisor);
+                    pc += 4;
+                    break;
+                }
+                case Program.MODULO: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, modulo(number(slot(code[pc + 2], fp)), number(slot(code[pc + 3], fp))));
+                    pc += 4;
+                    break;
+                }
+                case Program.POWER: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, power(number(slot(code[pc + 2], fp)), number(slot(code[pc + 3], fp))));
+                    pc += 4;
+                    break;
+                }
+                case Program.NEGATE: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, -number(slot(code[pc + 2], fp)));
+                    pc += 3;
+                    break;
+                }
+                case Program.NUMBER: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, number(slot(code[pc + 2], fp)));
+                    pc += 3;
+                    break;
+                }
+                case Program.NOT: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, isTrue(slot(code[pc + 2], fp)) ? 0 : 1);
+                    pc += 3;
+                    break;
+                }
+                case Program.COMPARE: {
+                    int to = slot(code[pc + 1], fp);
+                    int result = compare(slot(code[pc + 3], fp), slot(code[pc + 4], fp));
+                    setNumber(to, (result & code[pc + 2]) != 0 ? 1 : 0);
+                    pc += 5;
+                    break;
+                }
+                case Program.CONCAT: {
+                    int to = slot(code[pc + 1], fp);
+                    int first = fp + code[pc + 2];
+                    int count = code[pc + 3];
+                    builder.setLength(0);
+                    for (int i = 0; i < count; i++) {
+                        appendString(first + i);
+                    }
+                    setString(to, builder.toString());
+                    pc += 4;
+                    break;
+                }
+                case Program.MATCH: {
+                    int to = slot(code[pc + 1], fp);
+                    boolean matched = runtime.matches(string(slot(code[pc + 2], fp)), string(slot(code[pc + 3], fp)));
+                    setNumber(to, matched != (code[pc + 4] != 0) ? 1 : 0);
+                    pc += 5;
+                    break;
+                }
+                case Program.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Program.JUMP_IF_TRUE:
+                    pc = isTrue(slot(code[pc + 1], fp)) ? code[pc + 2] : pc + 3;
+                    break;
+                case Program.JUMP_IF_FALSE:
+                    pc = isTrue(slot(code[pc + 1], fp)) ? pc + 3 : code[pc + 2];
+                    break;
+                case Program.JUMP_IF: {
+                    int a = slot(code[pc + 2], fp);
+                    int b = slot(code[pc + 3], fp);
+                    int result;
+                    if (types[a] == Cell.NUMBER && types[b] == Cell.NUMBER) {
+                        double x = numbers[a];
+                        double y = numbers[b];
+                        result = x < y ? 1 : x > y ? 4 : x == y ? 2 : 0;
+                    } else {
+                        result = compare(a, b);
+                    }
+                    pc = (result & code[pc + 1]) != 0 ? code[pc + 4] : pc + 5;
+                    break;
+                }
+                case Program.INCREMENT: {
+                    int a = slot(code[pc + 1], fp);
+                    setNumber(a, number(a) + 1);
+                    pc += 2;
+                    break;
+                }
+                case Program.DECREMENT: {
+                    int a = slot(code[pc + 1], fp);
+                    setNumber(a, number(a) - 1);
+                    pc += 2;
+                    break;
+                }
+                case Program.GET_FIELD: {
+                    int to = slot(code[pc + 1], fp);
+                    setInput(to, runtime.getField(fieldIndex(slot(code[pc + 2], fp))));
+                    pc += 3;
+                    break;
+                }
+                case Program.FIELD_NUMBER: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, runtime.getFieldNumber(fieldIndex(slot(code[pc + 2], fp))));
+                    pc += 3;
+                    break;
+                }
+                case Program.FIELD_COMPARE: {
+                    int to = slot(code[pc + 1], fp);
+                    runtime.getFieldForComparison(fieldIndex(slot(code[pc + 2], fp)), scratch);
+                    setCell(to, scratch);
+                    pc += 3;
+                    break;
+                }
+                case Program.SET_FIELD:
+                    runtime.setField(fieldIndex(slot(code[pc + 1], fp)), string(slot(code[pc + 2], fp)));
+                    pc += 3;
+                    break;
+                case Program.GET_SPECIAL: {
+                    int to = slot(code[pc + 1], fp);
+                    if (code[pc + 2] == AwkRuntime.NF) {
+                        setNumber(to, runtime.getNF());
+                    } else {
+                        runtime.getSpecial(code[pc + 2], scratch);
+                        setCell(to, scratch);
+                    }
+                    pc += 3;
+                    break;
+                }
+                case Program.SET_SPECIAL:
+                    runtime.setSpecial(code[pc + 1], cell(slot(code[pc + 2], fp), scratch));
+                    pc += 3;
+                    break;
+                case Program.ARRAY_GET: {
+                    int to = slot(code[pc + 1], fp);
+                    arrays[slot(code[pc + 2], fp)].load(key(slot(code[pc + 3], fp)), scratch);
+                    setCell(to, scratch);
+                    pc += 4;
+                    break;
+                }
+                case Program.ARRAY_SET: {
+                    String key = key(slot(code[pc + 2], fp));
+                    arrays[slot(code[pc + 1], fp)].store(key, cell(slot(code[pc + 3], fp), scratch));
+                    pc += 4;
+                    break;
+                }
+                case Program.ARRAY_IN: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, arrays[slot(code[pc + 2], fp)].contains(key(slot(code[pc + 3], fp))) ? 1 : 0);
+                    pc += 4;
+                    break;
+                }
+                case Program.ARRAY_DELETE:
+                    arrays[slot(code[pc + 1], fp)].remove(key(slot(code[pc + 2], fp)));
+                    pc += 3;
+                    break;
+                case Program.ARRAY_CLEAR:
+                    arrays[slot(code[pc + 1], fp)].clear();
+                    pc += 2;
+                    break;
+                case Program.ARRAY_LENGTH: {
+                    int to = slot(code[pc + 1], fp);
+                    setNumber(to, arrays[slot(code[pc + 2], fp)].size());
+                    pc += 3;
+                    break;
+                }
+                case Program.JOIN: {
+                    int to = slot(code[pc + 1], fp);
+                    int first = fp + code[pc + 2];
+                    int count = code[pc + 3];
+                    String separator = runtime.getSubsep();
+                    StringBuilder key = new StringBuilder();
+                    for (int i = 0; i < count; i++) {
+                        if (i > 0) {
+                            key.append(separator);
+                        }
+                        key.append(key(first + i));
+                    }
+                    setString(to, key.toString());
+                    pc += 4;
+                    break;
+                }
+                case Program.FOR_IN: {
+                    int iterator = slot(code[pc + 1], fp);
+                    keys[iterator] = arrays[slot(code[pc + 2], fp)].keys();
+                    positions[iterator] = 0;
+                    pc += 3;
+                    break;
+                }
+                case Program.FOR_IN_NEXT: {
+                    int iterator = slot(code[pc + 1], fp);
+                    String[] remaining = keys[iterator];
+                    if (positions[iterator] < remaining.length) {
+                        setInput(slot(code[pc + 2], fp), remaining[positions[iterator]++]);
+                        pc += 4;
+                    } else {
+                        keys[iterator] = null;
+                        pc = code[pc + 3];
+                    }
+                    break;
+                }
+                case Program.PRINT:
+                case Program.PRINTF:
+                    print(code[pc] == Program.PRINTF, fp + code[pc + 1], code[pc + 2], code[pc + 3],
+                            code[pc + 4] == Program.NONE ? null : string(slot(code[pc + 4], fp)));
+                    pc += 5;
+                    break;
+                case Program.GETLINE: {
+                    int to = slot(code[pc + 1], fp);
+                    int variable = code[pc + 4];
+                    Cell line = variable == Program.NONE ? null : scratch;
+                    int status;
+                    switch (code[pc + 3]) {
+                        case Program.FILE_INPUT:
+                            status = runtime.getlineFile(string(slot(code[pc + 2], fp)), line);
+                            break;
+                        case Program.COMMAND_INPUT:
+                            status = runtime.getlineCommand(string(slot(code[pc + 2], fp)), line);
+                            break;
+                        default:
+                            status = runtime.getline(line);
+                            break;
+                    }
+                    if (line != null && status > 0) {
+                        setCell(slot(variable, fp), line);
+                    }
+                    setNumber(to, status);
+                    pc += 5;
+                    break;
+                }
+                case Program.BUILTIN:
+                    builtin(slot(code[pc + 1], fp), code[pc + 2], fp + code[pc + 3], code[pc + 4]);
+                    pc += 5;
+                    break;
+                case Program.SPLIT: {
+                    int to = slot(code[pc + 1], fp);
+                    int separator = code[pc + 4];
+                    int count = runtime.split(string(slot(code[pc + 2], fp)), arrays[slot(code[pc + 3], fp)],
+                            separator == Program.NONE ? null : string(slot(separator, fp)));
+                    setNumber(to, count);
+                    pc += 5;
+                    break;
+                }
+                case Program.SUBSTITUTE: {
+                    int to = slot(code[pc + 1], fp);
+                    int target = slot(code[pc + 4], fp);
+                    String result = runtime.substitute(string(slot(code[pc + 2], fp)),
+                            string(slot(code[pc + 3], fp)), string(target), code[pc + 5] != 0);
+                    int count = runtime.getSubstitutions();
+                    if (count > 0) {
+                        setString(target, result);
+                    }
+                    setNumber(to, count);
+                    pc += 6;
+                    break;
+                }
+                case Program.CALL: {
+                    int function = code[pc + 2];
+                    int first = fp + code[pc + 3];
+                    int count = code[pc + 4];
+                    int callee = fp + frameSize;
+                    int calleeSize = program.functionFrameSizes[function];
+                    ensureSlots(callee + calleeSize);
+                    boolean[] arrayParameters = program.arrayParameters[function];
+                    for (int i = 0; i < arrayParameters.length; i++) {
+                        int parameter = callee + i;
+                        if (i < count) {
+                            copy(first + i, parameter);
+                        } else {
+                            clear(parameter);
+                            arrays[parameter] = arrayParameters[i] ? runtime.newArray() : null;
+                        }
+                    }
+                    if (depth == returnAddresses.length) {
+                        growCalls();
+                    }
+                    returnAddresses[depth] = pc + 5;
+                    savedFrames[depth] = fp;
+                    savedFrameSizes[depth] = frameSize;
+                    results[depth] = slot(code[pc + 1], fp);
+                    depth++;
+                    fp = callee;
+                    frameSize = calleeSize;
+                    pc = program.functionEntries[function];
+                    break;
+                }
+                case Program.RETURN: {
+                    depth--;
+                    int result = results[depth];
+                    if (code[pc + 1] == Program.NONE) {
+                        clear(result);
+                    } else {
+                        copy(slot(code[pc + 1], fp), result);
+                        arrays[result] = null;
+                    }
+                    pc = returnAddresses[depth];
+                    fp = savedFrames[depth];
+                    frameSize = savedFrameSizes[depth];
+                    break;
+                }
+                case Program.NEXT:
+                    return NEXT_RECORD;
+                case Program.NEXTFILE:
+                    runtime.skipFile();
+                    return NEXT_RECORD;
+                case Program.EXIT:
+                    if (code[pc + 1] != Program.NONE) {
+                        runtime.setExitCode((int) number(slot(code[pc + 1], fp)));
+                    }
+                    return EXITED;
+                case Program.HALT:
+                    return HALTED;
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // Negative operands are globals, the rest are in the current frame
+    private static int slot(int operand, int fp) {
+        return operand < 0 ? ~operand : fp + operand;
+    }
+
+    private double number(int slot) {
+        return types[slot] == Cell.STRING ? AwkRuntime.toNumber(strings[slot]) : numbers[slot];
+    }
+
+    private String string(int slot) {
+        switch (types[slot]) {
+            case Cell.NUMBER:
+                return runtime.numberToString(numbers[slot]);
+            case Cell.UNINIT:
+                return "";
+            default:
+                return strings[slot];
+        }
+    }
+
+    // An array subscript: numbers that are integers need no CONVFMT
+    private String key(int slot) {
+        if (types[slot] == Cell.NUMBER) {
+            double number = numbers[slot];
+            long integer = (long) number;
+            return integer == number && Math.abs(number) < 0x1p63 ? Long.toString(integer)
+                    : runtime.numberToString(number);
+        }
+        return string(slot);
+    }
+
+    private void appendString(int slot) {
+        switch (types[slot]) {
+            case Cell.NUMBER:
+                double number = numbers[slot];
+                long integer = (long) number;
+                if (integer == number && Math.abs(number) < 0x1p63) {
+                    builder.append(integer);
+                } else {
+                    builder.append(runtime.numberToString(number));
+                }
+                break;
+            case Cell.UNINIT:
+                break;
+            default:
+                builder.append(strings[slot]);
+                break;
+        }
+    }
+
+    private boolean isTrue(int slot) {
+        switch (types[slot]) {
+            case Cell.NUMBER:
+            case Cell.STRNUM:
+                return numbers[slot] != 0;
+            case Cell.STRING:
+                return !strings[slot].isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    // 1 for less, 2 for equal and 4 for greater, matching the masks in the code
+    private int compare(int a, int b) {
+        if (types[a] != Cell.STRING && types[b] != Cell.STRING) {
+            double x = numbers[a];
+            double y = numbers[b];
+            return x < y ? 1 : x > y ? 4 : x == y ? 2 : 0;
+        }
+        int result = string(a).compareTo(string(b));
+        return result < 0 ? 1 : result > 0 ? 4 : 2;
+    }
+
+    static double modulo(double x, double y) {
+        if (y == 0) {
+            throw new IllegalStateException("Division by zero in %");
+        }
+        long a = (long) x;
+        long b = (long) y;
+        // Integers take the long remainder, far cheaper than the double one. The casts
+        // saturate, so only below 2^63.
+        if (a == x && b == y && Math.abs(x) < 0x1p63 && Math.abs(y) < 0x1p63) {
+            return a % b;
+        }
+        return x % y;
+    }
+
+    static double power(double x, double y) {
+        int exponent = (int) y;
+        if (exponent == y && exponent >= 0 && exponent <= 64) {
+            // Small whole powers by squaring
+            double result = 1;
+            double square = x;
+            while (exponent != 0) {
+                if ((exponent & 1) != 0) {
+                    result *= square;
+                }
+                square *= square;
+                exponent >>= 1;
+            }
+            return result;
+        }
+        return Math.pow(x, y);
+    }
+
+    private static int fieldIndex(double index) {
+        if (index < 0 || index > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Field index out of range: " + index);
+        }
+        return (int) index;
+    }
+
+    private int fieldIndex(int slot) {
+        return fieldIndex(number(slot));
+    }
+
+    private void setNumber(int slot, double number) {
+        types[slot] = Cell.NUMBER;
+        numbers[slot] = number;
+        strings[slot] = null;
+    }
+
+    private void setString(int slot, String string) {
+        types[slot] = Cell.STRING;
+        strings[slot] = string;
+    }
+
+    private void setInput(int slot, String text) {
+        strings[slot] = text;
+        if (AwkRuntime.looksNumeric(text)) {
+            types[slot] = Cell.STRNUM;
+            numbers[slot] = AwkRuntime.toNumber(text);
+        } else {
+            types[slot] = Cell.STRING;
+        }
+    }
+
+    private void setCell(int slot, Cell cell) {
+        types[slot] = cell.type;
+        numbers[slot] = cell.type == Cell.UNINIT ? 0 : cell.number;
+        strings[slot] = cell.string;
+    }
+
+    // Copies a slot's value into cell, and returns the cell
+    private Cell cell(int slot, Cell cell) {
+        cell.type = types[slot];
+        cell.number = numbers[slot];
+        cell.string = strings[slot];
+        return cell;
+    }
+
+    private void copy(int from, int to) {
+        types[to] = types[from];
+        numbers[to] = numbers[from];
+        strings[to] = strings[from];
+        arrays[to] = arrays[from];
+    }
+
+    private void clear(int slot) {
+        types[slot] = Cell.UNINIT;
+        numbers[slot] = 0;
+        strings[slot] = null;
+    }
+
+    private void print(boolean formatted, int first, int count, int redirection, String destination) {
+        builder.setLength(0);
+        if (formatted) {
+            Cell[] arguments = cells(first, count);
+            runtime.format(builder, runtime.toString(arguments[0]), arguments, 1, count - 1);
+        } else if (count == 0) {
+            builder.append(runtime.getField(0)).append(runtime.getOrs());
+        } else {
+            String separator = runtime.getOfs();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    builder.append(separator);
+                }
+                int slot = first + i;
+                if (types[slot] == Cell.NUMBER && numbers[slot] != (long) numbers[slot]) {
+                    builder.append(runtime.outputNumber(numbers[slot]));
+                } else {
+                    appendString(slot);
+                }
+            }
+            builder.append(runtime.getOrs());
+        }
+        runtime.print(redirection, destination, builder);
+    }
+
+    private void builtin(int to, int builtin, int first, int count) {
+        AwkRuntime.Builtin function = AwkRuntime.Builtin.values()[builtin];
+        if (function == AwkRuntime.Builtin.LENGTH && count == 1) {
+            setNumber(to, string(first).length());
+            return;
+        }
+        runtime.call(function, cells(first, count), 0, count, scratch);
+        setCell(to, scratch);
+    }
+
+    // The values in count slots from first on, as Cells for the runtime
+    private Cell[] cells(int first, int count) {
+        if (count > cells.length) {
+            int old = cells.length;
+            cells = Arrays.copyOf(cells, Math.max(count, old * 2));
+            for (int i = old; i < cells.length; i++) {
+                cells[i] = new Cell();
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            cell(first + i, cells[i]);
+        }
+        return cells;
+    }
+
+    private void ensureSlots(int needed) {
+        if (needed <= types.length) {
+            return;
+        }
+        int capacity = Math.max(needed, types.length * 2);
+        types = Arrays.copyOf(types, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        strings = Arrays.copyOf(strings, capacity);
+        arrays = Arrays.copyOf(arrays, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    private void growCalls() {
+        int capacity = depth * 2;
+        returnAddresses = Arrays.copyOf(returnAddresses, capacity);
+        savedFrames = Arrays.copyOf(savedFrames, capacity);
+        savedFrameSizes = Arrays.copyOf(savedFrameSizes, capacity);
+        results = Arrays.copyOf(results, capacity);
+    }
+}
@@ -0,0 +1,170 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Where print and printf write: a Writer that encodes UTF-8 itself into one large
+// buffer and hands the buffer to a channel only when it fills, or is flushed or
+// closed, so a program printing a line a record makes a system call every few
+// thousand lines. Text appended as a CharSequence, like the builder a line is
+// formatted into, is encoded from it directly and never becomes a String. A surrogate
+// pair split across two writes is still one character; a lone surrogate becomes '?',
+// as OutputStreamWriter writes it.
+class OutputSink extends Writer {
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private int position;
+    // A high surrogate waiting for the low one, or 0
+    private char high;
+    private boolean closed;
+
+    public OutputSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    public OutputSink(WritableByteChannel channel, int capacity) {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("Capacity must hold a character: " + capacity);
+        }
+        this.channel = channel;
+        bytes = new byte[capacity];
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    // A file, emptied first unless append is set, as > and >> open it
+    static OutputSink open(Path file, boolean append) throws IOException {
+        return new OutputSink(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(chars), offset, offset + length);
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        encode(text, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence text) throws IOException {
+        CharSequence chars = text == null ? "null" : text;
+        encode(chars, 0, chars.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence text, int start, int end) throws IOException {
+        encode(text == null ? "null" : text, start, end);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (high != 0) {
+                high = 0;
+                put('?');
+            }
+            drain();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void encode(CharSequence text, int start, int end) throws IOException {
+        ensureOpen();
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && high == 0) {
+                if (position == bytes.length) {
+                    drain();
+                }
+                bytes[position++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (bytes.length - position < 4) {
+            drain();
+        }
+        if (high != 0) {
+            char first = high;
+            high = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(first, c);
+                bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[position++] = (byte) (0x80 | (codePoint >> 12 & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            bytes[position++] = '?';
+        }
+        if (c < 0x80) {
+            bytes[position++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[position++] = (byte) (0xC0 | c >> 6);
+            bytes[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            high = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[position++] = '?';
+        } else {
+            bytes[position++] = (byte) (0xE0 | c >> 12);
+            bytes[position++] = (byte) (0x80 | (c >> 6 & 0x3F));
+            bytes[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (position == bytes.length) {
+            drain();
+        }
+        bytes[position++] = (byte) c;
+    }
+
+    // Writes out everything buffered
+    private void drain() throws IOException {
+        buffer.clear().limit(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Output closed");
+        }
+    }
+}
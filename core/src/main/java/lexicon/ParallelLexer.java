@@ -0,0 +1,164 @@
+package lexicon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Lexes a large document on several threads. The document is cut into chunks that
+// start at the beginning of a line, and each chunk is lexed on its own as though
+// the line before it had just ended. The chunks are then stitched together in order
+// with their lines and positions moved to where they really are.
+//
+// A chunk's lexer runs on past the end of its chunk until it reaches a token
+// boundary, so a string or pattern that crosses into the next chunk is lexed by the
+// chunk it starts in. The next chunk's own guess about that text is then wrong; the
+// stitching step lexes from where the token ended until it meets a token the next
+// chunk also found, and takes the rest of that chunk from there.
+class ParallelLexer {
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLexer(ForkJoinPool pool) {
+        this(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelLexer(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    // Gives the same tokens as new Lexer(document).lexToBuffer(), and throws the same
+    // exception if there is one
+    public TokenBuffer lex(String document) {
+        List<Integer> starts = chunkStarts(document);
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(starts.size());
+        for (int k = 0; k < starts.size(); k++) {
+            int start = starts.get(k);
+            int end = k + 1 < starts.size() ? starts.get(k + 1) : document.length();
+            tasks.add(pool.submit(() -> lexChunk(document, start, end)));
+        }
+
+        // The result is sized from what the chunks found, rather than guessed from the
+        // document's length up front
+        List<Chunk> chunks = new ArrayList<>(tasks.size());
+        long found = 0;
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            chunks.add(chunk);
+            found += chunk.tokens.size();
+        }
+        TokenBuffer result = new TokenBuffer(new StringHandler(document),
+                (int) Math.max(16, Math.min(found, Integer.MAX_VALUE - 8)));
+        long offset = 0; // How far the stitched tokens reach
+        int lineNumber = 1;
+        int linePosition = 0;
+        for (int k = 0; k < chunks.size(); k++) {
+            Chunk chunk = chunks.get(k);
+            int end = k + 1 < starts.size() ? starts.get(k + 1) : document.length();
+            if (offset >= end) {
+                continue; // A token from an earlier chunk covers this whole chunk
+            }
+            if (offset == chunk.start && chunk.failure == null) {
+                // The usual case: the chunk starts where the last one stopped
+                result.appendShifted(chunk.tokens, 0, 1, lineNumber - 1, linePosition);
+            } else {
+                // Lex sequentially until this chunk's tokens can be trusted again
+                Lexer lexer = new Lexer(new StringHandler(document, (int) offset), lineNumber, linePosition,
+                        result.getSymbolTable());
+                lexer.setStopOffset(end);
+                boolean synced = false;
+                while (lexer.lexNext(result)) {
+                    int last = result.size() - 1;
+                    int match = chunk.failure == null ? chunk.tokens.indexOfOffset(result.getOffset(last)) : -1;
+                    if (match >= 0) {
+                        int anchorLine = chunk.tokens.getLineNumber(match);
+                        int lineDelta = result.getLineNumber(last) - anchorLine;
+                        int positionDelta = result.getPosition(last) - chunk.tokens.getPosition(match);
+                        result.truncate(last);
+                        result.appendShifted(chunk.tokens, match, anchorLine, lineDelta, positionDelta);
+                        lineNumber = chunk.endLine + lineDelta;
+                        linePosition = chunk.endPosition + (chunk.endLine == anchorLine ? positionDelta : 0);
+                        offset = chunk.stop;
+                        synced = true;
+                        break;
+                    }
+                }
+                if (!synced) {
+                    lineNumber = lexer.getLineNumber();
+                    linePosition = lexer.getLinePosition();
+                    offset = lexer.offset();
+                }
+                continue;
+            }
+            // Carry the lexer state over from the chunk's end
+            if (chunk.endLine == 1) {
+                linePosition += chunk.endPosition;
+            } else {
+                lineNumber += chunk.endLine - 1;
+                linePosition = chunk.endPosition;
+            }
+            offset = chunk.stop;
+        }
+        return result;
+    }
+
+    public List<Token> lexToList(String document) {
+        return lex(document).toList();
+    }
+
+    // Chunks begin just after a newline, roughly chunkSize characters apart
+    private List<Integer> chunkStarts(String document) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        int next = chunkSize;
+        while (next < document.length()) {
+            int newline = document.indexOf('\n', next - 1);
+            if (newline < 0 || newline + 1 >= document.length()) {
+                break;
+            }
+            starts.add(newline + 1);
+            next = newline + 1 + chunkSize;
+        }
+        return starts;
+    }
+
+    private static Chunk lexChunk(String document, int start, int end) {
+        Chunk chunk = new Chunk(start);
+        Lexer lexer = new Lexer(new StringHandler(document, start));
+        lexer.setStopOffset(end);
+        chunk.tokens = new TokenBuffer(new StringHandler(document), lexer.getSymbolTable());
+        try {
+            while (lexer.lexNext(chunk.tokens)) {
+                // Keep going
+            }
+        } catch (IllegalArgumentException e) {
+            // Only a real error if the chunk turns out to start where we guessed
+            chunk.failure = e;
+        }
+        chunk.stop = lexer.offset();
+        chunk.endLine = lexer.getLineNumber();
+        chunk.endPosition = lexer.getLinePosition();
+        return chunk;
+    }
+
+    // What lexing one chunk on its own produced. Lines are counted from 1 at the start
+    // of the chunk and positions from 0.
+    private static class Chunk {
+        final int start;
+        TokenBuffer tokens;
+        long stop;
+        int endLine;
+        int endPosition;
+        IllegalArgumentException failure;
+
+        Chunk(int start) {
+            this.start = start;
+        }
+    }
+}
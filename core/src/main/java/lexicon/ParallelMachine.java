@@ -0,0 +1,156 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Runs a Program the way Machine does, but with its rules run on several threads when
+// the program's Aggregation allows it and the input is files. The files are mapped and
+// cut into parts that end at a newline; the rules run over each part on a Machine
+// forked from the one that ran BEGIN, and the forks are merged back in input order
+// before END. Only twice as many parts as the pool has threads are forked at a time,
+// and the first is merged as soon as it is done, so memory does not grow with the
+// input. Anything else, like standard input or a program that prints from its
+// rules, runs on the one Machine as usual. Output is the same as Machine's except where
+// non-integers are summed: each part adds up its own records and the part sums are
+// then added, so the floating-point additions happen in another order and the total,
+// or an array element summed with +=, can differ in the last bits.
+class ParallelMachine {
+    static final int DEFAULT_PART_SIZE = 1 << 20;
+
+    private final Program program;
+    private final AwkRuntime runtime;
+    private final ForkJoinPool pool;
+    private final int partSize;
+    private final Machine machine;
+
+    public ParallelMachine(Program program, AwkRuntime runtime, ForkJoinPool pool) {
+        this(program, runtime, pool, DEFAULT_PART_SIZE);
+    }
+
+    public ParallelMachine(Program program, AwkRuntime runtime, ForkJoinPool pool, int partSize) {
+        if (partSize < 1) {
+            throw new IllegalArgumentException("Part size must be positive: " + partSize);
+        }
+        this.program = program;
+        this.runtime = runtime;
+        this.pool = pool;
+        this.partSize = partSize;
+        this.machine = new Machine(program, runtime);
+    }
+
+    public void assign(String name, String value) {
+        machine.assign(name, value);
+    }
+
+    // Gives Machine.run()'s exit status, and its output up to the last bits of sums of
+    // non-integers
+    public int run() {
+        if (machine.runBegin()) {
+            List<String> files = program.aggregation == null ? null : runtime.inputFiles();
+            if (files == null) {
+                machine.runRules();
+            } else {
+                runParts(files);
+            }
+        }
+        return machine.runEnd();
+    }
+
+    private void runParts(List<String> files) {
+        List<Part> parts = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            cut(files.get(i), i, parts);
+        }
+        int window = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<Part>> running = new ArrayDeque<>(window);
+        int next = 0;
+        double records = 0;
+        double fileRecords = 0;
+        String record = null;
+        int last = files.size() - 1;
+        while (next < parts.size() || !running.isEmpty()) {
+            while (next < parts.size() && running.size() < window) {
+                Part part = parts.get(next++);
+                part.machine = machine.fork(runtime.part(part.records, part.filename));
+                running.add(pool.submit(() -> {
+                    part.machine.runRules();
+                    return part;
+                }));
+            }
+            Part part = running.poll().join();
+            machine.merge(part.machine);
+            AwkRuntime partRuntime = part.machine.runtime();
+            double count = partRuntime.getNR();
+            records += count;
+            if (part.file == last) {
+                fileRecords += count;
+            }
+            if (count > 0) {
+                record = partRuntime.getField(0);
+            }
+            // Let the part's memory go
+            part.machine = null;
+            part.records = null;
+        }
+        machine.settle();
+        runtime.skipInput(records, fileRecords, files.get(last), record);
+    }
+
+    // Maps the file in parts of about partSize bytes, each ending just after a newline
+    private void cut(String name, int file, List<Part> parts) {
+        try (FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            long start = 0;
+            while (start < size) {
+                long end = Math.min(size, start + partSize);
+                while (end < size) {
+                    probe.clear();
+                    int read = channel.read(probe, end - 1);
+                    int newline = -1;
+                    for (int i = 0; i < read && newline < 0; i++) {
+                        if (probe.get(i) == '\n') {
+                            newline = i;
+                        }
+                    }
+                    if (newline >= 0) {
+                        end += newline;
+                        break;
+                    }
+                    end += read;
+                }
+                end = Math.min(end, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Record too long in " + name);
+                }
+                parts.add(new Part(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), file, name));
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + name, e);
+        }
+    }
+
+    private static class Part {
+        ByteBuffer records;
+        final int file;
+        final String filename;
+        Machine machine;
+
+        Part(ByteBuffer records, int file, String filename) {
+            this.records = records;
+            this.file = file;
+            this.filename = filename;
+        }
+    }
+}
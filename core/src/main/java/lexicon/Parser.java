@@ -0,0 +1,973 @@
+package lexicon;
+
+import java.util.Arrays;
+
+// Parses expressions out of a TokenBuffer into a SyntaxTree by precedence climbing.
+// Operands and pending operators live on explicit stacks rather than the Java stack,
+// so neither a long chain of concatenations nor deep nesting can overflow it. Once
+// its stacks have grown, a Parser reset onto program after program allocates
+// nothing. Statements and programs are parsed by plain recursive descent around
+// that, as they only nest as deep as the blocks written in the program.
+class Parser {
+    // Precedences, loosest first, following the POSIX awk table
+    private static final int ASSIGNMENT = 1;
+    private static final int CONDITIONAL = 2;
+    private static final int OR = 3;
+    private static final int AND = 4;
+    private static final int IN = 5;
+    private static final int MATCH = 6;
+    private static final int COMPARISON = 7;
+    private static final int CONCATENATION = 8;
+    private static final int ADDITIVE = 9;
+    private static final int MULTIPLICATIVE = 10;
+    private static final int UNARY = 11;
+    private static final int EXPONENT = 12;
+    private static final int INCREMENT = 13;
+    private static final int FIELD = 14;
+    // getline holds on to nothing past its variable or file
+    private static final int INPUT = 15;
+
+    private static final int[] PRECEDENCES = new int[Operation.values().length];
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    static {
+        for (Operation operation : new Operation[] {Operation.ASSIGN, Operation.EXPONENT_ASSIGN,
+                Operation.MODULO_ASSIGN, Operation.MULTIPLY_ASSIGN, Operation.DIVIDE_ASSIGN,
+                Operation.ADD_ASSIGN, Operation.SUBTRACT_ASSIGN}) {
+            PRECEDENCES[operation.ordinal()] = ASSIGNMENT;
+        }
+        PRECEDENCES[Operation.CONDITIONAL.ordinal()] = CONDITIONAL;
+        PRECEDENCES[Operation.OR.ordinal()] = OR;
+        PRECEDENCES[Operation.AND.ordinal()] = AND;
+        PRECEDENCES[Operation.IN.ordinal()] = IN;
+        PRECEDENCES[Operation.MATCH.ordinal()] = MATCH;
+        PRECEDENCES[Operation.NOTMATCH.ordinal()] = MATCH;
+        for (Operation operation : new Operation[] {Operation.LT, Operation.LE, Operation.GT, Operation.GE,
+                Operation.EQ, Operation.NE}) {
+            PRECEDENCES[operation.ordinal()] = COMPARISON;
+        }
+        PRECEDENCES[Operation.CONCATENATION.ordinal()] = CONCATENATION;
+        PRECEDENCES[Operation.ADD.ordinal()] = ADDITIVE;
+        PRECEDENCES[Operation.SUBTRACT.ordinal()] = ADDITIVE;
+        PRECEDENCES[Operation.MULTIPLY.ordinal()] = MULTIPLICATIVE;
+        PRECEDENCES[Operation.DIVIDE.ordinal()] = MULTIPLICATIVE;
+        PRECEDENCES[Operation.MODULO.ordinal()] = MULTIPLICATIVE;
+        PRECEDENCES[Operation.NOT.ordinal()] = UNARY;
+        PRECEDENCES[Operation.UNARYPOS.ordinal()] = UNARY;
+        PRECEDENCES[Operation.UNARYNEG.ordinal()] = UNARY;
+        PRECEDENCES[Operation.EXPONENT.ordinal()] = EXPONENT;
+        PRECEDENCES[Operation.PREINC.ordinal()] = INCREMENT;
+        PRECEDENCES[Operation.PREDEC.ordinal()] = INCREMENT;
+        PRECEDENCES[Operation.DOLLAR.ordinal()] = FIELD;
+    }
+
+    // What the parser looks for next
+    private static final int END = 0;
+    private static final int OPERAND = 1;
+    private static final int OPERATOR = 2;
+
+    // What an entry on the operator stack is
+    private static final byte PREFIX = 0;
+    private static final byte BINARY = 1;
+    private static final byte ASSIGN = 2;
+    // A '?' still waiting for its ':', and the ':' once it has turned up
+    private static final byte QUESTION = 3;
+    private static final byte COLON = 4;
+    // getline, getline < file and command | getline, waiting for their operands
+    private static final byte GETLINE = 5;
+    private static final byte GETLINE_FILE = 6;
+    private static final byte PIPE_GETLINE = 7;
+    // Open brackets: grouping parentheses, a call's parentheses, a subscript
+    private static final byte PAREN = 8;
+    private static final byte CALL = 9;
+    private static final byte SUBSCRIPT = 10;
+
+    private final SyntaxTree tree;
+    private TokenBuffer tokens;
+    private int index;
+    private int[] operands = new int[64];
+    private int operandSize;
+    private byte[] entryKinds = new byte[64];
+    private byte[] entryOperations = new byte[64];
+    private int[] entryTokens = new int[64];
+    // Operand stack height when a bracket opened, or the operand count of a
+    // concatenation
+    private int[] entryCounts = new int[64];
+    private int operatorSize;
+    // Children of the statements being parsed
+    private int[] items = new int[64];
+    private int itemSize;
+    // In the arguments of print, where a '>' or '|' outside brackets redirects it
+    private boolean inPrint;
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.tree = new SyntaxTree(tokens);
+    }
+
+    // Starts over at the first of tokens, dropping every node parsed so far
+    public Parser reset(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.index = 0;
+        tree.reset(tokens);
+        return this;
+    }
+
+    public SyntaxTree getTree() {
+        return tree;
+    }
+
+    // Index of the next token to parse
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    // Parses one expression and returns its root node. Stops before the first token
+    // that cannot continue it, such as a separator, a keyword or an unmatched ')'.
+    public int parseExpression() {
+        operandSize = 0;
+        operatorSize = 0;
+        int next = OPERAND;
+        while (next != END) {
+            next = next == OPERAND ? parseOperand() : parseOperator();
+        }
+        while (operatorSize > 0) {
+            reduce();
+        }
+        return operands[--operandSize];
+    }
+
+    // Handles a token where an operand has to come, and returns what comes after it
+    private int parseOperand() {
+        if (index == tokens.size()) {
+            throw error("Expected an expression", index);
+        }
+        int token = index++;
+        switch (tokens.getType(token)) {
+            case NUMBER:
+                pushOperand(tree.add(SyntaxTree.Kind.NUMBER, null, token, operands, 0, 0));
+                return OPERATOR;
+            case STRINGLITERAL:
+                pushOperand(tree.add(SyntaxTree.Kind.STRING, null, token, operands, 0, 0));
+                return OPERATOR;
+            case PATTERN:
+                pushOperand(tree.add(SyntaxTree.Kind.REGEX, null, token, operands, 0, 0));
+                return OPERATOR;
+            case WORD:
+                if (isSymbol(index, '(') && adjacent(token, index)) {
+                    // A call: the name has to be right up against its '('
+                    index++;
+                    pushEntry(CALL, null, token, operandSize);
+                    return OPERAND;
+                }
+                pushOperand(tree.add(SyntaxTree.Kind.VARIABLE, null, token, operands, 0, 0));
+                if (isSymbol(index, '[')) {
+                    index++;
+                    pushEntry(SUBSCRIPT, null, token, operandSize);
+                    return OPERAND;
+                }
+                return OPERATOR;
+            case GETLINE:
+                // Plain getline, until a '<' makes it getline < file
+                pushEntry(GETLINE, null, token, 0);
+                return getlineVariable(token);
+            case SEPARATOR:
+                if (tokens.getLength(token) == 0) {
+                    // A line break after an operator continues the expression
+                    return OPERAND;
+                }
+                break;
+            case ONECHARSYMBOL:
+            case TWOCCHARSYMBOL:
+                int symbol = tokens.getSymbol(token);
+                Operation prefix = prefixOperation(symbol);
+                if (prefix != null) {
+                    pushEntry(PREFIX, prefix, token, 0);
+                    return OPERAND;
+                }
+                if (symbol == '(') {
+                    pushEntry(PAREN, null, token, operandSize);
+                    return OPERAND;
+                }
+                if (symbol == ')' && operatorSize > 0 && entryKinds[operatorSize - 1] == CALL
+                        && entryCounts[operatorSize - 1] == operandSize) {
+                    // A call without arguments
+                    closeBracket(CALL, token);
+                    return OPERATOR;
+                }
+                break;
+            default:
+                break;
+        }
+        throw error("Expected an expression", token);
+    }
+
+    // Handles a token where an operator can come, and returns what comes after it.
+    // Leaves a token that ends the expression in place.
+    private int parseOperator() {
+        if (index == tokens.size()) {
+            return END;
+        }
+        int token = index;
+        if (tokens.breaksLineBefore(token) && !hasOpenBracket()) {
+            // The newline after a comment ends the expression too
+            return END;
+        }
+        switch (tokens.getType(token)) {
+            case NUMBER:
+            case STRINGLITERAL:
+            case PATTERN:
+            case WORD:
+                concatenate(token);
+                return OPERAND;
+            case IN:
+                index++;
+                pushBinary(Operation.IN, token);
+                return OPERAND;
+            case SEPARATOR:
+                if (tokens.getLength(token) == 0 && hasOpenBracket()) {
+                    // Line breaks inside brackets are ignored
+                    index++;
+                    return OPERATOR;
+                }
+                return END;
+            case ONECHARSYMBOL:
+            case TWOCCHARSYMBOL:
+                return parseSymbol(token, tokens.getSymbol(token));
+            default:
+                return END;
+        }
+    }
+
+    private int parseSymbol(int token, int symbol) {
+        if (symbol == '>' && inPrint && !hasOpenBracket()) {
+            return END;
+        }
+        if (symbol == '<' && redirectGetline()) {
+            index++;
+            return OPERAND;
+        }
+        Operation binary = binaryOperation(symbol);
+        if (binary != null) {
+            index++;
+            pushBinary(binary, token);
+            return OPERAND;
+        }
+        Operation assignment = assignmentOperation(symbol);
+        if (assignment != null) {
+            index++;
+            reduceAbove(ASSIGNMENT, true);
+            checkAssignable(token);
+            pushEntry(ASSIGN, assignment, token, 0);
+            return OPERAND;
+        }
+        switch (symbol) {
+            case '+' | '+' << 8:
+            case '-' | '-' << 8:
+                // Postfix, applied straight away to what is on top
+                index++;
+                reduceAbove(INCREMENT, false);
+                checkAssignable(token);
+                Operation operation = symbol == ('+' | '+' << 8) ? Operation.POSTINC : Operation.POSTDEC;
+                makeNode(SyntaxTree.Kind.UNARY, operation, token, 1);
+                return OPERATOR;
+            case '$':
+            case '(':
+                concatenate(token);
+                return OPERAND;
+            case '?':
+                index++;
+                reduceAbove(CONDITIONAL, true);
+                pushEntry(QUESTION, Operation.CONDITIONAL, token, 0);
+                return OPERAND;
+            case ':':
+                reduceAbove(0, false);
+                if (operatorSize == 0 || entryKinds[operatorSize - 1] != QUESTION) {
+                    return END;
+                }
+                index++;
+                entryKinds[operatorSize - 1] = COLON;
+                return OPERAND;
+            case ',':
+                reduceAbove(0, false);
+                if (!hasOpenBracket() || entryKinds[operatorSize - 1] == QUESTION) {
+                    return END;
+                }
+                index++;
+                return OPERAND;
+            case ')':
+                return closeBracket(PAREN, token) || closeBracket(CALL, token) ? OPERATOR : END;
+            case ']':
+                return closeBracket(SUBSCRIPT, token) ? OPERATOR : END;
+            case '|':
+                if (index + 1 < tokens.size() && tokens.getType(index + 1) == TokenType.GETLINE) {
+                    // command | getline: the command is everything that binds tighter
+                    index += 2;
+                    reduceAbove(COMPARISON, false);
+                    pushEntry(PIPE_GETLINE, null, token + 1, 0);
+                    return getlineVariable(token + 1);
+                }
+                return END;
+            default:
+                return END;
+        }
+    }
+
+    // An operand straight after another one: the two are concatenated. A run of
+    // concatenations shares one node.
+    private void concatenate(int token) {
+        reduceAbove(CONCATENATION, true);
+        int top = operatorSize - 1;
+        if (top >= 0 && entryKinds[top] == BINARY && entryOperations[top] == Operation.CONCATENATION.ordinal()) {
+            entryCounts[top]++;
+        } else {
+            pushEntry(BINARY, Operation.CONCATENATION, token, 2);
+        }
+    }
+
+    // getline reads into the variable, element or field straight after it, if there is
+    // one, and into $0 otherwise
+    private int getlineVariable(int token) {
+        if (index < tokens.size() && !tokens.breaksLineBefore(index)
+                && ((tokens.getType(index) == TokenType.WORD && !(isSymbol(index + 1, '(') && adjacent(index, index + 1)))
+                        || isSymbol(index, '$'))) {
+            return OPERAND;
+        }
+        pushOperand(empty(token));
+        return OPERATOR;
+    }
+
+    // A '<' straight after a plain getline and its variable makes it read from a file
+    private boolean redirectGetline() {
+        int top = operatorSize - 1;
+        while (top >= 0 && entryKinds[top] == PREFIX && entryOperations[top] == Operation.DOLLAR.ordinal()) {
+            top--;
+        }
+        if (top < 0 || entryKinds[top] != GETLINE) {
+            return false;
+        }
+        while (operatorSize - 1 > top) {
+            reduce();
+        }
+        entryKinds[top] = GETLINE_FILE;
+        return true;
+    }
+
+    private void pushBinary(Operation operation, int token) {
+        int precedence = PRECEDENCES[operation.ordinal()];
+        reduceAbove(precedence, operation == Operation.EXPONENT);
+        pushEntry(BINARY, operation, token, 2);
+    }
+
+    // Closes the innermost bracket if it is of the given kind. Returns false otherwise:
+    // with no open bracket the ')' or ']' belongs to whatever surrounds the expression.
+    private boolean closeBracket(byte kind, int token) {
+        reduceAbove(0, false);
+        if (!hasOpenBracket()) {
+            return false;
+        }
+        int top = operatorSize - 1;
+        if (entryKinds[top] == QUESTION) {
+            throw error("Expected :", token);
+        }
+        if (entryKinds[top] != kind) {
+            return false;
+        }
+        index = token + 1;
+        operatorSize--;
+        int base = entryCounts[top];
+        int count = operandSize - base;
+        if (kind == PAREN) {
+            if (count > 1) {
+                // print (a, b) is the one place a list needs no in after it
+                if (!inPrint && (index == tokens.size() || tokens.getType(index) != TokenType.IN)) {
+                    throw error("Expected in after a parenthesized list", token);
+                }
+                operandSize = base;
+                pushOperand(tree.add(SyntaxTree.Kind.GROUP, null, entryTokens[top], operands, base, count));
+            }
+            // A single parenthesized expression needs no node of its own
+            return true;
+        }
+        if (kind == CALL) {
+            operandSize = base;
+            pushOperand(tree.add(SyntaxTree.Kind.CALL, null, entryTokens[top], operands, base, count));
+            return true;
+        }
+        if (count == 0) {
+            throw error("Expected an expression", token);
+        }
+        // The array's VARIABLE sits just below the subscripts
+        operandSize = base - 1;
+        pushOperand(tree.add(SyntaxTree.Kind.INDEX, null, entryTokens[top], operands, base - 1, count + 1));
+        return true;
+    }
+
+    // Reduces every operator that binds tighter than precedence, or as tightly if the
+    // new operator is left associative. Brackets and a '?' without its ':' stop it.
+    private void reduceAbove(int precedence, boolean rightAssociative) {
+        while (operatorSize > 0) {
+            int top = precedenceOf(operatorSize - 1);
+            if (top > precedence || (top == precedence && !rightAssociative && top > 0)) {
+                reduce();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private int precedenceOf(int entry) {
+        switch (entryKinds[entry]) {
+            case PREFIX:
+            case BINARY:
+            case ASSIGN:
+                return PRECEDENCES[entryOperations[entry]];
+            case COLON:
+                return CONDITIONAL;
+            case GETLINE:
+            case GETLINE_FILE:
+            case PIPE_GETLINE:
+                return INPUT;
+            default:
+                return 0;
+        }
+    }
+
+    // Pops the top operator and its operands, and pushes the node they make
+    private void reduce() {
+        int top = --operatorSize;
+        Operation operation = entryOperations[top] < 0 ? null : OPERATIONS[entryOperations[top]];
+        int token = entryTokens[top];
+        switch (entryKinds[top]) {
+            case PREFIX:
+                if (operation == Operation.PREINC || operation == Operation.PREDEC) {
+                    checkAssignable(token);
+                }
+                makeNode(SyntaxTree.Kind.UNARY, operation, token, 1);
+                break;
+            case BINARY:
+                if (operation == Operation.IN
+                        && tree.getKind(operands[operandSize - 1]) != SyntaxTree.Kind.VARIABLE) {
+                    throw error("Expected an array name after in", token);
+                }
+                makeNode(SyntaxTree.Kind.BINARY, operation, token, entryCounts[top]);
+                break;
+            case ASSIGN:
+                makeNode(SyntaxTree.Kind.ASSIGN, operation, token, 2);
+                break;
+            case COLON:
+                makeNode(SyntaxTree.Kind.CONDITIONAL, operation, token, 3);
+                break;
+            case QUESTION:
+                throw error("Expected :", token);
+            case GETLINE:
+            case GETLINE_FILE:
+            case PIPE_GETLINE:
+                makeGetline(entryKinds[top], token);
+                break;
+            default:
+                throw error("Unclosed bracket", token);
+        }
+    }
+
+    // A GETLINE node's children are its variable, file and command, in that order
+    private void makeGetline(byte kind, int token) {
+        int variable;
+        int file;
+        int command;
+        if (kind == GETLINE_FILE) {
+            file = operands[--operandSize];
+            variable = operands[--operandSize];
+            command = empty(token);
+        } else if (kind == PIPE_GETLINE) {
+            variable = operands[--operandSize];
+            command = operands[--operandSize];
+            file = empty(token);
+        } else {
+            variable = operands[--operandSize];
+            file = empty(token);
+            command = empty(token);
+        }
+        pushOperand(variable);
+        if (tree.getKind(variable) != SyntaxTree.Kind.EMPTY) {
+            checkAssignable(token);
+        }
+        pushOperand(file);
+        pushOperand(command);
+        makeNode(SyntaxTree.Kind.GETLINE, null, token, 3);
+    }
+
+    private int empty(int token) {
+        return tree.add(SyntaxTree.Kind.EMPTY, null, token, operands, 0, 0);
+    }
+
+    // Parses a whole program: BEGIN and END actions, pattern-action rules and
+    // functions. Returns its PROGRAM node.
+    public int parseProgram() {
+        itemSize = 0;
+        inPrint = false;
+        skipTerminators();
+        while (index < tokens.size()) {
+            pushItem(parseItem());
+            skipTerminators();
+        }
+        return finish(SyntaxTree.Kind.PROGRAM, 0, 0);
+    }
+
+    private int parseItem() {
+        int token = index;
+        int start = itemSize;
+        switch (tokens.getType(token)) {
+            case BEGIN:
+                index++;
+                pushItem(parseBlock());
+                return finish(SyntaxTree.Kind.BEGIN, token, start);
+            case END:
+                index++;
+                pushItem(parseBlock());
+                return finish(SyntaxTree.Kind.END, token, start);
+            case FUNCTION:
+                return parseFunction();
+            default:
+                break;
+        }
+        if (isSymbol(index, '{')) {
+            pushItem(empty(token));
+            pushItem(empty(token));
+        } else {
+            pushItem(parseExpression());
+            if (isSymbol(index, ',')) {
+                // A range, from a record the first pattern matches to one the second does
+                index++;
+                skipNewlines();
+                pushItem(parseExpression());
+            } else {
+                pushItem(empty(token));
+            }
+        }
+        // Without an action a rule prints the record
+        pushItem(isSymbol(index, '{') ? parseBlock() : empty(token));
+        return finish(SyntaxTree.Kind.RULE, token, start);
+    }
+
+    private int parseFunction() {
+        index++;
+        int name = expect(TokenType.WORD, "Expected a function name");
+        int start = itemSize;
+        expectSymbol('(');
+        while (!isSymbol(index, ')')) {
+            int parameter = expect(TokenType.WORD, "Expected a parameter name");
+            pushItem(tree.add(SyntaxTree.Kind.VARIABLE, null, parameter, items, 0, 0));
+            if (isSymbol(index, ',')) {
+                index++;
+                skipNewlines();
+            } else if (!isSymbol(index, ')')) {
+                throw error("Expected , or )", index);
+            }
+        }
+        index++;
+        skipNewlines();
+        pushItem(parseBlock());
+        return finish(SyntaxTree.Kind.FUNCTION, name, start);
+    }
+
+    private int parseBlock() {
+        int token = expectSymbol('{');
+        int start = itemSize;
+        while (true) {
+            skipTerminators();
+            if (index == tokens.size()) {
+                throw error("Expected }", index);
+            }
+            if (isSymbol(index, '}')) {
+                index++;
+                return finish(SyntaxTree.Kind.BLOCK, token, start);
+            }
+            pushItem(parseStatement());
+        }
+    }
+
+    private int parseStatement() {
+        if (index == tokens.size()) {
+            throw error("Expected a statement", index);
+        }
+        int token = index;
+        int start = itemSize;
+        TokenType type = tokens.getType(token);
+        switch (type) {
+            case ONECHARSYMBOL:
+                if (isSymbol(token, '{')) {
+                    return parseBlock();
+                }
+                break;
+            case SEPARATOR:
+                // An empty statement, as in while (i++ < n) ;
+                index++;
+                return empty(token);
+            case IF:
+                index++;
+                pushItem(parseCondition());
+                pushItem(parseBody());
+                int end = index;
+                skipTerminators();
+                if (index < tokens.size() && tokens.getType(index) == TokenType.ELSE) {
+                    index++;
+                    pushItem(parseBody());
+                } else {
+                    index = end;
+                    pushItem(empty(token));
+                }
+                return finish(SyntaxTree.Kind.IF, token, start);
+            case WHILE:
+                index++;
+                pushItem(parseCondition());
+                pushItem(parseBody());
+                return finish(SyntaxTree.Kind.WHILE, token, start);
+            case DO:
+                index++;
+                pushItem(parseBody());
+                skipTerminators();
+                expect(TokenType.WHILE, "Expected while");
+                pushItem(parseCondition());
+                endSimple();
+                return finish(SyntaxTree.Kind.DO, token, start);
+            case FOR:
+                return parseFor();
+            case BREAK:
+            case CONTINUE:
+            case NEXT:
+            case NEXTFILE:
+                index++;
+                endSimple();
+                return finish(type == TokenType.BREAK ? SyntaxTree.Kind.BREAK
+                        : type == TokenType.CONTINUE ? SyntaxTree.Kind.CONTINUE
+                        : type == TokenType.NEXT ? SyntaxTree.Kind.NEXT : SyntaxTree.Kind.NEXTFILE, token, start);
+            case EXIT:
+            case RETURN:
+                index++;
+                pushItem(atSimpleEnd() ? empty(token) : parseExpression());
+                endSimple();
+                return finish(type == TokenType.EXIT ? SyntaxTree.Kind.EXIT : SyntaxTree.Kind.RETURN, token, start);
+            case DELETE:
+                index++;
+                int target = parseExpression();
+                SyntaxTree.Kind kind = tree.getKind(target);
+                if (kind != SyntaxTree.Kind.VARIABLE && kind != SyntaxTree.Kind.INDEX) {
+                    throw error("Expected an array or an element after delete", token + 1);
+                }
+                pushItem(target);
+                endSimple();
+                return finish(SyntaxTree.Kind.DELETE, token, start);
+            case PRINT:
+            case PRINTF:
+                return parsePrint();
+            default:
+                break;
+        }
+        int expression = parseExpression();
+        endSimple();
+        return expression;
+    }
+
+    private int parseFor() {
+        int token = index++;
+        int start = itemSize;
+        expectSymbol('(');
+        if (index + 3 < tokens.size() && tokens.getType(index) == TokenType.WORD
+                && tokens.getType(index + 1) == TokenType.IN && tokens.getType(index + 2) == TokenType.WORD
+                && isSymbol(index + 3, ')')) {
+            // for (key in array)
+            pushItem(tree.add(SyntaxTree.Kind.VARIABLE, null, index, items, 0, 0));
+            pushItem(tree.add(SyntaxTree.Kind.VARIABLE, null, index + 2, items, 0, 0));
+            index += 4;
+            pushItem(parseBody());
+            return finish(SyntaxTree.Kind.FOR_IN, token, start);
+        }
+        pushItem(isSemicolon(index) ? empty(index) : parseExpression());
+        expectSemicolon();
+        skipNewlines();
+        pushItem(isSemicolon(index) ? empty(index) : parseExpression());
+        expectSemicolon();
+        skipNewlines();
+        pushItem(isSymbol(index, ')') ? empty(index) : parseExpression());
+        expectSymbol(')');
+        pushItem(parseBody());
+        return finish(SyntaxTree.Kind.FOR, token, start);
+    }
+
+    private int parsePrint() {
+        int token = index++;
+        int start = itemSize;
+        boolean formatted = tokens.getType(token) == TokenType.PRINTF;
+        inPrint = true;
+        if (!atSimpleEnd() && !isRedirect(index)) {
+            while (true) {
+                int argument = parseExpression();
+                if (tree.getKind(argument) == SyntaxTree.Kind.GROUP) {
+                    // print (a, b) prints a and b
+                    for (int i = 0; i < tree.getChildCount(argument); i++) {
+                        pushItem(tree.getChild(argument, i));
+                    }
+                } else {
+                    pushItem(argument);
+                }
+                if (!isSymbol(index, ',')) {
+                    break;
+                }
+                index++;
+                skipNewlines();
+            }
+        }
+        if (formatted && itemSize == start) {
+            throw error("Expected a format after printf", index);
+        }
+        if (isRedirect(index)) {
+            int redirect = index++;
+            int redirectStart = itemSize;
+            pushItem(parseExpression());
+            pushItem(finish(SyntaxTree.Kind.REDIRECT, redirect, redirectStart));
+        } else {
+            pushItem(empty(token));
+        }
+        inPrint = false;
+        endSimple();
+        return finish(formatted ? SyntaxTree.Kind.PRINTF : SyntaxTree.Kind.PRINT, token, start);
+    }
+
+    // A parenthesized condition, as after if and while
+    private int parseCondition() {
+        expectSymbol('(');
+        int condition = parseExpression();
+        expectSymbol(')');
+        return condition;
+    }
+
+    // The statement an if, else, while, do or for controls, which can start on a new line
+    private int parseBody() {
+        skipNewlines();
+        return parseStatement();
+    }
+
+    // A simple statement ends at a separator, a '}' or the end of the line
+    private boolean atSimpleEnd() {
+        return index == tokens.size() || tokens.getType(index) == TokenType.SEPARATOR || isSymbol(index, '}')
+                || tokens.breaksLineBefore(index);
+    }
+
+    private void endSimple() {
+        if (!atSimpleEnd()) {
+            throw error("Expected ; or a new line", index);
+        }
+    }
+
+    private boolean isRedirect(int token) {
+        if (token == tokens.size()) {
+            return false;
+        }
+        TokenType type = tokens.getType(token);
+        if (type != TokenType.ONECHARSYMBOL && type != TokenType.TWOCCHARSYMBOL) {
+            return false;
+        }
+        int symbol = tokens.getSymbol(token);
+        return symbol == '>' || symbol == ('>' | '>' << 8) || symbol == '|';
+    }
+
+    private boolean isSemicolon(int token) {
+        return token < tokens.size() && tokens.getType(token) == TokenType.SEPARATOR && tokens.getLength(token) == 1;
+    }
+
+    private void expectSemicolon() {
+        if (!isSemicolon(index)) {
+            throw error("Expected ;", index);
+        }
+        index++;
+    }
+
+    private int expect(TokenType type, String message) {
+        if (index == tokens.size() || tokens.getType(index) != type) {
+            throw error(message, index);
+        }
+        return index++;
+    }
+
+    private int expectSymbol(char symbol) {
+        if (!isSymbol(index, symbol)) {
+            throw error("Expected " + symbol, index);
+        }
+        return index++;
+    }
+
+    // Skips separators: semicolons and line breaks
+    private void skipTerminators() {
+        while (index < tokens.size() && tokens.getType(index) == TokenType.SEPARATOR) {
+            index++;
+        }
+    }
+
+    private void skipNewlines() {
+        while (index < tokens.size() && tokens.getType(index) == TokenType.SEPARATOR && tokens.getLength(index) == 0) {
+            index++;
+        }
+    }
+
+    private void pushItem(int node) {
+        if (itemSize == items.length) {
+            items = Arrays.copyOf(items, itemSize * 2);
+        }
+        items[itemSize++] = node;
+    }
+
+    // Adds a statement node whose children are the items pushed from start on
+    private int finish(SyntaxTree.Kind kind, int token, int start) {
+        int node = tree.add(kind, null, token, items, start, itemSize - start);
+        itemSize = start;
+        return node;
+    }
+
+    private void makeNode(SyntaxTree.Kind kind, Operation operation, int token, int count) {
+        operandSize -= count;
+        pushOperand(tree.add(kind, operation, token, operands, operandSize, count));
+    }
+
+    // Only variables, array elements and fields can be assigned or incremented
+    private void checkAssignable(int token) {
+        int node = operands[operandSize - 1];
+        SyntaxTree.Kind kind = tree.getKind(node);
+        if (kind != SyntaxTree.Kind.VARIABLE && kind != SyntaxTree.Kind.INDEX
+                && tree.getOperation(node) != Operation.DOLLAR) {
+            throw error("Cannot assign to " + tree.toString(node), token);
+        }
+    }
+
+    private boolean hasOpenBracket() {
+        for (int i = operatorSize - 1; i >= 0; i--) {
+            if (entryKinds[i] >= PAREN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSymbol(int token, char symbol) {
+        return token < tokens.size() && tokens.getType(token) == TokenType.ONECHARSYMBOL
+                && tokens.getSymbol(token) == symbol;
+    }
+
+    private boolean adjacent(int token, int next) {
+        return tokens.getOffset(token) + tokens.getLength(token) == tokens.getOffset(next);
+    }
+
+    private void pushOperand(int node) {
+        if (operandSize == operands.length) {
+            operands = Arrays.copyOf(operands, operandSize * 2);
+        }
+        operands[operandSize++] = node;
+    }
+
+    private void pushEntry(byte kind, Operation operation, int token, int count) {
+        if (operatorSize == entryKinds.length) {
+            int capacity = operatorSize * 2;
+            entryKinds = Arrays.copyOf(entryKinds, capacity);
+            entryOperations = Arrays.copyOf(entryOperations, capacity);
+            entryTokens = Arrays.copyOf(entryTokens, capacity);
+            entryCounts = Arrays.copyOf(entryCounts, capacity);
+        }
+        entryKinds[operatorSize] = kind;
+        entryOperations[operatorSize] = (byte) (operation == null ? -1 : operation.ordinal());
+        entryTokens[operatorSize] = token;
+        entryCounts[operatorSize] = count;
+        operatorSize++;
+    }
+
+    private IllegalArgumentException error(String message, int token) {
+        if (token >= tokens.size()) {
+            return new IllegalArgumentException(message + " at end of input");
+        }
+        return new IllegalArgumentException(message + " at line " + tokens.getLineNumber(token) + ", position "
+                + tokens.getPosition(token));
+    }
+
+    // Symbols are matched on TokenBuffer.getSymbol(), their characters packed into an int
+    private static Operation prefixOperation(int symbol) {
+        switch (symbol) {
+            case '-':
+                return Operation.UNARYNEG;
+            case '+':
+                return Operation.UNARYPOS;
+            case '!':
+                return Operation.NOT;
+            case '+' | '+' << 8:
+                return Operation.PREINC;
+            case '-' | '-' << 8:
+                return Operation.PREDEC;
+            case '$':
+                return Operation.DOLLAR;
+            default:
+                return null;
+        }
+    }
+
+    private static Operation binaryOperation(int symbol) {
+        switch (symbol) {
+            case '^':
+                return Operation.EXPONENT;
+            case '*':
+                return Operation.MULTIPLY;
+            case '/':
+                return Operation.DIVIDE;
+            case '%':
+                return Operation.MODULO;
+            case '+':
+                return Operation.ADD;
+            case '-':
+                return Operation.SUBTRACT;
+            case '<':
+                return Operation.LT;
+            case '<' | '=' << 8:
+                return Operation.LE;
+            case '>':
+                return Operation.GT;
+            case '>' | '=' << 8:
+                return Operation.GE;
+            case '=' | '=' << 8:
+                return Operation.EQ;
+            case '!' | '=' << 8:
+                return Operation.NE;
+            case '~':
+                return Operation.MATCH;
+            case '!' | '~' << 8:
+                return Operation.NOTMATCH;
+            case '&' | '&' << 8:
+                return Operation.AND;
+            case '|' | '|' << 8:
+                return Operation.OR;
+            default:
+                return null;
+        }
+    }
+
+    private static Operation assignmentOperation(int symbol) {
+        switch (symbol) {
+            case '=':
+                return Operation.ASSIGN;
+            case '^' | '=' << 8:
+                return Operation.EXPONENT_ASSIGN;
+            case '%' | '=' << 8:
+                return Operation.MODULO_ASSIGN;
+            case '*' | '=' << 8:
+                return Operation.MULTIPLY_ASSIGN;
+            case '/' | '=' << 8:
+                return Operation.DIVIDE_ASSIGN;
+            case '+' | '=' << 8:
+                return Operation.ADD_ASSIGN;
+            case '-' | '=' << 8:
+                return Operation.SUBTRACT_ASSIGN;
+            default:
+                return null;
+        }
+    }
+}
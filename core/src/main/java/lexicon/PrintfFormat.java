@@ -0,0 +1,251 @@
+package lexicon;
+
+import java.util.Arrays;
+
+// A printf format parsed once: the literal text between directives, with %% already
+// turned into %, and for each directive its flags, width, precision and conversion.
+// Rendering walks the directives and appends to a builder the caller reuses, so
+// printing a line makes no String for the format and none for an integer or a string
+// argument. A directive awk has no conversion for, or one cut short by the end of
+// the format, is copied as it was written, as C's printf does; a * in it still takes
+// an argument.
+class PrintfFormat {
+    // Flags
+    private static final int LEFT = 1;
+    private static final int PLUS = 2;
+    private static final int SPACE = 4;
+    private static final int ALTERNATE = 8;
+    private static final int ZERO = 16;
+    // A width or precision that comes from the next argument, and a precision not given
+    private static final int STAR = -2;
+    private static final int NONE = -1;
+    // The conversion of a directive copied as it is
+    private static final char RAW = 0;
+
+    // The text before each directive, and then the text after the last one
+    private final String[] literals;
+    private final char[] conversions;
+    private final int[] flags;
+    private final int[] widths;
+    private final int[] precisions;
+    // What a RAW directive copies
+    private final String[] raw;
+
+    private PrintfFormat(String[] literals, char[] conversions, int[] flags, int[] widths, int[] precisions,
+            String[] raw) {
+        this.literals = literals;
+        this.conversions = conversions;
+        this.flags = flags;
+        this.widths = widths;
+        this.precisions = precisions;
+        this.raw = raw;
+    }
+
+    static PrintfFormat compile(String format) {
+        Directives directives = new Directives();
+        StringBuilder literal = new StringBuilder();
+        int length = format.length();
+        for (int i = 0; i < length; i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            int specStart = i;
+            if (++i == length) {
+                literal.append('%');
+                break;
+            }
+            if (format.charAt(i) == '%') {
+                literal.append('%');
+                continue;
+            }
+            int flag = 0;
+            for (; i < length; i++) {
+                int bit = flagBit(format.charAt(i));
+                if (bit == 0) {
+                    break;
+                }
+                flag |= bit;
+            }
+            int width = 0;
+            if (i < length && format.charAt(i) == '*') {
+                width = STAR;
+                i++;
+            } else {
+                while (i < length && Character.isDigit(format.charAt(i))) {
+                    width = width * 10 + (format.charAt(i++) - '0');
+                }
+            }
+            int precision = NONE;
+            if (i < length && format.charAt(i) == '.') {
+                i++;
+                precision = 0;
+                if (i < length && format.charAt(i) == '*') {
+                    precision = STAR;
+                    i++;
+                } else {
+                    while (i < length && Character.isDigit(format.charAt(i))) {
+                        precision = precision * 10 + (format.charAt(i++) - '0');
+                    }
+                }
+            }
+            while (i < length && "hlLqjzt".indexOf(format.charAt(i)) >= 0) {
+                i++;
+            }
+            if (i == length) {
+                directives.add(literal, RAW, flag, width, precision, format.substring(specStart));
+                break;
+            }
+            char conversion = format.charAt(i);
+            if ("diouxXcseEfFgG".indexOf(conversion) < 0) {
+                directives.add(literal, RAW, flag, width, precision, format.substring(specStart, i + 1));
+            } else {
+                directives.add(literal, conversion, flag, width, precision, null);
+            }
+        }
+        return directives.build(literal.toString());
+    }
+
+    private static int flagBit(char c) {
+        switch (c) {
+            case '-':
+                return LEFT;
+            case '+':
+                return PLUS;
+            case ' ':
+                return SPACE;
+            case '#':
+                return ALTERNATE;
+            case '0':
+                return ZERO;
+            default:
+                return 0;
+        }
+    }
+
+    // Appends the format with count arguments from args[from] on. Missing arguments
+    // format as empty or zero.
+    void render(AwkRuntime runtime, StringBuilder result, Cell[] args, int from, int count) {
+        int next = from;
+        int end = from + count;
+        for (int d = 0; d < conversions.length; d++) {
+            result.append(literals[d]);
+            int flag = flags[d];
+            boolean left = (flag & LEFT) != 0;
+            int width = widths[d];
+            if (width == STAR) {
+                width = next < end ? (int) runtime.toNumber(args[next++]) : 0;
+                if (width < 0) {
+                    left = true;
+                    width = -width;
+                }
+            }
+            int precision = precisions[d];
+            if (precision == STAR) {
+                precision = next < end ? (int) runtime.toNumber(args[next++]) : 0;
+                if (precision < 0) {
+                    precision = NONE;
+                }
+            }
+            char conversion = conversions[d];
+            if (conversion == RAW) {
+                result.append(raw[d]);
+                continue;
+            }
+            Cell arg = next < end ? args[next] : null;
+            next++;
+            int mark = result.length();
+            boolean plus = (flag & PLUS) != 0;
+            boolean space = (flag & SPACE) != 0;
+            boolean alternate = (flag & ALTERNATE) != 0;
+            switch (conversion) {
+                case 'd':
+                case 'i':
+                    double value = arg == null ? 0 : runtime.toNumber(arg);
+                    if (precision == NONE && !plus && !space && Math.abs(value) < 9.2e18) {
+                        // Truncated toward zero, the same as formatInteger does it
+                        result.append((long) value);
+                    } else {
+                        AwkRuntime.formatInteger(result, value, precision, plus, space);
+                    }
+                    break;
+                case 'o':
+                case 'x':
+                case 'X':
+                case 'u':
+                    AwkRuntime.formatUnsigned(result, arg == null ? 0 : runtime.toNumber(arg), conversion, precision,
+                            alternate);
+                    break;
+                case 'c':
+                    if (arg == null) {
+                        break;
+                    }
+                    if (arg.isNumeric() && arg.type != Cell.UNINIT) {
+                        result.appendCodePoint((int) runtime.toNumber(arg));
+                    } else {
+                        String text = runtime.toString(arg);
+                        if (!text.isEmpty()) {
+                            result.appendCodePoint(text.codePointAt(0));
+                        }
+                    }
+                    break;
+                case 's':
+                    String text = arg == null ? "" : runtime.toString(arg);
+                    result.append(text, 0, precision >= 0 && precision < text.length() ? precision : text.length());
+                    break;
+                default:
+                    AwkRuntime.formatFloat(result, arg == null ? 0 : runtime.toNumber(arg), conversion, precision,
+                            plus, space, alternate);
+                    break;
+            }
+            if (width > result.length() - mark) {
+                boolean numeric = conversion != 's' && conversion != 'c';
+                boolean zero = (flag & ZERO) != 0 && numeric
+                        && !(precision >= 0 && "dioxXu".indexOf(conversion) >= 0);
+                AwkRuntime.pad(result, mark, width, left, zero);
+            }
+        }
+        result.append(literals[conversions.length]);
+    }
+
+    // The directives as they are parsed, grown like the tree's columns
+    private static class Directives {
+        private String[] literals = new String[4];
+        private char[] conversions = new char[4];
+        private int[] flags = new int[4];
+        private int[] widths = new int[4];
+        private int[] precisions = new int[4];
+        private String[] raw = new String[4];
+        private int size;
+
+        // Adds a directive after the text in literal, and empties literal
+        void add(StringBuilder literal, char conversion, int flag, int width, int precision, String text) {
+            if (size == conversions.length) {
+                int capacity = size * 2;
+                literals = Arrays.copyOf(literals, capacity);
+                conversions = Arrays.copyOf(conversions, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                widths = Arrays.copyOf(widths, capacity);
+                precisions = Arrays.copyOf(precisions, capacity);
+                raw = Arrays.copyOf(raw, capacity);
+            }
+            literals[size] = literal.toString();
+            conversions[size] = conversion;
+            flags[size] = flag;
+            widths[size] = width;
+            precisions[size] = precision;
+            raw[size] = text;
+            size++;
+            literal.setLength(0);
+        }
+
+        PrintfFormat build(String last) {
+            String[] texts = Arrays.copyOf(literals, size + 1);
+            texts[size] = last;
+            return new PrintfFormat(texts, Arrays.copyOf(conversions, size),
+                    Arrays.copyOf(flags, size), Arrays.copyOf(widths, size),
+                    Arrays.copyOf(precisions, size), Arrays.copyOf(raw, size));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package lexicon;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// An awk program compiled by Compiler into register bytecode for Machine. Code is a
+// flat int array of opcodes, each followed by its operands. A register operand names a
+// slot: one of the frame's own slots when it is zero or more, the global ~operand when
+// it is negative. Constants are read-only globals, so every operand is read the same way.
+class Program {
+    // Operands that are not there, like the value of a bare exit
+    static final int NONE = Integer.MIN_VALUE;
+
+    // Register operands are written as to, a, b; others are named for what they hold
+    static final int MOVE = 0;              // to a
+    static final int ADD = 1;               // to a b
+    static final int SUBTRACT = 2;          // to a b
+    static final int MULTIPLY = 3;          // to a b
+    static final int DIVIDE = 4;            // to a b
+    static final int MODULO = 5;            // to a b
+    static final int POWER = 6;             // to a b
+    static final int NEGATE = 7;            // to a
+    static final int NUMBER = 8;            // to a, the + prefix
+    static final int NOT = 9;               // to a
+    // mask says which results make it true: 1 less, 2 equal, 4 greater
+    static final int COMPARE = 10;          // to mask a b
+    static final int CONCAT = 11;           // to first count, first being a frame slot
+    static final int MATCH = 12;            // to text regex negated
+    static final int JUMP = 13;             // target
+    static final int JUMP_IF_TRUE = 14;     // a target
+    static final int JUMP_IF_FALSE = 15;    // a target
+    static final int JUMP_IF = 16;          // mask a b target, COMPARE and branch in one
+    static final int INCREMENT = 17;        // a
+    static final int DECREMENT = 18;        // a
+    static final int GET_FIELD = 19;        // to index
+    static final int SET_FIELD = 20;        // index a
+    static final int GET_SPECIAL = 21;      // to special
+    static final int SET_SPECIAL = 22;      // special a
+    static final int ARRAY_GET = 23;        // to array key
+    static final int ARRAY_SET = 24;        // array key a
+    static final int ARRAY_IN = 25;         // to array key
+    static final int ARRAY_DELETE = 26;     // array key
+    static final int ARRAY_CLEAR = 27;      // array
+    static final int ARRAY_LENGTH = 28;     // to array
+    static final int JOIN = 29;             // to first count, joined by SUBSEP
+    static final int FOR_IN = 30;           // iterator array
+    static final int FOR_IN_NEXT = 31;      // iterator key target, jumping when done
+    static final int PRINT = 32;            // first count redirection destination
+    static final int PRINTF = 33;           // first count redirection destination
+    static final int GETLINE = 34;          // to source kind variable, NONE for $0
+    static final int BUILTIN = 35;          // to builtin first count
+    static final int SPLIT = 36;            // to text array separator, NONE for FS
+    static final int SUBSTITUTE = 37;       // to regex replacement a global, rewriting a
+    static final int CALL = 38;             // to function first count
+    static final int RETURN = 39;           // a
+    static final int NEXT = 40;
+    static final int NEXTFILE = 41;
+    static final int EXIT = 42;             // a
+    static final int HALT = 43;
+    // Fields read straight from the input: as a number, and as a STRNUM whose text is
+    // left out, for comparing with a number
+    static final int FIELD_NUMBER = 44;     // to index
+    static final int FIELD_COMPARE = 45;    // to index
+
+    // GETLINE sources
+    static final int MAIN_INPUT = 0;
+    static final int FILE_INPUT = 1;
+    static final int COMMAND_INPUT = 2;
+
+    final int[] code;
+    // Where the BEGIN actions, the rules and the END actions start, -1 if there are none
+    final int begin;
+    final int main;
+    final int end;
+    // Slots a frame of the code outside functions needs
+    final int frameSize;
+
+    // Globals: variables, constants and the program's own hidden ones
+    final String[] globalNames;
+    final byte[] globalTypes;
+    final double[] globalNumbers;
+    final String[] globalStrings;
+    final boolean[] globalArrays;
+    private final Map<String, Integer> globalIndex = new HashMap<>();
+
+    // Functions, by the index CALL names them with
+    final String[] functionNames;
+    final int[] functionEntries;
+    final int[] functionFrameSizes;
+    final boolean[][] arrayParameters;
+    // How the rules can run over pieces of the input at once, or null if they cannot
+    final Aggregation aggregation;
+
+    Program(int[] code, int begin, int main, int end, int frameSize, String[] globalNames, byte[] globalTypes,
+            double[] globalNumbers, String[] globalStrings, boolean[] globalArrays, String[] functionNames,
+            int[] functionEntries, int[] functionFrameSizes, boolean[][] arrayParameters, Aggregation aggregation) {
+        this.code = code;
+        this.begin = begin;
+        this.main = main;
+        this.end = end;
+        this.frameSize = frameSize;
+        this.globalNames = globalNames;
+        this.globalTypes = globalTypes;
+        this.globalNumbers = globalNumbers;
+        this.globalStrings = globalStrings;
+        this.globalArrays = globalArrays;
+        this.functionNames = functionNames;
+        this.functionEntries = functionEntries;
+        this.functionFrameSizes = functionFrameSizes;
+        this.arrayParameters = arrayParameters;
+        this.aggregation = aggregation;
+        for (int i = 0; i < globalNames.length; i++) {
+            if (globalNames[i] != null) {
+                globalIndex.put(globalNames[i], i);
+            }
+        }
+    }
+
+    int globalCount() {
+        return globalNames.length;
+    }
+
+    // The global variable called name, or -1 if the program never uses it
+    int global(String name) {
+        Integer index = globalIndex.get(name);
+        return index == null ? -1 : index;
+    }
+}
@@ -0,0 +1,170 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// Reads characters from a Reader through a buffer that is refilled on demand. The
+// buffer only has to hold the current token, so the memory used does not depend on
+// the size of the input.
+class ReaderHandler implements CharacterSource {
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private char[] buffer;
+    private long bufferStart; // Offset of buffer[0] in the input
+    private int markIndex;
+    private int index;
+    private int limit;
+    private boolean endOfInput;
+
+    public ReaderHandler(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ReaderHandler(Reader reader, int bufferSize) {
+        if (bufferSize < 2) {
+            throw new IllegalArgumentException("Buffer must hold at least two characters: " + bufferSize);
+        }
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.bufferStart = 0;
+        this.markIndex = 0;
+        this.index = 0;
+        this.limit = 0;
+        this.endOfInput = false;
+    }
+
+    public char peek(int i) {
+        if (fill(i + 1)) {
+            return buffer[index + i];
+        }
+        return '\0'; // End of document
+    }
+
+    public String peekString(int i) {
+        fill(i);
+        return new String(buffer, index, Math.min(i, limit - index));
+    }
+
+    public char getChar() {
+        if (fill(1)) {
+            return buffer[index++];
+        }
+        return '\0'; // End of document
+    }
+
+    public void swallow(int i) {
+        while (i > 0 && fill(1)) {
+            index++;
+            i--;
+        }
+    }
+
+    public boolean isDone() {
+        return !fill(1);
+    }
+
+    public long offset() {
+        return bufferStart + index;
+    }
+
+    public long mark() {
+        markIndex = index;
+        return bufferStart + index;
+    }
+
+    public String text(long start, long end) {
+        int from = (int) (start - bufferStart);
+        if (from < markIndex || end > bufferStart + limit) {
+            throw new IllegalStateException("Characters " + start + " to " + end + " are no longer buffered");
+        }
+        return new String(buffer, from, (int) (end - start));
+    }
+
+    public void rewind(long offset) {
+        int to = (int) (offset - bufferStart);
+        if (to < markIndex || to > index) {
+            throw new IllegalStateException("Cannot rewind to " + offset);
+        }
+        index = to;
+    }
+
+    public boolean retainsInput() {
+        return false;
+    }
+
+    @Override
+    public void skipPast(char c) {
+        // Skipped text is never sliced, so it does not need to stay buffered
+        markIndex = index;
+        while (fill(1)) {
+            for (int i = index; i < limit; i++) {
+                if (buffer[i] == c) {
+                    index = i + 1;
+                    return;
+                }
+            }
+            index = limit;
+            markIndex = index;
+        }
+    }
+
+    @Override
+    public int skipUntil(char stop) {
+        int count = 0;
+        while (fill(1)) {
+            int end = index;
+            while (end < limit && buffer[end] != stop && buffer[end] != '\\') {
+                end++;
+            }
+            count += end - index;
+            boolean found = end < limit;
+            index = end;
+            if (found) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    // Makes sure at least n characters are buffered past index, reading more input if
+    // needed. Returns false if the input ends first.
+    private boolean fill(int n) {
+        if (limit - index >= n) {
+            return true;
+        }
+        if (endOfInput) {
+            return false;
+        }
+        // Keep everything from the mark on and make room behind it
+        if (markIndex > 0) {
+            System.arraycopy(buffer, markIndex, buffer, 0, limit - markIndex);
+            bufferStart += markIndex;
+            index -= markIndex;
+            limit -= markIndex;
+            markIndex = 0;
+        }
+        if (index + n > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, index + n));
+        }
+        try {
+            while (limit - index < n && !endOfInput) {
+                if (limit == buffer.length) {
+                    // The current token fills the whole buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    limit += read;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return limit - index >= n;
+    }
+}
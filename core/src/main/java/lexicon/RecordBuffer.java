@@ -0,0 +1,540 @@
+package lexicon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads awk records straight out of the input bytes. A regular file is mapped a
+// window at a time, anything else is read through one large direct buffer. The
+// current record and its fields are only offsets into those bytes: fields are found
+// when a $N first asks for them, and only as far as N, and they are turned into
+// numbers without making a String. Text is decoded only when it is asked for.
+class RecordBuffer {
+    static final int WINDOW_SIZE = 1 << 30;
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Where more bytes come from: a file mapped from base on, or a channel
+    private final FileChannel file;
+    private final ReadableByteChannel channel;
+    private final long fileSize;
+    private int windowSize;
+    private long base;
+    private boolean ended;
+    // How far the last fill() moved the bytes it kept
+    private int shifted;
+
+    private ByteBuffer buffer;
+    private int limit;
+    // Where the search for the next record starts
+    private int position;
+
+    // The current record, which fill() keeps in the buffer until the next one is found
+    private int recordStart;
+    private int recordEnd;
+
+    // Fields found so far in the current record, as offsets from its start
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private int splitPosition;
+    private boolean splitDone;
+    private int splitSeparator = -1;
+
+    private byte[] scratch = new byte[256];
+
+    // Reads a file, mapped in windows of windowSize bytes
+    RecordBuffer(FileChannel file, int windowSize) throws IOException {
+        this.file = file;
+        this.channel = null;
+        this.fileSize = file.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    // Reads a channel through a direct buffer of bufferSize bytes, larger if a record
+    // does not fit
+    RecordBuffer(ReadableByteChannel channel, int bufferSize) {
+        this.file = null;
+        this.channel = channel;
+        this.fileSize = -1;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.limit(0);
+    }
+
+    // Bytes already in memory
+    RecordBuffer(ByteBuffer bytes) {
+        this.file = null;
+        this.channel = null;
+        this.fileSize = -1;
+        this.buffer = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.limit = buffer.limit();
+        this.ended = true;
+    }
+
+    // Maps a regular file, and reads anything else, like a pipe, through a buffer
+    static RecordBuffer open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (Files.isRegularFile(path)) {
+                return new RecordBuffer(channel, WINDOW_SIZE);
+            }
+            return new RecordBuffer(channel, BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Moves on to the next record, ending at separator or at the end of the input.
+    // Returns false, leaving the current record as it is, when there are no more.
+    boolean next(byte separator) {
+        int start = position;
+        long pattern = ONES * (separator & 0xff);
+        int at = start;
+        while (true) {
+            while (at + 8 <= limit) {
+                long word = buffer.getLong(at) ^ pattern;
+                long found = (word - ONES) & ~word & HIGH_BITS;
+                if (found != 0) {
+                    at += Long.numberOfTrailingZeros(found) >>> 3;
+                    startRecord(start, at);
+                    position = at + 1;
+                    return true;
+                }
+                at += 8;
+            }
+            for (; at < limit; at++) {
+                if (buffer.get(at) == separator) {
+                    startRecord(start, at);
+                    position = at + 1;
+                    return true;
+                }
+            }
+            boolean more = fill();
+            start -= shifted;
+            at -= shifted;
+            if (!more) {
+                if (start == limit) {
+                    return false;
+                }
+                startRecord(start, limit);
+                position = limit;
+                return true;
+            }
+        }
+    }
+
+    // Moves on to the next paragraph, as RS = "" asks: records are separated by blank
+    // lines, and newlines before and after them are left out
+    boolean nextParagraph() {
+        int at = position;
+        while (true) {
+            while (at < limit && buffer.get(at) == '\n') {
+                at++;
+            }
+            if (at < limit) {
+                break;
+            }
+            boolean more = fill();
+            at -= shifted;
+            if (!more) {
+                position = limit;
+                return false;
+            }
+        }
+        int start = at;
+        while (true) {
+            for (; at + 1 < limit; at++) {
+                if (buffer.get(at) == '\n' && buffer.get(at + 1) == '\n') {
+                    startRecord(start, at);
+                    position = at + 2;
+                    return true;
+                }
+            }
+            boolean more = fill();
+            start -= shifted;
+            at -= shifted;
+            if (!more) {
+                int end = limit;
+                while (end > start && buffer.get(end - 1) == '\n') {
+                    end--;
+                }
+                startRecord(start, end);
+                position = limit;
+                return true;
+            }
+        }
+    }
+
+    private void startRecord(int start, int end) {
+        recordStart = start;
+        recordEnd = end;
+        fieldCount = 0;
+        splitPosition = 0;
+        splitDone = false;
+    }
+
+    // Brings in more input, keeping the current record and everything after it.
+    // Returns false at the end of the input. Either way the kept bytes may have moved
+    // down, by shifted.
+    private boolean fill() {
+        shifted = 0;
+        if (ended) {
+            return false;
+        }
+        int keep = Math.min(recordStart, position);
+        if (file != null) {
+            if (base + limit >= fileSize) {
+                ended = true;
+                return false;
+            }
+            if (keep == 0 && limit >= windowSize) {
+                // A record longer than a window
+                windowSize = (int) Math.min(Integer.MAX_VALUE - 8, (long) windowSize * 2);
+            }
+            map(base + keep);
+            shift(keep);
+            return true;
+        }
+        if (channel == null) {
+            ended = true;
+            return false;
+        }
+        try {
+            if (keep == 0 && limit == buffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.position(0).limit(limit);
+                grown.put(buffer);
+                buffer = grown;
+            } else {
+                buffer.position(keep).limit(limit);
+                buffer.compact();
+            }
+            int count;
+            do {
+                count = channel.read(buffer);
+            } while (count == 0);
+            buffer.flip();
+            limit = buffer.limit();
+            shift(keep);
+            if (count < 0) {
+                ended = true;
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void shift(int distance) {
+        shifted = distance;
+        recordStart -= distance;
+        recordEnd -= distance;
+        position -= distance;
+    }
+
+    private void map(long start) {
+        try {
+            long length = Math.min(fileSize - start, windowSize);
+            buffer = file.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+            base = start;
+            limit = (int) length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int recordLength() {
+        return recordEnd - recordStart;
+    }
+
+    String text() {
+        return decode(recordStart, recordEnd);
+    }
+
+    // Fields. separator is ' ' for the default splitting on runs of blanks, or the one
+    // byte that separates them.
+
+    int fieldCount(int separator) {
+        split(Integer.MAX_VALUE, separator);
+        return fieldCount;
+    }
+
+    // $i as text, or "" past the last field
+    String fieldText(int i, int separator) {
+        if (!split(i, separator)) {
+            return "";
+        }
+        return decode(recordStart + fieldStarts[i - 1], recordStart + fieldEnds[i - 1]);
+    }
+
+    // $i as a number, read as strtod would, without decoding it
+    double fieldNumber(int i, int separator) {
+        if (!split(i, separator)) {
+            return 0;
+        }
+        return parseNumber(buffer, recordStart + fieldStarts[i - 1], recordStart + fieldEnds[i - 1]);
+    }
+
+    boolean fieldLooksNumeric(int i, int separator) {
+        if (!split(i, separator)) {
+            return false;
+        }
+        return looksNumeric(buffer, recordStart + fieldStarts[i - 1], recordStart + fieldEnds[i - 1]);
+    }
+
+    double recordNumber() {
+        return parseNumber(buffer, recordStart, recordEnd);
+    }
+
+    // Finds fields until there are i of them. Returns whether there are.
+    private boolean split(int i, int separator) {
+        if (separator != splitSeparator) {
+            splitSeparator = separator;
+            fieldCount = 0;
+            splitPosition = 0;
+            splitDone = false;
+        }
+        int length = recordEnd - recordStart;
+        while (fieldCount < i && !splitDone) {
+            int at = recordStart + splitPosition;
+            int end = recordStart + length;
+            int start;
+            if (separator == ' ') {
+                while (at < end && isBlank(buffer.get(at))) {
+                    at++;
+                }
+                if (at == end) {
+                    splitDone = true;
+                    break;
+                }
+                start = at;
+                while (at < end && !isBlank(buffer.get(at))) {
+                    at++;
+                }
+                splitPosition = at - recordStart;
+            } else {
+                if (length == 0) {
+                    splitDone = true;
+                    break;
+                }
+                start = at;
+                while (at < end && buffer.get(at) != separator) {
+                    at++;
+                }
+                if (at == end) {
+                    splitDone = true;
+                }
+                splitPosition = at + 1 - recordStart;
+            }
+            addField(start - recordStart, at - recordStart);
+        }
+        return i <= fieldCount;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\n';
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // The rest of the input as text, for record separators this class does not read
+    Reader remainder() {
+        return new InputStreamReader(new InputStream() {
+            @Override
+            public int read() {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (position == limit) {
+                    recordStart = position;
+                    if (!fill() && position == limit) {
+                        return -1;
+                    }
+                }
+                int count = Math.min(length, limit - position);
+                buffer.get(position, bytes, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+                RecordBuffer.this.close();
+            }
+        }, StandardCharsets.UTF_8);
+    }
+
+    void close() {
+        try {
+            if (file != null) {
+                file.close();
+            } else if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Numbers
+
+    // The leading number in bytes start to end, as AwkRuntime.toNumber reads it from
+    // a String. Up to 18 significant digits with a small exponent are worked out
+    // exactly in a long and one multiplication or division, which rounds correctly;
+    // anything else goes through Double.parseDouble.
+    static double parseNumber(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        while (i < end && isSpace(bytes.get(i))) {
+            i++;
+        }
+        int numberStart = i;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '+' || bytes.get(i) == '-')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+        for (; i < end && isDigit(bytes.get(i)); i++) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (bytes.get(i) - '0');
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                exact = false;
+            }
+        }
+        boolean any = i > numberStart && isDigit(bytes.get(i - 1));
+        if (i < end && bytes.get(i) == '.') {
+            i++;
+            for (; i < end && isDigit(bytes.get(i)); i++) {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes.get(i) - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    scale--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (!any) {
+            return 0;
+        }
+        if (i < end && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            int at = i + 1;
+            boolean negativeExponent = false;
+            if (at < end && (bytes.get(at) == '+' || bytes.get(at) == '-')) {
+                negativeExponent = bytes.get(at) == '-';
+                at++;
+            }
+            if (at < end && isDigit(bytes.get(at))) {
+                int exponent = 0;
+                for (; at < end && isDigit(bytes.get(at)); at++) {
+                    exponent = Math.min(exponent * 10 + (bytes.get(at) - '0'), 100_000);
+                }
+                scale += negativeExponent ? -exponent : exponent;
+                i = at;
+            }
+        }
+        if (exact && mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+            double value = scale >= 0 ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+            return negative ? -value : value;
+        }
+        char[] text = new char[i - numberStart];
+        for (int k = 0; k < text.length; k++) {
+            text[k] = (char) bytes.get(numberStart + k);
+        }
+        return Double.parseDouble(new String(text));
+    }
+
+    // Whether bytes start to end are a number and nothing else, apart from blanks
+    static boolean looksNumeric(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        while (i < end && isSpace(bytes.get(i))) {
+            i++;
+        }
+        if (i < end && (bytes.get(i) == '+' || bytes.get(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        for (; i < end && isDigit(bytes.get(i)); i++) {
+            digits++;
+        }
+        if (i < end && bytes.get(i) == '.') {
+            for (i++; i < end && isDigit(bytes.get(i)); i++) {
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            int at = i + 1;
+            if (at < end && (bytes.get(at) == '+' || bytes.get(at) == '-')) {
+                at++;
+            }
+            if (at < end && isDigit(bytes.get(at))) {
+                for (i = at; i < end && isDigit(bytes.get(i)); i++) {
+                    // Keep going
+                }
+            }
+        }
+        while (i < end && isSpace(bytes.get(i))) {
+            i++;
+        }
+        return i == end;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0b;
+    }
+}
@@ -0,0 +1,755 @@
+package lexicon;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// An awk extended regular expression, compiled for the way it is searched for. Plain
+// text, with or without ^ and $, is found with String.indexOf, startsWith, endsWith or
+// equals. Anything else is parsed into a Thompson NFA, searched with a DFA built from it
+// a state at a time as texts need them, so a search is linear in the text whatever the
+// pattern; a plain prefix is looked for first and text without it is never scanned.
+// Where a match is, for sub, gsub, match and split, is found by java.util.regex,
+// compiled when first asked for. So is anything this parser does not take, and it then
+// reports the same errors it always did.
+class Regex {
+    // DFA states kept before they are thrown away and built again
+    private static final int MAX_STATES = 4096;
+    // The most copies of a bracketed repeat like a{2,5} written out in the NFA
+    private static final int MAX_REPEAT = 256;
+    private static final int MAX_NFA_STATES = 1 << 15;
+
+    // How a pattern is searched for
+    private static final int CONTAINS = 0;
+    private static final int STARTS = 1;
+    private static final int ENDS = 2;
+    private static final int EQUALS = 3;
+    private static final int AUTOMATON = 4;
+    private static final int JAVA = 5;
+
+    // NFA states. A SET moves on over one character in its set, SPLIT goes both ways,
+    // EMPTY just goes on, BEGIN and END only at the start and end of the text.
+    private static final byte SET = 0;
+    private static final byte SPLIT = 1;
+    private static final byte EMPTY = 2;
+    private static final byte BEGIN = 3;
+    private static final byte END = 4;
+    private static final byte ACCEPT = 5;
+
+    private final String ere;
+    private final int kind;
+    // The text to look for, or a plain prefix every match starts with
+    private String literal;
+    private boolean anchored;
+    private Pattern pattern;
+
+    private byte[] kinds = new byte[16];
+    private int[] outs = new int[16];
+    private int[] others = new int[16];
+    private CharSet[] sets = new CharSet[16];
+    private int stateCount;
+    private int start;
+
+    // While parsing
+    private int position;
+    private int depth;
+    // Whether there is a | outside all parentheses, so a prefix is not needed
+    private boolean alternatives;
+
+    // While building DFA states
+    private int[] marks;
+    private int generation;
+    private int[] found;
+    private int foundCount;
+    private int[] stack;
+    private final Map<String, State> states = new HashMap<>();
+    private State first;
+    private State resumed;
+    // Whether the empty text matches, where the start is also the end
+    private boolean matchesEmpty;
+    // What an unanchored search adds after every character: the pattern starting again
+    private int[] restart;
+
+    private Regex(String ere, int kind) {
+        this.ere = ere;
+        this.kind = kind;
+    }
+
+    static Regex compile(String ere) {
+        // Plain text, perhaps anchored at either end
+        boolean begins = ere.startsWith("^");
+        StringBuilder text = new StringBuilder();
+        int stop = plainPrefix(ere, begins ? 1 : 0, text);
+        if (stop == ere.length() || stop == ere.length() - 1 && ere.charAt(stop) == '$') {
+            boolean ends = stop < ere.length();
+            Regex regex = new Regex(ere, begins ? (ends ? EQUALS : STARTS) : (ends ? ENDS : CONTAINS));
+            regex.literal = text.toString();
+            return regex;
+        }
+        Regex regex = new Regex(ere, AUTOMATON);
+        try {
+            regex.start = regex.parse();
+        } catch (IllegalArgumentException e) {
+            // Left to java.util.regex, which knows what to say about it
+            Regex fallback = new Regex(ere, JAVA);
+            fallback.pattern();
+            return fallback;
+        }
+        if (text.length() > 0 && !regex.alternatives) {
+            regex.literal = text.toString();
+            regex.anchored = begins;
+        }
+        regex.prepare();
+        return regex;
+    }
+
+    // The java.util.regex form, for finding where matches are
+    Pattern pattern() {
+        if (pattern == null) {
+            String java = kind == AUTOMATON || kind == JAVA ? AwkRuntime.toJavaRegex(ere)
+                    : (kind == STARTS || kind == EQUALS ? "^" : "") + Pattern.quote(literal)
+                            + (kind == ENDS || kind == EQUALS ? "\\z" : "");
+            pattern = Pattern.compile(java, Pattern.DOTALL);
+        }
+        return pattern;
+    }
+
+    // Whether the pattern matches anywhere in text
+    boolean find(String text) {
+        switch (kind) {
+            case CONTAINS:
+                return text.contains(literal);
+            case STARTS:
+                return text.startsWith(literal);
+            case ENDS:
+                return text.endsWith(literal);
+            case EQUALS:
+                return text.equals(literal);
+            case JAVA:
+                return pattern.matcher(text).find();
+            default:
+                return search(text);
+        }
+    }
+
+    private boolean search(String text) {
+        int from = 0;
+        if (literal != null) {
+            if (anchored) {
+                if (!text.startsWith(literal)) {
+                    return false;
+                }
+            } else {
+                // No match can start before the prefix first turns up
+                from = text.indexOf(literal);
+                if (from < 0) {
+                    return false;
+                }
+            }
+        }
+        if (states.size() > MAX_STATES) {
+            // Patterns that blow up into many states are flushed, not allowed to grow
+            states.clear();
+            prepare();
+        }
+        int length = text.length();
+        if (length == 0) {
+            return matchesEmpty;
+        }
+        boolean skip = literal != null && !anchored;
+        State state = from == 0 ? first : resumed;
+        for (int i = from; i < length; i++) {
+            if (state.accepting) {
+                return true;
+            }
+            if (state.dead) {
+                return false;
+            }
+            if (state == resumed && skip) {
+                // Nothing under way, so on to where the prefix turns up again
+                i = text.indexOf(literal, i);
+                if (i < 0) {
+                    return false;
+                }
+            }
+            char c = text.charAt(i);
+            State next;
+            if (c < 128) {
+                next = state.ascii[c];
+            } else if (Character.isSurrogate(c)) {
+                // java.util.regex reads these as code points
+                return pattern().matcher(text).find();
+            } else {
+                next = state.unicode == null ? null : state.unicode.get(c);
+            }
+            state = next != null ? next : step(state, c);
+        }
+        return state.accepting || state.acceptsAtEnd;
+    }
+
+    // DFA states
+
+    private static final class State {
+        final int[] states;
+        boolean accepting;
+        boolean acceptsAtEnd;
+        // Nothing can match from here
+        boolean dead;
+        final State[] ascii = new State[128];
+        Map<Character, State> unicode;
+
+        State(int[] states) {
+            this.states = states;
+        }
+    }
+
+    private void prepare() {
+        marks = new int[stateCount];
+        found = new int[stateCount];
+        stack = new int[stateCount];
+        generation++;
+        foundCount = 0;
+        closure(start, false, false);
+        restart = Arrays.copyOf(found, foundCount);
+        resumed = intern();
+        generation++;
+        foundCount = 0;
+        closure(start, true, true);
+        for (int i = 0; i < foundCount; i++) {
+            matchesEmpty |= kinds[found[i]] == ACCEPT;
+        }
+        generation++;
+        foundCount = 0;
+        closure(start, true, false);
+        first = intern();
+    }
+
+    private State step(State state, char c) {
+        generation++;
+        foundCount = 0;
+        for (int s : state.states) {
+            if (kinds[s] == SET && sets[s].contains(c)) {
+                closure(outs[s], false, false);
+            }
+        }
+        for (int s : restart) {
+            if (marks[s] != generation) {
+                marks[s] = generation;
+                found[foundCount++] = s;
+            }
+        }
+        State next = intern();
+        if (c < 128) {
+            state.ascii[c] = next;
+        } else {
+            if (state.unicode == null) {
+                state.unicode = new HashMap<>();
+            }
+            state.unicode.put(c, next);
+        }
+        return next;
+    }
+
+    // Adds the states reached from s without reading a character to found. Unless
+    // atEnd, END states are kept as they are, for acceptsAtEnd.
+    private void closure(int s, boolean atStart, boolean atEnd) {
+        int top = 0;
+        stack[top++] = s;
+        while (top > 0) {
+            int next = stack[--top];
+            if (marks[next] == generation) {
+                continue;
+            }
+            marks[next] = generation;
+            switch (kinds[next]) {
+                case SPLIT:
+                    stack[top++] = others[next];
+                    stack[top++] = outs[next];
+                    break;
+                case EMPTY:
+                    stack[top++] = outs[next];
+                    break;
+                case BEGIN:
+                    if (atStart) {
+                        stack[top++] = outs[next];
+                    }
+                    break;
+                case END:
+                    if (atEnd) {
+                        stack[top++] = outs[next];
+                    } else {
+                        found[foundCount++] = next;
+                    }
+                    break;
+                default:
+                    found[foundCount++] = next;
+                    break;
+            }
+        }
+    }
+
+    private State intern() {
+        int[] set = Arrays.copyOf(found, foundCount);
+        Arrays.sort(set);
+        char[] key = new char[set.length];
+        for (int i = 0; i < set.length; i++) {
+            key[i] = (char) set[i];
+        }
+        String name = new String(key);
+        State state = states.get(name);
+        if (state != null) {
+            return state;
+        }
+        state = new State(set);
+        boolean live = false;
+        for (int s : set) {
+            state.accepting |= kinds[s] == ACCEPT;
+            live |= kinds[s] == SET || kinds[s] == END;
+        }
+        state.dead = !live && !state.accepting && restart.length == 0;
+        // What is left to match at the end of the text
+        generation++;
+        foundCount = 0;
+        for (int s : set) {
+            if (kinds[s] == END) {
+                closure(outs[s], false, true);
+            }
+        }
+        for (int i = 0; i < foundCount; i++) {
+            state.acceptsAtEnd |= kinds[found[i]] == ACCEPT;
+        }
+        states.put(name, state);
+        return state;
+    }
+
+    // Parsing into the NFA. Each piece parsed is a fragment from a start state to an
+    // EMPTY end state whose way out is set when the next piece is joined on; the two
+    // are returned packed in a long.
+
+    private int parse() {
+        position = 0;
+        long fragment = alternation();
+        if (position < ere.length()) {
+            throw new IllegalArgumentException("Unmatched ) in regular expression: " + ere);
+        }
+        int accept = add(ACCEPT, -1, -1, null);
+        outs[end(fragment)] = accept;
+        return begin(fragment);
+    }
+
+    private long alternation() {
+        long fragment = concatenation();
+        while (position < ere.length() && ere.charAt(position) == '|') {
+            alternatives |= depth == 0;
+            position++;
+            long other = concatenation();
+            int join = add(EMPTY, -1, -1, null);
+            outs[end(fragment)] = join;
+            outs[end(other)] = join;
+            fragment = fragment(add(SPLIT, begin(fragment), begin(other), null), join);
+        }
+        return fragment;
+    }
+
+    private long concatenation() {
+        int empty = add(EMPTY, -1, -1, null);
+        long fragment = fragment(empty, empty);
+        while (position < ere.length() && ere.charAt(position) != '|' && ere.charAt(position) != ')') {
+            long next = repeat();
+            outs[end(fragment)] = begin(next);
+            fragment = fragment(begin(fragment), end(next));
+        }
+        return fragment;
+    }
+
+    private long repeat() {
+        int atomStart = position;
+        long fragment = atom();
+        if (position >= ere.length()) {
+            return fragment;
+        }
+        char c = ere.charAt(position);
+        int min;
+        int max;
+        if (c == '*') {
+            min = 0;
+            max = -1;
+        } else if (c == '+') {
+            min = 1;
+            max = -1;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+        } else if (c == '{' && position + 1 < ere.length() && Character.isDigit(ere.charAt(position + 1))) {
+            int close = ere.indexOf('}', position);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed repeat");
+            }
+            String[] bounds = ere.substring(position + 1, close).split(",", -1);
+            if (bounds.length > 2 || !bounds[0].matches("[0-9]{1,4}")
+                    || bounds.length == 2 && !bounds[1].matches("[0-9]{0,4}")) {
+                throw new IllegalArgumentException("Bad repeat");
+            }
+            min = Integer.parseInt(bounds[0]);
+            max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+            if (max >= 0 && max < min || Math.max(min, max) > MAX_REPEAT) {
+                throw new IllegalArgumentException("Bad repeat");
+            }
+            position = close;
+        } else {
+            return fragment;
+        }
+        position++;
+        if (position < ere.length() && "*+?{".indexOf(ere.charAt(position)) >= 0) {
+            // Possessive and reluctant forms mean something else to java.util.regex
+            throw new IllegalArgumentException("Repeated repeat");
+        }
+        int after = position;
+        long result;
+        if (min == 0) {
+            int empty = add(EMPTY, -1, -1, null);
+            result = fragment(empty, empty);
+        } else {
+            result = fragment;
+            for (int i = 1; i < min; i++) {
+                result = join(result, copy(atomStart));
+            }
+        }
+        if (max < 0) {
+            // x* as a loop: the last copy, or the first if there are none yet
+            long loop = min == 0 ? fragment : copy(atomStart);
+            int exit = add(EMPTY, -1, -1, null);
+            int split = add(SPLIT, begin(loop), exit, null);
+            outs[end(loop)] = split;
+            result = join(result, fragment(split, exit));
+        } else {
+            for (int i = min + 1; i <= max; i++) {
+                long optional = i == 1 ? fragment : copy(atomStart);
+                int exit = add(EMPTY, -1, -1, null);
+                int split = add(SPLIT, begin(optional), exit, null);
+                outs[end(optional)] = exit;
+                result = join(result, fragment(split, exit));
+            }
+        }
+        position = after;
+        return result;
+    }
+
+    // Another copy of the atom at from
+    private long copy(int from) {
+        position = from;
+        return atom();
+    }
+
+    private long atom() {
+        char c = ere.charAt(position++);
+        switch (c) {
+            case '(':
+                depth++;
+                long inner = alternation();
+                depth--;
+                if (position >= ere.length() || ere.charAt(position) != ')') {
+                    throw new IllegalArgumentException("Unclosed (");
+                }
+                position++;
+                return inner;
+            case '[':
+                return single(bracket());
+            case '.':
+                return single(new CharSet(true));
+            case '^':
+                return anchor(BEGIN);
+            case '$':
+                return anchor(END);
+            case '*':
+            case '+':
+            case '?':
+            case ')':
+                throw new IllegalArgumentException("Nothing to repeat");
+            case '{':
+                if (position < ere.length() && Character.isDigit(ere.charAt(position))) {
+                    throw new IllegalArgumentException("Nothing to repeat");
+                }
+                return single(new CharSet(false).add(c, c));
+            case '\\':
+                if (position >= ere.length()) {
+                    return single(new CharSet(false).add('\\', '\\'));
+                }
+                char escaped = ere.charAt(position++);
+                CharSet set = escapeClass(escaped);
+                if (set == null) {
+                    int literal = escape(escaped);
+                    set = new CharSet(false).add(literal, literal);
+                }
+                return single(set);
+            default:
+                if (Character.isSurrogate(c)) {
+                    throw new IllegalArgumentException("Surrogate");
+                }
+                return single(new CharSet(false).add(c, c));
+        }
+    }
+
+    private long anchor(byte kind) {
+        if (position < ere.length() && "*+?".indexOf(ere.charAt(position)) >= 0) {
+            throw new IllegalArgumentException("Repeated anchor");
+        }
+        int end = add(EMPTY, -1, -1, null);
+        return fragment(add(kind, end, -1, null), end);
+    }
+
+    private long single(CharSet set) {
+        int end = add(EMPTY, -1, -1, null);
+        return fragment(add(SET, end, -1, set), end);
+    }
+
+    private CharSet bracket() {
+        CharSet set = new CharSet(false);
+        int length = ere.length();
+        if (position < length && ere.charAt(position) == '^') {
+            set.negated = true;
+            position++;
+        }
+        boolean firstItem = true;
+        while (position < length) {
+            char c = ere.charAt(position);
+            if (c == ']' && !firstItem) {
+                position++;
+                return set;
+            }
+            firstItem = false;
+            if (c == '[' && position + 1 < length && ere.charAt(position + 1) == ':') {
+                int close = ere.indexOf(":]", position + 2);
+                if (close > 0) {
+                    posixClass(ere.substring(position + 2, close), set);
+                    position = close + 2;
+                    continue;
+                }
+            }
+            int from = bracketChar();
+            if (from < 0) {
+                continue;
+            }
+            if (position + 1 < length && ere.charAt(position) == '-' && ere.charAt(position + 1) != ']') {
+                position++;
+                int to = bracketChar();
+                if (to < from) {
+                    throw new IllegalArgumentException("Bad range");
+                }
+                set.add(from, to);
+            } else {
+                set.add(from, from);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated [ in regular expression: " + ere);
+    }
+
+    // The next character in a bracket expression, or -1 when it was a class like \d
+    // that has already been added
+    private int bracketChar() {
+        char c = ere.charAt(position++);
+        if (Character.isSurrogate(c)) {
+            throw new IllegalArgumentException("Surrogate");
+        }
+        if (c != '\\' || position >= ere.length()) {
+            return c;
+        }
+        char escaped = ere.charAt(position++);
+        if (escapeClass(escaped) != null) {
+            // Classes inside brackets, and \S or \D inside [^ ], are left to java.util.regex
+            throw new IllegalArgumentException("Class in brackets");
+        }
+        return escape(escaped);
+    }
+
+    private static CharSet escapeClass(char c) {
+        switch (c) {
+            case 's':
+            case 'S':
+                return new CharSet(c == 'S').add(' ', ' ').add('\t', '\r');
+            case 'd':
+            case 'D':
+                return new CharSet(c == 'D').add('0', '9');
+            case 'w':
+            case 'W':
+                return new CharSet(c == 'W').add('a', 'z').add('A', 'Z').add('0', '9').add('_', '_');
+            default:
+                return null;
+        }
+    }
+
+    // The character \c stands for, as java.util.regex reads it
+    private static int escape(char c) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return 7;
+            case 'e':
+                return 27;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw new IllegalArgumentException("Escape \\" + c);
+                }
+                return c;
+        }
+    }
+
+    private static void posixClass(String name, CharSet set) {
+        switch (name) {
+            case "alpha":
+                set.add('a', 'z').add('A', 'Z');
+                break;
+            case "digit":
+                set.add('0', '9');
+                break;
+            case "alnum":
+                set.add('a', 'z').add('A', 'Z').add('0', '9');
+                break;
+            case "upper":
+                set.add('A', 'Z');
+                break;
+            case "lower":
+                set.add('a', 'z');
+                break;
+            case "space":
+                set.add(' ', ' ').add('\t', '\r');
+                break;
+            case "blank":
+                set.add(' ', ' ').add('\t', '\t');
+                break;
+            case "punct":
+                set.add('!', '/').add(':', '@').add('[', '`').add('{', '~');
+                break;
+            case "print":
+                set.add(' ', '~');
+                break;
+            case "graph":
+                set.add('!', '~');
+                break;
+            case "cntrl":
+                set.add(0, 31).add(127, 127);
+                break;
+            case "xdigit":
+                set.add('0', '9').add('A', 'F').add('a', 'f');
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown character class [:" + name + ":]");
+        }
+    }
+
+    // The text at the start of ere from from on that matches only itself, decoded into
+    // text. Returns where it stops.
+    private static int plainPrefix(String ere, int from, StringBuilder text) {
+        int i = from;
+        while (i < ere.length()) {
+            char c = ere.charAt(i);
+            int next = i + 1;
+            char literal = c;
+            if (c == '\\') {
+                if (next >= ere.length()) {
+                    break;
+                }
+                char escaped = ere.charAt(next++);
+                if (Character.isLetterOrDigit(escaped) && "ntrf".indexOf(escaped) < 0) {
+                    break;
+                }
+                literal = (char) escape(escaped);
+            } else if (".[]()|*+?{}^$".indexOf(c) >= 0 || Character.isSurrogate(c)) {
+                break;
+            }
+            // A repeat applies to the character before it, which is then not plain
+            if (next < ere.length() && "*+?{".indexOf(ere.charAt(next)) >= 0) {
+                break;
+            }
+            text.append(literal);
+            i = next;
+        }
+        return i;
+    }
+
+    private int add(byte kind, int out, int other, CharSet set) {
+        if (stateCount == kinds.length) {
+            if (stateCount >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("Too large");
+            }
+            int capacity = stateCount * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            outs = Arrays.copyOf(outs, capacity);
+            others = Arrays.copyOf(others, capacity);
+            sets = Arrays.copyOf(sets, capacity);
+        }
+        kinds[stateCount] = kind;
+        outs[stateCount] = out;
+        others[stateCount] = other;
+        sets[stateCount] = set;
+        return stateCount++;
+    }
+
+    private long join(long first, long second) {
+        outs[end(first)] = begin(second);
+        return fragment(begin(first), end(second));
+    }
+
+    private static long fragment(int begin, int end) {
+        return (long) begin << 32 | end;
+    }
+
+    private static int begin(long fragment) {
+        return (int) (fragment >>> 32);
+    }
+
+    private static int end(long fragment) {
+        return (int) fragment;
+    }
+
+    // A set of characters: a bitmap for ASCII and ranges for the rest
+    private static final class CharSet {
+        private long low;
+        private long high;
+        private int[] ranges = new int[0];
+        boolean negated;
+
+        CharSet(boolean negated) {
+            this.negated = negated;
+        }
+
+        CharSet add(int from, int to) {
+            for (int c = from; c <= Math.min(to, 127); c++) {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+            if (to >= 128) {
+                ranges = Arrays.copyOf(ranges, ranges.length + 2);
+                ranges[ranges.length - 2] = Math.max(from, 128);
+                ranges[ranges.length - 1] = to;
+            }
+            return this;
+        }
+
+        boolean contains(char c) {
+            boolean in;
+            if (c < 64) {
+                in = (low >>> c & 1) != 0;
+            } else if (c < 128) {
+                in = (high >>> (c - 64) & 1) != 0;
+            } else {
+                in = false;
+                for (int i = 0; i < ranges.length && !in; i += 2) {
+                    in = c >= ranges[i] && c <= ranges[i + 1];
+                }
+            }
+            return in != negated;
+        }
+    }
+}
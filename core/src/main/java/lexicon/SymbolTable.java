@@ -0,0 +1,105 @@
+package lexicon;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Interns identifiers for one compilation. Each distinct name gets a dense id in the
+// order it was first seen, so later stages can keep variables and functions in arrays
+// indexed by id. The Lexer interns straight from its character buffer, so a name is
+// only turned into a String the first time it turns up.
+class SymbolTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // Open addressing over id + 1, so that 0 marks an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[Objects.checkIndex(id, size)];
+    }
+
+    // The id of name, or -1 if it has not been interned
+    public int lookup(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public int intern(String name) {
+        int id = lookup(name);
+        return id >= 0 ? id : add(name, name.hashCode());
+    }
+
+    // Interns the first length characters of chars. hash must be what String.hashCode()
+    // gives for them.
+    int intern(char[] chars, int length, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], chars, length)) {
+                return id;
+            }
+        }
+        return add(new String(chars, 0, length), hash);
+    }
+
+    // Forgets every name, keeping the storage for the next compilation
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private static boolean matches(String name, char[] chars, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            slots = new int[size * 4];
+            for (int id = 0; id < size; id++) {
+                place(id);
+            }
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        place(size);
+        return size++;
+    }
+
+    private void place(int id) {
+        int mask = slots.length - 1;
+        int slot = mix(hashes[id]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    // Folds the high bits into the low ones, as HashMap does
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
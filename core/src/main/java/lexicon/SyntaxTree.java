@@ -0,0 +1,252 @@
+package lexicon;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Syntax trees kept flat in parallel arrays, the way TokenBuffer keeps tokens: a
+// kind, an operation and a token index per node, and each node's children as a run of
+// node indices in one shared int array. A node is always added after its children, so
+// node indices are in postfix order and a tree can be walked with a plain loop instead
+// of recursion. reset() drops every node at once and keeps the storage for the next
+// program. NUMBER and STRING nodes hold their values too, ready for use: a NUMBER its
+// token's, or one worked out by ConstantFolder, and a STRING its literal's, unescaped
+// the first time it is asked for.
+class SyntaxTree {
+    enum Kind {
+        // Leaves, whose value is the text of their token, or a constant folded in
+        NUMBER, STRING, REGEX, VARIABLE,
+        // An array element: the array's VARIABLE, then one child per subscript
+        INDEX,
+        // A function call, named by its token, with one child per argument
+        CALL,
+        // A parenthesized list of two or more expressions, as in (i, j) in a
+        GROUP,
+        // Operations. A CONCATENATION takes any number of children, one per operand.
+        UNARY, BINARY, CONDITIONAL, ASSIGN,
+        // getline, with its variable, file and command as children, each EMPTY when
+        // there is none
+        GETLINE,
+        // A part that was left out, like the condition of for (;;)
+        EMPTY,
+        // Statements, with their parts as children in the order they are written.
+        // PRINT and PRINTF end with a REDIRECT, named by its '>', '>>' or '|' token, or
+        // an EMPTY. A plain expression is a statement by itself.
+        BLOCK, IF, WHILE, DO, FOR, FOR_IN, BREAK, CONTINUE, NEXT, NEXTFILE, EXIT, RETURN, DELETE,
+        PRINT, PRINTF, REDIRECT,
+        // A program: BEGIN and END actions, RULEs of a pattern, an end pattern and an
+        // action, and FUNCTIONs named by their token, with their parameters and body
+        BEGIN, END, RULE, FUNCTION, PROGRAM
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private TokenBuffer tokens;
+    private byte[] kinds = new byte[DEFAULT_CAPACITY];
+    // Operation ordinals, or -1 for nodes without one
+    private byte[] operations = new byte[DEFAULT_CAPACITY];
+    private int[] nodeTokens = new int[DEFAULT_CAPACITY];
+    private int[] firstChildren = new int[DEFAULT_CAPACITY];
+    private int[] childCounts = new int[DEFAULT_CAPACITY];
+    private double[] numbers = new double[DEFAULT_CAPACITY];
+    private String[] strings = new String[DEFAULT_CAPACITY];
+    // Whether a NUMBER or STRING is a folded constant rather than its token's value
+    private boolean[] folded = new boolean[DEFAULT_CAPACITY];
+    private int size;
+    private int[] children = new int[DEFAULT_CAPACITY];
+    private int childrenSize;
+
+    public SyntaxTree(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    // Drops every node and starts over on the tokens of another program
+    public void reset(TokenBuffer tokens) {
+        this.tokens = tokens;
+        size = 0;
+        childrenSize = 0;
+    }
+
+    // Adds a node whose children are the count node indices in stack from index from on
+    int add(Kind kind, Operation operation, int token, int[] stack, int from, int count) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            operations = Arrays.copyOf(operations, capacity);
+            nodeTokens = Arrays.copyOf(nodeTokens, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+            folded = Arrays.copyOf(folded, capacity);
+        }
+        if (childrenSize + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childrenSize + count));
+        }
+        System.arraycopy(stack, from, children, childrenSize, count);
+        kinds[size] = (byte) kind.ordinal();
+        operations[size] = (byte) (operation == null ? -1 : operation.ordinal());
+        nodeTokens[size] = token;
+        firstChildren[size] = childrenSize;
+        childCounts[size] = count;
+        numbers[size] = kind == Kind.NUMBER ? tokens.getNumber(token) : 0;
+        strings[size] = null;
+        folded[size] = false;
+        childrenSize += count;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public Kind getKind(int node) {
+        return KINDS[kinds[Objects.checkIndex(node, size)]];
+    }
+
+    // The node's operation, or null for leaves, lists and calls
+    public Operation getOperation(int node) {
+        int operation = operations[Objects.checkIndex(node, size)];
+        return operation < 0 ? null : OPERATIONS[operation];
+    }
+
+    // Index in getTokens() of the token the node came from
+    public int getToken(int node) {
+        return nodeTokens[Objects.checkIndex(node, size)];
+    }
+
+    public int getChildCount(int node) {
+        return childCounts[Objects.checkIndex(node, size)];
+    }
+
+    public int getChild(int node, int i) {
+        return children[firstChildren[node] + Objects.checkIndex(i, getChildCount(node))];
+    }
+
+    // The text of the node's token: a leaf's value, or the name of a called function
+    public String getValue(int node) {
+        return tokens.getValue(getToken(node));
+    }
+
+    // The value of a NUMBER
+    public double getNumber(int node) {
+        checkKind(node, Kind.NUMBER);
+        return numbers[node];
+    }
+
+    // The value of a STRING, with its escapes turned into the characters they stand for
+    public String getString(int node) {
+        checkKind(node, Kind.STRING);
+        if (strings[node] == null) {
+            strings[node] = AwkRuntime.unescape(tokens.getText(nodeTokens[node]).substring(1));
+        }
+        return strings[node];
+    }
+
+    private void checkKind(int node, Kind kind) {
+        if (getKind(node) != kind) {
+            throw new IllegalArgumentException("Node " + node + " is not a " + kind + ": " + getKind(node));
+        }
+    }
+
+    // Turns node into a constant in place, dropping its children. ConstantFolder does
+    // this once it has worked out what node comes to.
+    void setNumber(int node, double value) {
+        makeConstant(node, Kind.NUMBER);
+        numbers[node] = value;
+    }
+
+    void setString(int node, String value) {
+        makeConstant(node, Kind.STRING);
+        strings[node] = value;
+    }
+
+    private void makeConstant(int node, Kind kind) {
+        kinds[Objects.checkIndex(node, size)] = (byte) kind.ordinal();
+        operations[node] = -1;
+        childCounts[node] = 0;
+        folded[node] = true;
+    }
+
+    // Points the i-th child of node at another node
+    void setChild(int node, int i, int child) {
+        children[firstChildren[node] + Objects.checkIndex(i, getChildCount(node))] = child;
+    }
+
+    // Drops the children of node from index count on
+    void truncateChildren(int node, int count) {
+        childCounts[node] = Objects.checkIndex(count, getChildCount(node) + 1);
+    }
+
+    // Id of a VARIABLE or CALL name in the tokens' symbol table
+    public int getSymbolId(int node) {
+        return tokens.getSymbolId(getToken(node));
+    }
+
+    // The tree under node as nested lists, like (ADD x (MULTIPLY 2 y))
+    public String toString(int node) {
+        // Every node in a tree is added after the lowest one in it and before its root
+        int first = node;
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int next = stack[--top];
+            first = Math.min(first, next);
+            int count = getChildCount(next);
+            if (top + count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + count));
+            }
+            for (int i = 0; i < count; i++) {
+                stack[top++] = getChild(next, i);
+            }
+        }
+        String[] text = new String[node - first + 1];
+        for (int n = first; n <= node; n++) {
+            text[n - first] = format(n, text, first);
+        }
+        return text[node - first];
+    }
+
+    private String format(int node, String[] text, int first) {
+        Kind kind = getKind(node);
+        switch (kind) {
+            case NUMBER:
+                return folded[node] ? numberText(numbers[node]) : getValue(node);
+            case VARIABLE:
+                return getValue(node);
+            case STRING:
+                return folded[node] ? '"' + strings[node] + '"' : getValue(node) + '"';
+            case REGEX:
+                return getValue(node) + '`';
+            case EMPTY:
+                return "-";
+            default:
+                break;
+        }
+        StringBuilder builder = new StringBuilder("(");
+        if (kind == Kind.CALL || kind == Kind.REDIRECT) {
+            builder.append(getValue(node));
+        } else if (kind == Kind.FUNCTION) {
+            builder.append(kind).append(' ').append(getValue(node));
+        } else if (getOperation(node) == null) {
+            builder.append(kind);
+        } else {
+            builder.append(getOperation(node));
+        }
+        for (int i = 0; i < getChildCount(node); i++) {
+            builder.append(' ').append(text[getChild(node, i) - first]);
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String numberText(double number) {
+        String integer = AwkRuntime.integerToString(number);
+        return integer != null ? integer : Double.toString(number);
+    }
+}
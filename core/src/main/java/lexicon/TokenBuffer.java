@@ -0,0 +1,292 @@
+package lexicon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+// Holds lexed tokens as parallel arrays instead of one Token object each: a byte
+// for the type and ints for the source offset, length, line, position and symbol id.
+// The text of a token is only sliced out of the source when getValue asks for it.
+// Words take theirs from the symbol table instead, and numbers keep the double the
+// Lexer parsed them into. A buffer with a LineIndex does not
+// store lines and positions at all, and looks them up by offset.
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final CharacterSource source;
+    private final SymbolTable symbols;
+    private final LineIndex lineIndex;
+    private byte[] types;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] lines;
+    private int[] positions;
+    private int[] symbolIds;
+    // Values of NUMBER tokens, and nothing for the rest. Made when the first one is added.
+    private double[] numbers;
+    private int size;
+
+    public TokenBuffer(CharacterSource source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    public TokenBuffer(CharacterSource source, int capacity) {
+        this(source, capacity, new SymbolTable());
+    }
+
+    public TokenBuffer(CharacterSource source, SymbolTable symbols) {
+        this(source, DEFAULT_CAPACITY, symbols);
+    }
+
+    // symbols is the table the added symbol ids refer to
+    public TokenBuffer(CharacterSource source, int capacity, SymbolTable symbols) {
+        this(source, capacity, symbols, null);
+    }
+
+    TokenBuffer(CharacterSource source, int capacity, SymbolTable symbols, LineIndex lineIndex) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lineIndex = lineIndex;
+        this.types = new byte[capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        if (lineIndex == null) {
+            this.lines = new int[capacity];
+            this.positions = new int[capacity];
+        }
+        this.symbolIds = new int[capacity];
+        this.size = 0;
+    }
+
+    // Takes over columns filled in elsewhere, as TokenCache does from a file
+    TokenBuffer(CharacterSource source, SymbolTable symbols, byte[] types, int[] offsets, int[] lengths, int[] lines,
+            int[] positions, int[] symbolIds, double[] numbers) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lineIndex = null;
+        this.types = types;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.lines = lines;
+        this.positions = positions;
+        this.symbolIds = symbolIds;
+        this.numbers = numbers;
+        this.size = types.length;
+    }
+
+    public void add(TokenType type, int offset, int length, int lineNumber, int position) {
+        add(type, offset, length, lineNumber, position, -1);
+    }
+
+    public void add(TokenType type, int offset, int length, int lineNumber, int position, int symbolId) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        if (lineIndex == null) {
+            lines[size] = lineNumber;
+            positions[size] = position;
+        }
+        symbolIds[size] = symbolId;
+        size++;
+    }
+
+    public void addNumber(int offset, int length, int lineNumber, int position, double value) {
+        if (numbers == null) {
+            numbers = new double[types.length];
+        }
+        add(TokenType.NUMBER, offset, length, lineNumber, position, -1);
+        numbers[size - 1] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public TokenType getType(int i) {
+        return TYPES[types[Objects.checkIndex(i, size)]];
+    }
+
+    // Offset and length of the token's text in the source, in the source's units
+    public int getOffset(int i) {
+        return offsets[Objects.checkIndex(i, size)];
+    }
+
+    public int getLength(int i) {
+        return lengths[Objects.checkIndex(i, size)];
+    }
+
+    public int getLineNumber(int i) {
+        Objects.checkIndex(i, size);
+        return lineIndex == null ? lines[i] : lineIndex.getLineNumber(offsets[i]);
+    }
+
+    public int getPosition(int i) {
+        Objects.checkIndex(i, size);
+        if (lineIndex == null) {
+            return positions[i];
+        }
+        int position = lineIndex.getPosition(offsets[i]);
+        TokenType type = TYPES[types[i]];
+        // Literals are reported one before their opening quote
+        return type == TokenType.STRINGLITERAL || type == TokenType.PATTERN ? position - 1 : position;
+    }
+
+    // The index lines and positions come from, or null if they are stored per token
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    // Id of the token in getSymbolTable(), or -1 if it is not a WORD
+    public int getSymbolId(int i) {
+        return symbolIds[Objects.checkIndex(i, size)];
+    }
+
+    // The value of a NUMBER token
+    public double getNumber(int i) {
+        if (getType(i) != TokenType.NUMBER) {
+            throw new IllegalArgumentException("Token " + i + " is not a NUMBER: " + getType(i));
+        }
+        return numbers[i];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public String getValue(int i) {
+        int symbolId = getSymbolId(i);
+        if (symbolId >= 0) {
+            return symbols.name(symbolId);
+        }
+        int offset = getOffset(i);
+        return Lexer.valueOf(getType(i), source.text(offset, offset + lengths[i]));
+    }
+
+    // The token's text as it is in the source. Unlike getValue, a literal keeps its
+    // backslashes, so escapes can be read the way the language means them.
+    public String getText(int i) {
+        int offset = getOffset(i);
+        return source.text(offset, offset + lengths[i]);
+    }
+
+    // Whether a line ends between the i-th token and the one before it. A comment
+    // swallows its newline, so there need not be a SEPARATOR token for it.
+    boolean breaksLineBefore(int i) {
+        if (i == 0 || i >= size) {
+            return false;
+        }
+        int end = offsets[i];
+        for (int offset = offsets[i - 1] + lengths[i - 1]; offset < end; offset++) {
+            if (source.unitAt(offset) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The first two units of the token's text, the second shifted up eight bits, or 0
+    // past the end of a shorter token. Symbols are ASCII, so this tells them apart
+    // without slicing out their text.
+    int getSymbol(int i) {
+        int offset = getOffset(i);
+        int length = lengths[i];
+        if (length == 0) {
+            return 0;
+        }
+        char first = source.unitAt(offset);
+        return length == 1 ? first : first | source.unitAt(offset + 1) << 8;
+    }
+
+    // A standalone Token for the i-th entry
+    public Token get(int i) {
+        return new Token(getType(i), getValue(i), getLineNumber(i), getPosition(i), getSymbolId(i));
+    }
+
+    // Appends other's tokens from index from on. Both buffers must store lines and
+    // positions. Tokens on line anchorLine are moved
+    // along by positionDelta, and every token moves down by lineDelta. Symbol ids from
+    // another table are interned into this one.
+    void appendShifted(TokenBuffer other, int from, int anchorLine, int lineDelta, int positionDelta) {
+        int count = other.size - from;
+        while (size + count > types.length) {
+            grow();
+        }
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.offsets, from, offsets, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.lines, from, lines, size, count);
+        System.arraycopy(other.positions, from, positions, size, count);
+        System.arraycopy(other.symbolIds, from, symbolIds, size, count);
+        if (other.numbers != null) {
+            if (numbers == null) {
+                numbers = new double[types.length];
+            }
+            System.arraycopy(other.numbers, from, numbers, size, count);
+        }
+        for (int i = size; i < size + count; i++) {
+            if (lines[i] == anchorLine) {
+                positions[i] += positionDelta;
+            }
+            lines[i] += lineDelta;
+        }
+        if (other.symbols != symbols) {
+            // Interned in the order the names turn up, as if lexed straight into this
+            int[] ids = new int[other.symbols.size()];
+            Arrays.fill(ids, -1);
+            for (int i = size; i < size + count; i++) {
+                int id = symbolIds[i];
+                if (id >= 0) {
+                    if (ids[id] < 0) {
+                        ids[id] = symbols.intern(other.symbols.name(id));
+                    }
+                    symbolIds[i] = ids[id];
+                }
+            }
+        }
+        size += count;
+    }
+
+    // Drops every token from index size on
+    void truncate(int size) {
+        this.size = Objects.checkIndex(size, this.size + 1);
+    }
+
+    // Index of the token that starts at offset, or -1. Offsets only ever increase, so
+    // this is a binary search.
+    int indexOfOffset(int offset) {
+        int found = Arrays.binarySearch(offsets, 0, size, offset);
+        return found < 0 ? -1 : found;
+    }
+
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, types.length * 2);
+        types = Arrays.copyOf(types, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        if (lineIndex == null) {
+            lines = Arrays.copyOf(lines, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        if (numbers != null) {
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+    }
+}
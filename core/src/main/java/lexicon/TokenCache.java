@@ -0,0 +1,252 @@
+package lexicon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+// Keeps lexed sources on disk, so a new JVM does not lex the same program again. After
+// a source is lexed, its tokens are written to a file named for the CRC32C and length of
+// the source; the next time the same source comes along that file is mapped and the
+// tokens read back out of it. The file holds the source too, and is only used if that
+// is byte for byte the one being lexed, so two sources with the same name just take
+// turns. A file is written whole under a temporary name and then moved into place, so
+// no reader sees one half written. One that is damaged, cut short, for another source
+// or from another VERSION fails its checks, and the source is lexed and the file
+// written again. Usage: java lexicon.TokenCache directory file... fills the cache for
+// the files.
+class TokenCache {
+    // Bump when the file layout or what the Lexer produces changes
+    static final int VERSION = 2;
+
+    private static final int MAGIC = 0x4b54584c; // "LXTK" in little-endian order
+    // Magic, version, source length in bytes, token count, symbol count, NUMBER count
+    // and the checksum of what follows the source
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4 + 8;
+    private static final int CHECKSUM_OFFSET = HEADER_SIZE - 8;
+    // Five ints and a type byte
+    private static final int TOKEN_SIZE = 5 * 4 + 1;
+
+    private final Path directory;
+    private int hits;
+    private int misses;
+
+    public TokenCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // The tokens of source, from the cache when they are there
+    public TokenBuffer lex(String source) {
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        Path file = directory.resolve(Long.toHexString(crc.getValue()) + "-" + bytes.length + ".tokens");
+        TokenBuffer cached = read(file, bytes, source);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        TokenBuffer buffer = new Lexer(source).lexToBuffer();
+        write(file, bytes, buffer);
+        return buffer;
+    }
+
+    public TokenBuffer lex(Path path) throws IOException {
+        return lex(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    // How many lex calls were answered from the cache, and how many were not
+    public int hits() {
+        return hits;
+    }
+
+    public int misses() {
+        return misses;
+    }
+
+    private static TokenBuffer read(Path file, byte[] sourceBytes, String source) {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // Unreadable counts as missing, and is written again
+            return null;
+        }
+        return decode(bytes, sourceBytes, source);
+    }
+
+    // The tokens in bytes, or null if they fail any check
+    private static TokenBuffer decode(ByteBuffer bytes, byte[] sourceBytes, String source) {
+        if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION || bytes.getInt() != sourceBytes.length) {
+            return null;
+        }
+        int count = bytes.getInt();
+        int symbolCount = bytes.getInt();
+        int numberCount = bytes.getInt();
+        long checksum = bytes.getLong();
+        if (count < 0 || symbolCount < 0 || numberCount < 0 || sourceBytes.length + (long) count * TOKEN_SIZE
+                + symbolCount * 4L + numberCount * 8L != bytes.remaining()) {
+            return null;
+        }
+        ByteBuffer stored = bytes.slice();
+        stored.limit(sourceBytes.length);
+        if (stored.mismatch(ByteBuffer.wrap(sourceBytes)) >= 0) {
+            return null;
+        }
+        bytes.position(bytes.position() + sourceBytes.length);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.duplicate());
+        if (crc.getValue() != checksum) {
+            return null;
+        }
+        int[] offsets = ints(bytes, count);
+        int[] lengths = ints(bytes, count);
+        int[] lines = ints(bytes, count);
+        int[] positions = ints(bytes, count);
+        int[] symbolIds = ints(bytes, count);
+        byte[] types = new byte[count];
+        bytes.get(types);
+        // The values of the NUMBER tokens, in order
+        double[] numbers = numberCount == 0 ? null : new double[count];
+        int number = 0;
+        for (int i = 0; i < count; i++) {
+            if (types[i] == TokenType.NUMBER.ordinal()) {
+                if (number++ == numberCount) {
+                    return null;
+                }
+                numbers[i] = bytes.getDouble();
+            }
+        }
+        if (number != numberCount) {
+            return null;
+        }
+        // Names are taken from the source, at the first token with each one
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < symbolCount; i++) {
+            int token = bytes.getInt();
+            if (token < 0 || token >= count || symbolIds[token] != i) {
+                return null;
+            }
+            symbols.intern(source.substring(offsets[token], offsets[token] + lengths[token]));
+        }
+        // Past the checksum and the source check, the rest was written by write() for
+        // this source, and is not checked token by token
+        return new TokenBuffer(new StringHandler(source), symbols, types, offsets, lengths, lines, positions,
+                symbolIds, numbers);
+    }
+
+    private static int[] ints(ByteBuffer bytes, int count) {
+        int[] values = new int[count];
+        bytes.asIntBuffer().get(values);
+        bytes.position(bytes.position() + count * 4);
+        return values;
+    }
+
+    private void write(Path file, byte[] sourceBytes, TokenBuffer buffer) {
+        int count = buffer.size();
+        SymbolTable symbols = buffer.getSymbolTable();
+        int[] firstTokens = new int[symbols.size()];
+        Arrays.fill(firstTokens, -1);
+        for (int i = 0; i < count; i++) {
+            int id = buffer.getSymbolId(i);
+            if (id >= 0 && firstTokens[id] < 0) {
+                firstTokens[id] = i;
+            }
+        }
+        for (int token : firstTokens) {
+            if (token < 0) {
+                // A name no token uses could not be read back
+                return;
+            }
+        }
+        int numberCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getType(i) == TokenType.NUMBER) {
+                numberCount++;
+            }
+        }
+        long size = HEADER_SIZE + sourceBytes.length + (long) count * TOKEN_SIZE + firstTokens.length * 4L
+                + numberCount * 8L;
+        if (size > Integer.MAX_VALUE) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(sourceBytes.length).putInt(count).putInt(firstTokens.length)
+                .putInt(numberCount).putLong(0).put(sourceBytes);
+        for (int i = 0; i < count; i++) {
+            bytes.putInt(buffer.getOffset(i));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.putInt(buffer.getLength(i));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.putInt(buffer.getLineNumber(i));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.putInt(buffer.getPosition(i));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.putInt(buffer.getSymbolId(i));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.put((byte) buffer.getType(i).ordinal());
+        }
+        for (int i = 0; i < count; i++) {
+            if (buffer.getType(i) == TokenType.NUMBER) {
+                bytes.putDouble(buffer.getNumber(i));
+            }
+        }
+        for (int token : firstTokens) {
+            bytes.putInt(token);
+        }
+        CRC32C crc = new CRC32C();
+        int tokens = HEADER_SIZE + sourceBytes.length;
+        crc.update(bytes.array(), tokens, bytes.capacity() - tokens);
+        bytes.putLong(CHECKSUM_OFFSET, crc.getValue());
+        bytes.flip();
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // The cache only saves time. Without the file, the source is lexed next time too.
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java lexicon.TokenCache directory file...");
+            System.exit(2);
+        }
+        TokenCache cache = new TokenCache(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            cache.lex(Paths.get(args[i]));
+        }
+        System.out.println(cache.hits() + " cached, " + cache.misses() + " lexed");
+    }
+}
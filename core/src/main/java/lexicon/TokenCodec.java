@@ -0,0 +1,491 @@
+package lexicon;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// Tokens as bytes, for handing them to another process over a pipe or a Unix domain
+// socket. A stream starts with a magic number, the version and how many token types
+// there are, and then has a record per token, made of varints:
+//
+//     type ordinal << 1, plus 1 if the value is new to the string table
+//     line minus the line of the token before, zigzag coded
+//     position minus the position of the token before if the line is the same, or
+//         the position itself, zigzag coded
+//     the value's id in the string table, or for a new value its length in UTF-8
+//         bytes and then the bytes, after which it takes the next id
+//
+// A record of type END closes the stream. Words, keywords and symbols come up again
+// and again, so most tokens are four bytes or fewer. The string table is cleared,
+// with a RESET record, whenever it reaches TABLE_LIMIT strings, and the Decoder starts
+// a new SymbolTable for the words there, so their symbol ids restart from zero. No
+// value may be longer than MAX_STRING bytes. Neither side then holds more than that
+// however long the stream runs, and each side reads or writes through one buffer of
+// a fixed size: the Encoder hands it to the channel when it fills or is flushed, and
+// the Decoder refills it as it goes. Channels must be blocking. Usage:
+// java lexicon.TokenCodec encode [--socket path] [file] lexes file, or standard
+// input, onto standard output or the socket; java lexicon.TokenCodec decode [--socket
+// path] prints the tokens from standard input, or from one connection to the socket,
+// as Token.toString() would.
+class TokenCodec {
+    // Bump when the layout or TokenType changes
+    static final int VERSION = 1;
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    static final int TABLE_LIMIT = 1 << 16;
+    static final int MAX_STRING = 1 << 24;
+
+    private static final int MAGIC = 0x5754584c; // "LXTW" in little-endian order
+    private static final TokenType[] TYPES = TokenType.values();
+    // Record types after the token types
+    private static final int END = TYPES.length;
+    private static final int RESET = TYPES.length + 1;
+    // The most a record takes besides a new value's bytes: four varints
+    private static final int MAX_RECORD = 4 * 5;
+
+    private TokenCodec() {
+    }
+
+    private static int zigzag(int n) {
+        return n << 1 ^ n >> 31;
+    }
+
+    private static int unzigzag(int n) {
+        return n >>> 1 ^ -(n & 1);
+    }
+
+    // Writes tokens to a channel
+    static class Encoder implements Closeable {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final SymbolTable table = new SymbolTable();
+        // Ids in table of the words of the last TokenBuffer written, by their symbol
+        // id there, or -1, so a word is only looked up by its text once
+        private SymbolTable words;
+        private int[] wordIds = new int[0];
+        private int line;
+        private int position;
+        private long tokens;
+        private long bytes;
+        private boolean finished;
+
+        public Encoder(WritableByteChannel channel) {
+            this(channel, DEFAULT_BUFFER_SIZE);
+        }
+
+        public Encoder(WritableByteChannel channel, int bufferSize) {
+            if (bufferSize < MAX_RECORD) {
+                throw new IllegalArgumentException("Buffer too small: " + bufferSize);
+            }
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(bufferSize);
+            for (int shift = 0; shift < 32; shift += 8) {
+                buffer.put((byte) (MAGIC >>> shift));
+            }
+            putVarint(VERSION);
+            putVarint(TYPES.length);
+        }
+
+        public void write(TokenBuffer tokens) throws IOException {
+            write(tokens, 0, tokens.size());
+        }
+
+        // Writes the tokens from index from up to to
+        public void write(TokenBuffer tokens, int from, int to) throws IOException {
+            if (tokens.getSymbolTable() != words) {
+                words = tokens.getSymbolTable();
+                Arrays.fill(wordIds, -1);
+            }
+            for (int i = from; i < to; i++) {
+                beginRecord();
+                int symbolId = tokens.getSymbolId(i);
+                int id = -1;
+                String value = null;
+                if (symbolId >= 0) {
+                    if (symbolId >= wordIds.length) {
+                        int old = wordIds.length;
+                        wordIds = Arrays.copyOf(wordIds, Math.max(symbolId + 1, old * 2));
+                        Arrays.fill(wordIds, old, wordIds.length, -1);
+                    }
+                    id = wordIds[symbolId];
+                    if (id < 0) {
+                        value = tokens.getValue(i);
+                        id = table.lookup(value);
+                    }
+                } else {
+                    value = tokens.getValue(i);
+                    id = table.lookup(value);
+                }
+                id = encode(tokens.getType(i), tokens.getLineNumber(i), tokens.getPosition(i), id, value);
+                if (symbolId >= 0) {
+                    wordIds[symbolId] = id;
+                }
+            }
+        }
+
+        public void write(Token token) throws IOException {
+            beginRecord();
+            String value = token.getValue();
+            encode(token.getType(), token.getLineNumber(), token.getPosition(), table.lookup(value), value);
+        }
+
+        // Hands what is buffered to the channel
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                bytes += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // Ends the stream and flushes it. The channel stays open.
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            room(MAX_RECORD);
+            putVarint(END << 1);
+            flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                channel.close();
+            }
+        }
+
+        // Tokens written so far, and bytes handed to the channel
+        public long tokens() {
+            return tokens;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        private void beginRecord() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Stream already finished");
+            }
+            if (table.size() == TABLE_LIMIT) {
+                room(MAX_RECORD);
+                putVarint(RESET << 1);
+                table.clear();
+                Arrays.fill(wordIds, -1);
+            }
+            room(MAX_RECORD);
+        }
+
+        // Writes a token whose value has id in the table, or is new if id is -1, and
+        // returns the id
+        private int encode(TokenType type, int line, int position, int id, String value) throws IOException {
+            byte[] utf8 = id < 0 ? value.getBytes(StandardCharsets.UTF_8) : null;
+            if (utf8 != null && utf8.length > MAX_STRING) {
+                throw new IllegalArgumentException("Token value of " + utf8.length + " bytes is over " + MAX_STRING);
+            }
+            putVarint(type.ordinal() << 1 | (id < 0 ? 1 : 0));
+            putVarint(zigzag(line - this.line));
+            putVarint(zigzag(line == this.line ? position - this.position : position));
+            this.line = line;
+            this.position = position;
+            tokens++;
+            if (id >= 0) {
+                putVarint(id);
+                return id;
+            }
+            putVarint(utf8.length);
+            for (int done = 0; done < utf8.length; ) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(buffer.remaining(), utf8.length - done);
+                buffer.put(utf8, done, chunk);
+                done += chunk;
+            }
+            return table.intern(value);
+        }
+
+        private void room(int needed) throws IOException {
+            if (buffer.remaining() < needed) {
+                flush();
+            }
+        }
+
+        private void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+
+    // Reads tokens from a channel
+    static class Decoder implements Closeable {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        private String[] strings = new String[256];
+        private int stringCount;
+        // Words get dense symbol ids in the order they first come, as the Lexer gives
+        // them, by way of their id in the string table. A RESET starts a new table.
+        private SymbolTable words = new SymbolTable();
+        private int[] wordIds = new int[256];
+        private int line;
+        private int position;
+        private long tokens;
+        private boolean started;
+        private boolean ended;
+
+        public Decoder(ReadableByteChannel channel) {
+            this(channel, DEFAULT_BUFFER_SIZE);
+        }
+
+        public Decoder(ReadableByteChannel channel, int bufferSize) {
+            if (bufferSize < MAX_RECORD) {
+                throw new IllegalArgumentException("Buffer too small: " + bufferSize);
+            }
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(bufferSize);
+            buffer.flip();
+            Arrays.fill(wordIds, -1);
+        }
+
+        // The next token, or null once the stream has ended
+        public Token read() throws IOException {
+            if (!started) {
+                readHeader();
+            }
+            while (!ended) {
+                int header = getVarint();
+                int code = header >>> 1;
+                if (code == END) {
+                    ended = true;
+                    break;
+                }
+                if (code == RESET) {
+                    Arrays.fill(strings, 0, stringCount, null);
+                    Arrays.fill(wordIds, 0, stringCount, -1);
+                    stringCount = 0;
+                    words = new SymbolTable();
+                    continue;
+                }
+                if (code > END) {
+                    throw new IllegalArgumentException("Bad record type " + code + " after " + tokens + " tokens");
+                }
+                TokenType type = TYPES[code];
+                int lineDelta = unzigzag(getVarint());
+                int coded = unzigzag(getVarint());
+                line += lineDelta;
+                position = lineDelta == 0 ? position + coded : coded;
+                int id = (header & 1) != 0 ? addString(getString()) : getVarint();
+                if (id < 0 || id >= stringCount) {
+                    throw new IllegalArgumentException("Bad string id " + id + " after " + tokens + " tokens");
+                }
+                int symbolId = -1;
+                if (type == TokenType.WORD) {
+                    if (wordIds[id] < 0) {
+                        wordIds[id] = words.intern(strings[id]);
+                    }
+                    symbolId = wordIds[id];
+                }
+                tokens++;
+                return new Token(type, strings[id], line, position, symbolId);
+            }
+            return null;
+        }
+
+        // The table the symbol ids of the words decoded since the last RESET refer to
+        public SymbolTable getSymbolTable() {
+            return words;
+        }
+
+        public long tokens() {
+            return tokens;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void readHeader() throws IOException {
+            started = true;
+            int magic = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                magic |= (getByte() & 0xFF) << shift;
+            }
+            if (magic != MAGIC) {
+                throw new IllegalArgumentException("Not a token stream");
+            }
+            int version = getVarint();
+            int types = getVarint();
+            if (version != VERSION || types != TYPES.length) {
+                throw new IllegalArgumentException("Token stream version " + version + " with " + types
+                        + " token types, expected " + VERSION + " with " + TYPES.length);
+            }
+        }
+
+        private int addString(String value) {
+            if (stringCount == TABLE_LIMIT) {
+                throw new IllegalArgumentException("String table over " + TABLE_LIMIT + " without a reset");
+            }
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount * 2);
+                wordIds = Arrays.copyOf(wordIds, stringCount * 2);
+                Arrays.fill(wordIds, stringCount, wordIds.length, -1);
+            }
+            strings[stringCount] = value;
+            return stringCount++;
+        }
+
+        private String getString() throws IOException {
+            int length = getVarint();
+            if (length < 0 || length > MAX_STRING) {
+                throw new IllegalArgumentException("Bad string length " + length);
+            }
+            if (length <= buffer.capacity()) {
+                fill(length);
+                String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            }
+            // Longer than the buffer, so gathered across refills
+            byte[] bytes = new byte[length];
+            for (int done = 0; done < length; ) {
+                fill(1);
+                int chunk = Math.min(buffer.remaining(), length - done);
+                buffer.get(bytes, done, chunk);
+                done += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = getByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint longer than five bytes");
+        }
+
+        private byte getByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                fill(1);
+            }
+            return buffer.get();
+        }
+
+        // Reads until at least needed bytes are buffered
+        private void fill(int needed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return;
+            }
+            buffer.compact();
+            try {
+                while (buffer.position() < needed) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("Token stream cut short after " + tokens + " tokens");
+                    }
+                }
+            } finally {
+                buffer.flip();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            int i = 0;
+            String command = i < args.length ? args[i++] : "";
+            Path socket = null;
+            if (i + 1 < args.length && args[i].equals("--socket")) {
+                socket = Paths.get(args[i + 1]);
+                i += 2;
+            }
+            if (command.equals("encode") && i >= args.length - 1) {
+                encode(i < args.length ? Paths.get(args[i]) : null, socket);
+            } else if (command.equals("decode") && i == args.length) {
+                decode(socket);
+            } else {
+                System.err.println("Usage: java lexicon.TokenCodec encode [--socket path] [file]\n"
+                        + "       java lexicon.TokenCodec decode [--socket path]");
+                System.exit(2);
+            }
+        } catch (IOException e) {
+            System.err.println("codec: " + e.getMessage());
+            System.exit(2);
+        } catch (UncheckedIOException e) {
+            System.err.println("codec: " + e.getCause().getMessage());
+            System.exit(2);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println("codec: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static void encode(Path file, Path socket) throws IOException {
+        WritableByteChannel out = socket == null ? new FileOutputStream(FileDescriptor.out).getChannel()
+                : SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        try (Encoder encoder = new Encoder(out)) {
+            if (file != null) {
+                encoder.write(Lexer.mapFile(file).lexToBuffer());
+            } else {
+                // Standard input is lexed as it comes, so it need not fit in memory
+                for (Token token : new Lexer(new FileInputStream(FileDescriptor.in).getChannel(),
+                        StandardCharsets.UTF_8)) {
+                    encoder.write(token);
+                }
+            }
+            encoder.finish();
+            System.err.printf("%d tokens in %d bytes, %.2f bytes a token%n", encoder.tokens(), encoder.bytes(),
+                    encoder.bytes() / (double) Math.max(1, encoder.tokens()));
+        }
+    }
+
+    private static void decode(Path socket) throws IOException {
+        ReadableByteChannel in;
+        if (socket == null) {
+            in = new FileInputStream(FileDescriptor.in).getChannel();
+        } else {
+            Files.deleteIfExists(socket);
+            try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(socket));
+                in = server.accept();
+            } finally {
+                Files.deleteIfExists(socket);
+            }
+        }
+        Writer out = new OutputSink(new FileOutputStream(FileDescriptor.out).getChannel());
+        try (Decoder decoder = new Decoder(in)) {
+            for (Token token = decoder.read(); token != null; token = decoder.read()) {
+                out.write(token.toString());
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,713 @@
+package lexicon;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Runs a parsed program straight off its SyntaxTree, one recursive call per node and
+// a fresh Cell per value, with variables looked up by name. It is the plain way to run
+// awk and is kept as the reference Machine is checked and measured against.
+class TreeWalker {
+    private final SyntaxTree tree;
+    private final TokenBuffer tokens;
+    private final AwkRuntime runtime;
+    private final int root;
+
+    // Cells and AwkArrays by name
+    private final Map<String, Object> globals = new HashMap<>();
+    private final Map<String, Integer> functions = new HashMap<>();
+    private final Deque<Map<String, Object>> frames = new ArrayDeque<>();
+    // Whether each range pattern is between its first and last record
+    private final Map<Integer, Boolean> ranges = new HashMap<>();
+
+    // break, continue, next, exit and return unwind the Java stack
+    @SuppressWarnings("serial")
+    private static final class Jump extends RuntimeException {
+        final SyntaxTree.Kind kind;
+        final Cell value;
+
+        Jump(SyntaxTree.Kind kind, Cell value) {
+            super(null, null, false, false);
+            this.kind = kind;
+            this.value = value;
+        }
+    }
+
+    public TreeWalker(SyntaxTree tree, int root, AwkRuntime runtime) {
+        this.tree = tree;
+        this.tokens = tree.getTokens();
+        this.root = root;
+        this.runtime = runtime;
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) == SyntaxTree.Kind.FUNCTION) {
+                functions.put(tree.getValue(item), item);
+            }
+        }
+        globals.put("ARGV", runtime.getArgv());
+        globals.put("ENVIRON", runtime.environment());
+        globals.put("ARGC", new Cell(runtime.getArgc()));
+        runtime.bind(() -> runtime.toNumber((Cell) globals.get("ARGC")), this::assign);
+    }
+
+    public void assign(String name, String value) {
+        Cell cell = new Cell();
+        cell.setInput(value);
+        int special = AwkRuntime.specialIndex(name);
+        if (special >= 0) {
+            runtime.setSpecial(special, cell);
+        } else {
+            globals.put(name, cell);
+        }
+    }
+
+    public int run() {
+        boolean exited = runItems(SyntaxTree.Kind.BEGIN);
+        boolean hasMain = false;
+        boolean hasEnd = false;
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            SyntaxTree.Kind kind = tree.getKind(tree.getChild(root, i));
+            hasMain |= kind == SyntaxTree.Kind.RULE;
+            hasEnd |= kind == SyntaxTree.Kind.END;
+        }
+        if (!exited && (hasMain || hasEnd)) {
+            records:
+            while (runtime.nextRecord()) {
+                for (int i = 0; i < tree.getChildCount(root); i++) {
+                    int item = tree.getChild(root, i);
+                    if (tree.getKind(item) != SyntaxTree.Kind.RULE) {
+                        continue;
+                    }
+                    try {
+                        rule(item);
+                    } catch (Jump jump) {
+                        if (jump.kind == SyntaxTree.Kind.EXIT) {
+                            break records;
+                        }
+                        if (jump.kind == SyntaxTree.Kind.NEXTFILE) {
+                            runtime.skipFile();
+                        }
+                        continue records;
+                    }
+                }
+            }
+        }
+        runItems(SyntaxTree.Kind.END);
+        runtime.finish();
+        return runtime.getExitCode();
+    }
+
+    private boolean runItems(SyntaxTree.Kind kind) {
+        for (int i = 0; i < tree.getChildCount(root); i++) {
+            int item = tree.getChild(root, i);
+            if (tree.getKind(item) == kind) {
+                try {
+                    execute(tree.getChild(item, 0));
+                } catch (Jump jump) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void rule(int item) {
+        int pattern = tree.getChild(item, 0);
+        int endPattern = tree.getChild(item, 1);
+        int action = tree.getChild(item, 2);
+        boolean selected;
+        if (tree.getKind(pattern) == SyntaxTree.Kind.EMPTY) {
+            selected = true;
+        } else if (tree.getKind(endPattern) == SyntaxTree.Kind.EMPTY) {
+            selected = AwkRuntime.isTrue(evaluate(pattern));
+        } else {
+            boolean inRange = ranges.getOrDefault(item, false);
+            if (!inRange) {
+                inRange = AwkRuntime.isTrue(evaluate(pattern));
+            }
+            selected = inRange;
+            if (inRange && AwkRuntime.isTrue(evaluate(endPattern))) {
+                inRange = false;
+            }
+            ranges.put(item, inRange);
+        }
+        if (!selected) {
+            return;
+        }
+        if (tree.getKind(action) == SyntaxTree.Kind.EMPTY) {
+            runtime.print(AwkRuntime.STDOUT, null, runtime.getField(0) + runtime.getOrs());
+        } else {
+            execute(action);
+        }
+    }
+
+    // Statements
+
+    private void execute(int node) {
+        switch (tree.getKind(node)) {
+            case BLOCK:
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    execute(tree.getChild(node, i));
+                }
+                break;
+            case EMPTY:
+                break;
+            case IF:
+                if (AwkRuntime.isTrue(evaluate(tree.getChild(node, 0)))) {
+                    execute(tree.getChild(node, 1));
+                } else {
+                    execute(tree.getChild(node, 2));
+                }
+                break;
+            case WHILE:
+                while (AwkRuntime.isTrue(evaluate(tree.getChild(node, 0)))) {
+                    if (body(tree.getChild(node, 1))) {
+                        break;
+                    }
+                }
+                break;
+            case DO:
+                do {
+                    if (body(tree.getChild(node, 0))) {
+                        break;
+                    }
+                } while (AwkRuntime.isTrue(evaluate(tree.getChild(node, 1))));
+                break;
+            case FOR:
+                int condition = tree.getChild(node, 1);
+                for (evaluate(tree.getChild(node, 0)); tree.getKind(condition) == SyntaxTree.Kind.EMPTY
+                        || AwkRuntime.isTrue(evaluate(condition)); evaluate(tree.getChild(node, 2))) {
+                    if (body(tree.getChild(node, 3))) {
+                        break;
+                    }
+                }
+                break;
+            case FOR_IN:
+                int variable = tree.getChild(node, 0);
+                for (String key : array(tree.getChild(node, 1)).keys()) {
+                    Cell cell = new Cell();
+                    cell.setInput(key);
+                    store(variable, cell);
+                    if (body(tree.getChild(node, 2))) {
+                        break;
+                    }
+                }
+                break;
+            case BREAK:
+            case CONTINUE:
+            case NEXT:
+            case NEXTFILE:
+                throw new Jump(tree.getKind(node), null);
+            case EXIT:
+                int status = tree.getChild(node, 0);
+                if (tree.getKind(status) != SyntaxTree.Kind.EMPTY) {
+                    runtime.setExitCode((int) runtime.toNumber(evaluate(status)));
+                }
+                throw new Jump(SyntaxTree.Kind.EXIT, null);
+            case RETURN:
+                int value = tree.getChild(node, 0);
+                throw new Jump(SyntaxTree.Kind.RETURN,
+                        tree.getKind(value) == SyntaxTree.Kind.EMPTY ? new Cell() : evaluate(value));
+            case DELETE:
+                int target = tree.getChild(node, 0);
+                if (tree.getKind(target) == SyntaxTree.Kind.VARIABLE) {
+                    array(target).clear();
+                } else {
+                    array(tree.getChild(target, 0)).remove(key(target));
+                }
+                break;
+            case PRINT:
+            case PRINTF:
+                print(node);
+                break;
+            default:
+                evaluate(node);
+                break;
+        }
+    }
+
+    // Runs a loop body, and says whether it broke out of the loop
+    private boolean body(int node) {
+        try {
+            execute(node);
+            return false;
+        } catch (Jump jump) {
+            if (jump.kind == SyntaxTree.Kind.BREAK) {
+                return true;
+            }
+            if (jump.kind == SyntaxTree.Kind.CONTINUE) {
+                return false;
+            }
+            throw jump;
+        }
+    }
+
+    private void print(int node) {
+        int count = tree.getChildCount(node) - 1;
+        Cell[] values = new Cell[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = evaluate(tree.getChild(node, i));
+        }
+        String text;
+        if (tree.getKind(node) == SyntaxTree.Kind.PRINTF) {
+            text = runtime.sprintf(runtime.toString(values[0]), values, 1, count - 1);
+        } else if (count == 0) {
+            text = runtime.getField(0) + runtime.getOrs();
+        } else {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    builder.append(runtime.getOfs());
+                }
+                builder.append(runtime.toOutput(values[i]));
+            }
+            text = builder.append(runtime.getOrs()).toString();
+        }
+        int redirect = tree.getChild(node, count);
+        if (tree.getKind(redirect) == SyntaxTree.Kind.EMPTY) {
+            runtime.print(AwkRuntime.STDOUT, null, text);
+        } else {
+            int symbol = tokens.getSymbol(tree.getToken(redirect));
+            int redirection = symbol == '>' ? AwkRuntime.FILE : symbol == '|' ? AwkRuntime.PIPE : AwkRuntime.APPEND;
+            runtime.print(redirection, runtime.toString(evaluate(tree.getChild(redirect, 0))), text);
+        }
+    }
+
+    // Expressions
+
+    private Cell evaluate(int node) {
+        switch (tree.getKind(node)) {
+            case NUMBER:
+                return new Cell(tree.getNumber(node));
+            case STRING:
+                return new Cell(tree.getString(node));
+            case REGEX:
+                return bool(runtime.matches(runtime.getField(0), regex(node)));
+            case VARIABLE:
+                String name = tree.getValue(node);
+                if (name.equals("length") && lookup(name) == null) {
+                    return new Cell(runtime.getField(0).length());
+                }
+                Cell value = new Cell();
+                value.set(load(node));
+                return value;
+            case INDEX:
+                Cell element = new Cell();
+                array(tree.getChild(node, 0)).load(key(node), element);
+                return element;
+            case CALL:
+                return call(node);
+            case UNARY:
+                return unary(node);
+            case BINARY:
+                return binary(node);
+            case CONDITIONAL:
+                return evaluate(tree.getChild(node, AwkRuntime.isTrue(evaluate(tree.getChild(node, 0))) ? 1 : 2));
+            case ASSIGN:
+                return assign(node);
+            case GETLINE:
+                return getline(node);
+            case EMPTY:
+                return new Cell();
+            default:
+                throw error("Expected an expression", node);
+        }
+    }
+
+    private Cell unary(int node) {
+        Operation operation = tree.getOperation(node);
+        int operand = tree.getChild(node, 0);
+        switch (operation) {
+            case NOT:
+                return bool(!AwkRuntime.isTrue(evaluate(operand)));
+            case UNARYNEG:
+                return new Cell(-runtime.toNumber(evaluate(operand)));
+            case UNARYPOS:
+                return new Cell(runtime.toNumber(evaluate(operand)));
+            case DOLLAR:
+                Cell field = new Cell();
+                field.setInput(runtime.getField(fieldIndex(operand)));
+                return field;
+            default:
+                double old = runtime.toNumber(evaluate(operand));
+                boolean up = operation == Operation.PREINC || operation == Operation.POSTINC;
+                Cell updated = new Cell(up ? old + 1 : old - 1);
+                store(operand, updated);
+                boolean post = operation == Operation.POSTINC || operation == Operation.POSTDEC;
+                return post ? new Cell(old) : updated;
+        }
+    }
+
+    private Cell binary(int node) {
+        Operation operation = tree.getOperation(node);
+        int left = tree.getChild(node, 0);
+        switch (operation) {
+            case CONCATENATION:
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    builder.append(runtime.toString(evaluate(tree.getChild(node, i))));
+                }
+                return new Cell(builder.toString());
+            case AND:
+                return bool(AwkRuntime.isTrue(evaluate(left)) && AwkRuntime.isTrue(evaluate(tree.getChild(node, 1))));
+            case OR:
+                return bool(AwkRuntime.isTrue(evaluate(left)) || AwkRuntime.isTrue(evaluate(tree.getChild(node, 1))));
+            case IN:
+                String key = tree.getKind(left) == SyntaxTree.Kind.GROUP ? join(left, 0)
+                        : runtime.toString(evaluate(left));
+                return bool(array(tree.getChild(node, 1)).contains(key));
+            case MATCH:
+            case NOTMATCH:
+                String text = runtime.toString(evaluate(left));
+                boolean matched = runtime.matches(text, regex(tree.getChild(node, 1)));
+                return bool(matched != (operation == Operation.NOTMATCH));
+            default:
+                break;
+        }
+        Cell a = evaluate(left);
+        Cell b = evaluate(tree.getChild(node, 1));
+        switch (operation) {
+            case LT:
+                return bool(runtime.compare(a, b) < 0);
+            case LE:
+                return bool(runtime.compare(a, b) <= 0);
+            case GT:
+                return bool(runtime.compare(a, b) > 0);
+            case GE:
+                return bool(runtime.compare(a, b) >= 0);
+            case EQ:
+                return bool(runtime.compare(a, b) == 0);
+            case NE:
+                return bool(runtime.compare(a, b) != 0);
+            default:
+                return new Cell(arithmetic(operation, runtime.toNumber(a), runtime.toNumber(b)));
+        }
+    }
+
+    private static double arithmetic(Operation operation, double a, double b) {
+        switch (operation) {
+            case ADD:
+            case ADD_ASSIGN:
+                return a + b;
+            case SUBTRACT:
+            case SUBTRACT_ASSIGN:
+            case SUB_ASSIGN:
+                return a - b;
+            case MULTIPLY:
+            case MULTIPLY_ASSIGN:
+            case MUL_ASSIGN:
+                return a * b;
+            case DIVIDE:
+            case DIVIDE_ASSIGN:
+            case DIV_ASSIGN:
+                if (b == 0) {
+                    throw new IllegalStateException("Division by zero");
+                }
+                return a / b;
+            case MODULO:
+            case MODULO_ASSIGN:
+            case MOD_ASSIGN:
+                if (b == 0) {
+                    throw new IllegalStateException("Division by zero in %");
+                }
+                return a % b;
+            case EXPONENT:
+            case EXPONENT_ASSIGN:
+            case EXP_ASSIGN:
+                return Math.pow(a, b);
+            default:
+                throw new IllegalArgumentException("Not an arithmetic operation: " + operation);
+        }
+    }
+
+    private Cell assign(int node) {
+        Operation operation = tree.getOperation(node);
+        int target = tree.getChild(node, 0);
+        Cell value = evaluate(tree.getChild(node, 1));
+        if (operation != Operation.ASSIGN) {
+            value = new Cell(arithmetic(operation, runtime.toNumber(evaluate(target)), runtime.toNumber(value)));
+        }
+        store(target, value);
+        return value;
+    }
+
+    private Cell getline(int node) {
+        int variable = tree.getChild(node, 0);
+        int file = tree.getChild(node, 1);
+        int command = tree.getChild(node, 2);
+        Cell line = tree.getKind(variable) == SyntaxTree.Kind.EMPTY ? null : new Cell();
+        int status;
+        if (tree.getKind(file) != SyntaxTree.Kind.EMPTY) {
+            status = runtime.getlineFile(runtime.toString(evaluate(file)), line);
+        } else if (tree.getKind(command) != SyntaxTree.Kind.EMPTY) {
+            status = runtime.getlineCommand(runtime.toString(evaluate(command)), line);
+        } else {
+            status = runtime.getline(line);
+        }
+        if (line != null && status > 0) {
+            store(variable, line);
+        }
+        return new Cell(status);
+    }
+
+    private Cell call(int node) {
+        String name = tree.getValue(node);
+        int count = tree.getChildCount(node);
+        AwkRuntime.Builtin builtin = AwkRuntime.Builtin.named(name);
+        if (builtin != null) {
+            return builtin(node, builtin, count);
+        }
+        Integer function = functions.get(name);
+        if (function == null) {
+            throw error("Undefined function " + name, node);
+        }
+        int parameters = tree.getChildCount(function) - 1;
+        if (count > parameters) {
+            throw error("Too many arguments to " + name, node);
+        }
+        Map<String, Object> frame = new HashMap<>();
+        for (int i = 0; i < parameters; i++) {
+            String parameter = tree.getValue(tree.getChild(function, i));
+            if (i < count) {
+                int argument = tree.getChild(node, i);
+                Object value = null;
+                if (tree.getKind(argument) == SyntaxTree.Kind.VARIABLE) {
+                    value = lookup(tree.getValue(argument));
+                    // An unset variable becomes an array if the function uses it as one
+                    if (value == null && usesArray(tree.getChild(function, parameters), parameter)) {
+                        value = array(argument);
+                    }
+                }
+                frame.put(parameter, value instanceof AwkArray ? value : evaluate(argument));
+            } else {
+                frame.put(parameter, null);
+            }
+        }
+        frames.push(frame);
+        try {
+            execute(tree.getChild(function, parameters));
+            return new Cell();
+        } catch (Jump jump) {
+            if (jump.kind != SyntaxTree.Kind.RETURN) {
+                throw jump;
+            }
+            return jump.value;
+        } finally {
+            frames.pop();
+        }
+    }
+
+    // Whether anything under node subscripts, deletes from or loops over name
+    private boolean usesArray(int node, String name) {
+        int array = -1;
+        switch (tree.getKind(node)) {
+            case INDEX:
+            case DELETE:
+                array = tree.getChild(node, 0);
+                break;
+            case FOR_IN:
+                array = tree.getChild(node, 1);
+                break;
+            case BINARY:
+                if (tree.getOperation(node) == Operation.IN) {
+                    array = tree.getChild(node, 1);
+                }
+                break;
+            case CALL:
+                if (tree.getValue(node).equals("split") && tree.getChildCount(node) >= 2) {
+                    array = tree.getChild(node, 1);
+                }
+                break;
+            default:
+                break;
+        }
+        if (array >= 0 && tree.getKind(array) == SyntaxTree.Kind.VARIABLE && tree.getValue(array).equals(name)) {
+            return true;
+        }
+        for (int i = 0; i < tree.getChildCount(node); i++) {
+            if (usesArray(tree.getChild(node, i), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Cell builtin(int node, AwkRuntime.Builtin builtin, int count) {
+        if (count < builtin.minArguments || count > builtin.maxArguments) {
+            throw error("Wrong number of arguments to " + tree.getValue(node), node);
+        }
+        switch (builtin) {
+            case LENGTH:
+                if (count == 1 && tree.getKind(tree.getChild(node, 0)) == SyntaxTree.Kind.VARIABLE
+                        && lookup(tree.getValue(tree.getChild(node, 0))) instanceof AwkArray) {
+                    return new Cell(array(tree.getChild(node, 0)).size());
+                }
+                break;
+            case SPLIT:
+                String text = runtime.toString(evaluate(tree.getChild(node, 0)));
+                String separator = count == 3 ? regex(tree.getChild(node, 2)) : null;
+                return new Cell(runtime.split(text, array(tree.getChild(node, 1)), separator));
+            case SUB:
+            case GSUB:
+                String ere = regex(tree.getChild(node, 0));
+                String replacement = runtime.toString(evaluate(tree.getChild(node, 1)));
+                int target = count == 3 ? tree.getChild(node, 2) : -1;
+                String original = target < 0 ? runtime.getField(0) : runtime.toString(evaluate(target));
+                String result = runtime.substitute(ere, replacement, original, builtin == AwkRuntime.Builtin.GSUB);
+                int changes = runtime.getSubstitutions();
+                if (changes > 0) {
+                    if (target < 0) {
+                        runtime.setField(0, result);
+                    } else if (isAssignable(target)) {
+                        store(target, new Cell(result));
+                    }
+                }
+                return new Cell(changes);
+            default:
+                break;
+        }
+        Cell[] args = new Cell[count];
+        for (int i = 0; i < count; i++) {
+            int argument = tree.getChild(node, i);
+            args[i] = builtin == AwkRuntime.Builtin.MATCH && i == 1 ? new Cell(regex(argument)) : evaluate(argument);
+        }
+        Cell result = new Cell();
+        runtime.call(builtin, args, 0, count, result);
+        return result;
+    }
+
+    // Variables, elements and fields
+
+    private Object lookup(String name) {
+        return isLocal(name) ? frames.peek().get(name) : globals.get(name);
+    }
+
+    // Parameters are in the frame from the start, even the ones no argument was passed for
+    private boolean isLocal(String name) {
+        return !frames.isEmpty() && frames.peek().containsKey(name);
+    }
+
+    private Cell load(int node) {
+        String name = tree.getValue(node);
+        int special = AwkRuntime.specialIndex(name);
+        if (special >= 0 && !isLocal(name)) {
+            Cell cell = new Cell();
+            runtime.getSpecial(special, cell);
+            return cell;
+        }
+        Object value = lookup(name);
+        if (value instanceof AwkArray) {
+            throw error("Cannot use array " + name + " as a scalar", node);
+        }
+        return value == null ? new Cell() : (Cell) value;
+    }
+
+    private void store(int node, Cell value) {
+        Cell copy = new Cell();
+        copy.set(value);
+        switch (tree.getKind(node)) {
+            case INDEX:
+                array(tree.getChild(node, 0)).store(key(node), copy);
+                return;
+            case UNARY:
+                if (tree.getOperation(node) == Operation.DOLLAR) {
+                    runtime.setField(fieldIndex(tree.getChild(node, 0)), runtime.toString(copy));
+                    return;
+                }
+                break;
+            case VARIABLE:
+                String name = tree.getValue(node);
+                int special = AwkRuntime.specialIndex(name);
+                if (special >= 0 && !isLocal(name)) {
+                    runtime.setSpecial(special, copy);
+                } else if (isLocal(name)) {
+                    frames.peek().put(name, copy);
+                } else {
+                    globals.put(name, copy);
+                }
+                return;
+            default:
+                break;
+        }
+        throw error("Cannot assign to " + tree.toString(node), node);
+    }
+
+    private boolean isAssignable(int node) {
+        SyntaxTree.Kind kind = tree.getKind(node);
+        return kind == SyntaxTree.Kind.VARIABLE || kind == SyntaxTree.Kind.INDEX
+                || (kind == SyntaxTree.Kind.UNARY && tree.getOperation(node) == Operation.DOLLAR);
+    }
+
+    // The array a VARIABLE names, made when it is first used
+    private AwkArray array(int node) {
+        String name = tree.getValue(node);
+        Object value = lookup(name);
+        if (value instanceof AwkArray) {
+            return (AwkArray) value;
+        }
+        if (value != null && ((Cell) value).type != Cell.UNINIT) {
+            throw error("Cannot use " + name + " as an array", node);
+        }
+        AwkArray array = runtime.newArray();
+        if (isLocal(name)) {
+            frames.peek().put(name, array);
+        } else {
+            globals.put(name, array);
+        }
+        return array;
+    }
+
+    private String key(int node) {
+        if (tree.getChildCount(node) == 2) {
+            return subscript(evaluate(tree.getChild(node, 1)));
+        }
+        return join(node, 1);
+    }
+
+    private String join(int node, int from) {
+        StringBuilder key = new StringBuilder();
+        for (int i = from; i < tree.getChildCount(node); i++) {
+            if (i > from) {
+                key.append(runtime.getSubsep());
+            }
+            key.append(subscript(evaluate(tree.getChild(node, i))));
+        }
+        return key.toString();
+    }
+
+    private String subscript(Cell cell) {
+        if (cell.type == Cell.NUMBER) {
+            String integer = AwkRuntime.integerToString(cell.number);
+            if (integer != null) {
+                return integer;
+            }
+        }
+        return runtime.toString(cell);
+    }
+
+    private String regex(int node) {
+        if (tree.getKind(node) == SyntaxTree.Kind.REGEX) {
+            return tokens.getText(tree.getToken(node)).substring(1).replace("\\`", "`");
+        }
+        return runtime.toString(evaluate(node));
+    }
+
+    private int fieldIndex(int node) {
+        double index = runtime.toNumber(evaluate(node));
+        if (index < 0 || index > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Field index out of range: " + index);
+        }
+        return (int) index;
+    }
+
+    private static Cell bool(boolean value) {
+        return new Cell(value ? 1 : 0);
+    }
+
+    private IllegalArgumentException error(String message, int node) {
+        int token = tree.getToken(node);
+        return new IllegalArgumentException(message + " at line " + tokens.getLineNumber(token) + ", position "
+                + tokens.getPosition(token));
+    }
+}
@@ -0,0 +1,947 @@
+package lexicon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFile {
+
+    private Lexer lexer;
+
+    @Before
+    public void setUp() {
+        String document = "while (x < 10) {\n" +
+                          "    print(\"Hello, World!\");\n" +
+                          "}";
+        lexer = new Lexer(document);
+    }
+
+    @Test
+    public void testLex() {
+        List<Token> tokens = lexer.lex();
+
+        // Ensure the correct number of tokens
+        assertEquals(15, tokens.size());
+
+        // Check some specific tokens
+        assertToken(tokens.get(0), TokenType.WHILE, "while", 1, 0);
+        assertToken(tokens.get(1), TokenType.ONECHARSYMBOL, "(", 1, 6);
+        assertToken(tokens.get(2), TokenType.WORD, "x", 1, 7);
+        assertToken(tokens.get(3), TokenType.ONECHARSYMBOL, "<", 1, 9);
+        assertToken(tokens.get(4), TokenType.NUMBER, "10", 1, 11);
+        assertToken(tokens.get(5), TokenType.ONECHARSYMBOL, ")", 1, 13);
+        assertToken(tokens.get(6), TokenType.ONECHARSYMBOL, "{", 1, 15);
+        assertToken(tokens.get(8), TokenType.PRINT, "print", 2, 4);
+        assertToken(tokens.get(9), TokenType.ONECHARSYMBOL, "(", 2, 9);
+        assertToken(tokens.get(11), TokenType.ONECHARSYMBOL, ")", 2, 23);
+    }
+
+    private void assertToken(Token token, TokenType expectedType, String expectedValue, int expectedLineNumber,
+            int expectedPosition) {
+        assertNotNull(token);
+        assertEquals(expectedType, token.getType());
+        assertEquals(expectedValue, token.getValue());
+        assertEquals(expectedLineNumber, token.getLineNumber());
+        assertEquals(expectedPosition, token.getPosition());
+    }
+    
+    @Test
+    public void testLexWithMultipleOperations() {
+        String input = "5 + 3 * (2 - 1) / 2";
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+
+
+        assertEquals(TokenType.NUMBER, tokens.get(0).getType());
+        assertEquals("5", tokens.get(0).getValue());
+    }
+
+    @Test
+    public void testLexWithIncrementDecrement() {
+        String input = "x++ --y";
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+
+        assertEquals(4, tokens.size());
+
+        // Check specific tokens and their types
+        assertToken(tokens.get(0), TokenType.WORD, "x", 1, 0);
+        assertToken(tokens.get(1), TokenType.TWOCCHARSYMBOL, "++", 1, 1);
+        assertToken(tokens.get(2), TokenType.TWOCCHARSYMBOL, "--", 1, 4);
+        assertToken(tokens.get(3), TokenType.WORD, "y", 1, 6);
+    }
+    
+    @Test
+    public void testStreamingMatchesLex() {
+        String input = "BEGIN {\n" +
+                       "    for (i = 0; i < ARGC; i++) # loop\n" +
+                       "        printf \"ARGV[%d] = %s\\n\", i, ARGV[i]\n" +
+                       "    if (x ^ 2 != y / 3 && !z) print `a\\`b`\n" +
+                       "}";
+        List<Token> expected = new Lexer(input).lex();
+
+        // A four character buffer forces a refill in the middle of most tokens
+        Lexer streaming = new Lexer(new ReaderHandler(new StringReader(input), 4));
+        List<Token> actual = new ArrayList<>();
+        Token token;
+        while ((token = streaming.nextToken()) != null) {
+            actual.add(token);
+        }
+
+        assertSameTokens(expected, actual);
+        assertEquals(expected.size(), new Lexer(new StringReader(input)).stream().count());
+    }
+
+    @Test
+    public void testByteInputMatchesLex() throws Exception {
+        String input = "BEGIN { caf\u00e9 = \"\u00fcber \ud83d\ude00\\\"\" } # \u2603 comment\n" +
+                       "END { print `\u00e9+`, x ^ 2 }\n";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<Token> expected = new Lexer(input).lex();
+
+        assertSameTokens(expected, new Lexer(bytes).lex());
+
+        // Tiny overlapping windows, laid out the way ByteBufferHandler.map lays out a large file
+        int stride = 5;
+        List<ByteBuffer> windows = new ArrayList<>();
+        for (int start = 0; start < bytes.length; start += stride) {
+            int length = Math.min(bytes.length - start, stride + ByteBufferHandler.WINDOW_OVERLAP);
+            windows.add(ByteBuffer.wrap(bytes, start, length));
+        }
+        ByteBufferHandler windowed = new ByteBufferHandler(windows.toArray(new ByteBuffer[0]), stride);
+        assertSameTokens(expected, new Lexer(windowed).lex());
+
+        // Input past 2 GB is refused by the buffers, whose offsets are ints, up front
+        ByteBufferHandler huge = new ByteBufferHandler(new ByteBuffer[] {
+            ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes)}, ByteBufferHandler.WINDOW_SIZE);
+        assertTrue(huge.length() > Integer.MAX_VALUE);
+        boolean refused = false;
+        try {
+            new Lexer(huge).lexOffsets();
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        assertTrue(refused);
+
+        Path file = Files.createTempFile("lexer", ".awk");
+        try {
+            Files.write(file, bytes);
+            assertSameTokens(expected, Lexer.mapFile(file).lex());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testTokenBufferMatchesLex() {
+        String input = "x = \"a\\\"b\" ^ `c` ! 1.5\ny /= 2 # done\n";
+        List<Token> expected = new Lexer(input).lex();
+        TokenBuffer buffer = new Lexer(input).lexToBuffer();
+
+        assertEquals(expected.size(), buffer.size());
+        assertSameTokens(expected, buffer.toList());
+        assertEquals(TokenType.STRINGLITERAL, buffer.getType(2));
+        assertEquals("\"a\"b", buffer.getValue(2));
+        assertEquals(4, buffer.getOffset(2));
+        assertEquals("EXPONENT", buffer.getValue(3));
+        assertEquals("", buffer.getValue(7));
+    }
+
+    @Test
+    public void testParallelMatchesLex() {
+        String input = "BEGIN { x = 1 } # comment\n" +
+                       "{ s = \"spans\nthree\nlines\" }\n" +
+                       "{ p = `a\\`\nb` ; y ^= 2 }\n" +
+                       "END { print x, y }\n";
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Token> expected = new Lexer(input).lex();
+            // Chunks of a few characters make every kind of token cross a chunk boundary
+            for (int chunkSize = 1; chunkSize < 12; chunkSize++) {
+                assertSameTokens(expected, new ParallelLexer(pool, chunkSize).lexToList(input));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelReportsErrors() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new ParallelLexer(pool, 4).lex("x = 1\ny = 2\nz = @\n");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void assertSameTokens(List<Token> expected, List<Token> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testIncrementalMatchesLex() {
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            document.append("{ x").append(i).append(" = \"a\" } # note\n");
+        }
+        IncrementalLexer lexer = new IncrementalLexer(document);
+        assertSameTokens(new Lexer(document.toString()).lex(), lexer.toList());
+
+        // Grow a word, turn it into a string holding a newline, then back into a word
+        int offset = document.indexOf("x100");
+        String[][] edits = {{"x100", "x1000"}, {"x1000", "\"x1000\n\""}, {"\"x1000\n\"", "y"}};
+        for (String[] edit : edits) {
+            lexer.edit(offset, edit[0].length(), edit[1]);
+            document.replace(offset, offset + edit[0].length(), edit[1]);
+            assertSameTokens(new Lexer(document.toString()).lex(), lexer.toList());
+        }
+        // A small edit only re-lexes the tokens around it
+        assertTrue(lexer.getRelexedCount() < 10);
+
+        // An edit up to three characters past a number can give it an exponent, or take
+        // it away
+        String[][] numberEdits = {
+            {"x = 1e\n", "6", "", "5"}, {"x = 1e+y", "7", "y", "5"}, {"x = 1E-5 + 2", "7", "5", "z"},
+            {"y = 2e-", "7", "", "3"}, {"y = 2ex", "6", "x", "+1"}
+        };
+        for (String[] edit : numberEdits) {
+            StringBuilder text = new StringBuilder(edit[0]);
+            IncrementalLexer edited = new IncrementalLexer(text);
+            int at = Integer.parseInt(edit[1]);
+            edited.edit(at, edit[2].length(), edit[3]);
+            text.replace(at, at + edit[2].length(), edit[3]);
+            assertSameTokens(new Lexer(text.toString()).lex(), edited.toList());
+        }
+    }
+
+    @Test
+    public void testResetMatchesNewLexer() {
+        String[] snippets = {"BEGIN { x = 1 }\n", "# only a comment\n", "{ s = \"a\\\"b\" ; p = `q` }", ""};
+        Lexer reused = new Lexer(new StringReader("y ^= 2\n"));
+        reused.lex();
+        for (String snippet : snippets) {
+            assertSameTokens(new Lexer(snippet).lex(), reused.reset(snippet).lex());
+        }
+
+        // A buffer from before a reset still reads its own text and symbols
+        String first = "alpha = \"str\"\n";
+        TokenBuffer buffer = reused.reset(first).lexToBuffer();
+        SymbolTable symbols = reused.getSymbolTable();
+        assertSameTokens(new Lexer("zz = beta\n").lex(), reused.reset("zz = beta\n").lex());
+        assertSameTokens(new Lexer(first).lex(), buffer.toList());
+        assertEquals("alpha", symbols.name(buffer.get(0).getSymbolId()));
+        assertEquals(1, symbols.size());
+    }
+
+    @Test
+    public void testSymbolIds() {
+        String input = "x = y + x; while (z) print y\n{ total = x }\n";
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        SymbolTable symbols = lexer.getSymbolTable();
+        assertEquals(4, symbols.size());
+        assertEquals(0, symbols.lookup("x"));
+        assertEquals(3, symbols.lookup("total"));
+        assertEquals(-1, symbols.lookup("while"));
+        for (Token token : tokens) {
+            if (token.getType() == TokenType.WORD) {
+                // Every use of a name shares the interned String
+                assertSame(symbols.name(token.getSymbolId()), token.getValue());
+            } else {
+                assertEquals(-1, token.getSymbolId());
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            TokenBuffer buffer = new Lexer(input).lexToBuffer();
+            for (int chunkSize = 1; chunkSize < 12; chunkSize++) {
+                TokenBuffer parallel = new ParallelLexer(pool, chunkSize).lex(input);
+                for (int i = 0; i < tokens.size(); i++) {
+                    assertEquals(tokens.get(i).getSymbolId(), buffer.getSymbolId(i));
+                    assertEquals(tokens.get(i).getSymbolId(), parallel.getSymbolId(i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRecoveringMode() {
+        String input = "x = 1 @ y\nz = \"open; w = 2\nprint `also open\n";
+        Diagnostics diagnostics = new Diagnostics(2);
+        Lexer lexer = new Lexer(input);
+        lexer.setDiagnostics(diagnostics);
+        List<Token> tokens = lexer.lex();
+
+        assertEquals(2, diagnostics.size());
+        assertEquals(1, diagnostics.getDropped());
+        assertEquals(Diagnostics.Kind.UNRECOGNIZED_CHARACTER, diagnostics.getKind(0));
+        assertEquals(1, diagnostics.getLineNumber(0));
+        assertEquals(6, diagnostics.getPosition(0));
+        assertEquals(Diagnostics.Kind.UNTERMINATED_STRING, diagnostics.getKind(1));
+        assertEquals(2, diagnostics.getLineNumber(1));
+        assertEquals(4, diagnostics.getPosition(1));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("WORD(x) at line 1, position 0");
+        expected.add("ONECHARSYMBOL(=) at line 1, position 2");
+        expected.add("NUMBER(1) at line 1, position 4");
+        expected.add("ERROR(@ y) at line 1, position 6");
+        expected.add("SEPARATOR() at line 1, position 9");
+        expected.add("WORD(z) at line 2, position 0");
+        expected.add("ONECHARSYMBOL(=) at line 2, position 2");
+        expected.add("ERROR(\"open) at line 2, position 4");
+        expected.add("SEPARATOR(;) at line 2, position 9");
+        expected.add("WORD(w) at line 2, position 11");
+        expected.add("ONECHARSYMBOL(=) at line 2, position 13");
+        expected.add("NUMBER(2) at line 2, position 15");
+        expected.add("SEPARATOR() at line 2, position 16");
+        expected.add("PRINT(print) at line 3, position 0");
+        expected.add("ERROR(`also open) at line 3, position 6");
+        expected.add("SEPARATOR() at line 3, position 16");
+        List<String> actual = new ArrayList<>();
+        for (Token token : tokens) {
+            actual.add(token.toString());
+        }
+        assertEquals(expected, actual);
+
+        // Streamed input can still go back to the start of an unterminated literal
+        Lexer streamed = new Lexer(new StringReader(input));
+        streamed.setDiagnostics(new Diagnostics(4));
+        assertSameTokens(tokens, streamed.lex());
+    }
+
+    @Test
+    public void testLexOffsets() {
+        String input = "# comment\nx = \"a\\\"b\" ^ y # more\n" +
+                       "s = \"two\nlines\"; /re/\n" +
+                       "print `p\\`q` \u00e9t\u00e9 != z";
+        TokenBuffer eager = new Lexer(input).lexToBuffer();
+        TokenBuffer lazy = new Lexer(input).lexOffsets();
+        assertNotNull(lazy.getLineIndex());
+        assertSameTokens(eager.toList(), lazy.toList());
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        assertSameTokens(eager.toList(), new Lexer(bytes).lexOffsets().toList());
+    }
+
+    @Test
+    public void testParseExpression() {
+        Parser parser = new Parser(new Lexer("x = -2 ^ 2 + count[$1]++ * 3 \"s\" (i, j) in a ? f(k) : y\n").lexToBuffer());
+        int root = parser.parseExpression();
+        SyntaxTree tree = parser.getTree();
+        assertEquals("(ASSIGN x (CONDITIONAL (IN (CONCATENATION (ADD (UNARYNEG (EXPONENT 2 2)) "
+                + "(MULTIPLY (POSTINC (INDEX count (DOLLAR 1))) 3)) \"s\" (GROUP i j)) a) (f k) y))",
+                tree.toString(root));
+        // Stops at the newline, and the root comes last
+        assertEquals(TokenType.SEPARATOR, tree.getTokens().getType(parser.getIndex()));
+        assertEquals(tree.size() - 1, root);
+
+        // A long concatenation is one node
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            builder.append("a").append(i).append(' ');
+        }
+        parser.reset(new Lexer(builder.toString()).lexToBuffer());
+        root = parser.parseExpression();
+        assertEquals(100000, parser.getTree().getChildCount(root));
+
+        // Deep nesting needs no recursion either
+        builder.setLength(0);
+        for (int i = 0; i < 100000; i++) {
+            builder.append("(a").append(i).append(' ');
+        }
+        for (int i = 0; i < 100000; i++) {
+            builder.append(')');
+        }
+        parser.reset(new Lexer(builder.toString()).lexToBuffer());
+        root = parser.parseExpression();
+        assertEquals(100000 + 99999 - 1, root);
+        assertEquals("a0", parser.getTree().getValue(parser.getTree().getChild(root, 0)));
+    }
+
+    @Test
+    public void testRunProgram() {
+        String program = "BEGIN {\n"
+                + "    for (i = 0; i < ARGC; i++)\n"
+                + "        printf \"ARGV[%d] = %s\\n\", i, ARGV[i]\n"
+                + "    m = 0\n"
+                + "    do {\n"
+                + "        m++\n"
+                + "    } while ( m < 3 )\n"
+                + "    if (m = 0) {\n"
+                + "        printf \"never\"\n"
+                + "    }\n"
+                + "}\n"
+                + "function twice(n) { return n * 2 }\n"
+                + "$2 > 15 { total[$3] += twice($2); n++ }\n"
+                + "`^d`, `^d` { print \"last:\", $1 }\n"
+                + "END {\n"
+                + "    for (k in total) printf \"%s=%g \", k, total[k]\n"
+                + "    print n, NR, m\n"
+                + "}\n";
+        String input = "alice 10 x\nbob 20 y\ncarol 30.5 x\ndave 7 z\n";
+        String expected = "ARGV[0] = awk\nARGV[1] = -\nlast: dave\ny=40 x=61 2 4 0\n";
+        List<String> operands = Collections.singletonList("-");
+
+        StringWriter out = new StringWriter();
+        assertEquals(0, Awk.run(program, operands, new StringReader(input), out));
+        assertEquals(expected, out.toString());
+
+        // The tree walker the compiled code is measured against gives the same output
+        out = new StringWriter();
+        assertEquals(0, Awk.runTreeWalker(program, Collections.emptyMap(), operands, new StringReader(input), out));
+        assertEquals(expected, out.toString());
+
+        // 2^63 is past what a long holds, and is written out exactly rather than as
+        // Long.MAX_VALUE, printed, converted, as a subscript and in %
+        String big = "BEGIN { x = 2^63; a[x] = 1; for (k in a) print x, x \"\", k, x % 3, -x, 2^64 }";
+        String bigExpected = "9223372036854775808 9223372036854775808 9223372036854775808 2 -9223372036854775808 "
+                + "18446744073709551616\n";
+        out = new StringWriter();
+        assertEquals(0, Awk.run(big, Collections.emptyList(), new StringReader(""), out));
+        assertEquals(bigExpected, out.toString());
+        out = new StringWriter();
+        assertEquals(0, Awk.runTreeWalker(big, Collections.emptyMap(), Collections.emptyList(), new StringReader(""),
+                out));
+        assertEquals(bigExpected, out.toString());
+    }
+
+    @Test
+    public void testPrintf() throws Exception {
+        // The same format twice is parsed once; conversions awk lacks are copied as written
+        String program = "BEGIN {\n"
+                + "    for (i = 0; i < 2; i++)\n"
+                + "        printf \"%5.2f|%-4d|%04d|%x|%c|%*d|%.3s|%%|%k|%.2f|%.2f|%#.0f|%e|%g\\n\", "
+                + "3.14159, 7, -42, 255, 65, 4, 9, \"abcdef\", 2.675, 0.125, 3, 12345.678, 0.0001234\n"
+                // A non-integer converted for %s does not clobber the text sprintf is building
+                + "    print sprintf(\"%s-%s\", 1.5, 2.5)\n"
+                + "}\n";
+        String line = " 3.14|7   |-042|ff|A|   9|abc|%|%k|2.67|0.12|3.|1.234568e+04|0.0001234\n";
+        StringWriter out = new StringWriter();
+        assertEquals(0, Awk.run(program, Collections.emptyList(), new StringReader(""), out));
+        assertEquals(line + line + "1.5-2.5\n", out.toString());
+
+        // The sink encodes UTF-8 itself, across refills of a small buffer and with a
+        // surrogate pair split between two writes
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String text = "h\u00e9llo \ud83d\ude00 \u20ac";
+        try (OutputSink sink = new OutputSink(Channels.newChannel(bytes), 4)) {
+            sink.append(new StringBuilder(text), 0, 7);
+            sink.write(text, 7, text.length() - 7);
+            sink.write('\ud800');
+        }
+        assertEquals(text + "?", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        // Files are written through sinks, truncated by > and added to by >>, and a
+        // command's input is closed before it is waited for
+        Path file = Files.createTempFile("printf", ".txt");
+        try {
+            String name = file.toString();
+            String redirects = "BEGIN { printf \"%s\\n\", \"\u00e9t\u00e9\" > \"" + name + "\"; close(\"" + name + "\")\n"
+                    + "    print \"more\" >> \"" + name + "\"; print \"b\" | \"cat > /dev/null\" }";
+            assertEquals(0, Awk.run(redirects, Collections.emptyList(), new StringReader(""), new StringWriter()));
+            assertEquals("\u00e9t\u00e9\nmore\n", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testTokenCodec() throws Exception {
+        // More distinct words than the string table holds, so it is reset along the way
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            source.append('x').append(i).append(i % 3 == 0 ? " = \"caf\u00e9\" `^a+` # note\n" : "++; y += 1.5e3\t");
+        }
+        TokenBuffer buffer = new Lexer(source.toString()).lexToBuffer();
+        List<Token> expected = buffer.toList();
+        long text = 0;
+        for (Token token : expected) {
+            text += token.toString().length() + 1;
+        }
+
+        // Through a pipe, with buffers far smaller than the stream and the encoder on
+        // another thread, from a TokenBuffer and then Token by Token
+        Pipe pipe = Pipe.open();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> written = writer.submit(() -> {
+                try (TokenCodec.Encoder encoder = new TokenCodec.Encoder(pipe.sink(), 1024)) {
+                    encoder.write(buffer, 0, 1000);
+                    for (Token token : expected.subList(1000, expected.size())) {
+                        encoder.write(token);
+                    }
+                    encoder.finish();
+                    return encoder.bytes();
+                }
+            });
+            List<Token> decoded = new ArrayList<>();
+            List<SymbolTable> tables = new ArrayList<>();
+            try (TokenCodec.Decoder decoder = new TokenCodec.Decoder(pipe.source(), 1024)) {
+                for (Token token = decoder.read(); token != null; token = decoder.read()) {
+                    decoded.add(token);
+                    tables.add(decoder.getSymbolTable());
+                }
+            }
+            assertSameTokens(expected, decoded);
+            // Symbol ids are the Lexer's until the first reset, and start over with a
+            // new table after it
+            SymbolTable first = tables.get(0);
+            assertTrue(tables.get(tables.size() - 1) != first);
+            for (int i = 0; i < expected.size(); i++) {
+                Token token = decoded.get(i);
+                if (tables.get(i) == first) {
+                    assertEquals(expected.get(i).getSymbolId(), token.getSymbolId());
+                }
+                if (token.getSymbolId() >= 0) {
+                    assertEquals(token.getValue(), tables.get(i).name(token.getSymbolId()));
+                }
+                assertTrue(tables.get(i).size() <= TokenCodec.TABLE_LIMIT);
+            }
+            assertTrue(written.get() * 5 < text);
+        } finally {
+            writer.shutdownNow();
+        }
+
+        // A stream cut short is an error, not a shorter stream
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TokenCodec.Encoder encoder = new TokenCodec.Encoder(Channels.newChannel(bytes))) {
+            encoder.write(buffer, 0, 500);
+        }
+        TokenCodec.Decoder cut = new TokenCodec.Decoder(Channels.newChannel(
+                new ByteArrayInputStream(bytes.toByteArray(), 0, bytes.size() / 2)));
+        boolean failed = false;
+        try {
+            while (cut.read() != null) {
+                // Keep going
+            }
+        } catch (EOFException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+
+        // A string longer than MAX_STRING is refused before anything is allocated for it
+        bytes = new ByteArrayOutputStream();
+        new TokenCodec.Encoder(Channels.newChannel(bytes)).flush();
+        bytes.write(TokenType.WORD.ordinal() << 1 | 1);
+        bytes.write(new byte[] {0, 0, -1, -1, -1, -1, 7});
+        TokenCodec.Decoder huge = new TokenCodec.Decoder(Channels.newChannel(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        failed = false;
+        try {
+            huge.read();
+        } catch (IllegalArgumentException e) {
+            failed = e.getMessage().startsWith("Bad string length");
+        }
+        assertTrue(failed);
+    }
+
+    @Test
+    public void testConstantFolding() {
+        // Numbers are parsed as they are lexed, exponents and all, and a second '.'
+        // starts another number
+        TokenBuffer numbers = new Lexer("1e3 2.5E-1 0.05 1.2.3 7e x 12345678901234567890").lexToBuffer();
+        double[] values = {1000, 0.25, 0.05, 1.2, 0.3, 7};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(TokenType.NUMBER, numbers.getType(i));
+            assertEquals(values[i], numbers.getNumber(i), 0);
+        }
+        assertEquals("e", numbers.getValue(6));
+        assertEquals(1.2345678901234567e19, numbers.getNumber(8), 0);
+
+        Parser parser = new Parser(new Lexer("x = -2 ^ 2 + 3 * (4 - 1) \"s\" 1 (1 < 2 ? \"t\" : z) y 0.5 "
+                + "(\"ab\" < \"b\") (0 && f()) (1 / 0) (0 ? y : z)\n").lexToBuffer());
+        SyntaxTree tree = parser.getTree();
+        int root = new ConstantFolder(tree).fold(parser.parseExpression());
+        assertEquals("(ASSIGN x (CONCATENATION \"5s1t\" y 0.5 \"10\" (DIVIDE 1 0) z))", tree.toString(root));
+
+        // 0.5 "a" depends on CONVFMT, so it is left for the run
+        String program = "BEGIN { CONVFMT = \"%.2g\"; x = 0.125 \"a\"; print x, 1e3 \"b\" (2 > 1 ? \"c\" : \"d\") }";
+        String expected = "0.12a 1000bc\n";
+        List<String> operands = Collections.emptyList();
+        StringWriter out = new StringWriter();
+        assertEquals(0, Awk.run(program, operands, new StringReader(""), out));
+        assertEquals(expected, out.toString());
+        out = new StringWriter();
+        assertEquals(0, Awk.runTreeWalker(program, Collections.emptyMap(), operands, new StringReader(""), out));
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testAwkArray() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            // Checked against a LinkedHashMap through adds, deletes, compactions and growth,
+            // with subscripts that need two bytes a character now and then
+            AwkArray array = new AwkArray(offHeap);
+            Map<String, Double> expected = new LinkedHashMap<>();
+            Random random = new Random(offHeap ? 2 : 1);
+            Cell cell = new Cell();
+            for (int i = 0; i < 200000; i++) {
+                int n = random.nextInt(5000);
+                String key = n % 97 == 0 ? "\u0101" + n : n % 89 == 0 ? "" : Integer.toString(n);
+                if (random.nextInt(3) == 0) {
+                    array.remove(key);
+                    expected.remove(key);
+                } else {
+                    array.load(key, cell);
+                    Double old = expected.get(key);
+                    assertEquals(old == null ? Cell.UNINIT : Cell.NUMBER, cell.type);
+                    cell.setNumber((old == null ? 0 : old) + n);
+                    array.store(key, cell);
+                    expected.put(key, cell.number);
+                }
+                assertEquals(expected.size(), array.size());
+            }
+            assertEquals(new ArrayList<>(expected.keySet()), Arrays.asList(array.keys()));
+            AwkArray copy = array.copy();
+            array.clear();
+            assertEquals(0, array.keys().length);
+            assertTrue(!array.contains("1"));
+            for (Map.Entry<String, Double> entry : expected.entrySet()) {
+                assertTrue(copy.contains(entry.getKey()));
+                copy.load(entry.getKey(), cell);
+                assertEquals(entry.getValue(), cell.number, 0);
+            }
+            copy.storeInput("s", "text");
+            copy.load("s", cell);
+            assertEquals(Cell.STRING, cell.type);
+            assertEquals("text", cell.string);
+
+            // An overlay reads through to the copy and keeps what is stored in it apart
+            int copied = copy.size();
+            AwkArray overlay = copy.overlay();
+            overlay.load("s", cell);
+            assertEquals("text", cell.string);
+            cell.setNumber(1);
+            overlay.store("s", cell);
+            overlay.load("new", cell);
+            assertEquals(copied + 1, overlay.size());
+            assertEquals(Arrays.asList("s", "new"), Arrays.asList(overlay.storedKeys()));
+            assertEquals("new", overlay.keys()[copied]);
+            assertTrue(!copy.contains("new"));
+            copy.load("s", cell);
+            assertEquals("text", cell.string);
+            assertTrue(overlay.flatten() == copy);
+            copy.load("s", cell);
+            assertEquals(1, cell.number, 0);
+            assertEquals(copied + 1, copy.size());
+        }
+    }
+
+    @Test
+    public void testRecordBuffer() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("  host").append(i % 7).append('\t').append(i).append(' ').append(i / 4.0)
+                    .append(i % 9 == 0 ? " 1e3" : " x12").append(" \u00e9t\u00e9\n");
+        }
+        builder.append("no newline 2.5");
+        String input = builder.toString();
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        // Records are found across refills of a small buffer and remaps of a small window
+        RecordBuffer buffered = new RecordBuffer(Channels.newChannel(new ByteArrayInputStream(bytes)), 16);
+        Path file = Files.createTempFile("records", ".txt");
+        try {
+            Files.write(file, bytes);
+            try (FileChannel channel = FileChannel.open(file)) {
+                RecordBuffer mapped = new RecordBuffer(channel, 64);
+                for (RecordBuffer records : new RecordBuffer[] {buffered, mapped}) {
+                    double sum = 0;
+                    int count = 0;
+                    while (records.next((byte) '\n')) {
+                        sum += records.fieldNumber(3, ' ');
+                        count++;
+                    }
+                    assertEquals(501, count);
+                    assertEquals(499 * 500 / 8.0 + 2.5, sum, 0);
+                    assertEquals("no newline 2.5", records.text());
+                    assertEquals(3, records.fieldCount(' '));
+                    assertEquals("", records.fieldText(4, ' '));
+                }
+            }
+
+            // The same program reading bytes and reading text
+            String program = "$5 > 100 { big++ } { s += $3; n += NF; last = $NF } END { print big, s, n, last, $2 }";
+            StringWriter text = new StringWriter();
+            Awk.run(program, Collections.emptyList(), new StringReader(input), text);
+            StringWriter fromFile = new StringWriter();
+            Awk.run(Awk.compile(program), Collections.emptyMap(),
+                    new AwkRuntime(Collections.singletonList(file.toString()), new ByteArrayInputStream(new byte[0]),
+                            fromFile));
+            assertEquals("500 31190 2503 2.5 newline\n", text.toString());
+            assertEquals(text.toString(), fromFile.toString());
+        } finally {
+            Files.delete(file);
+        }
+
+        String[] numbers = {"12", "-3.5", " 7 ", "1e3", "2E-3", "+.5", "3x", "abc", ".", "1e", "123456789012345678901"};
+        for (String number : numbers) {
+            ByteBuffer wrapped = ByteBuffer.wrap(number.getBytes(StandardCharsets.UTF_8));
+            assertEquals(AwkRuntime.toNumber(number), RecordBuffer.parseNumber(wrapped, 0, wrapped.limit()), 0);
+            assertEquals(AwkRuntime.looksNumeric(number), RecordBuffer.looksNumeric(wrapped, 0, wrapped.limit()));
+        }
+    }
+
+    @Test
+    public void testParallelMachine() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            builder.append("key").append(i % 13).append(' ').append(i * 7 % 101 - 50).append(' ').append(i / 8.0)
+                    .append('\n');
+        }
+        Path file = Files.createTempFile("parallel", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+            List<String> operands = Collections.singletonList(file.toString());
+            String[] programs = {
+                "{ s += $2; n++ } $2 > max { max = $2 } END { print s, n, max, NR, $0 }",
+                "{ c[$1]++; t[$1] += $3 } END { for (k in c) print k, c[k], t[k] }",
+                "!($1 in first) { first[$1] = $2 } { last[$1] = $2; if (!($1 in low) || $2 < low[$1]) low[$1] = $2 } "
+                        + "END { for (k in first) print k, first[k], last[k], low[k] }",
+                "{ for (i = 1; i <= NF; i++) words[$i]++ } END { for (w in words) if (words[w] > 30) print w }",
+                // The rules read a large array from BEGIN, which every part shares
+                "BEGIN { for (i = 0; i < 200000; i++) m[i] = i * 2; hi[\"key1\"] = 0 } "
+                        + "{ s += m[$2 + 50]; if (m[$1] == \"\") missing++ } $2 > hi[$1] { hi[$1] = $2 } "
+                        + "END { print s, missing, length(m), m[\"key5\"] m[7]; for (k in hi) print k, hi[k] }",
+                // Not aggregates, so the rules see the records in order on one thread
+                "{ print NR, $1 } !($1 in seen) { seen[$1] = 1; unique++ } END { print unique }",
+            };
+            for (int i = 0; i < programs.length; i++) {
+                Program program = Awk.compile(programs[i]);
+                assertEquals(i < 5, program.aggregation != null);
+                StringWriter expected = new StringWriter();
+                Awk.run(program, Collections.emptyMap(), new AwkRuntime(operands, new StringReader(""), expected));
+                StringWriter actual = new StringWriter();
+                // Parts of 100 bytes cut the file into dozens
+                new ParallelMachine(program, new AwkRuntime(operands, new StringReader(""), actual), pool, 100).run();
+                assertEquals(programs[i], expected.toString(), actual.toString());
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRegex() {
+        String[] eres = {
+            "abc", "^abc", "abc$", "^abc$", "^$", "a\\.c", "a.c", "(a|aa)*b", "^(GET|POST) /", "[[:digit:]]{2,3}$",
+            "x{2}y", "^x{1,2}$", "[^a-c]+", "\\s\\w", "err|warn", "^ab|c", "a$|^b", "[]x]", "é+",
+        };
+        String[] texts = {"", "abc", "xabcx", "a.c", "axc", "aaaab", "aaaa", "GET /x", " POST /", "ab123", "ab1", "xxy",
+            "xxx", "aabbcc", "a b", "warning", "c", "ba", "]", "café", "abc\n", "a\nc"};
+        for (String ere : eres) {
+            Pattern pattern = Pattern.compile(AwkRuntime.toJavaRegex(ere), Pattern.DOTALL);
+            Regex regex = Regex.compile(ere);
+            for (String text : texts) {
+                assertEquals(ere + " ~ " + text, pattern.matcher(text).find(), regex.find(text));
+            }
+        }
+        // Too many states to keep, so they are thrown away as the search goes on
+        Regex regex = Regex.compile("(a|b)*a(a|b){12}c");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append(i * 7 % 3 == 0 ? 'a' : 'b');
+        }
+        assertEquals(false, regex.find(builder.toString()));
+        assertTrue(regex.find(builder.append("aaaaaaaaaaaaac").toString()));
+        // $ is the end of the text, not before a final newline
+        StringWriter out = new StringWriter();
+        Awk.run("BEGIN { s = \"a\\n\"; sub(`$`, \"x\", s); print s }", Collections.emptyList(), new StringReader(""),
+                out);
+        assertEquals("a\nx\n", out.toString());
+    }
+
+    @Test
+    public void testTokenCache() throws Exception {
+        String source = "function add(a, b) { return a + b }\n"
+                + "BEGIN { x = \"caf\u00e9\\t\"; print add(1, 2.5), x } # done\n"
+                + "$1 ~ `^a+` { n[$1]++ }\n";
+        List<String> expected = new ArrayList<>();
+        for (Token token : new Lexer(source).lexToBuffer().toList()) {
+            expected.add(token.toString() + " " + token.getSymbolId());
+        }
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory);
+            for (int round = 0; round < 5; round++) {
+                Path file;
+                try (Stream<Path> files = Files.list(directory)) {
+                    file = files.findFirst().orElse(null);
+                }
+                if (round == 2) {
+                    // A flipped bit
+                    byte[] bytes = Files.readAllBytes(file);
+                    bytes[bytes.length - 3] ^= 4;
+                    Files.write(file, bytes);
+                } else if (round == 3) {
+                    // Cut short
+                    byte[] bytes = Files.readAllBytes(file);
+                    Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+                }
+                TokenBuffer tokens = cache.lex(source);
+                List<String> actual = new ArrayList<>();
+                for (Token token : tokens.toList()) {
+                    actual.add(token.toString() + " " + token.getSymbolId());
+                }
+                assertEquals(expected, actual);
+                assertEquals(tokens.getSymbolTable().size(), new Lexer(source).lexToBuffer().getSymbolTable().size());
+            }
+            // Lexed the first time and after each of the two damaged files
+            assertEquals(3, cache.misses());
+            assertEquals(2, cache.hits());
+            // Another source gets a file of its own
+            assertEquals(expected.size() + 3, new TokenCache(directory).lex(source + "END { }").size());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count());
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testLexerMetrics() throws Exception {
+        String source = "BEGIN { x = 1.5; s = \"a\\\"b\" }\n$1 ~ `^a` { print x, s # note\n}\n@\n\"open";
+        List<Token> expected = new ArrayList<>();
+        Lexer plain = new Lexer(source);
+        plain.setDiagnostics(new Diagnostics(4));
+        expected.addAll(plain.lex());
+
+        LexerCounters counters = new LexerCounters(1);
+        Path file = Files.createTempFile("lex", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lexicon.Lex");
+            recording.start();
+            Lexer lexer = new Lexer(source);
+            lexer.setDiagnostics(new Diagnostics(4));
+            lexer.setMetrics(counters);
+            assertEquals(expected.size(), lexer.lexToBuffer().size());
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.size());
+            assertEquals(source.length(), events.get(0).getLong("units"));
+            assertEquals(expected.size(), events.get(0).getInt("tokens"));
+            assertEquals(2, events.get(0).getInt("errors"));
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(1, counters.getCalls());
+        assertEquals(source.length(), counters.getUnits());
+        assertEquals(expected.size(), counters.getTokens());
+        assertEquals(2, counters.getErrors());
+        long sampled = 0;
+        for (LexerMetrics.Path path : LexerMetrics.Path.values()) {
+            sampled += counters.getSamples(path);
+        }
+        // Every token is timed but the two ERROR ones
+        assertEquals(expected.size() - 2, sampled);
+        assertEquals(1, counters.getSamples(LexerMetrics.Path.STRING_LITERAL));
+        assertEquals(1, counters.getSamples(LexerMetrics.Path.PATTERN));
+        for (TokenType type : TokenType.values()) {
+            long count = expected.stream().filter(token -> token.getType() == type).count();
+            assertEquals(type.toString(), count, counters.getCount(type));
+        }
+    }
+
+    @Test
+    public void testBatchLexer() throws Exception {
+        Path root = Files.createTempDirectory("batch");
+        List<Path> created = new ArrayList<>();
+        try {
+            for (int i = 0; i < 40; i++) {
+                Path directory = Files.createDirectories(root.resolve("d" + i % 3));
+                Path file = directory.resolve("f" + i + ".awk");
+                String source = i % 7 == 0 ? "BEGIN { s = \"open\n" : "{ n[$" + i + "]++ } END { print " + i + " }\n";
+                Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+                created.add(file);
+            }
+            List<Path> files = BatchLexer.list(Collections.singletonList(root));
+            assertEquals(40, files.size());
+            String expected = null;
+            // One at a time, then many at once in a small memory budget
+            int[][] settings = {{1, 1}, {4, 3}, {4, 1024}};
+            for (int[] setting : settings) {
+                ExecutorService executor = Executors.newFixedThreadPool(setting[0]);
+                try {
+                    StringWriter out = new StringWriter();
+                    BatchLexer.Totals totals = new BatchLexer(executor, 64, setting[1]).run(files, out);
+                    assertEquals(40, totals.files);
+                    assertEquals(6, totals.errors);
+                    if (expected == null) {
+                        expected = out.toString();
+                    }
+                    assertEquals(expected, out.toString());
+                } finally {
+                    executor.shutdown();
+                }
+            }
+            assertTrue(expected.startsWith(root.resolve("d0").resolve("f0.awk") + "\t18 bytes\t6 tokens\t1 errors\n"
+                    + "\tUNTERMINATED_STRING at line 1, position 12\n"));
+        } finally {
+            for (Path file : created) {
+                Files.delete(file);
+            }
+            for (int i = 0; i < 3; i++) {
+                Files.delete(root.resolve("d" + i));
+            }
+            Files.delete(root);
+        }
+    }
+
+    @Test
+    public void testGetOperationTokenType() throws Exception {
+        Method method = Lexer.class.getDeclaredMethod("getOperationTokenType", Operation.class);
+        method.setAccessible(true);
+        TokenType tokenType = (TokenType) method.invoke(lexer, Operation.EXPONENT_ASSIGN);
+        assertEquals(TokenType.EXPONENT_ASSIGN, tokenType);
+    }
+}